@@ -0,0 +1,119 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.data;
+
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+
+import com.example.android.sunshine.R;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertNull;
+import static junit.framework.Assert.assertTrue;
+import static junit.framework.Assert.fail;
+
+@RunWith(AndroidJUnit4.class)
+public class CityIndexTest {
+
+    private static final String CITIES = "# name,country,latitude,longitude,population\n"
+            + "New York,US,40.7128,-74.0060,8336000\n"
+            + "York,GB,53.9600,-1.0873,210000\n"
+            + "Paris,FR,48.8566,2.3522,2161000\n"
+            + "Paris,US,33.6609,-95.5555,25000\n"
+            + "São Paulo,BR,-23.5505,-46.6333,12325000\n"
+            + "St. Louis,US,38.6270,-90.1994,301000\n"
+            + "\n";
+
+    @Test
+    public void testFindsPrefixOfAnyWordByPopulation() throws IOException {
+        CityIndex index = load(CITIES);
+
+        List<CityIndex.City> york = index.search("yor", 10);
+        assertEquals(2, york.size());
+        assertEquals("New York, US", york.get(0).toString());
+        assertEquals("York, GB", york.get(1).toString());
+
+        assertEquals(1, index.search("new y", 10).size());
+        assertEquals(1, index.search("yor", 1).size());
+        assertTrue(index.search("xyz", 10).isEmpty());
+        assertTrue(index.search("  ", 10).isEmpty());
+    }
+
+    @Test
+    public void testIgnoresCaseAccentsAndPunctuation() throws IOException {
+        CityIndex index = load(CITIES);
+
+        assertEquals("São Paulo", index.search("SAO PA", 10).get(0).getName());
+        assertEquals("St. Louis", index.search("st lou", 10).get(0).getName());
+        assertEquals("st louis", CityIndex.normalize(" St.  Louis "));
+    }
+
+    @Test
+    public void testFiltersByCountryAfterComma() throws IOException {
+        CityIndex index = load(CITIES);
+
+        List<CityIndex.City> paris = index.search("paris, u", 10);
+        assertEquals(1, paris.size());
+        assertEquals("US", paris.get(0).getCountry());
+    }
+
+    @Test
+    public void testResolvesExactNames() throws IOException {
+        CityIndex index = load(CITIES);
+
+        assertEquals("FR", index.resolve("paris").getCountry());
+        assertEquals(33.6609, index.resolve("Paris, us").getLatitude(), 0);
+        assertEquals("GB", index.resolve("York").getCountry());
+        // A prefix or a misspelling is not a city
+        assertNull(index.resolve("Pari"));
+        assertNull(index.resolve("Pariss"));
+        assertNull(index.resolve("Paris, DE"));
+    }
+
+    @Test
+    public void testRejectsMalformedLines() {
+        try {
+            load("Paris,FR,48.8566\n");
+            fail("A short line was accepted");
+        } catch (IOException expected) {
+        }
+    }
+
+    @Test
+    public void testLoadsBundledCities() throws IOException {
+        InputStream in = InstrumentationRegistry.getTargetContext().getResources()
+                .openRawResource(R.raw.cities);
+        CityIndex index = CityIndex.load(in);
+
+        assertTrue(index.size() > 100);
+        assertEquals("US", index.resolve("Mountain View").getCountry());
+        // The default location setting is a postal address, it stays a text query
+        assertNull(index.resolve(InstrumentationRegistry.getTargetContext()
+                .getString(R.string.pref_location_default)));
+    }
+
+    private static CityIndex load(String csv) throws IOException {
+        return CityIndex.load(new ByteArrayInputStream(csv.getBytes("UTF-8")));
+    }
+}
@@ -0,0 +1,126 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.data;
+
+import android.support.test.runner.AndroidJUnit4;
+
+import com.example.android.sunshine.data.database.WeatherEntry;
+import com.example.android.sunshine.utilities.SunshineDateUtils;
+import com.example.android.sunshine.utils.WeatherTestData;
+
+import java.util.Arrays;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertNull;
+import static junit.framework.Assert.assertSame;
+import static junit.framework.Assert.assertTrue;
+
+@RunWith(AndroidJUnit4.class)
+public class ColumnarForecastCacheTest {
+
+    private static final long TODAY = SunshineDateUtils.getNormalizedUtcMsForToday();
+    private static final long DAY = SunshineDateUtils.DAY_IN_MILLIS;
+
+    @Test
+    public void testStoresColumnsInDateOrder() {
+        WeatherEntry[] week = WeatherTestData.createForecasts(7, 46);
+        WeatherEntry[] reversed = new WeatherEntry[week.length];
+        for (int i = 0; i < week.length; i++) {
+            reversed[i] = week[week.length - 1 - i];
+        }
+        ColumnarForecastCache cache = new ColumnarForecastCache();
+        assertTrue(cache.apply("Mountain View", reversed));
+
+        ColumnarForecastCache.ForecastColumns columns = cache.get("Mountain View");
+        assertEquals(7, columns.size());
+        for (int i = 0; i < week.length; i++) {
+            assertEquals(week[i].getDate(), columns.getDate(i));
+            assertEquals(week[i].getWeatherIconId(), columns.getWeatherIconId(i));
+            assertEquals(week[i].getMax(), columns.getMax(i), 0.001);
+            assertEquals(week[i].getDegrees(), columns.getDegrees(i), 0.001);
+        }
+        assertEquals(3, columns.indexOf(TODAY + 3 * DAY));
+        assertTrue(columns.indexOf(TODAY + 8 * DAY) < 0);
+        assertNull(cache.get("London"));
+    }
+
+    @Test
+    public void testMergesNewAndChangedDays() {
+        ColumnarForecastCache cache = new ColumnarForecastCache();
+        cache.apply("Mountain View", WeatherTestData.createForecasts(TODAY, 3, 1));
+        WeatherEntry[] later = WeatherTestData.createForecasts(TODAY + 2 * DAY, 3, 2);
+        cache.apply("Mountain View", later);
+
+        ColumnarForecastCache.ForecastColumns columns = cache.get("Mountain View");
+        assertEquals(5, columns.size());
+        assertEquals(later[0].getMin(), columns.getMin(2), 0.001);
+        assertEquals(TODAY + 4 * DAY, columns.getDate(4));
+    }
+
+    @Test
+    public void testUnchangedSyncKeepsColumns() {
+        ColumnarForecastCache cache = new ColumnarForecastCache();
+        cache.apply("Mountain View", WeatherTestData.createForecasts(TODAY, 3, 1), 1000);
+        ColumnarForecastCache.ForecastColumns before = cache.get("Mountain View");
+
+        assertFalse(cache.apply("Mountain View", WeatherTestData.createForecasts(TODAY, 3, 1),
+                1000));
+        assertSame(before, cache.get("Mountain View"));
+    }
+
+    @Test
+    public void testKeepsTheLastSyncTime() {
+        ColumnarForecastCache cache = new ColumnarForecastCache();
+        cache.apply("Mountain View", WeatherTestData.createForecasts(TODAY - DAY, 3, 1), 1000);
+
+        // The same forecasts, synced again later
+        assertFalse(cache.apply("Mountain View", WeatherTestData.createForecasts(TODAY - DAY, 3, 1),
+                2000));
+        assertEquals(2000, cache.get("Mountain View").getSyncedAtMillis());
+        assertEquals(3, cache.get("Mountain View").size());
+
+        cache.evictBefore(TODAY);
+        assertEquals(2000, cache.get("Mountain View").getSyncedAtMillis());
+    }
+
+    @Test
+    public void testEvictBefore() {
+        ColumnarForecastCache cache = new ColumnarForecastCache();
+        cache.apply("Mountain View", WeatherTestData.createForecasts(TODAY - 2 * DAY, 5, 1));
+        cache.apply("London", WeatherTestData.createForecasts(TODAY, 2, 1));
+        cache.evictBefore(TODAY);
+
+        assertEquals(3, cache.get("Mountain View").size());
+        assertEquals(TODAY, cache.get("Mountain View").getDate(0));
+        assertEquals(2, cache.get("London").size());
+    }
+
+    @Test
+    public void testDropsLeastRecentlyUsedLocation() {
+        ColumnarForecastCache cache = new ColumnarForecastCache(2);
+        cache.apply("Mountain View", WeatherTestData.createForecasts(TODAY, 2, 1));
+        cache.apply("London", WeatherTestData.createForecasts(TODAY, 2, 2));
+        cache.get("Mountain View");
+        cache.apply("Tokyo", WeatherTestData.createForecasts(TODAY, 2, 3));
+
+        assertNull(cache.get("London"));
+        assertEquals(Arrays.asList("Tokyo", "Mountain View"), cache.getLocationKeys());
+    }
+}
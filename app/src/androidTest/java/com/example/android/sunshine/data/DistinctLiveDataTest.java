@@ -0,0 +1,102 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.data;
+
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+
+import com.example.android.sunshine.data.database.ContentHash;
+import com.example.android.sunshine.data.database.ListWeatherEntry;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertNull;
+import static junit.framework.Assert.assertSame;
+import static junit.framework.Assert.assertTrue;
+
+@RunWith(AndroidJUnit4.class)
+public class DistinctLiveDataTest {
+
+    private static final DistinctLiveData.Fingerprint<List<ListWeatherEntry>> FINGERPRINT =
+            new DistinctLiveData.Fingerprint<List<ListWeatherEntry>>() {
+                @Override
+                public long of(List<ListWeatherEntry> rows) {
+                    return ContentHash.of(rows);
+                }
+            };
+
+    @Test
+    public void testSuppressesSameContent() {
+        AtomicInteger suppressed = new AtomicInteger();
+        DistinctLiveData<List<ListWeatherEntry>> liveData =
+                new DistinctLiveData<>(FINGERPRINT, suppressed);
+        List<ListWeatherEntry> first = rows(10.0);
+
+        assertTrue(offer(liveData, first));
+        assertFalse("Equal rows in new objects", offer(liveData, rows(10.0)));
+        assertSame(first, liveData.getValue());
+        assertTrue(offer(liveData, rows(11.0)));
+        assertEquals(1, suppressed.get());
+    }
+
+    @Test
+    public void testNullIsDistinct() {
+        AtomicInteger suppressed = new AtomicInteger();
+        DistinctLiveData<List<ListWeatherEntry>> liveData =
+                new DistinctLiveData<>(FINGERPRINT, suppressed);
+
+        assertTrue("The first value is always emitted", offer(liveData, null));
+        assertFalse(offer(liveData, null));
+        assertTrue(offer(liveData, rows(10.0)));
+        assertTrue(offer(liveData, null));
+        assertNull(liveData.getValue());
+        assertEquals(1, suppressed.get());
+    }
+
+    @Test
+    public void testHashCoversOrderAndValues() {
+        List<ListWeatherEntry> rows = rows(10.0);
+        List<ListWeatherEntry> reversed = Arrays.asList(rows.get(1), rows.get(0));
+        assertFalse(ContentHash.of(rows) == ContentHash.of(reversed));
+        assertFalse(ContentHash.of(rows) == ContentHash.of(rows.subList(0, 1)));
+        assertEquals(ContentHash.of(rows), ContentHash.of(rows(10.0)));
+    }
+
+    private static List<ListWeatherEntry> rows(double max) {
+        return Arrays.asList(new ListWeatherEntry(1, 500, 0, 2.0, max),
+                new ListWeatherEntry(2, 800, 86400000, 3.0, 12.0));
+    }
+
+    /* Values are set on the main thread, like LiveData requires */
+    private static boolean offer(final DistinctLiveData<List<ListWeatherEntry>> liveData,
+                                 final List<ListWeatherEntry> value) {
+        final boolean[] emitted = new boolean[1];
+        InstrumentationRegistry.getInstrumentation().runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                emitted[0] = liveData.offer(value);
+            }
+        });
+        return emitted[0];
+    }
+}
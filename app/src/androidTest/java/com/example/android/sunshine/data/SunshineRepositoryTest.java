@@ -0,0 +1,180 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.data;
+
+import android.arch.persistence.room.Room;
+import android.content.Context;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+
+import com.example.android.sunshine.AppExecutor;
+import com.example.android.sunshine.data.database.ForecastSnapshot;
+import com.example.android.sunshine.data.database.HistoryRetentionPolicy;
+import com.example.android.sunshine.data.database.RoomWeatherStore;
+import com.example.android.sunshine.data.database.SunshineDatabase;
+import com.example.android.sunshine.data.database.SunshinePreferences;
+import com.example.android.sunshine.data.database.SyncMetadata;
+import com.example.android.sunshine.data.database.WeatherEntry;
+import com.example.android.sunshine.data.database.WeatherStore;
+import com.example.android.sunshine.data.network.ForecastIngestQueue;
+import com.example.android.sunshine.data.network.WeatherNetworkDataSource;
+import com.example.android.sunshine.utilities.SunshineDateUtils;
+import com.example.android.sunshine.utils.WeatherTestData;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.File;
+import java.util.concurrent.Executor;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertNotNull;
+import static junit.framework.Assert.assertNull;
+import static junit.framework.Assert.assertTrue;
+
+/**
+ * Stores synced forecasts and switches locations through a repository over an in-memory
+ * database. The ingest queue writes on the thread that offers, so every offer is stored, or kept
+ * in memory, by the time it returns.
+ */
+@RunWith(AndroidJUnit4.class)
+public class SunshineRepositoryTest {
+
+    private static final long DAY = SunshineDateUtils.DAY_IN_MILLIS;
+
+    private static final String MOUNTAIN_VIEW = "Mountain View, CA";
+    private static final String PARIS = "Paris, France";
+
+    private static final Executor DIRECT = new Executor() {
+        @Override
+        public void execute(Runnable command) {
+            command.run();
+        }
+    };
+
+    private final long today = SunshineDateUtils.getNormalizedUtcMsForToday();
+
+    private Context context;
+    private SunshineDatabase database;
+    private WeatherStore store;
+    private ColumnarForecastCache columnarCache;
+    private ForecastIngestQueue ingestQueue;
+    private File snapshotFile;
+
+    @Before
+    public void before() {
+        context = InstrumentationRegistry.getTargetContext();
+        database = Room.inMemoryDatabaseBuilder(context, SunshineDatabase.class).build();
+        store = new RoomWeatherStore(database, HistoryRetentionPolicy.DEFAULT);
+        columnarCache = new ColumnarForecastCache(4);
+        ingestQueue = new ForecastIngestQueue(DIRECT, 4, 0);
+        snapshotFile = new File(context.getCacheDir(), "repository-test-snapshot");
+    }
+
+    @After
+    public void after() {
+        database.close();
+        snapshotFile.delete();
+    }
+
+    @Test
+    public void testSyncOfShownLocationIsStored() {
+        // The key the repository starts with and the key the sync tags its forecasts with
+        createRepository(SunshinePreferences.getLocationKey(context));
+        WeatherEntry[] forecasts = WeatherTestData.createForecasts(today, 7, 50);
+
+        ingestQueue.offer(SunshinePreferences.getLocationKey(context), forecasts, null);
+
+        assertStored(forecasts);
+        assertNotNull(database.syncMetadataDao()
+                .getSyncMetadata(SunshinePreferences.getLocationKey(context)));
+    }
+
+    @Test
+    public void testSwitchShowsOnlyTheNewLocation() {
+        SunshineRepository repository = createRepository(MOUNTAIN_VIEW);
+        WeatherEntry[] mountainView = WeatherTestData.createForecasts(today, 7, 51);
+        ingestQueue.offer(MOUNTAIN_VIEW, mountainView, null);
+        assertStored(mountainView);
+
+        // Prefetched while Mountain View is shown
+        WeatherEntry[] paris = WeatherTestData.createForecasts(today, 5, 52);
+        long prefetchStart = System.currentTimeMillis();
+        ingestQueue.offer(PARIS, paris, null);
+        long prefetchEnd = System.currentTimeMillis();
+        assertStored(mountainView);
+        assertEquals(5, columnarCache.get(PARIS).size());
+
+        assertTrue(repository.switchLocation(PARIS));
+        // The two days Paris does not cover are gone too
+        assertStored(paris);
+        assertNull(database.syncMetadataDao().getSyncMetadata(MOUNTAIN_VIEW));
+        SyncMetadata parisMetadata = database.syncMetadataDao().getSyncMetadata(PARIS);
+        assertEquals(5, parisMetadata.getDaysFrom(today));
+        // Synced when it was prefetched, not when it was shown
+        assertTrue(parisMetadata.getLastSyncMillis() >= prefetchStart);
+        assertTrue(parisMetadata.getLastSyncMillis() <= prefetchEnd);
+
+        // A sync of Mountain View still in flight when it stopped being shown
+        WeatherEntry[] mountainViewLater = WeatherTestData.createForecasts(today, 7, 53);
+        ingestQueue.offer(MOUNTAIN_VIEW, mountainViewLater, null);
+        assertStored(paris);
+        assertEquals(mountainViewLater[0].getMin(), columnarCache.get(MOUNTAIN_VIEW).getMin(0),
+                0.001);
+
+        assertTrue(repository.switchLocation(MOUNTAIN_VIEW));
+        assertStored(mountainViewLater);
+        assertNull(database.syncMetadataDao().getSyncMetadata(PARIS));
+    }
+
+    @Test
+    public void testSwitchToUncachedLocationClearsTheStore() {
+        SunshineRepository repository = createRepository(MOUNTAIN_VIEW);
+        ingestQueue.offer(MOUNTAIN_VIEW, WeatherTestData.createForecasts(today, 7, 54), null);
+
+        assertFalse(repository.switchLocation(PARIS));
+
+        assertEquals(0, store.count());
+        assertNull(database.syncMetadataDao().getSyncMetadata(MOUNTAIN_VIEW));
+        // No metadata, so the next check syncs Paris
+        assertNull(database.syncMetadataDao().getSyncMetadata(PARIS));
+    }
+
+    private SunshineRepository createRepository(String shownLocationKey) {
+        AppExecutor appExecutor = AppExecutor.getInstance();
+        return new SunshineRepository(store, database.archiveDao(), database.syncMetadataDao(),
+                new ForecastSnapshot(snapshotFile), new WeatherDetailCache(16), columnarCache,
+                shownLocationKey, ingestQueue,
+                WeatherNetworkDataSource.getInstance(context, appExecutor), appExecutor);
+    }
+
+    /**
+     * Checks that the store holds these forecasts and no other day
+     */
+    private void assertStored(WeatherEntry[] forecasts) {
+        assertEquals(forecasts.length, store.count());
+        for (WeatherEntry expected : forecasts) {
+            WeatherEntry stored = store.getWeatherByDate(expected.getDate());
+            assertNotNull(stored);
+            assertEquals(expected.getWeatherIconId(), stored.getWeatherIconId());
+            assertEquals(expected.getMin(), stored.getMin());
+            assertEquals(expected.getMax(), stored.getMax());
+        }
+    }
+}
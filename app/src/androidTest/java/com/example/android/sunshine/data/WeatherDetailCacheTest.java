@@ -0,0 +1,105 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.data;
+
+import android.support.test.runner.AndroidJUnit4;
+
+import com.example.android.sunshine.data.database.WeatherEntry;
+import com.example.android.sunshine.utilities.SunshineDateUtils;
+import com.example.android.sunshine.utils.WeatherTestData;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.Arrays;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertNull;
+import static junit.framework.Assert.assertSame;
+import static junit.framework.Assert.assertTrue;
+
+@RunWith(AndroidJUnit4.class)
+public class WeatherDetailCacheTest {
+
+    private static final long TODAY = SunshineDateUtils.getNormalizedUtcMsForToday();
+    private static final long DAY = SunshineDateUtils.DAY_IN_MILLIS;
+
+    private final WeatherEntry[] week = WeatherTestData.createForecasts(7, 37);
+
+    @Test
+    public void testCountsHitsAndMisses() {
+        WeatherDetailCache cache = new WeatherDetailCache(10);
+        cache.putAll(Arrays.asList(week).subList(0, 3));
+
+        assertSame(week[0], cache.get(TODAY));
+        assertSame(week[2], cache.get(TODAY + 2 * DAY));
+        assertNull(cache.get(TODAY + 5 * DAY));
+
+        assertEquals(2, cache.getHitCount());
+        assertEquals(1, cache.getMissCount());
+        assertEquals(2f / 3, cache.getHitRate(), 0.0001f);
+    }
+
+    @Test
+    public void testContainsDoesNotCountOrTouch() {
+        WeatherDetailCache cache = new WeatherDetailCache(2);
+        cache.putAll(Arrays.asList(week[0], week[1]));
+
+        assertTrue(cache.contains(TODAY));
+        assertEquals(0, cache.getHitCount() + cache.getMissCount());
+
+        /* Today is still the least recently used, so it is the one dropped */
+        cache.putAll(Arrays.asList(week[2]));
+        assertFalse(cache.contains(TODAY));
+        assertTrue(cache.contains(TODAY + DAY));
+    }
+
+    @Test
+    public void testDropsLeastRecentlyUsed() {
+        WeatherDetailCache cache = new WeatherDetailCache(3);
+        cache.putAll(Arrays.asList(week).subList(0, 3));
+        cache.get(TODAY);
+
+        cache.putAll(Arrays.asList(week[3]));
+
+        assertEquals(3, cache.size());
+        assertTrue(cache.contains(TODAY));
+        assertFalse(cache.contains(TODAY + DAY));
+        assertTrue(cache.contains(TODAY + 3 * DAY));
+    }
+
+    @Test
+    public void testEvictAll() {
+        WeatherDetailCache cache = new WeatherDetailCache(10);
+        cache.putAll(Arrays.asList(week));
+        cache.evictAll();
+
+        assertEquals(0, cache.size());
+        assertNull(cache.get(TODAY));
+    }
+
+    @Test
+    public void testEvictBefore() {
+        WeatherDetailCache cache = new WeatherDetailCache(10);
+        cache.putAll(Arrays.asList(week).subList(0, 3));
+        cache.evictBefore(TODAY + DAY);
+
+        assertEquals(2, cache.size());
+        assertFalse(cache.contains(TODAY));
+        assertTrue(cache.contains(TODAY + DAY));
+    }
+}
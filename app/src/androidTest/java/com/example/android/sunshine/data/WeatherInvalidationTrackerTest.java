@@ -0,0 +1,147 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.data;
+
+import android.arch.lifecycle.LiveData;
+import android.arch.lifecycle.Observer;
+import android.support.annotation.Nullable;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+
+import com.example.android.sunshine.utilities.SunshineDateUtils;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertTrue;
+
+@RunWith(AndroidJUnit4.class)
+public class WeatherInvalidationTrackerTest {
+
+    private static final long TODAY = SunshineDateUtils.getNormalizedUtcMsForToday();
+    private static final long DAY = SunshineDateUtils.DAY_IN_MILLIS;
+
+    /* Runs the queries right away, so the test can count them */
+    private final Executor direct = new Executor() {
+        @Override
+        public void execute(Runnable command) {
+            command.run();
+        }
+    };
+
+    private final Observer<Integer> ignore = new Observer<Integer>() {
+        @Override
+        public void onChanged(@Nullable Integer value) {
+        }
+    };
+
+    @Test
+    public void testOverlaps() {
+        long[] dates = {TODAY + DAY, TODAY + 3 * DAY};
+        assertTrue(WeatherInvalidationTracker.overlaps(dates, TODAY + DAY, TODAY + DAY));
+        assertTrue(WeatherInvalidationTracker.overlaps(dates, TODAY, TODAY + 2 * DAY));
+        assertTrue(WeatherInvalidationTracker.overlaps(dates, TODAY + 2 * DAY, Long.MAX_VALUE));
+        assertFalse(WeatherInvalidationTracker.overlaps(dates, TODAY, TODAY));
+        assertFalse(WeatherInvalidationTracker.overlaps(dates, TODAY + 2 * DAY, TODAY + 2 * DAY));
+        assertFalse(WeatherInvalidationTracker.overlaps(dates, TODAY + 4 * DAY, Long.MAX_VALUE));
+    }
+
+    @Test
+    public void testRequeriesOnlyTouchedRanges() {
+        WeatherInvalidationTracker tracker = new WeatherInvalidationTracker(direct);
+        AtomicInteger today = new AtomicInteger();
+        AtomicInteger tomorrow = new AtomicInteger();
+        AtomicInteger list = new AtomicInteger();
+        observe(tracker.observe(TODAY, TODAY, counting(today)));
+        observe(tracker.observe(TODAY + DAY, TODAY + DAY, counting(tomorrow)));
+        observe(tracker.observe(TODAY, Long.MAX_VALUE, counting(list)));
+        assertEquals(1, today.get());
+        assertEquals(1, tomorrow.get());
+
+        tracker.notifyChanged(new long[]{TODAY + DAY});
+
+        assertEquals(1, today.get());
+        assertEquals(2, tomorrow.get());
+        assertEquals(2, list.get());
+        assertEquals(2, tracker.getRequeryCount());
+        assertEquals(1, tracker.getAvoidedRequeryCount());
+    }
+
+    @Test
+    public void testRangeChangeRequeriesOverlapping() {
+        WeatherInvalidationTracker tracker = new WeatherInvalidationTracker(direct);
+        AtomicInteger yesterday = new AtomicInteger();
+        AtomicInteger list = new AtomicInteger();
+        observe(tracker.observe(TODAY - DAY, TODAY - DAY, counting(yesterday)));
+        observe(tracker.observe(TODAY, Long.MAX_VALUE, counting(list)));
+
+        tracker.notifyRangeChanged(Long.MIN_VALUE, TODAY - 1);
+
+        assertEquals(2, yesterday.get());
+        assertEquals(1, list.get());
+    }
+
+    @Test
+    public void testInactiveQueryCatchesUpOnMissedWrite() {
+        WeatherInvalidationTracker tracker = new WeatherInvalidationTracker(direct);
+        AtomicInteger count = new AtomicInteger();
+        final LiveData<Integer> query = tracker.observe(TODAY, TODAY, counting(count));
+        observe(query);
+        removeObserver(query);
+
+        // Reactivated without a write in between, the result is still current
+        observe(query);
+        assertEquals(1, count.get());
+        removeObserver(query);
+
+        tracker.notifyChanged(new long[]{TODAY + DAY});
+        observe(query);
+        assertEquals(2, count.get());
+    }
+
+    private static Callable<Integer> counting(final AtomicInteger count) {
+        return new Callable<Integer>() {
+            @Override
+            public Integer call() {
+                return count.incrementAndGet();
+            }
+        };
+    }
+
+    private void observe(final LiveData<Integer> liveData) {
+        InstrumentationRegistry.getInstrumentation().runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                liveData.observeForever(ignore);
+            }
+        });
+    }
+
+    private void removeObserver(final LiveData<Integer> liveData) {
+        InstrumentationRegistry.getInstrumentation().runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                liveData.removeObserver(ignore);
+            }
+        });
+    }
+}
@@ -0,0 +1,206 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.data.database;
+
+import android.arch.persistence.room.Room;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+
+import com.example.android.sunshine.utilities.SunshineDateUtils;
+import com.example.android.sunshine.utils.WeatherTestData;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertNotNull;
+import static junit.framework.Assert.assertNull;
+import static junit.framework.Assert.assertTrue;
+import static junit.framework.Assert.fail;
+
+@RunWith(AndroidJUnit4.class)
+public class ArchiveDaoTest {
+
+    private static final long DAY = SunshineDateUtils.DAY_IN_MILLIS;
+
+    /* Wednesday, March 14th 2018, so the two days before it share a week and a month */
+    private static final long TODAY_EPOCH_DAY = 17604;
+    private static final long TODAY = TODAY_EPOCH_DAY * DAY;
+
+    private static final String MOUNTAIN_VIEW = "Mountain View, CA";
+    private static final String PARIS = "Paris, France";
+
+    private SunshineDatabase database;
+    private ArchiveDao dao;
+
+    @Before
+    public void before() {
+        database = Room.inMemoryDatabaseBuilder(InstrumentationRegistry.getTargetContext(),
+                SunshineDatabase.class).build();
+        dao = database.archiveDao();
+        recordSync(MOUNTAIN_VIEW);
+    }
+
+    @After
+    public void after() {
+        database.close();
+    }
+
+    @Test
+    public void testArchivesExpiredDays() {
+        WeatherEntry[] past = WeatherTestData.createForecasts(TODAY - 2 * DAY, 2, 1);
+        database.weatherDao().bulkInsert(past);
+        database.weatherDao().bulkInsert(WeatherTestData.createForecasts(TODAY, 3, 2));
+
+        assertEquals(2, dao.archiveOldWeather(TODAY, HistoryRetentionPolicy.DEFAULT));
+
+        assertEquals(3, database.weatherDao().countWeather());
+        assertEquals(TODAY, database.weatherDao().getFirstDate());
+        List<WeatherHistoryEntry> history = dao.getHistory(MOUNTAIN_VIEW, 0, Long.MAX_VALUE);
+        assertEquals(2, history.size());
+        assertEquals(TODAY_EPOCH_DAY - 2, history.get(0).getEpochDay());
+        assertEquals(past[0].getHumidity(), history.get(0).getHumidity(), 0.0);
+
+        WeatherRollup week = dao.getRollup(MOUNTAIN_VIEW, WeatherRollup.PERIOD_WEEK,
+                WeatherRollup.periodStartFor(WeatherRollup.PERIOD_WEEK, TODAY_EPOCH_DAY));
+        assertEquals(2, week.getDayCount());
+        assertEquals(past[0].getHumidity() + past[1].getHumidity(), week.getSumHumidity(), 1e-9);
+        assertEquals(Math.min(past[0].getMin(), past[1].getMin()), week.getMinTemp(), 0.0);
+        assertEquals(2, dao.getRollup(MOUNTAIN_VIEW, WeatherRollup.PERIOD_MONTH,
+                WeatherRollup.periodStartFor(WeatherRollup.PERIOD_MONTH, TODAY_EPOCH_DAY))
+                .getDayCount());
+    }
+
+    @Test
+    public void testSameDayIsCountedOnce() {
+        WeatherEntry[] past = WeatherTestData.createForecasts(TODAY - 2 * DAY, 2, 1);
+        database.weatherDao().bulkInsert(past);
+        dao.archiveOldWeather(TODAY, HistoryRetentionPolicy.DEFAULT);
+
+        // The first day shows up in the weather table again, with other values
+        database.weatherDao().bulkInsert(WeatherTestData.createForecasts(TODAY - 2 * DAY, 1, 7));
+        assertEquals(1, dao.archiveOldWeather(TODAY, HistoryRetentionPolicy.DEFAULT));
+
+        assertEquals(0, database.weatherDao().countWeather());
+        List<WeatherHistoryEntry> history = dao.getHistory(MOUNTAIN_VIEW, 0, Long.MAX_VALUE);
+        assertEquals(2, history.size());
+        assertEquals(past[0].getHumidity(), history.get(0).getHumidity(), 0.0);
+
+        for (int period : new int[]{WeatherRollup.PERIOD_WEEK, WeatherRollup.PERIOD_MONTH}) {
+            WeatherRollup rollup = dao.getRollup(MOUNTAIN_VIEW, period,
+                    WeatherRollup.periodStartFor(period, TODAY_EPOCH_DAY));
+            assertEquals(2, rollup.getDayCount());
+            assertEquals(past[0].getHumidity() + past[1].getHumidity(),
+                    rollup.getSumHumidity(), 1e-9);
+            assertEquals(new WeatherHistoryEntry(MOUNTAIN_VIEW, past[0]).getMeanTemperature()
+                            + new WeatherHistoryEntry(MOUNTAIN_VIEW, past[1]).getMeanTemperature(),
+                    rollup.getSumMeanTemp(), 1e-9);
+        }
+    }
+
+    @Test
+    public void testLocationsAreArchivedApart() {
+        WeatherEntry[] mountainView = WeatherTestData.createForecasts(TODAY - 2 * DAY, 2, 1);
+        database.weatherDao().bulkInsert(mountainView);
+        dao.archiveOldWeather(TODAY, HistoryRetentionPolicy.DEFAULT);
+
+        // Paris was shown for the same two days
+        recordSync(PARIS);
+        WeatherEntry[] paris = WeatherTestData.createForecasts(TODAY - 2 * DAY, 2, 3);
+        database.weatherDao().bulkInsert(paris);
+        assertEquals(2, dao.archiveOldWeather(TODAY, HistoryRetentionPolicy.DEFAULT));
+
+        for (WeatherEntry[] days : Arrays.asList(mountainView, paris)) {
+            String locationKey = days == paris ? PARIS : MOUNTAIN_VIEW;
+            List<WeatherHistoryEntry> history = dao.getHistory(locationKey, 0, Long.MAX_VALUE);
+            assertEquals(2, history.size());
+            assertEquals(days[0].getHumidity(), history.get(0).getHumidity(), 0.0);
+
+            for (int period : new int[]{WeatherRollup.PERIOD_WEEK, WeatherRollup.PERIOD_MONTH}) {
+                WeatherRollup rollup = dao.getRollup(locationKey, period,
+                        WeatherRollup.periodStartFor(period, TODAY_EPOCH_DAY));
+                assertEquals(2, rollup.getDayCount());
+                assertEquals(days[0].getHumidity() + days[1].getHumidity(),
+                        rollup.getSumHumidity(), 1e-9);
+            }
+        }
+    }
+
+    @Test
+    public void testRetentionKeepsBoundaryDay() {
+        HistoryRetentionPolicy policy = new HistoryRetentionPolicy(10, 2, 1);
+        long historyCutoff = policy.historyCutoff(TODAY_EPOCH_DAY);
+        long weekCutoff = policy.weeklyRollupCutoff(TODAY_EPOCH_DAY);
+        long monthCutoff = policy.monthlyRollupCutoff(TODAY_EPOCH_DAY);
+        long previousMonth = WeatherRollup.periodStartFor(WeatherRollup.PERIOD_MONTH,
+                monthCutoff - 1);
+        dao.insertHistory(Arrays.asList(
+                new WeatherHistoryEntry(MOUNTAIN_VIEW, historyCutoff - 1, 800, 1, 2, 50),
+                new WeatherHistoryEntry(MOUNTAIN_VIEW, historyCutoff, 800, 1, 2, 50)));
+        dao.upsertRollups(Arrays.asList(
+                new WeatherRollup(MOUNTAIN_VIEW, WeatherRollup.PERIOD_WEEK, weekCutoff - 7),
+                new WeatherRollup(MOUNTAIN_VIEW, WeatherRollup.PERIOD_WEEK, weekCutoff),
+                new WeatherRollup(MOUNTAIN_VIEW, WeatherRollup.PERIOD_MONTH, previousMonth),
+                new WeatherRollup(MOUNTAIN_VIEW, WeatherRollup.PERIOD_MONTH, monthCutoff)));
+
+        assertEquals(0, dao.archiveOldWeather(TODAY, policy));
+
+        List<WeatherHistoryEntry> history = dao.getHistory(MOUNTAIN_VIEW, 0, Long.MAX_VALUE);
+        assertEquals(1, history.size());
+        assertEquals(historyCutoff, history.get(0).getEpochDay());
+        assertNull(dao.getRollup(MOUNTAIN_VIEW, WeatherRollup.PERIOD_WEEK, weekCutoff - 7));
+        assertNotNull(dao.getRollup(MOUNTAIN_VIEW, WeatherRollup.PERIOD_WEEK, weekCutoff));
+        assertNull(dao.getRollup(MOUNTAIN_VIEW, WeatherRollup.PERIOD_MONTH, previousMonth));
+        assertNotNull(dao.getRollup(MOUNTAIN_VIEW, WeatherRollup.PERIOD_MONTH, monthCutoff));
+    }
+
+    @Test
+    public void testRollsBackWhenAStepThrows() {
+        database.weatherDao().bulkInsert(WeatherTestData.createForecasts(TODAY - 2 * DAY, 2, 1));
+        // Retention runs after the history, rollups and delete are written
+        HistoryRetentionPolicy failing = new HistoryRetentionPolicy(10, 2, 1) {
+            @Override
+            long historyCutoff(long todayEpochDay) {
+                throw new IllegalStateException("Retention failed");
+            }
+        };
+
+        try {
+            dao.archiveOldWeather(TODAY, failing);
+            fail("The archive should have thrown");
+        } catch (IllegalStateException expected) {
+        }
+
+        assertEquals(2, database.weatherDao().countWeather());
+        assertTrue(dao.getHistory(MOUNTAIN_VIEW, 0, Long.MAX_VALUE).isEmpty());
+        assertNull(dao.getRollup(MOUNTAIN_VIEW, WeatherRollup.PERIOD_WEEK,
+                WeatherRollup.periodStartFor(WeatherRollup.PERIOD_WEEK, TODAY_EPOCH_DAY)));
+    }
+
+    /**
+     * Records that the weather table holds the forecasts of a location, which the archive files
+     * the expired days under
+     */
+    private void recordSync(String locationKey) {
+        database.syncMetadataDao().recordSync(locationKey, System.currentTimeMillis(),
+                new RoomWeatherStore(database, HistoryRetentionPolicy.DEFAULT), null, null);
+    }
+}
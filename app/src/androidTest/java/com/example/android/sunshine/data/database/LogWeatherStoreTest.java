@@ -0,0 +1,233 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.data.database;
+
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+
+import com.example.android.sunshine.utils.WeatherTestData;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertTrue;
+
+@RunWith(AndroidJUnit4.class)
+public class LogWeatherStoreTest extends WeatherStoreConformanceTest {
+
+    /* Small segments, so the tests write across several of them */
+    private static final int SEGMENT_BYTES = 16 * LogWeatherStore.RECORD_BYTES;
+
+    /* Runs compactions right away, on the writing thread */
+    private static final Executor DIRECT = new Executor() {
+        @Override
+        public void execute(Runnable command) {
+            command.run();
+        }
+    };
+
+    private File directory;
+
+    @Override
+    WeatherStore createStore() throws IOException {
+        directory = new File(InstrumentationRegistry.getTargetContext().getCacheDir(),
+                "weather-log-test");
+        deleteDirectory();
+        return reopen();
+    }
+
+    @Override
+    void closeStore() {
+        deleteDirectory();
+    }
+
+    @Test
+    public void testReopenReplaysCommittedWrites() throws IOException {
+        WeatherEntry[] forecasts = WeatherTestData.createForecasts(today - 2 * DAY, 20, 43);
+        store.upsert(forecasts);
+        store.upsert(WeatherTestData.createForecasts(today + 5 * DAY, 1, 44));
+        store.removeBefore(today);
+        store.removeFrom(today + 15 * DAY);
+
+        LogWeatherStore reopened = reopen();
+
+        assertEquals(15, reopened.count());
+        assertEquals(today, reopened.getFirstDate());
+        assertEquals(today + 14 * DAY, reopened.getLastDate());
+        assertSameWeather(store.getWeatherByDate(today + 5 * DAY),
+                reopened.getWeatherByDate(today + 5 * DAY));
+        assertSameWeather(forecasts[10], reopened.getWeatherByDate(forecasts[10].getDate()));
+    }
+
+    @Test
+    public void testUncommittedTailIsDropped() throws IOException {
+        store.upsert(WeatherTestData.createForecasts(today, 7, 43));
+
+        // A write cut short after the seven days and their commit
+        RandomAccessFile segment = new RandomAccessFile(new File(directory, "segment-1.log"), "rw");
+        try {
+            segment.seek(8 * LogWeatherStore.RECORD_BYTES);
+            segment.writeByte(1);
+            segment.writeLong(today + 7 * DAY);
+        } finally {
+            segment.close();
+        }
+
+        LogWeatherStore reopened = reopen();
+        assertEquals(7, reopened.count());
+        assertEquals(today + 6 * DAY, reopened.getLastDate());
+
+        // The torn record is gone for good, not only skipped
+        reopened.upsert(WeatherTestData.createForecasts(today + 20 * DAY, 1, 44));
+        assertEquals(8, reopen().count());
+    }
+
+    @Test
+    public void testCompactionKeepsOnlyLiveDays() throws IOException {
+        LogWeatherStore logStore = (LogWeatherStore) store;
+        WeatherEntry[] latest = null;
+        for (int seed = 0; seed < 20; seed++) {
+            latest = WeatherTestData.createForecasts(today, 7, seed);
+            logStore.upsert(latest);
+        }
+
+        assertTrue(logStore.getCompactionCount() > 0);
+        // 160 records were written, the live ones fit in one segment
+        assertTrue(logStore.getSegmentCount() <= 2);
+        assertFalse(logStore.upsert(latest).hasChanges());
+
+        LogWeatherStore reopened = reopen();
+        assertEquals(7, reopened.count());
+        for (WeatherEntry entry : latest) {
+            assertSameWeather(entry, reopened.getWeatherByDate(entry.getDate()));
+        }
+    }
+
+    @Test
+    public void testWritesDuringCompactionAreKept() throws Exception {
+        final LogWeatherStore logStore = (LogWeatherStore) store;
+        logStore.upsert(WeatherTestData.createForecasts(today, 7, 0));
+        final WeatherEntry[][] latest = new WeatherEntry[1][];
+        Thread writer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                for (int seed = 1; seed < 200; seed++) {
+                    latest[0] = WeatherTestData.createForecasts(today, 7, seed);
+                    logStore.upsert(latest[0]);
+                }
+            }
+        });
+        writer.start();
+        while (writer.isAlive()) {
+            logStore.compact();
+        }
+        writer.join();
+
+        assertEquals(7, logStore.count());
+        LogWeatherStore reopened = reopen();
+        assertEquals(7, reopened.count());
+        for (WeatherEntry entry : latest[0]) {
+            assertSameWeather(entry, logStore.getWeatherByDate(entry.getDate()));
+            assertSameWeather(entry, reopened.getWeatherByDate(entry.getDate()));
+        }
+    }
+
+    @Test
+    public void testFailedCompactionWaitsBeforeRetrying() throws IOException {
+        final AtomicInteger compactions = new AtomicInteger();
+        LogWeatherStore logStore = LogWeatherStore.open(directory, SEGMENT_BYTES, new Executor() {
+            @Override
+            public void execute(Runnable command) {
+                compactions.incrementAndGet();
+                command.run();
+            }
+        });
+        // The first compaction copies into segment 3, which cannot be opened as a file
+        assertTrue(new File(directory, "segment-3.log").mkdir());
+
+        // Every write of the week is seven records and a commit, two fill a segment
+        for (int seed = 0; seed < 3; seed++) {
+            logStore.upsert(WeatherTestData.createForecasts(today, 7, seed));
+        }
+        assertEquals(1, compactions.get());
+        assertEquals(0, logStore.getCompactionCount());
+
+        // Not tried again until the log doubled
+        logStore.upsert(WeatherTestData.createForecasts(today, 7, 3));
+        logStore.upsert(WeatherTestData.createForecasts(today, 7, 4));
+        assertEquals(1, compactions.get());
+
+        WeatherEntry[] latest = WeatherTestData.createForecasts(today, 7, 5);
+        logStore.upsert(latest);
+        assertEquals(2, compactions.get());
+        assertEquals(1, logStore.getCompactionCount());
+
+        assertTrue(new File(directory, "segment-3.log").delete());
+        LogWeatherStore reopened = reopen();
+        assertEquals(7, reopened.count());
+        for (WeatherEntry entry : latest) {
+            assertSameWeather(entry, reopened.getWeatherByDate(entry.getDate()));
+        }
+    }
+
+    @Test
+    public void testReopenWithOtherSegmentSize() throws IOException {
+        WeatherEntry[] forecasts = WeatherTestData.createForecasts(today, 40, 45);
+        store.upsert(forecasts);
+
+        // Smaller segments would cut the old ones short, larger ones read past their end
+        for (int records : new int[]{5, 64}) {
+            LogWeatherStore reopened = LogWeatherStore.open(directory,
+                    records * LogWeatherStore.RECORD_BYTES, DIRECT);
+            assertEquals(40, reopened.count());
+            for (WeatherEntry entry : forecasts) {
+                assertSameWeather(entry, reopened.getWeatherByDate(entry.getDate()));
+            }
+        }
+
+        LogWeatherStore smaller = LogWeatherStore.open(directory,
+                5 * LogWeatherStore.RECORD_BYTES, DIRECT);
+        WeatherEntry added = WeatherTestData.createForecasts(today + 40 * DAY, 1, 46)[0];
+        smaller.upsert(added);
+
+        LogWeatherStore reopened = reopen();
+        assertEquals(41, reopened.count());
+        assertSameWeather(added, reopened.getWeatherByDate(added.getDate()));
+        assertSameWeather(forecasts[39], reopened.getWeatherByDate(forecasts[39].getDate()));
+    }
+
+    private LogWeatherStore reopen() throws IOException {
+        return LogWeatherStore.open(directory, SEGMENT_BYTES, DIRECT);
+    }
+
+    private void deleteDirectory() {
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        directory.delete();
+    }
+}
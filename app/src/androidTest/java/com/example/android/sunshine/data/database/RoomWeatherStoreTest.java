@@ -13,26 +13,28 @@
  * See the License for the specific language governing permissions and
  * limitations under the License.
  */
-
 package com.example.android.sunshine.data.database;
 
-import android.arch.persistence.room.TypeConverter;
+import android.arch.persistence.room.Room;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
 
-import java.util.Date;
+import org.junit.runner.RunWith;
 
-/**
- * {@link TypeConverter} for long to {@link Date}
- * <p>
- * This stores the date as a long in the database, but returns it as a {@link Date}
- */
-class DateConverter {
-    @TypeConverter
-    public static Date toDate(Long timestamp) {
-        return timestamp == null ? null : new Date(timestamp);
+@RunWith(AndroidJUnit4.class)
+public class RoomWeatherStoreTest extends WeatherStoreConformanceTest {
+
+    private SunshineDatabase database;
+
+    @Override
+    WeatherStore createStore() {
+        database = Room.inMemoryDatabaseBuilder(InstrumentationRegistry.getTargetContext(),
+                SunshineDatabase.class).build();
+        return new RoomWeatherStore(database, HistoryRetentionPolicy.DEFAULT);
     }
 
-    @TypeConverter
-    public static Long toTimestamp(Date date) {
-        return date == null ? null : date.getTime();
+    @Override
+    void closeStore() {
+        database.close();
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,140 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.data.database;
+
+import android.arch.persistence.db.SupportSQLiteDatabase;
+import android.arch.persistence.db.framework.FrameworkSQLiteOpenHelperFactory;
+import android.arch.persistence.room.Room;
+import android.arch.persistence.room.testing.MigrationTestHelper;
+import android.database.Cursor;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+
+import com.example.android.sunshine.utilities.SunshineDateUtils;
+import com.example.android.sunshine.utils.WeatherTestData;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.IOException;
+import java.util.List;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertTrue;
+
+/**
+ * Takes a database from the first version to the current one through every migration. The
+ * schemas are the ones Room exports to app/schemas.
+ */
+@RunWith(AndroidJUnit4.class)
+public class SunshineDatabaseMigrationTest {
+
+    private static final String TEST_DB = "migration-test";
+    private static final long DAY = SunshineDateUtils.DAY_IN_MILLIS;
+
+    private final long today = SunshineDateUtils.getNormalizedUtcMsForToday();
+
+    @Rule
+    public final MigrationTestHelper helper = new MigrationTestHelper(
+            InstrumentationRegistry.getInstrumentation(),
+            SunshineDatabase.class.getCanonicalName(),
+            new FrameworkSQLiteOpenHelperFactory());
+
+    @Test
+    public void testMigratesVersion1ToCurrent() throws IOException {
+        WeatherEntry[] forecasts = WeatherTestData.createForecasts(today, 3, 27);
+        SupportSQLiteDatabase database = helper.createDatabase(TEST_DB, 1);
+        for (WeatherEntry forecast : forecasts) {
+            insertVersion1(database, forecast.getDate(), forecast);
+        }
+        // Version 1 allowed a forecast without a date, the rebuilt table drops it
+        insertVersion1(database, null, forecasts[0]);
+        database.close();
+
+        database = helper.runMigrationsAndValidate(TEST_DB, 5, true,
+                SunshineDatabase.MIGRATION_1_2, SunshineDatabase.MIGRATION_2_3,
+                SunshineDatabase.MIGRATION_3_4, SunshineDatabase.MIGRATION_4_5);
+        assertTrue(hasUniqueDateIndex(database));
+        database.close();
+
+        SunshineDatabase migrated = openMigrated();
+
+        List<WeatherEntry> stored = migrated.weatherDao().getWeatherBetween(today, today + 2 * DAY);
+        assertEquals(3, stored.size());
+        assertEquals(3, migrated.weatherDao().countWeather());
+        for (int i = 0; i < forecasts.length; i++) {
+            WeatherStoreConformanceTest.assertSameWeather(forecasts[i], stored.get(i));
+        }
+        assertTrue(migrated.archiveDao().getHistory("", 0, Long.MAX_VALUE).isEmpty());
+    }
+
+    @Test
+    public void testArchiveKeepsItsRowsInVersion5() throws IOException {
+        SupportSQLiteDatabase database = helper.createDatabase(TEST_DB, 4);
+        database.execSQL("INSERT INTO weather_history (epochDay, weatherIconId, min, max, "
+                + "humidity) VALUES (17602, 800, 1, 5, 50), (17603, 500, 2, 6, 70)");
+        database.execSQL("INSERT INTO weather_rollup (period, periodStart, dayCount, minTemp, "
+                + "maxTemp, sumMeanTemp, sumHumidity) VALUES (0, 17598, 2, 1, 6, 7, 120)");
+        database.close();
+
+        helper.runMigrationsAndValidate(TEST_DB, 5, true, SunshineDatabase.MIGRATION_4_5)
+                .close();
+
+        // The location of the rows archived so far is not known
+        SunshineDatabase migrated = openMigrated();
+        ArchiveDao dao = migrated.archiveDao();
+        List<WeatherHistoryEntry> history = dao.getHistory("", 0, Long.MAX_VALUE);
+        assertEquals(2, history.size());
+        assertEquals(70, history.get(1).getHumidity(), 0.0);
+        WeatherRollup rollup = dao.getRollup("", WeatherRollup.PERIOD_WEEK, 17598);
+        assertEquals(2, rollup.getDayCount());
+        assertEquals(120, rollup.getSumHumidity(), 0.0);
+    }
+
+    private SunshineDatabase openMigrated() {
+        SunshineDatabase migrated = Room.databaseBuilder(
+                InstrumentationRegistry.getTargetContext(), SunshineDatabase.class, TEST_DB)
+                .addMigrations(SunshineDatabase.MIGRATION_1_2, SunshineDatabase.MIGRATION_2_3,
+                        SunshineDatabase.MIGRATION_3_4, SunshineDatabase.MIGRATION_4_5)
+                .build();
+        helper.closeWhenFinished(migrated);
+        return migrated;
+    }
+
+    private static void insertVersion1(SupportSQLiteDatabase database, Long date,
+                                       WeatherEntry forecast) {
+        database.execSQL("INSERT INTO weather (weatherIconId, date, min, max, humidity, "
+                        + "pressure, wind, degrees) VALUES (?, ?, ?, ?, ?, ?, ?, ?)",
+                new Object[]{forecast.getWeatherIconId(), date, forecast.getMin(),
+                        forecast.getMax(), forecast.getHumidity(), forecast.getPressure(),
+                        forecast.getWind(), forecast.getDegrees()});
+    }
+
+    private static boolean hasUniqueDateIndex(SupportSQLiteDatabase database) {
+        Cursor cursor = database.query("PRAGMA index_list(`weather`)");
+        try {
+            while (cursor.moveToNext()) {
+                String name = cursor.getString(cursor.getColumnIndex("name"));
+                boolean unique = cursor.getInt(cursor.getColumnIndex("unique")) == 1;
+                if (name.equals("index_weather_date") && unique) return true;
+            }
+            return false;
+        } finally {
+            cursor.close();
+        }
+    }
+}
@@ -0,0 +1,98 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.data.database;
+
+import android.arch.persistence.room.Room;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+
+import com.example.android.sunshine.utilities.SunshineDateUtils;
+import com.example.android.sunshine.utils.WeatherTestData;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertNull;
+
+@RunWith(AndroidJUnit4.class)
+public class SyncMetadataDaoTest {
+
+    private static final long DAY = SunshineDateUtils.DAY_IN_MILLIS;
+
+    private final long today = SunshineDateUtils.getNormalizedUtcMsForToday();
+
+    private SunshineDatabase database;
+    private SyncMetadataDao dao;
+    private RoomWeatherStore store;
+
+    @Before
+    public void before() {
+        database = Room.inMemoryDatabaseBuilder(InstrumentationRegistry.getTargetContext(),
+                SunshineDatabase.class).build();
+        dao = database.syncMetadataDao();
+        store = new RoomWeatherStore(database, HistoryRetentionPolicy.DEFAULT);
+    }
+
+    @After
+    public void after() {
+        database.close();
+    }
+
+    @Test
+    public void testRecordsStoredRange() {
+        store.upsert(WeatherTestData.createForecasts(today, 14, 43));
+        dao.recordSync("Mountain View", 1000, store, "\"v1\"", null);
+
+        SyncMetadata syncMetadata = dao.getSyncMetadata("Mountain View");
+        assertEquals(1000, syncMetadata.getLastSyncMillis());
+        assertEquals(14, syncMetadata.getRowCount());
+        assertEquals(today, syncMetadata.getFirstDate());
+        assertEquals(today + 13 * DAY, syncMetadata.getLastDate());
+        assertEquals("\"v1\"", syncMetadata.getEtag());
+        assertNull(syncMetadata.getLastModified());
+    }
+
+    @Test
+    public void testKeepsOnlyStoredLocation() {
+        store.upsert(WeatherTestData.createForecasts(today, 14, 43));
+        dao.recordSync("Mountain View", 1000, store, null, null);
+        dao.recordSync("London", 2000, store, null, null);
+
+        assertNull(dao.getSyncMetadata("Mountain View"));
+        assertEquals(2000, dao.getSyncMetadata("London").getLastSyncMillis());
+    }
+
+    @Test
+    public void testDaysFromMatchesCount() {
+        store.upsert(WeatherTestData.createForecasts(today, 14, 43));
+        dao.recordSync("Mountain View", 1000, store, null, null);
+        SyncMetadata syncMetadata = dao.getSyncMetadata("Mountain View");
+
+        for (long date = today - DAY; date <= today + 15 * DAY; date += DAY) {
+            assertEquals(store.getListWeatherFrom(date).size(),
+                    syncMetadata.getDaysFrom(date));
+        }
+    }
+
+    @Test
+    public void testEmptyWeatherCoversNothing() {
+        dao.recordSync("Mountain View", 1000, store, null, null);
+        assertEquals(0, dao.getSyncMetadata("Mountain View").getDaysFrom(today));
+    }
+}
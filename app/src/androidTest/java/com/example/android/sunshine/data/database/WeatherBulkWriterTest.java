@@ -0,0 +1,132 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.data.database;
+
+import android.arch.persistence.room.Room;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+
+import com.example.android.sunshine.utilities.SunshineDateUtils;
+import com.example.android.sunshine.utils.WeatherTestData;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.Arrays;
+
+import static com.example.android.sunshine.data.database.WeatherStoreConformanceTest.assertSameWeather;
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertTrue;
+
+@RunWith(AndroidJUnit4.class)
+public class WeatherBulkWriterTest {
+
+    private static final long DAY = SunshineDateUtils.DAY_IN_MILLIS;
+
+    /* Columns in the order of the writer's change mask */
+    private static final int COLUMNS = 7;
+
+    private final long today = SunshineDateUtils.getNormalizedUtcMsForToday();
+
+    private SunshineDatabase database;
+    private WeatherBulkWriter writer;
+
+    @Before
+    public void before() {
+        database = Room.inMemoryDatabaseBuilder(InstrumentationRegistry.getTargetContext(),
+                SunshineDatabase.class).build();
+        writer = new WeatherBulkWriter(database);
+    }
+
+    @After
+    public void after() {
+        database.close();
+    }
+
+    @Test
+    public void testUpdatesEachColumnOnItsOwn() {
+        WeatherEntry[] stored = WeatherTestData.createForecasts(today, 3, 28);
+        writer.upsert(stored);
+
+        for (int column = 0; column < COLUMNS; column++) {
+            WeatherEntry before = database.weatherDao().getWeatherByDateNow(today + DAY);
+            WeatherEntry changed = withColumnChanged(before, column);
+
+            UpsertResult result = writer.upsert(changed);
+
+            assertEquals("Column " + column, 1, result.getUpdated());
+            assertEquals(0, result.getInserted());
+            assertTrue(Arrays.equals(new long[]{today + DAY}, result.getTouchedDates()));
+            WeatherEntry after = database.weatherDao().getWeatherByDateNow(today + DAY);
+            assertSameWeather(changed, after);
+            // An UPDATE keeps the row, a replace would have given it a new id
+            assertEquals(before.getId(), after.getId());
+        }
+        assertSameWeather(stored[0], database.weatherDao().getWeatherByDateNow(today));
+        assertSameWeather(stored[2], database.weatherDao().getWeatherByDateNow(today + 2 * DAY));
+    }
+
+    @Test
+    public void testCountsInsertedUpdatedAndUnchanged() {
+        WeatherEntry[] stored = WeatherTestData.createForecasts(today, 3, 28);
+        assertEquals(3, writer.upsert(stored).getInserted());
+
+        WeatherEntry changed = withColumnChanged(stored[1], 3);
+        WeatherEntry added = WeatherTestData.createForecasts(today + 3 * DAY, 1, 29)[0];
+        UpsertResult result = writer.upsert(stored[0], changed, stored[2], added);
+
+        assertEquals(1, result.getInserted());
+        assertEquals(1, result.getUpdated());
+        assertEquals(2, result.getUnchanged());
+        assertTrue(Arrays.equals(new long[]{today + DAY, today + 3 * DAY},
+                result.getTouchedDates()));
+        assertEquals(4, database.weatherDao().countWeather());
+        assertSameWeather(added, database.weatherDao().getWeatherByDateNow(today + 3 * DAY));
+
+        assertFalse(writer.upsert(stored[0], changed, stored[2], added).hasChanges());
+    }
+
+    @Test
+    public void testLastOfTheSameDateWins() {
+        WeatherEntry first = WeatherTestData.createForecasts(today, 1, 28)[0];
+        WeatherEntry last = withColumnChanged(first, 1);
+
+        UpsertResult result = writer.upsert(first, last);
+
+        assertEquals(1, result.getInserted());
+        assertEquals(1, database.weatherDao().countWeather());
+        assertSameWeather(last, database.weatherDao().getWeatherByDateNow(today));
+    }
+
+    /**
+     * @param column Index of the column to change, in the order of the writer's change mask
+     */
+    private static WeatherEntry withColumnChanged(WeatherEntry entry, int column) {
+        double[] values = {entry.getMin(), entry.getMax(), entry.getHumidity(),
+                entry.getPressure(), entry.getWind(), entry.getDegrees()};
+        int iconId = entry.getWeatherIconId();
+        if (column == 0) {
+            iconId++;
+        } else {
+            values[column - 1] += 1.5;
+        }
+        return new WeatherEntry(iconId, entry.getDate(), values[0], values[1], values[2],
+                values[3], values[4], values[5]);
+    }
+}
@@ -0,0 +1,235 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.data.database;
+
+import com.example.android.sunshine.utilities.SunshineDateUtils;
+import com.example.android.sunshine.utils.WeatherTestData;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.List;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertNull;
+import static junit.framework.Assert.assertTrue;
+import static junit.framework.Assert.fail;
+
+/**
+ * What every {@link WeatherStore} has to do, run against each backend by a subclass
+ */
+public abstract class WeatherStoreConformanceTest {
+
+    static final long DAY = SunshineDateUtils.DAY_IN_MILLIS;
+
+    final long today = SunshineDateUtils.getNormalizedUtcMsForToday();
+
+    WeatherStore store;
+
+    /**
+     * @return An empty store of the backend under test
+     */
+    abstract WeatherStore createStore() throws Exception;
+
+    /**
+     * Releases what {@link #createStore()} opened
+     */
+    abstract void closeStore() throws Exception;
+
+    @Before
+    public void before() throws Exception {
+        store = createStore();
+    }
+
+    @After
+    public void after() throws Exception {
+        closeStore();
+    }
+
+    @Test
+    public void testUpsertInsertsUpdatesAndSkipsUnchanged() {
+        WeatherEntry[] first = WeatherTestData.createForecasts(today, 14, 43);
+        UpsertResult inserted = store.upsert(first);
+        assertEquals(14, inserted.getInserted());
+        assertEquals(14, inserted.getTouchedDates().length);
+
+        WeatherEntry[] second = WeatherTestData.createForecasts(today, 14, 43);
+        second[3] = WeatherTestData.createForecasts(today + 3 * DAY, 1, 44)[0];
+        UpsertResult updated = store.upsert(second);
+        assertEquals(0, updated.getInserted());
+        assertEquals(1, updated.getUpdated());
+        assertEquals(13, updated.getUnchanged());
+        assertEquals(today + 3 * DAY, updated.getTouchedDates()[0]);
+        assertSameWeather(second[3], store.getWeatherByDate(today + 3 * DAY));
+
+        assertFalse(store.upsert(second).hasChanges());
+        assertEquals(UpsertResult.EMPTY.getInserted(), store.upsert().getInserted());
+    }
+
+    @Test
+    public void testLastOfSameDateWins() {
+        WeatherEntry first = WeatherTestData.createForecasts(today, 1, 43)[0];
+        WeatherEntry last = WeatherTestData.createForecasts(today, 1, 44)[0];
+
+        UpsertResult result = store.upsert(first, last);
+
+        assertEquals(1, result.getInserted());
+        assertEquals(1, store.count());
+        assertSameWeather(last, store.getWeatherByDate(today));
+    }
+
+    @Test
+    public void testReadsRangesInDateOrder() {
+        WeatherEntry[] forecasts = WeatherTestData.createForecasts(today, 14, 43);
+        WeatherEntry[] reversed = new WeatherEntry[forecasts.length];
+        for (int i = 0; i < forecasts.length; i++) {
+            reversed[forecasts.length - 1 - i] = forecasts[i];
+        }
+        store.upsert(reversed);
+
+        List<WeatherEntry> range = store.getWeatherBetween(today + 2 * DAY, today + 5 * DAY);
+        assertEquals(4, range.size());
+        for (int i = 0; i < range.size(); i++) {
+            assertSameWeather(forecasts[i + 2], range.get(i));
+        }
+        assertTrue(store.getWeatherBetween(today + 20 * DAY, today + 30 * DAY).isEmpty());
+
+        List<ListWeatherEntry> rows = store.getListWeatherFrom(today + 10 * DAY);
+        assertEquals(4, rows.size());
+        for (int i = 0; i < rows.size(); i++) {
+            WeatherEntry expected = forecasts[i + 10];
+            assertEquals(expected.getDate(), rows.get(i).getDate());
+            assertEquals(expected.getWeatherIconId(), rows.get(i).getWeatherIconId());
+            assertEquals(expected.getMin(), rows.get(i).getMin());
+            assertEquals(expected.getMax(), rows.get(i).getMax());
+        }
+        assertNull(store.getWeatherByDate(today - DAY));
+    }
+
+    @Test
+    public void testRemoveBefore() {
+        store.upsert(WeatherTestData.createForecasts(today - 3 * DAY, 10, 43));
+
+        assertEquals(3, store.removeBefore(today));
+        assertEquals(0, store.removeBefore(today));
+
+        assertEquals(7, store.count());
+        assertEquals(today, store.getFirstDate());
+        assertNull(store.getWeatherByDate(today - DAY));
+        assertEquals(7, store.getListWeatherFrom(today - 3 * DAY).size());
+    }
+
+    @Test
+    public void testRemoveFrom() {
+        store.upsert(WeatherTestData.createForecasts(today - 3 * DAY, 10, 43));
+
+        assertEquals(5, store.removeFrom(today + 2 * DAY));
+        assertEquals(0, store.removeFrom(today + 2 * DAY));
+
+        assertEquals(5, store.count());
+        assertEquals(today - 3 * DAY, store.getFirstDate());
+        assertEquals(today + DAY, store.getLastDate());
+        assertNull(store.getWeatherByDate(today + 2 * DAY));
+        assertEquals(2, store.getListWeatherFrom(today).size());
+    }
+
+    @Test
+    public void testCountAndBounds() {
+        assertEquals(0, store.count());
+        assertEquals(0, store.getFirstDate());
+        assertEquals(0, store.getLastDate());
+
+        store.upsert(WeatherTestData.createForecasts(today, 14, 43));
+
+        assertEquals(14, store.count());
+        assertEquals(today, store.getFirstDate());
+        assertEquals(today + 13 * DAY, store.getLastDate());
+    }
+
+    @Test
+    public void testFailedTransactionIsRolledBack() {
+        final WeatherEntry[] kept = WeatherTestData.createForecasts(today, 7, 43);
+        store.upsert(kept);
+
+        try {
+            store.runInTransaction(new Runnable() {
+                @Override
+                public void run() {
+                    store.upsert(WeatherTestData.createForecasts(today, 14, 44));
+                    store.removeBefore(today + 2 * DAY);
+                    throw new IllegalStateException("Write failed");
+                }
+            });
+            fail("The failure was swallowed");
+        } catch (IllegalStateException expected) {
+        }
+
+        assertEquals(7, store.count());
+        for (WeatherEntry entry : kept) {
+            assertSameWeather(entry, store.getWeatherByDate(entry.getDate()));
+        }
+        assertFalse(store.upsert(kept).hasChanges());
+    }
+
+    @Test
+    public void testNestedTransactionsCommitTogether() {
+        store.runInTransaction(new Runnable() {
+            @Override
+            public void run() {
+                store.upsert(WeatherTestData.createForecasts(today, 7, 43));
+                store.runInTransaction(new Runnable() {
+                    @Override
+                    public void run() {
+                        store.upsert(WeatherTestData.createForecasts(today + 7 * DAY, 7, 44));
+                    }
+                });
+                assertEquals(14, store.count());
+            }
+        });
+        assertEquals(14, store.count());
+
+        try {
+            store.runInTransaction(new Runnable() {
+                @Override
+                public void run() {
+                    store.runInTransaction(new Runnable() {
+                        @Override
+                        public void run() {
+                            store.removeBefore(today + 7 * DAY);
+                        }
+                    });
+                    throw new IllegalStateException("Outer write failed");
+                }
+            });
+            fail("The failure was swallowed");
+        } catch (IllegalStateException expected) {
+        }
+        assertEquals(14, store.count());
+    }
+
+    static void assertSameWeather(WeatherEntry expected, WeatherEntry actual) {
+        assertEquals(expected.getDate(), actual.getDate());
+        assertEquals(expected.getWeatherIconId(), actual.getWeatherIconId());
+        assertEquals(expected.getMin(), actual.getMin());
+        assertEquals(expected.getMax(), actual.getMax());
+        assertEquals(expected.getHumidity(), actual.getHumidity());
+        assertEquals(expected.getPressure(), actual.getPressure());
+        assertEquals(expected.getWind(), actual.getWind());
+        assertEquals(expected.getDegrees(), actual.getDegrees());
+    }
+}
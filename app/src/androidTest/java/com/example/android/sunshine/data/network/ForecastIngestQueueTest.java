@@ -0,0 +1,189 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.data.network;
+
+import android.support.test.runner.AndroidJUnit4;
+
+import com.example.android.sunshine.data.database.WeatherEntry;
+import com.example.android.sunshine.data.network.sync.SyncJob;
+import com.example.android.sunshine.data.network.sync.SyncTracer;
+import com.example.android.sunshine.utils.WeatherTestData;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertSame;
+import static junit.framework.Assert.assertTrue;
+
+@RunWith(AndroidJUnit4.class)
+public class ForecastIngestQueueTest {
+
+    private final WeatherEntry[] first = WeatherTestData.createForecasts(3, 39);
+    private final WeatherEntry[] second = WeatherTestData.createForecasts(3, 40);
+
+    /* Holds the queue's drains until the test runs them */
+    private final List<Runnable> scheduled = new ArrayList<>();
+    private final Executor executor = new Executor() {
+        @Override
+        public void execute(Runnable command) {
+            synchronized (scheduled) {
+                scheduled.add(command);
+            }
+        }
+    };
+
+    private final List<List<ForecastIngestQueue.Batch>> writes = new ArrayList<>();
+    private final ForecastIngestQueue.Writer writer = new ForecastIngestQueue.Writer() {
+        @Override
+        public void write(List<ForecastIngestQueue.Batch> batches) {
+            writes.add(batches);
+        }
+    };
+
+    @Before
+    public void before() {
+        scheduled.clear();
+        writes.clear();
+    }
+
+    @Test
+    public void testKeepsLatestPerLocation() {
+        ForecastIngestQueue queue = new ForecastIngestQueue(executor, 4, 0);
+        queue.setWriter(writer);
+
+        queue.offer("Mountain View", first, null);
+        queue.offer("Mountain View", second, null);
+        queue.offer("London", first, null);
+        runScheduled();
+
+        assertEquals(1, writes.size());
+        List<ForecastIngestQueue.Batch> batches = writes.get(0);
+        assertEquals(2, batches.size());
+        assertEquals("Mountain View", batches.get(0).getLocationKey());
+        assertSame(second, batches.get(0).getForecasts());
+        assertEquals("London", batches.get(1).getLocationKey());
+
+        assertEquals(3, queue.getOfferedCount());
+        assertEquals(1, queue.getConflatedCount());
+        assertEquals(0, queue.getDroppedCount());
+        assertEquals(2, queue.getWrittenBatchCount());
+        assertEquals(1, queue.getWriteCount());
+        assertEquals(0, queue.getPendingCount());
+    }
+
+    @Test
+    public void testWaitsForWriter() {
+        ForecastIngestQueue queue = new ForecastIngestQueue(executor, 4, 0);
+        queue.offer("Mountain View", first, null);
+        runScheduled();
+        assertTrue(writes.isEmpty());
+
+        queue.setWriter(writer);
+        runScheduled();
+        assertEquals(1, writes.size());
+    }
+
+    @Test
+    public void testDropsOldestWhenFull() {
+        ForecastIngestQueue queue = new ForecastIngestQueue(executor, 2, 0);
+        queue.setWriter(writer);
+
+        queue.offer("Mountain View", first, null);
+        queue.offer("London", first, null);
+        queue.offer("Tokyo", second, null);
+        runScheduled();
+
+        List<ForecastIngestQueue.Batch> batches = writes.get(0);
+        assertEquals(2, batches.size());
+        assertEquals("London", batches.get(0).getLocationKey());
+        assertEquals("Tokyo", batches.get(1).getLocationKey());
+        assertEquals(1, queue.getDroppedCount());
+    }
+
+    @Test
+    public void testFullQueueBlocksUntilDrained() throws Exception {
+        final ForecastIngestQueue queue =
+                new ForecastIngestQueue(executor, 1, TimeUnit.SECONDS.toMillis(10));
+        queue.setWriter(writer);
+        queue.offer("Mountain View", first, null);
+
+        Thread producer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                queue.offer("London", second, null);
+            }
+        });
+        producer.start();
+        producer.join(200);
+        assertTrue("The offer did not wait for room", producer.isAlive());
+
+        runScheduled();
+        producer.join(TimeUnit.SECONDS.toMillis(5));
+        assertFalse(producer.isAlive());
+        runScheduled();
+
+        assertEquals(0, queue.getDroppedCount());
+        assertEquals(2, queue.getWriteCount());
+        assertEquals("London", writes.get(1).get(0).getLocationKey());
+    }
+
+    @Test
+    public void testSkipsCancelledAndFinishesJobsOnceStored() {
+        ForecastIngestQueue queue = new ForecastIngestQueue(executor, 4, 0);
+        queue.setWriter(writer);
+        SyncJob cancelled = newJob();
+        SyncJob stored = newJob();
+
+        queue.offer("Mountain View", first, cancelled);
+        queue.offer("London", second, stored);
+        cancelled.cancel();
+        cancelled.complete();
+        stored.complete();
+        assertFalse("The cancelled job ends when its batch is discarded", cancelled.isFinished());
+        assertFalse("The job waits for its forecasts to be stored", stored.isFinished());
+
+        runScheduled();
+
+        assertEquals(1, writes.get(0).size());
+        assertEquals("London", writes.get(0).get(0).getLocationKey());
+        assertEquals(1, queue.getCancelledCount());
+        assertTrue(cancelled.isFinished());
+        assertTrue(stored.isFinished());
+    }
+
+    private static SyncJob newJob() {
+        return new SyncJob(SyncTracer.getInstance().beginSync());
+    }
+
+    private void runScheduled() {
+        List<Runnable> drains;
+        synchronized (scheduled) {
+            drains = new ArrayList<>(scheduled);
+            scheduled.clear();
+        }
+        for (Runnable drain : drains) {
+            drain.run();
+        }
+    }
+}
@@ -0,0 +1,181 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.data.network;
+
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+
+import com.example.android.sunshine.utils.FakeClock;
+import com.example.android.sunshine.utils.LocalWeatherServer;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.File;
+import java.net.URL;
+import java.util.Collections;
+import java.util.Map;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertNotNull;
+import static junit.framework.Assert.assertNull;
+import static junit.framework.Assert.assertTrue;
+
+@RunWith(AndroidJUnit4.class)
+public class ForecastResponseCacheTest {
+
+    private static final String FORECAST = "{\"city\":{\"name\":\"Mountain View\"},\"list\":[]}";
+    private static final long NOW = 1500000000000L;
+
+    private final FakeClock clock = new FakeClock(NOW);
+    private File directory;
+    private LocalWeatherServer server;
+    private ForecastResponseCache cache;
+
+    @Before
+    public void before() throws Exception {
+        directory = new File(InstrumentationRegistry.getTargetContext().getCacheDir(),
+                "forecast-responses-test");
+        deleteDirectory();
+        server = new LocalWeatherServer();
+        cache = new ForecastResponseCache(directory, 64 * 1024, clock);
+        NetworkUtils.setResponseCache(cache);
+    }
+
+    @After
+    public void after() throws Exception {
+        NetworkUtils.setResponseCache(null);
+        server.shutdown();
+        deleteDirectory();
+    }
+
+    @Test
+    public void testFreshResponseIsServedFromCache() throws Exception {
+        server.setResponse(FORECAST, null, header("Cache-Control", "max-age=600"));
+        URL url = server.url("/weather?q=94043&cnt=14");
+
+        assertEquals(FORECAST, NetworkUtils.getResponseFromHttpUrl(url));
+        assertEquals(FORECAST, NetworkUtils.getResponseFromHttpUrl(url));
+        assertEquals(1, server.getRequestCount());
+
+        /* A new process reads the same entry back from disk */
+        NetworkUtils.setResponseCache(new ForecastResponseCache(directory, 64 * 1024, clock));
+        assertEquals(FORECAST, NetworkUtils.getResponseFromHttpUrl(url));
+        assertEquals(1, server.getRequestCount());
+
+        clock.advance(600 * 1000);
+        NetworkUtils.getResponseFromHttpUrl(url);
+        assertEquals(2, server.getRequestCount());
+    }
+
+    @Test
+    public void testStaleResponseIsRevalidated() throws Exception {
+        server.setResponse(FORECAST, "\"v1\"", header("Cache-Control", "max-age=60"));
+        URL url = server.url("/weather?q=94043");
+
+        NetworkUtils.getResponseFromHttpUrl(url);
+        clock.advance(61 * 1000);
+
+        assertEquals(FORECAST, NetworkUtils.getResponseFromHttpUrl(url));
+        assertEquals(2, server.getRequestCount());
+        assertEquals(1, server.getNotModifiedCount());
+
+        /* The 304 made the entry fresh again */
+        NetworkUtils.getResponseFromHttpUrl(url);
+        assertEquals(2, server.getRequestCount());
+    }
+
+    @Test
+    public void testNoStoreIsNotCached() throws Exception {
+        server.setResponse(FORECAST, null, header("Cache-Control", "no-store"));
+        URL url = server.url("/weather");
+
+        NetworkUtils.getResponseFromHttpUrl(url);
+        NetworkUtils.getResponseFromHttpUrl(url);
+
+        assertEquals(2, server.getRequestCount());
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void testEquivalentUrlsShareAnEntry() throws Exception {
+        assertEquals(
+                ForecastResponseCache.normalize(new URL("HTTP://Example.com:80/weather?q=a&cnt=14")),
+                ForecastResponseCache.normalize(new URL("http://example.com/weather?cnt=14&q=a#top")));
+    }
+
+    @Test
+    public void testExpiry() {
+        assertEquals(NOW + 60000, ForecastResponseCache.computeExpiry("public, max-age=60", 0, NOW));
+        assertEquals(NOW + 60000,
+                ForecastResponseCache.computeExpiry("max-age=60", NOW + 999999, NOW));
+        assertEquals(NOW + 5000, ForecastResponseCache.computeExpiry(null, NOW + 5000, NOW));
+        assertEquals(NOW, ForecastResponseCache.computeExpiry("max-age=60, no-cache", 0, NOW));
+        assertEquals(NOW, ForecastResponseCache.computeExpiry(null, 0, NOW));
+        assertEquals(-1, ForecastResponseCache.computeExpiry("no-store", NOW + 5000, NOW));
+    }
+
+    @Test
+    public void testLeastRecentlyUsedEntriesAreEvicted() throws Exception {
+        StringBuilder body = new StringBuilder();
+        while (body.length() < 1000) body.append("0123456789");
+        ForecastResponseCache small = new ForecastResponseCache(directory, 2500, clock);
+
+        URL first = new URL("http://example.com/weather?q=1");
+        URL second = new URL("http://example.com/weather?q=2");
+        URL third = new URL("http://example.com/weather?q=3");
+        small.put(first, body.toString(), "max-age=60", 0, null, null);
+        small.put(second, body.toString(), "max-age=60", 0, null, null);
+        assertNotNull(small.get(first));
+
+        small.put(third, body.toString(), "max-age=60", 0, null, null);
+
+        assertNotNull(small.get(first));
+        assertNull(small.get(second));
+        assertNotNull(small.get(third));
+        assertEquals(true, small.size() <= small.getMaxBytes());
+    }
+
+    @Test
+    public void testDirectoryIsReadOnFirstUse() throws Exception {
+        // Creating the cache of the test did not touch the disk
+        assertFalse(directory.exists());
+
+        URL url = new URL("http://example.com/weather?q=1");
+        assertNull(cache.get(url));
+        assertTrue(directory.isDirectory());
+        cache.put(url, FORECAST, "max-age=60", 0, null, null);
+
+        ForecastResponseCache reopened = new ForecastResponseCache(directory, 64 * 1024, clock);
+        assertEquals(cache.size(), reopened.size());
+        assertNotNull(reopened.get(url));
+    }
+
+    private static Map<String, String> header(String name, String value) {
+        return Collections.singletonMap(name, value);
+    }
+
+    private void deleteDirectory() {
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) file.delete();
+        }
+        directory.delete();
+    }
+}
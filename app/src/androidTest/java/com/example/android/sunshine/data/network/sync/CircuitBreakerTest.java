@@ -0,0 +1,131 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.data.network.sync;
+
+import android.support.test.runner.AndroidJUnit4;
+
+import com.example.android.sunshine.utils.FakeClock;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.Random;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertTrue;
+
+@RunWith(AndroidJUnit4.class)
+public class CircuitBreakerTest {
+
+    private static final int THRESHOLD = 3;
+    private static final long OPEN_MILLIS = 60000;
+
+    private final FakeClock clock = new FakeClock(1000);
+    private final CircuitBreaker breaker = new CircuitBreaker(clock, THRESHOLD, OPEN_MILLIS);
+
+    @Test
+    public void testOpensAfterConsecutiveFailures() {
+        for (int i = 0; i < THRESHOLD - 1; i++) {
+            assertTrue(breaker.allowRequest());
+            breaker.onFailure();
+        }
+        assertEquals(CircuitBreaker.STATE_CLOSED, breaker.getState());
+
+        assertTrue(breaker.allowRequest());
+        breaker.onFailure();
+        assertEquals(CircuitBreaker.STATE_OPEN, breaker.getState());
+        assertFalse(breaker.allowRequest());
+        assertEquals(OPEN_MILLIS, breaker.getRemainingOpenMillis());
+    }
+
+    @Test
+    public void testSuccessResetsFailureCount() {
+        breaker.onFailure();
+        breaker.onFailure();
+        breaker.onSuccess();
+        breaker.onFailure();
+
+        assertEquals(1, breaker.getConsecutiveFailures());
+        assertEquals(CircuitBreaker.STATE_CLOSED, breaker.getState());
+    }
+
+    @Test
+    public void testHalfOpenAllowsOneTrial() {
+        open();
+        clock.advance(OPEN_MILLIS);
+        assertEquals(CircuitBreaker.STATE_HALF_OPEN, breaker.getState());
+
+        assertTrue(breaker.allowRequest());
+        assertFalse("Only one trial request at a time", breaker.allowRequest());
+
+        breaker.onSuccess();
+        assertEquals(CircuitBreaker.STATE_CLOSED, breaker.getState());
+        assertTrue(breaker.allowRequest());
+    }
+
+    @Test
+    public void testFailedTrialOpensAgain() {
+        open();
+        clock.advance(OPEN_MILLIS);
+        assertTrue(breaker.allowRequest());
+
+        breaker.onFailure();
+        assertEquals(CircuitBreaker.STATE_OPEN, breaker.getState());
+        clock.advance(OPEN_MILLIS - 1);
+        assertFalse(breaker.allowRequest());
+        clock.advance(1);
+        assertTrue(breaker.allowRequest());
+    }
+
+    @Test
+    public void testCancelledTrialFreesSlot() {
+        open();
+        clock.advance(OPEN_MILLIS);
+        assertTrue(breaker.allowRequest());
+
+        breaker.onCancelled();
+        assertEquals(CircuitBreaker.STATE_HALF_OPEN, breaker.getState());
+        assertEquals(THRESHOLD, breaker.getConsecutiveFailures());
+        assertTrue("Another trial may run", breaker.allowRequest());
+    }
+
+    @Test
+    public void testBackoffDelaysAreCappedAndJittered() {
+        BackoffPolicy backoff = new BackoffPolicy(1000, 8000, 10, new Random(31));
+
+        assertEquals(1000, backoff.getDelayCapMillis(0));
+        assertEquals(4000, backoff.getDelayCapMillis(2));
+        assertEquals(8000, backoff.getDelayCapMillis(3));
+        assertEquals(8000, backoff.getDelayCapMillis(64));
+
+        boolean jittered = false;
+        long first = backoff.getDelayMillis(5);
+        for (int i = 0; i < 100; i++) {
+            long delay = backoff.getDelayMillis(5);
+            assertTrue(delay >= 0 && delay <= 8000);
+            if (delay != first) jittered = true;
+        }
+        assertTrue(jittered);
+    }
+
+    private void open() {
+        for (int i = 0; i < THRESHOLD; i++) {
+            breaker.allowRequest();
+            breaker.onFailure();
+        }
+    }
+}
@@ -0,0 +1,68 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.data.network.sync;
+
+import android.support.test.runner.AndroidJUnit4;
+
+import com.example.android.sunshine.data.network.HttpStatusException;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.IOException;
+import java.net.ConnectException;
+import java.net.MalformedURLException;
+import java.net.SocketTimeoutException;
+import java.net.URL;
+import java.net.UnknownHostException;
+
+import javax.net.ssl.SSLHandshakeException;
+
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertTrue;
+
+@RunWith(AndroidJUnit4.class)
+public class SunshineSyncTaskTest {
+
+    @Test
+    public void testRetriesOnlyTransientErrors() throws MalformedURLException {
+        assertTrue(SunshineSyncTask.isTransient(new SocketTimeoutException()));
+        assertTrue(SunshineSyncTask.isTransient(new ConnectException()));
+        assertTrue(SunshineSyncTask.isTransient(new UnknownHostException()));
+        assertTrue(SunshineSyncTask.isTransient(status(500)));
+        assertTrue(SunshineSyncTask.isTransient(status(503)));
+        assertTrue(SunshineSyncTask.isTransient(status(429)));
+
+        assertFalse(SunshineSyncTask.isTransient(status(404)));
+        assertFalse(SunshineSyncTask.isTransient(status(401)));
+        assertFalse(SunshineSyncTask.isTransient(new SSLHandshakeException("Bad certificate")));
+        assertFalse(SunshineSyncTask.isTransient(new IOException()));
+    }
+
+    @Test
+    public void testClientErrorsSpareTheBreaker() throws MalformedURLException {
+        assertTrue(SunshineSyncTask.isClientError(status(404)));
+        assertTrue(SunshineSyncTask.isClientError(status(400)));
+
+        assertFalse(SunshineSyncTask.isClientError(status(429)));
+        assertFalse(SunshineSyncTask.isClientError(status(502)));
+        assertFalse(SunshineSyncTask.isClientError(new SocketTimeoutException()));
+    }
+
+    private static HttpStatusException status(int responseCode) throws MalformedURLException {
+        return new HttpStatusException(new URL("http://localhost/forecast"), responseCode);
+    }
+}
@@ -0,0 +1,124 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.data.network.sync;
+
+import android.support.test.runner.AndroidJUnit4;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertTrue;
+import static junit.framework.Assert.fail;
+
+@RunWith(AndroidJUnit4.class)
+public class SyncJobTest {
+
+    private final SyncJob job = new SyncJob(new SyncTracer(16).beginSync());
+
+    @Test
+    public void testFinishesWhenLastPartCompletes() {
+        final AtomicInteger finished = new AtomicInteger();
+        job.setCallback(new SyncJob.Callback() {
+            @Override
+            public void onSyncJobFinished(SyncJob finishedJob) {
+                finished.incrementAndGet();
+            }
+        });
+
+        job.fork();
+        job.complete();
+        assertFalse(job.isFinished());
+        assertEquals(0, finished.get());
+
+        job.complete();
+        assertTrue(job.isFinished());
+        assertEquals(1, finished.get());
+    }
+
+    @Test
+    public void testCallbackSetAfterFinishRunsRightAway() {
+        job.complete();
+        final AtomicInteger finished = new AtomicInteger();
+        job.setCallback(new SyncJob.Callback() {
+            @Override
+            public void onSyncJobFinished(SyncJob finishedJob) {
+                finished.incrementAndGet();
+            }
+        });
+        assertEquals(1, finished.get());
+    }
+
+    @Test
+    public void testCancelRunsCancelAction() {
+        final AtomicInteger interrupted = new AtomicInteger();
+        job.setCancelAction(new Runnable() {
+            @Override
+            public void run() {
+                interrupted.incrementAndGet();
+            }
+        });
+
+        job.cancel();
+        job.cancel();
+        assertEquals(1, interrupted.get());
+
+        /* A step starting after the cancellation is interrupted right away */
+        job.setCancelAction(new Runnable() {
+            @Override
+            public void run() {
+                interrupted.incrementAndGet();
+            }
+        });
+        assertEquals(2, interrupted.get());
+
+        try {
+            job.throwIfCancelled();
+            fail("The job was cancelled");
+        } catch (CancellationException expected) {
+        }
+    }
+
+    @Test
+    public void testCancelWakesSleep() throws Exception {
+        Thread canceller = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    Thread.sleep(100);
+                } catch (InterruptedException e) {
+                    return;
+                }
+                job.cancel();
+            }
+        });
+        canceller.start();
+
+        long start = System.currentTimeMillis();
+        try {
+            job.sleep(TimeUnit.SECONDS.toMillis(30));
+            fail("The job was cancelled");
+        } catch (CancellationException expected) {
+        }
+        assertTrue(System.currentTimeMillis() - start < TimeUnit.SECONDS.toMillis(10));
+        canceller.join();
+    }
+}
@@ -0,0 +1,136 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.data.network.sync;
+
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+
+import com.example.android.sunshine.utils.WeatherTestData;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.RandomAccessFile;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertTrue;
+
+@RunWith(AndroidJUnit4.class)
+public class SyncRecorderTest {
+
+    private static final String URL = "https://andfun-weather.udacity.com/staticweather?q=94043";
+
+    /* Writes the records on the recording thread, so they can be read back right away */
+    private static final Executor DIRECT = new Executor() {
+        @Override
+        public void execute(Runnable command) {
+            command.run();
+        }
+    };
+
+    private File file;
+    private File rotated;
+
+    @Before
+    public void before() {
+        file = new File(InstrumentationRegistry.getTargetContext().getCacheDir(),
+                "sync-recorder-test.log");
+        rotated = new File(file.getPath() + ".1");
+        file.delete();
+        rotated.delete();
+    }
+
+    @After
+    public void after() {
+        file.delete();
+        rotated.delete();
+    }
+
+    @Test
+    public void testRecordsReadBackInOrder() throws Exception {
+        SyncRecorder recorder = new SyncRecorder(DIRECT);
+        recorder.setFile(file, 1024 * 1024);
+        String first = WeatherTestData.createForecastJson(14, 1);
+        String second = WeatherTestData.createForecastJson(14, 2);
+        recorder.record(URL, 1000, 5000000, first);
+        recorder.record(URL, 2000, 7000000, second);
+
+        List<SyncRecorder.Record> records = SyncRecorder.read(file);
+        assertEquals(2, records.size());
+        assertEquals(URL, records.get(0).getUrl());
+        assertEquals(1000, records.get(0).getReceivedAtMillis());
+        assertEquals(5000000, records.get(0).getDownloadNanos());
+        assertEquals(first, records.get(0).getBody());
+        assertEquals(second, records.get(1).getBody());
+        assertTrue("Records are compressed", file.length() < first.length());
+    }
+
+    @Test
+    public void testIgnoresRecordCutShort() throws Exception {
+        SyncRecorder recorder = new SyncRecorder(DIRECT);
+        recorder.setFile(file, 1024 * 1024);
+        recorder.record(URL, 1000, 1, WeatherTestData.createForecastJson(14, 1));
+        long complete = file.length();
+        recorder.record(URL, 2000, 1, WeatherTestData.createForecastJson(14, 2));
+
+        RandomAccessFile truncate = new RandomAccessFile(file, "rw");
+        truncate.setLength(complete + 10);
+        truncate.close();
+
+        assertEquals(1, SyncRecorder.read(file).size());
+    }
+
+    @Test
+    public void testStopsAtLengthPastTheEnd() throws Exception {
+        SyncRecorder recorder = new SyncRecorder(DIRECT);
+        recorder.setFile(file, 1024 * 1024);
+        recorder.record(URL, 1000, 1, WeatherTestData.createForecastJson(14, 1));
+
+        // A damaged length, which must not be allocated
+        DataOutputStream out = new DataOutputStream(new FileOutputStream(file, true));
+        out.writeInt(Integer.MAX_VALUE);
+        out.write(new byte[16]);
+        out.close();
+
+        assertEquals(1, SyncRecorder.read(file).size());
+    }
+
+    @Test
+    public void testRotatesOverLimit() throws Exception {
+        SyncRecorder recorder = new SyncRecorder(DIRECT);
+        String body = WeatherTestData.createForecastJson(14, 1);
+        recorder.setFile(file, 1024 * 1024);
+        recorder.record(URL, 1000, 1, body);
+        long oneRecord = file.length();
+
+        recorder.setFile(file, oneRecord * 2 + oneRecord / 2);
+        recorder.record(URL, 2000, 1, body);
+        recorder.record(URL, 3000, 1, body);
+
+        List<SyncRecorder.Record> previous = SyncRecorder.read(rotated);
+        List<SyncRecorder.Record> current = SyncRecorder.read(file);
+        assertEquals(2, previous.size());
+        assertEquals(1, current.size());
+        assertEquals(3000, current.get(0).getReceivedAtMillis());
+    }
+}
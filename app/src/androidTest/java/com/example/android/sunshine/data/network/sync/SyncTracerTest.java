@@ -0,0 +1,169 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.data.network.sync;
+
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+
+import com.example.android.sunshine.data.database.WeatherEntry;
+import com.example.android.sunshine.data.network.ForecastIngestQueue;
+import com.example.android.sunshine.utils.PollingCheck;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Scanner;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executor;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertSame;
+import static junit.framework.Assert.assertTrue;
+
+@RunWith(AndroidJUnit4.class)
+public class SyncTracerTest {
+
+    private static final long MILLI = 1000000L;
+
+    @Test
+    public void testPercentilesUseNearestRank() {
+        SyncTracer tracer = new SyncTracer(128);
+        for (int i = 100; i >= 1; i--) {
+            tracer.record(i, SyncTracer.STAGE_PARSE, 0, i * MILLI, false);
+        }
+
+        assertEquals(50 * MILLI, tracer.getPercentileNanos(SyncTracer.STAGE_PARSE, 50));
+        assertEquals(95 * MILLI, tracer.getPercentileNanos(SyncTracer.STAGE_PARSE, 95));
+        assertEquals(99 * MILLI, tracer.getPercentileNanos(SyncTracer.STAGE_PARSE, 99));
+        assertEquals(-1, tracer.getPercentileNanos(SyncTracer.STAGE_CONNECT, 50));
+    }
+
+    @Test
+    public void testRingBufferKeepsNewestSpans() throws Exception {
+        SyncTracer tracer = new SyncTracer(4);
+        for (int id = 1; id <= 6; id++) {
+            tracer.record(id, SyncTracer.STAGE_DOWNLOAD, id * MILLI, (id + 1) * MILLI, false);
+        }
+        assertEquals(4, tracer.getSpanCount());
+
+        JSONArray events = writeTrace(tracer).getJSONArray("traceEvents");
+        assertEquals(4, events.length());
+        for (int i = 0; i < events.length(); i++) {
+            assertEquals(3 + i, events.getJSONObject(i).getJSONObject("args").getLong("syncId"));
+        }
+    }
+
+    @Test
+    public void testChromeTraceEvents() throws Exception {
+        SyncTracer tracer = new SyncTracer(16);
+        SyncTracer.Trace trace = tracer.beginSync();
+        long start = trace.now();
+        trace.end(SyncTracer.STAGE_URL_BUILD, start);
+        trace.fail(SyncTracer.STAGE_DOWNLOAD, start, new java.io.IOException("test"));
+
+        JSONArray events = writeTrace(tracer).getJSONArray("traceEvents");
+        assertEquals(3, events.length());
+
+        JSONObject urlBuild = events.getJSONObject(0);
+        assertEquals("url build", urlBuild.getString("name"));
+        assertEquals("X", urlBuild.getString("ph"));
+        assertEquals(trace.getId(), urlBuild.getJSONObject("args").getLong("syncId"));
+
+        JSONObject download = events.getJSONObject(1);
+        assertEquals("download", download.getString("name"));
+        assertEquals(true, download.getJSONObject("args").getBoolean("failed"));
+        assertEquals("sync", events.getJSONObject(2).getString("name"));
+    }
+
+    @Test
+    public void testIngestQueueRecordsQueueWait() {
+        SyncTracer tracer = new SyncTracer(16);
+        ForecastIngestQueue queue = new ForecastIngestQueue(DIRECT, 4, 0);
+        SyncTracer.Trace superseded = tracer.beginSync();
+        SyncTracer.Trace latest = tracer.beginSync();
+        SyncJob latestJob = new SyncJob(latest);
+
+        queue.offer("Mountain View", new WeatherEntry[0], new SyncJob(superseded));
+        queue.offer("Mountain View", new WeatherEntry[0], latestJob);
+        /* The superseded sync is over, its forecasts will never be stored */
+        assertEquals(2, tracer.getSpanCount());
+
+        final List<ForecastIngestQueue.Batch> written = new ArrayList<>();
+        queue.setWriter(new ForecastIngestQueue.Writer() {
+            @Override
+            public void write(List<ForecastIngestQueue.Batch> batches) {
+                written.addAll(batches);
+            }
+        });
+
+        assertEquals(1, written.size());
+        assertSame(latest, written.get(0).getTrace());
+        assertEquals(3, tracer.getSpanCount());
+        assertTrue(tracer.getPercentileNanos(SyncTracer.STAGE_QUEUE, 100) >= 0);
+    }
+
+    @Test
+    public void testTraceFileHoldsEveryFinishedSync() throws Exception {
+        final SyncTracer tracer = new SyncTracer(64);
+        final File file = new File(InstrumentationRegistry.getTargetContext().getCacheDir(),
+                "sync-tracer-test.json");
+        file.delete();
+        tracer.setTraceFile(file);
+        for (int i = 0; i < 20; i++) {
+            tracer.beginSync().finish();
+        }
+
+        PollingCheck.check("The trace file misses syncs", 3000, new Callable<Boolean>() {
+            @Override
+            public Boolean call() throws Exception {
+                if (!file.exists()) return false;
+                Scanner scanner = new Scanner(new FileInputStream(file), "UTF-8");
+                try {
+                    String json = scanner.useDelimiter("\\A").hasNext() ? scanner.next() : "";
+                    return new JSONObject(json).getJSONArray("traceEvents").length() == 20;
+                } catch (JSONException e) {
+                    // Read while it was being written
+                    return false;
+                } finally {
+                    scanner.close();
+                }
+            }
+        });
+        tracer.setTraceFile(null);
+        file.delete();
+    }
+
+    private static final Executor DIRECT = new Executor() {
+        @Override
+        public void execute(Runnable command) {
+            command.run();
+        }
+    };
+
+    private static JSONObject writeTrace(SyncTracer tracer) throws Exception {
+        StringWriter out = new StringWriter();
+        tracer.writeChromeTrace(out);
+        return new JSONObject(out.toString());
+    }
+}
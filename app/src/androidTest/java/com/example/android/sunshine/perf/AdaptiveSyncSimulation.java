@@ -0,0 +1,138 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.perf;
+
+import android.arch.persistence.room.Room;
+import android.content.Context;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+import android.util.Log;
+
+import com.example.android.sunshine.data.database.SunshineDatabase;
+import com.example.android.sunshine.data.database.UpsertResult;
+import com.example.android.sunshine.data.database.WeatherBulkWriter;
+import com.example.android.sunshine.data.database.WeatherEntry;
+import com.example.android.sunshine.data.network.sync.SyncIntervalPolicy;
+import com.example.android.sunshine.utilities.SunshineDateUtils;
+import com.example.android.sunshine.utils.WeatherTestData;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.concurrent.TimeUnit;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertTrue;
+
+/**
+ * Replays a simulated week of server forecasts against a fixed 3 hour sync and against the
+ * adaptive {@link SyncIntervalPolicy}, storing every payload through the
+ * {@link WeatherBulkWriter} so unchanged syncs are detected the same way the app detects them.
+ * <p>
+ * The server publishes a new forecast every 6 hours for the first two days and once a day
+ * after that. Both schedules must pick up every publication; the adaptive one should need fewer
+ * network round trips to do so, while never leaving the forecasts staler than its maximum.
+ */
+@RunWith(AndroidJUnit4.class)
+public class AdaptiveSyncSimulation {
+
+    private static final String TAG = AdaptiveSyncSimulation.class.getSimpleName();
+
+    private static final long HOUR = TimeUnit.HOURS.toSeconds(1);
+    private static final long DAY = TimeUnit.DAYS.toSeconds(1);
+    private static final long WEEK = 7 * DAY;
+    private static final long FIXED_INTERVAL = 3 * HOUR;
+    private static final int FORECAST_DAYS = 14;
+
+    private final Context context = InstrumentationRegistry.getTargetContext();
+    private final long firstDay = SunshineDateUtils.getNormalizedUtcMsForToday();
+
+    @Test
+    public void adaptiveScheduleSyncsLessOften() {
+        SyncIntervalPolicy policy = new SyncIntervalPolicy(HOUR, 12 * HOUR);
+
+        Result fixed = simulate(null);
+        Result adaptive = simulate(policy);
+
+        Log.i(TAG, String.format("per day: fixed %.1f network, %.1f disk writes; "
+                        + "adaptive %.1f network, %.1f disk writes; adaptive max staleness %dh",
+                fixed.syncs / 7.0, fixed.writes / 7.0, adaptive.syncs / 7.0, adaptive.writes / 7.0,
+                adaptive.maxStalenessSeconds / HOUR));
+
+        assertEquals(fixed.publicationsSeen, adaptive.publicationsSeen);
+        assertTrue("Adaptive schedule synced " + adaptive.syncs + " times, fixed "
+                + fixed.syncs, adaptive.syncs < fixed.syncs);
+        assertTrue(adaptive.maxStalenessSeconds <= policy.getMaxIntervalSeconds());
+    }
+
+    /**
+     * @param policy The adaptive policy, or null for the fixed interval
+     */
+    private Result simulate(SyncIntervalPolicy policy) {
+        SunshineDatabase database = Room.inMemoryDatabaseBuilder(context, SunshineDatabase.class)
+                .build();
+        WeatherBulkWriter writer = new WeatherBulkWriter(database);
+        Result result = new Result();
+
+        long interval = FIXED_INTERVAL;
+        long lastPublication = -1;
+        for (long time = 0; time < WEEK; time += interval) {
+            UpsertResult upsert = writer.upsert(serverPayload(time));
+            result.syncs++;
+            if (upsert.hasChanges()) result.writes++;
+
+            long publication = publicationIndex(time);
+            if (publication != lastPublication) {
+                result.publicationsSeen++;
+                result.maxStalenessSeconds = Math.max(result.maxStalenessSeconds,
+                        time - publicationTime(publication));
+                lastPublication = publication;
+            }
+
+            if (policy != null) {
+                interval = policy.nextIntervalSeconds(interval, upsert.hasChanges());
+            }
+        }
+
+        database.close();
+        return result;
+    }
+
+    /**
+     * @return What the server returns at the given time of the simulation, in seconds
+     */
+    private WeatherEntry[] serverPayload(long time) {
+        long day = firstDay + (time / DAY) * SunshineDateUtils.DAY_IN_MILLIS;
+        return WeatherTestData.createForecasts(day, FORECAST_DAYS, publicationIndex(time));
+    }
+
+    private static long publicationIndex(long time) {
+        if (time < 2 * DAY) return time / (6 * HOUR);
+        return 8 + (time - 2 * DAY) / DAY;
+    }
+
+    private static long publicationTime(long index) {
+        if (index < 8) return index * 6 * HOUR;
+        return 2 * DAY + (index - 8) * DAY;
+    }
+
+    private static class Result {
+        int syncs;
+        int writes;
+        int publicationsSeen;
+        long maxStalenessSeconds;
+    }
+}
@@ -0,0 +1,114 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.perf;
+
+import android.arch.persistence.room.Room;
+import android.content.Context;
+import android.os.SystemClock;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+import android.util.Log;
+
+import com.example.android.sunshine.data.database.SunshineDatabase;
+import com.example.android.sunshine.data.database.UpsertResult;
+import com.example.android.sunshine.data.database.WeatherBulkWriter;
+import com.example.android.sunshine.data.database.WeatherEntry;
+import com.example.android.sunshine.utilities.SunshineDateUtils;
+import com.example.android.sunshine.utils.WeatherTestData;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import static junit.framework.Assert.assertEquals;
+
+/**
+ * Compares rows per second of Room's generated {@code bulkInsert} with the
+ * {@link WeatherBulkWriter}, for a first sync into an empty table and for a re-sync where only
+ * a tenth of the rows changed.
+ */
+@RunWith(AndroidJUnit4.class)
+public class BulkUpsertBenchmark {
+
+    private static final String TAG = BulkUpsertBenchmark.class.getSimpleName();
+
+    private final Context context = InstrumentationRegistry.getTargetContext();
+
+    @Test
+    public void fourteenRows() {
+        benchmark(14);
+    }
+
+    @Test
+    public void thousandRows() {
+        benchmark(1000);
+    }
+
+    @Test
+    public void hundredThousandRows() {
+        benchmark(100000);
+    }
+
+    private void benchmark(int rows) {
+        long today = SunshineDateUtils.getNormalizedUtcMsForToday();
+        WeatherEntry[] first = WeatherTestData.createForecasts(today, rows, 1);
+        WeatherEntry[] second = WeatherTestData.createForecasts(today, rows, 1);
+        WeatherEntry[] changed = WeatherTestData.createForecasts(today, rows, 2);
+        for (int i = 0; i < rows; i += 10) {
+            second[i] = changed[i];
+        }
+
+        SunshineDatabase roomDatabase = newDatabase();
+        long roomFirst = time(roomDatabase, null, first);
+        long roomSecond = time(roomDatabase, null, second);
+        roomDatabase.close();
+
+        SunshineDatabase writerDatabase = newDatabase();
+        WeatherBulkWriter writer = new WeatherBulkWriter(writerDatabase);
+        long writerFirst = time(writerDatabase, writer, first);
+        long writerSecond = time(writerDatabase, writer, second);
+        assertEquals(rows, writerDatabase.weatherDao().countWeather());
+        writerDatabase.close();
+
+        Log.i(TAG, String.format("%d rows, first sync: room %.0f rows/s, writer %.0f rows/s; "
+                        + "re-sync: room %.0f rows/s, writer %.0f rows/s",
+                rows,
+                rowsPerSecond(rows, roomFirst), rowsPerSecond(rows, writerFirst),
+                rowsPerSecond(rows, roomSecond), rowsPerSecond(rows, writerSecond)));
+    }
+
+    private SunshineDatabase newDatabase() {
+        return Room.inMemoryDatabaseBuilder(context, SunshineDatabase.class).build();
+    }
+
+    /**
+     * @return Time spent writing the batch, in nanoseconds
+     */
+    private static long time(SunshineDatabase database, WeatherBulkWriter writer, WeatherEntry[] batch) {
+        long start = SystemClock.elapsedRealtimeNanos();
+        if (writer == null) {
+            database.weatherDao().bulkInsert(batch);
+        } else {
+            UpsertResult result = writer.upsert(batch);
+            Log.d(TAG, result.getInserted() + " inserted, " + result.getUpdated() + " updated, "
+                    + result.getUnchanged() + " unchanged");
+        }
+        return SystemClock.elapsedRealtimeNanos() - start;
+    }
+
+    private static double rowsPerSecond(int rows, long nanos) {
+        return rows * 1e9 / Math.max(1, nanos);
+    }
+}
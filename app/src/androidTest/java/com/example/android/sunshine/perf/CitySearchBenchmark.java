@@ -0,0 +1,106 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.perf;
+
+import android.content.Context;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+import android.util.Log;
+
+import com.example.android.sunshine.R;
+import com.example.android.sunshine.data.CityIndex;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+import static junit.framework.Assert.assertTrue;
+
+/**
+ * Types every bundled city name one letter at a time against the city index, the way the
+ * location setting searches as the user types, and logs the latency percentiles of a search.
+ * Suggestions have to stay under a millisecond.
+ */
+@RunWith(AndroidJUnit4.class)
+public class CitySearchBenchmark {
+
+    private static final String TAG = CitySearchBenchmark.class.getSimpleName();
+
+    private static final int LIMIT = 8;
+    private static final int ROUNDS = 5;
+
+    private final Context context = InstrumentationRegistry.getTargetContext();
+
+    @Test
+    public void typeEveryCity() throws IOException {
+        long loadStart = System.nanoTime();
+        CityIndex index = CityIndex.load(context.getResources().openRawResource(R.raw.cities));
+        long loadNanos = System.nanoTime() - loadStart;
+
+        List<String> queries = new ArrayList<>();
+        for (String name : cityNames()) {
+            for (int length = 1; length <= name.length(); length++) {
+                queries.add(name.substring(0, length));
+            }
+        }
+
+        // The first round warms up the search
+        long[] nanos = new long[queries.size() * ROUNDS];
+        int count = 0;
+        for (int round = 0; round <= ROUNDS; round++) {
+            for (String query : queries) {
+                long start = System.nanoTime();
+                index.search(query, LIMIT);
+                long elapsed = System.nanoTime() - start;
+                if (round > 0) nanos[count++] = elapsed;
+            }
+        }
+        Arrays.sort(nanos);
+        long p99 = nanos[(int) Math.ceil(0.99 * nanos.length) - 1];
+
+        Log.i(TAG, String.format(Locale.US, "%d cities loaded in %.2fms, %d searches: "
+                        + "p50=%.3fms p95=%.3fms p99=%.3fms",
+                index.size(), loadNanos / 1e6, nanos.length,
+                nanos[nanos.length / 2] / 1e6,
+                nanos[(int) Math.ceil(0.95 * nanos.length) - 1] / 1e6, p99 / 1e6));
+
+        assertTrue("p99 search took " + p99 + "ns", p99 < TimeUnit.MILLISECONDS.toNanos(1));
+    }
+
+    private List<String> cityNames() throws IOException {
+        List<String> names = new ArrayList<>();
+        BufferedReader reader = new BufferedReader(new InputStreamReader(
+                context.getResources().openRawResource(R.raw.cities), "UTF-8"));
+        try {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.isEmpty() || line.startsWith("#")) continue;
+                names.add(line.substring(0, line.indexOf(',')));
+            }
+        } finally {
+            reader.close();
+        }
+        return names;
+    }
+}
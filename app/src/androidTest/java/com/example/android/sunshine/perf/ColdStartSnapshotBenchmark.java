@@ -0,0 +1,183 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.perf;
+
+import android.arch.lifecycle.LiveData;
+import android.arch.lifecycle.Observer;
+import android.arch.persistence.room.Room;
+import android.content.Context;
+import android.os.SystemClock;
+import android.support.annotation.Nullable;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+import android.util.Log;
+
+import com.example.android.sunshine.data.database.ForecastSnapshot;
+import com.example.android.sunshine.data.database.ListWeatherEntry;
+import com.example.android.sunshine.data.database.SunshineDatabase;
+import com.example.android.sunshine.utilities.SunshineDateUtils;
+import com.example.android.sunshine.utils.WeatherTestData;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertTrue;
+
+/**
+ * Measures the time from nothing to the first forecast rows being available on the main thread,
+ * the way a cold start gets them: once by opening a new Room database and waiting for the list
+ * query's LiveData, once by reading the {@link ForecastSnapshot}.
+ */
+@RunWith(AndroidJUnit4.class)
+public class ColdStartSnapshotBenchmark {
+
+    private static final String TAG = ColdStartSnapshotBenchmark.class.getSimpleName();
+
+    private static final String DATABASE_NAME = "cold-start-benchmark.db";
+    private static final int ROWS = 14;
+    private static final int ITERATIONS = 15;
+
+    private final Context context = InstrumentationRegistry.getTargetContext();
+    private final long today = SunshineDateUtils.getNormalizedUtcMsForToday();
+    private File snapshotFile;
+
+    @Before
+    public void before() {
+        context.deleteDatabase(DATABASE_NAME);
+        SunshineDatabase database = openDatabase();
+        database.weatherDao().bulkInsert(WeatherTestData.createForecasts(ROWS, 34));
+        List<ListWeatherEntry> rows = database.weatherDao().getCurrentWeatherForecastsNow(today);
+        database.close();
+
+        snapshotFile = new File(context.getFilesDir(), "cold-start-benchmark.snapshot");
+        new ForecastSnapshot(snapshotFile).write(rows);
+        assertTrue(sameRows(rows, new ForecastSnapshot(snapshotFile).read(today)));
+    }
+
+    @After
+    public void after() {
+        context.deleteDatabase(DATABASE_NAME);
+        snapshotFile.delete();
+    }
+
+    @Test
+    public void timeToFirstRow() throws Exception {
+        long[] room = new long[ITERATIONS];
+        long[] snapshot = new long[ITERATIONS];
+
+        for (int i = 0; i < ITERATIONS; i++) {
+            room[i] = firstRowFromRoom();
+            snapshot[i] = firstRowFromSnapshot();
+        }
+        Arrays.sort(room);
+        Arrays.sort(snapshot);
+
+        Log.i(TAG, String.format("time to first row, median of %d: room %.2f ms, snapshot %.2f ms",
+                ITERATIONS, room[ITERATIONS / 2] / 1e6, snapshot[ITERATIONS / 2] / 1e6));
+        assertTrue(snapshot[ITERATIONS / 2] < room[ITERATIONS / 2]);
+    }
+
+    /**
+     * @return Nanoseconds from opening the database until the main thread has the rows
+     */
+    private long firstRowFromRoom() throws InterruptedException {
+        final CountDownLatch delivered = new CountDownLatch(1);
+        final long[] end = new long[1];
+        final SunshineDatabase[] database = new SunshineDatabase[1];
+        final LiveData<?>[] forecasts = new LiveData<?>[1];
+        final Observer<List<ListWeatherEntry>> observer = new Observer<List<ListWeatherEntry>>() {
+            @Override
+            public void onChanged(@Nullable List<ListWeatherEntry> rows) {
+                if (rows == null || rows.size() != ROWS) return;
+                end[0] = SystemClock.elapsedRealtimeNanos();
+                delivered.countDown();
+            }
+        };
+
+        long start = SystemClock.elapsedRealtimeNanos();
+        InstrumentationRegistry.getInstrumentation().runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                database[0] = openDatabase();
+                LiveData<List<ListWeatherEntry>> liveData =
+                        database[0].weatherDao().getCurrentWeatherForecasts(today);
+                forecasts[0] = liveData;
+                liveData.observeForever(observer);
+            }
+        });
+        assertTrue(delivered.await(10, TimeUnit.SECONDS));
+
+        InstrumentationRegistry.getInstrumentation().runOnMainSync(new Runnable() {
+            @Override
+            @SuppressWarnings("unchecked")
+            public void run() {
+                ((LiveData<List<ListWeatherEntry>>) forecasts[0]).removeObserver(observer);
+            }
+        });
+        database[0].close();
+        return end[0] - start;
+    }
+
+    /**
+     * @return Nanoseconds to read the snapshot on the main thread
+     */
+    private long firstRowFromSnapshot() {
+        final long[] time = new long[1];
+        InstrumentationRegistry.getInstrumentation().runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                long start = SystemClock.elapsedRealtimeNanos();
+                List<ListWeatherEntry> rows = new ForecastSnapshot(snapshotFile).read(today);
+                time[0] = SystemClock.elapsedRealtimeNanos() - start;
+                assertEquals(ROWS, rows.size());
+            }
+        });
+        return time[0];
+    }
+
+    private SunshineDatabase openDatabase() {
+        return Room.databaseBuilder(context, SunshineDatabase.class, DATABASE_NAME).build();
+    }
+
+    /**
+     * @return true if both lists have the same rows with the same values, in the same order
+     */
+    private static boolean sameRows(List<ListWeatherEntry> first,
+                                    @Nullable List<ListWeatherEntry> second) {
+        if (second == null || first.size() != second.size()) return false;
+        for (int i = 0; i < first.size(); i++) {
+            ListWeatherEntry a = first.get(i);
+            ListWeatherEntry b = second.get(i);
+            if (a.getId() != b.getId()
+                    || a.getWeatherIconId() != b.getWeatherIconId()
+                    || a.getDate() != b.getDate()
+                    || Double.compare(a.getMin(), b.getMin()) != 0
+                    || Double.compare(a.getMax(), b.getMax()) != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
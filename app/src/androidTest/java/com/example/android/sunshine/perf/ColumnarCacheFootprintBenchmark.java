@@ -0,0 +1,96 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.perf;
+
+import android.support.test.runner.AndroidJUnit4;
+import android.util.Log;
+
+import com.example.android.sunshine.data.ColumnarForecastCache;
+import com.example.android.sunshine.data.database.WeatherEntry;
+import com.example.android.sunshine.utilities.SunshineDateUtils;
+import com.example.android.sunshine.utils.WeatherTestData;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertTrue;
+
+/**
+ * Compares the heap kept by a list of {@link WeatherEntry} objects with the heap kept by the
+ * same forecasts in a {@link ColumnarForecastCache}, at 10 thousand and 1 million days.
+ */
+@RunWith(AndroidJUnit4.class)
+public class ColumnarCacheFootprintBenchmark {
+
+    private static final String TAG = ColumnarCacheFootprintBenchmark.class.getSimpleName();
+
+    private static final String LOCATION = "Mountain View";
+
+    @Test
+    public void tenThousandRows() {
+        compare(10000);
+    }
+
+    @Test
+    public void oneMillionRows() {
+        compare(1000000);
+    }
+
+    private void compare(int rows) {
+        long start = SunshineDateUtils.getNormalizedUtcMsForToday();
+        Runtime runtime = Runtime.getRuntime();
+        long base = usedAfterGc(runtime);
+
+        List<WeatherEntry> objects =
+                new ArrayList<>(Arrays.asList(WeatherTestData.createForecasts(start, rows, 46)));
+        long objectBytes = usedAfterGc(runtime) - base;
+
+        ColumnarForecastCache cache = new ColumnarForecastCache();
+        cache.apply(LOCATION, objects.toArray(new WeatherEntry[rows]));
+        long columnarBytes = usedAfterGc(runtime) - base - objectBytes;
+
+        ColumnarForecastCache.ForecastColumns columns = cache.get(LOCATION);
+        assertEquals(objects.size(), columns.size());
+
+        // Reading every day allocates nothing
+        double sum = 0;
+        long readStart = System.nanoTime();
+        for (int i = 0; i < columns.size(); i++) {
+            sum += columns.getMax(i) - columns.getMin(i);
+        }
+        long readNanos = System.nanoTime() - readStart;
+
+        Log.i(TAG, String.format("%d rows: objects %d KB (%.1f bytes/row), columns %d KB "
+                        + "(%.1f bytes/row), full scan %.2f ms (checksum %.0f)",
+                rows, objectBytes / 1024, (double) objectBytes / rows, columnarBytes / 1024,
+                (double) columnarBytes / rows, readNanos / 1e6, sum));
+
+        assertTrue("Columns took " + columnarBytes + " bytes, objects " + objectBytes,
+                columnarBytes * 2 < objectBytes);
+    }
+
+    private static long usedAfterGc(Runtime runtime) {
+        runtime.gc();
+        runtime.runFinalization();
+        runtime.gc();
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
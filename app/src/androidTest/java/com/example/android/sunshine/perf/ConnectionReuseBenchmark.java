@@ -0,0 +1,124 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.perf;
+
+import android.os.SystemClock;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+import android.util.Log;
+
+import com.example.android.sunshine.data.network.HttpConnectionManager;
+import com.example.android.sunshine.data.network.NetworkUtils;
+import com.example.android.sunshine.utils.LocalTls;
+import com.example.android.sunshine.utils.LocalWeatherServer;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.net.URL;
+import java.util.Collections;
+
+import javax.net.ssl.HostnameVerifier;
+import javax.net.ssl.SSLSession;
+import javax.net.ssl.SSLSocketFactory;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertTrue;
+
+/**
+ * Fetches a forecast-sized response many times from a local TLS server, once closing the
+ * connection after every request like NetworkUtils used to, and once with keep-alive. The server
+ * counts accepted connections, each of which is a TCP and TLS handshake.
+ */
+@RunWith(AndroidJUnit4.class)
+public class ConnectionReuseBenchmark {
+
+    private static final String TAG = ConnectionReuseBenchmark.class.getSimpleName();
+
+    private static final int FETCHES = 30;
+
+    private static final HostnameVerifier LOOPBACK_ONLY = new HostnameVerifier() {
+        @Override
+        public boolean verify(String hostname, SSLSession session) {
+            return "127.0.0.1".equals(hostname);
+        }
+    };
+
+    private LocalWeatherServer server;
+    private SSLSocketFactory socketFactory;
+
+    @Before
+    public void before() throws Exception {
+        server = new LocalWeatherServer(LocalTls.serverContext(InstrumentationRegistry.getContext()));
+        socketFactory = LocalTls.clientContext(InstrumentationRegistry.getContext()).getSocketFactory();
+
+        StringBuilder forecast = new StringBuilder("{\"list\":[");
+        for (int day = 0; day < 14; day++) {
+            if (day > 0) forecast.append(',');
+            forecast.append("{\"dt\":").append(day).append(",\"pressure\":1010.5,\"humidity\":60,")
+                    .append("\"speed\":4.2,\"deg\":180,\"temp\":{\"min\":10.1,\"max\":20.2},")
+                    .append("\"weather\":[{\"id\":800}]}");
+        }
+        server.setResponse(forecast.append("]}").toString(), null,
+                Collections.singletonMap("Cache-Control", "no-store"));
+        NetworkUtils.setResponseCache(null);
+    }
+
+    @After
+    public void after() throws Exception {
+        NetworkUtils.setConnectionManager(new HttpConnectionManager.Builder().build());
+        server.shutdown();
+    }
+
+    @Test
+    public void keepAliveReusesConnections() throws Exception {
+        URL url = server.url("/weather?q=94043");
+
+        double closeMillis = fetchAll(url, false);
+        int closeHandshakes = server.getAcceptedConnections();
+
+        double keepAliveMillis = fetchAll(url, true);
+        int keepAliveHandshakes = server.getAcceptedConnections() - closeHandshakes;
+
+        Log.i(TAG, String.format("%d fetches, close: %d handshakes, %.2f ms per fetch; "
+                        + "keep-alive: %d handshakes, %.2f ms per fetch",
+                FETCHES, closeHandshakes, closeMillis, keepAliveHandshakes, keepAliveMillis));
+
+        assertEquals(2 * FETCHES, server.getRequestCount());
+        assertEquals(FETCHES, closeHandshakes);
+        assertTrue("Keep-alive made " + keepAliveHandshakes + " handshakes",
+                keepAliveHandshakes <= 2);
+    }
+
+    /**
+     * @return The mean time per fetch, in milliseconds
+     */
+    private double fetchAll(URL url, boolean keepAlive) throws Exception {
+        NetworkUtils.setConnectionManager(new HttpConnectionManager.Builder()
+                .setKeepAlive(keepAlive)
+                .setSslSocketFactory(socketFactory)
+                .setHostnameVerifier(LOOPBACK_ONLY)
+                .build());
+
+        long start = SystemClock.elapsedRealtimeNanos();
+        for (int i = 0; i < FETCHES; i++) {
+            NetworkUtils.getResponseFromHttpUrl(url);
+        }
+        return (SystemClock.elapsedRealtimeNanos() - start) / 1e6 / FETCHES;
+    }
+}
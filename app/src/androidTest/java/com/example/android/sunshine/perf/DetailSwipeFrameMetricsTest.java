@@ -0,0 +1,151 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.perf;
+
+import android.annotation.TargetApi;
+import android.content.Context;
+import android.content.Intent;
+import android.os.Build;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.rule.ActivityTestRule;
+import android.support.test.runner.AndroidJUnit4;
+import android.support.v4.view.ViewPager;
+import android.util.Log;
+import android.view.FrameMetrics;
+import android.view.Window;
+
+import com.example.android.sunshine.R;
+import com.example.android.sunshine.data.database.WeatherBulkWriter;
+import com.example.android.sunshine.ui.weather_detail.DetailActivity;
+import com.example.android.sunshine.utilities.InjectorUtils;
+import com.example.android.sunshine.utilities.SunshineDateUtils;
+import com.example.android.sunshine.utils.PollingCheck;
+import com.example.android.sunshine.utils.WeatherTestData;
+
+import org.junit.After;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+
+import static junit.framework.Assert.assertTrue;
+
+/**
+ * Swipes through every day of the detail pager and checks the frame times reported by
+ * {@link FrameMetrics}, which needs Android N. Pages are changed with the pager's own smooth
+ * scroll, so each swipe draws the same frames a finger swipe would once the page settles.
+ */
+@RunWith(AndroidJUnit4.class)
+public class DetailSwipeFrameMetricsTest {
+
+    private static final String TAG = DetailSwipeFrameMetricsTest.class.getSimpleName();
+
+    private static final int DAYS = 14;
+    /* 90% of the frames must make it in two 60 Hz frames */
+    private static final long FRAME_BUDGET_NANOS = 32000000;
+    private static final int BUDGET_PERCENTILE = 90;
+    /* The current page and two on each side */
+    private static final int MAX_BOUND_PAGES = 5;
+    private static final long SETTLE_MILLIS = 500;
+
+    @Rule
+    public final ActivityTestRule<DetailActivity> activityRule =
+            new ActivityTestRule<>(DetailActivity.class, true, false);
+
+    private HandlerThread metricsThread;
+
+    @Before
+    public void before() {
+        Assume.assumeTrue(Build.VERSION.SDK_INT >= Build.VERSION_CODES.N);
+        Context context = InstrumentationRegistry.getTargetContext();
+        new WeatherBulkWriter(InjectorUtils.provideSunshineDatabase(context))
+                .upsert(WeatherTestData.createForecasts(DAYS, 38));
+        metricsThread = new HandlerThread("FrameMetrics");
+        metricsThread.start();
+    }
+
+    @After
+    public void after() {
+        if (metricsThread != null) metricsThread.quit();
+    }
+
+    @Test
+    @TargetApi(Build.VERSION_CODES.N)
+    public void swipeFramesWithinBudget() throws Exception {
+        Intent intent = new Intent(InstrumentationRegistry.getTargetContext(), DetailActivity.class)
+                .putExtra(DetailActivity.EXTRA_WEATHER_ID_WHEN_NOTIFICATION_CLICKED,
+                        SunshineDateUtils.getNormalizedUtcMsForToday());
+        DetailActivity activity = activityRule.launchActivity(intent);
+        final ViewPager pager = (ViewPager) activity.findViewById(R.id.detail_pager);
+
+        PollingCheck.check("The pager never got its days", 10000, new Callable<Boolean>() {
+            @Override
+            public Boolean call() {
+                return pager.getAdapter() != null && pager.getAdapter().getCount() >= DAYS;
+            }
+        });
+        Thread.sleep(SETTLE_MILLIS);
+
+        final List<Long> frameNanos = Collections.synchronizedList(new ArrayList<Long>());
+        Window.OnFrameMetricsAvailableListener listener =
+                new Window.OnFrameMetricsAvailableListener() {
+                    @Override
+                    public void onFrameMetricsAvailable(Window window, FrameMetrics metrics,
+                                                        int dropCountSinceLastInvocation) {
+                        frameNanos.add(metrics.getMetric(FrameMetrics.TOTAL_DURATION));
+                    }
+                };
+        activity.getWindow().addOnFrameMetricsAvailableListener(listener,
+                new Handler(metricsThread.getLooper()));
+
+        int maxBoundPages = 0;
+        for (int page = 1; page < DAYS; page++) {
+            final int target = page;
+            InstrumentationRegistry.getInstrumentation().runOnMainSync(new Runnable() {
+                @Override
+                public void run() {
+                    pager.setCurrentItem(target, true);
+                }
+            });
+            Thread.sleep(SETTLE_MILLIS);
+            maxBoundPages = Math.max(maxBoundPages, pager.getChildCount());
+        }
+        activity.getWindow().removeOnFrameMetricsAvailableListener(listener);
+
+        List<Long> frames;
+        synchronized (frameNanos) {
+            frames = new ArrayList<>(frameNanos);
+        }
+        assertTrue("No frames were reported", !frames.isEmpty());
+        Collections.sort(frames);
+        long percentile = frames.get((frames.size() - 1) * BUDGET_PERCENTILE / 100);
+        Log.i(TAG, String.format("%d frames over %d swipes, p50 %.2f ms, p%d %.2f ms, max %.2f ms",
+                frames.size(), DAYS - 1, frames.get(frames.size() / 2) / 1e6, BUDGET_PERCENTILE,
+                percentile / 1e6, frames.get(frames.size() - 1) / 1e6));
+
+        assertTrue("p" + BUDGET_PERCENTILE + " frame took " + percentile / 1e6 + " ms",
+                percentile <= FRAME_BUDGET_NANOS);
+        assertTrue("The pager kept " + maxBoundPages + " pages", maxBoundPages <= MAX_BOUND_PAGES);
+    }
+}
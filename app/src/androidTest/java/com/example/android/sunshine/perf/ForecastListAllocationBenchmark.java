@@ -0,0 +1,127 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.perf;
+
+import android.arch.persistence.room.Room;
+import android.content.Context;
+import android.os.Debug;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+import android.support.v7.widget.RecyclerView;
+import android.util.Log;
+import android.widget.FrameLayout;
+
+import com.example.android.sunshine.data.database.ListWeatherEntry;
+import com.example.android.sunshine.data.database.SunshineDatabase;
+import com.example.android.sunshine.ui.weather_list.ForecastAdapter;
+import com.example.android.sunshine.utilities.SunshineDateUtils;
+import com.example.android.sunshine.utils.WeatherTestData;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.List;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertTrue;
+
+/**
+ * Counts the objects allocated while loading the full forecast list from Room and binding every
+ * row through the {@link ForecastAdapter}. With the date stored as a primitive, the load should
+ * only allocate the row objects themselves and the list holding them.
+ */
+@RunWith(AndroidJUnit4.class)
+public class ForecastListAllocationBenchmark {
+
+    private static final String TAG = ForecastListAllocationBenchmark.class.getSimpleName();
+
+    private static final int ROWS = 14;
+    private static final int ITERATIONS = 50;
+
+    /* The cursor, window and list cost a fixed amount per query, each row should add its object */
+    private static final int MAX_LOAD_ALLOCATIONS_PER_QUERY = 200;
+    private static final int MAX_LOAD_ALLOCATIONS_PER_ROW = 2;
+
+    private final Context context = InstrumentationRegistry.getTargetContext();
+    private SunshineDatabase database;
+
+    @Before
+    public void before() {
+        database = Room.inMemoryDatabaseBuilder(context, SunshineDatabase.class).build();
+        database.weatherDao().bulkInsert(WeatherTestData.createForecasts(ROWS, 27));
+    }
+
+    @After
+    public void after() {
+        database.close();
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void loadAndBindFullList() {
+        final long today = SunshineDateUtils.getNormalizedUtcMsForToday();
+
+        // Warm up so class loading and statement compilation are not counted
+        List<ListWeatherEntry> entries = database.weatherDao().getCurrentWeatherForecastsNow(today);
+        assertEquals(ROWS, entries.size());
+
+        Debug.resetThreadAllocCount();
+        Debug.startAllocCounting();
+        for (int i = 0; i < ITERATIONS; i++) {
+            entries = database.weatherDao().getCurrentWeatherForecastsNow(today);
+        }
+        Debug.stopAllocCounting();
+        long loadAllocations = Debug.getThreadAllocCount() / ITERATIONS;
+        long loadBytes = Debug.getThreadAllocSize() / ITERATIONS;
+
+        final List<ListWeatherEntry> rows = entries;
+        final long[] bind = new long[2];
+        InstrumentationRegistry.getInstrumentation().runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                RecyclerView.Adapter adapter = new ForecastAdapter(context, null);
+                ((ForecastAdapter) adapter).setListWeatherEntries(rows);
+                FrameLayout parent = new FrameLayout(context);
+                RecyclerView.ViewHolder[] holders = new RecyclerView.ViewHolder[ROWS];
+                for (int position = 0; position < ROWS; position++) {
+                    holders[position] = adapter.createViewHolder(parent,
+                            adapter.getItemViewType(position));
+                    adapter.bindViewHolder(holders[position], position);
+                }
+
+                Debug.resetThreadAllocCount();
+                Debug.startAllocCounting();
+                for (int i = 0; i < ITERATIONS; i++) {
+                    for (int position = 0; position < ROWS; position++) {
+                        adapter.bindViewHolder(holders[position], position);
+                    }
+                }
+                Debug.stopAllocCounting();
+                bind[0] = Debug.getThreadAllocCount() / ITERATIONS;
+                bind[1] = Debug.getThreadAllocSize() / ITERATIONS;
+            }
+        });
+
+        Log.i(TAG, String.format("load %d rows: %d objects, %d bytes; bind %d rows: %d objects, %d bytes",
+                ROWS, loadAllocations, loadBytes, ROWS, bind[0], bind[1]));
+
+        assertTrue("Loading " + ROWS + " rows allocated " + loadAllocations + " objects",
+                loadAllocations <= MAX_LOAD_ALLOCATIONS_PER_QUERY
+                        + ROWS * MAX_LOAD_ALLOCATIONS_PER_ROW);
+    }
+}
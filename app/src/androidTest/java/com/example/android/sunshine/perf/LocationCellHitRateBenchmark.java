@@ -0,0 +1,147 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.perf;
+
+import android.content.Context;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+import android.util.Log;
+
+import com.example.android.sunshine.utilities.GeoCell;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import static junit.framework.Assert.assertTrue;
+
+/**
+ * Plays a movement trace through the forecast cache and logs how many syncs it answers, with
+ * exact coordinates and with coordinates rounded to cells of several sizes. A forecast stays
+ * fresh for an hour. The trace is read from movement-trace.csv in the app's files, one
+ * "millis,latitude,longitude" line per position, if it is there; otherwise three days of a
+ * commute with GPS jitter are generated.
+ */
+@RunWith(AndroidJUnit4.class)
+public class LocationCellHitRateBenchmark {
+
+    private static final String TAG = LocationCellHitRateBenchmark.class.getSimpleName();
+
+    private static final String TRACE_FILE_NAME = "movement-trace.csv";
+
+    private static final long FRESH_MILLIS = TimeUnit.HOURS.toMillis(1);
+    private static final int[] PRECISIONS = {0, 4, 5, 6, 7};
+
+    private final Context context = InstrumentationRegistry.getTargetContext();
+
+    @Test
+    public void movementTrace() throws IOException {
+        File file = new File(context.getFilesDir(), TRACE_FILE_NAME);
+        List<double[]> trace = file.exists() ? readTrace(file) : syntheticTrace();
+
+        double exactHitRate = 0;
+        double cellHitRate = 0;
+        StringBuilder report = new StringBuilder(trace.size() + " positions");
+        for (int precision : PRECISIONS) {
+            double hitRate = hitRate(trace, precision);
+            report.append(String.format(Locale.US, "; %s %.1f%%",
+                    precision == 0 ? "exact" : "precision " + precision, 100 * hitRate));
+            if (precision == 0) exactHitRate = hitRate;
+            if (precision == 5) cellHitRate = hitRate;
+        }
+        Log.i(TAG, report.toString());
+
+        assertTrue(cellHitRate > exactHitRate);
+    }
+
+    /**
+     * @return The share of positions whose forecast was cached and fresh
+     */
+    private static double hitRate(List<double[]> trace, int precision) {
+        Map<String, Long> fetchedAt = new HashMap<>();
+        int hits = 0;
+        for (double[] position : trace) {
+            long now = (long) position[0];
+            String key = precision == 0 ? position[1] + "," + position[2]
+                    : GeoCell.encode(position[1], position[2], precision);
+            Long fetched = fetchedAt.get(key);
+            if (fetched != null && now - fetched < FRESH_MILLIS) {
+                hits++;
+            } else {
+                fetchedAt.put(key, now);
+            }
+        }
+        return trace.isEmpty() ? 0 : (double) hits / trace.size();
+    }
+
+    private static List<double[]> readTrace(File file) throws IOException {
+        List<double[]> trace = new ArrayList<>();
+        BufferedReader reader = new BufferedReader(new FileReader(file));
+        try {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String[] fields = line.split(",");
+                if (fields.length < 3) continue;
+                trace.add(new double[]{Long.parseLong(fields[0].trim()),
+                        Double.parseDouble(fields[1].trim()), Double.parseDouble(fields[2].trim())});
+            }
+        } finally {
+            reader.close();
+        }
+        return trace;
+    }
+
+    /**
+     * A position every five minutes: home until eight, an hour's drive to work, work until five
+     * and the drive back. Each fix is off by about 20 m.
+     */
+    private static List<double[]> syntheticTrace() {
+        double[] home = {37.4220, -122.0841};
+        double[] work = {37.4419, -122.1430};
+        Random random = new Random(48);
+        List<double[]> trace = new ArrayList<>();
+        long step = TimeUnit.MINUTES.toMillis(5);
+        long hour = TimeUnit.HOURS.toMillis(1);
+        for (long time = 0; time < TimeUnit.DAYS.toMillis(3); time += step) {
+            double hourOfDay = (double) (time % TimeUnit.DAYS.toMillis(1)) / hour;
+            double progress;
+            if (hourOfDay < 8 || hourOfDay >= 18) {
+                progress = 0;
+            } else if (hourOfDay < 9) {
+                progress = hourOfDay - 8;
+            } else if (hourOfDay < 17) {
+                progress = 1;
+            } else {
+                progress = 18 - hourOfDay;
+            }
+            trace.add(new double[]{time,
+                    home[0] + progress * (work[0] - home[0]) + random.nextGaussian() * 0.0002,
+                    home[1] + progress * (work[1] - home[1]) + random.nextGaussian() * 0.0002});
+        }
+        return trace;
+    }
+}
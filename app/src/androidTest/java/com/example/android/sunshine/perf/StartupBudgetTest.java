@@ -0,0 +1,97 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.perf;
+
+import android.content.Context;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.rule.ActivityTestRule;
+import android.support.test.runner.AndroidJUnit4;
+import android.util.Log;
+
+import com.example.android.sunshine.StartupTimings;
+import com.example.android.sunshine.data.database.WeatherBulkWriter;
+import com.example.android.sunshine.ui.weather_list.MainActivity;
+import com.example.android.sunshine.utilities.InjectorUtils;
+import com.example.android.sunshine.utils.PollingCheck;
+import com.example.android.sunshine.utils.WeatherTestData;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.concurrent.Callable;
+
+import static junit.framework.Assert.assertTrue;
+
+/**
+ * Launches MainActivity with forecasts in the database and fails when the first frame with
+ * forecasts takes longer than the budget. The test process is already running when the activity
+ * starts, so the budget covers activity creation to first frame rather than process start.
+ */
+@RunWith(AndroidJUnit4.class)
+public class StartupBudgetTest {
+
+    private static final String TAG = StartupBudgetTest.class.getSimpleName();
+
+    /* Generous for a slow emulator; a regression shows up as a jump well past this */
+    private static final long BUDGET_MILLIS = 1500;
+    private static final long TIMEOUT_MILLIS = 10000;
+
+    @Rule
+    public final ActivityTestRule<MainActivity> activityRule =
+            new ActivityTestRule<>(MainActivity.class, true, false);
+
+    private final StartupTimings timings = StartupTimings.getInstance();
+
+    @Before
+    public void before() {
+        Context context = InstrumentationRegistry.getTargetContext();
+        new WeatherBulkWriter(InjectorUtils.provideSunshineDatabase(context))
+                .upsert(WeatherTestData.createForecasts(14, 36));
+        timings.reset();
+    }
+
+    @Test
+    public void firstFrameWithinBudget() throws Exception {
+        activityRule.launchActivity(null);
+
+        PollingCheck.check("No frame with forecasts was drawn", TIMEOUT_MILLIS,
+                new Callable<Boolean>() {
+                    @Override
+                    public Boolean call() {
+                        return timings.getMillisSinceProcessStart(
+                                StartupTimings.MILESTONE_FIRST_FRAME) >= 0;
+                    }
+                });
+
+        long millis = timings.getMillisBetween(StartupTimings.MILESTONE_ACTIVITY_CREATE,
+                StartupTimings.MILESTONE_FIRST_FRAME);
+        Log.i(TAG, timings.summarize());
+        assertTrue("First frame took " + millis + " ms, the budget is " + BUDGET_MILLIS + " ms: "
+                + timings.summarize(), millis <= BUDGET_MILLIS);
+
+        /* The milestones arrive in order */
+        long previous = 0;
+        for (int milestone = StartupTimings.MILESTONE_FIRST_EMISSION;
+             milestone <= StartupTimings.MILESTONE_FIRST_FRAME; milestone++) {
+            long since = timings.getMillisBetween(StartupTimings.MILESTONE_ACTIVITY_CREATE,
+                    milestone);
+            assertTrue(since >= previous);
+            previous = since;
+        }
+    }
+}
@@ -0,0 +1,204 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.perf;
+
+import android.arch.lifecycle.MutableLiveData;
+import android.arch.lifecycle.Observer;
+import android.arch.persistence.room.Room;
+import android.content.Context;
+import android.os.SystemClock;
+import android.support.annotation.Nullable;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+import android.util.Log;
+
+import com.example.android.sunshine.data.database.ForecastSnapshot;
+import com.example.android.sunshine.data.database.SunshineDatabase;
+import com.example.android.sunshine.data.network.ForecastResponseCache;
+import com.example.android.sunshine.utilities.Clock;
+import com.example.android.sunshine.utilities.Lazy;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.File;
+import java.net.URL;
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static junit.framework.Assert.assertTrue;
+
+/**
+ * Measures how long the main thread is busy getting the data layer ready, the way MainActivity
+ * used to do it, building the database, the response cache and the snapshot in onCreate, and the
+ * way SunshineApplication does it now, building them in a {@link Lazy} on a background thread
+ * while the main thread only waits for the ready signal.
+ * <p>
+ * The app's own singletons already exist in the test process, so fresh instances of the same
+ * classes are built on every iteration.
+ */
+@RunWith(AndroidJUnit4.class)
+public class StartupMainThreadBenchmark {
+
+    private static final String TAG = StartupMainThreadBenchmark.class.getSimpleName();
+
+    private static final String DATABASE_NAME = "startup-benchmark.db";
+    private static final int CACHED_RESPONSES = 20;
+    private static final int ITERATIONS = 15;
+
+    private final Context context = InstrumentationRegistry.getTargetContext();
+    private final ExecutorService background = Executors.newSingleThreadExecutor();
+    private File cacheDirectory;
+    private File snapshotFile;
+
+    @Before
+    public void before() throws Exception {
+        context.deleteDatabase(DATABASE_NAME);
+        cacheDirectory = new File(context.getCacheDir(), "startup-benchmark");
+        snapshotFile = new File(context.getFilesDir(), "startup-benchmark.snapshot");
+
+        /* A response cache with entries in it, which is scanned when it is built */
+        ForecastResponseCache cache =
+                new ForecastResponseCache(cacheDirectory, 1024 * 1024, Clock.SYSTEM);
+        for (int i = 0; i < CACHED_RESPONSES; i++) {
+            cache.put(new URL("https://example.com/forecast?q=" + i), "{\"list\":[]}",
+                    "max-age=3600", -1, null, null);
+        }
+    }
+
+    @After
+    public void after() {
+        background.shutdownNow();
+        context.deleteDatabase(DATABASE_NAME);
+        snapshotFile.delete();
+        File[] entries = cacheDirectory.listFiles();
+        if (entries != null) {
+            for (File entry : entries) entry.delete();
+        }
+        cacheDirectory.delete();
+    }
+
+    @Test
+    public void mainThreadTimeToReady() throws Exception {
+        long[] onMain = new long[ITERATIONS];
+        long[] inBackground = new long[ITERATIONS];
+
+        for (int i = 0; i < ITERATIONS; i++) {
+            onMain[i] = buildOnMain();
+            inBackground[i] = buildInBackground();
+        }
+        Arrays.sort(onMain);
+        Arrays.sort(inBackground);
+
+        Log.i(TAG, String.format("main thread busy until ready, median of %d: "
+                        + "built on main %.2f ms, built in background %.2f ms",
+                ITERATIONS, onMain[ITERATIONS / 2] / 1e6, inBackground[ITERATIONS / 2] / 1e6));
+        assertTrue(inBackground[ITERATIONS / 2] < onMain[ITERATIONS / 2]);
+    }
+
+    /**
+     * @return Nanoseconds the main thread spent building the graph itself
+     */
+    private long buildOnMain() {
+        final long[] busy = new long[1];
+        final Graph[] graph = new Graph[1];
+        InstrumentationRegistry.getInstrumentation().runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                long start = SystemClock.elapsedRealtimeNanos();
+                graph[0] = new Graph(context);
+                busy[0] = SystemClock.elapsedRealtimeNanos() - start;
+            }
+        });
+        graph[0].close();
+        return busy[0];
+    }
+
+    /**
+     * @return Nanoseconds the main thread spent starting the build and receiving the ready
+     * signal, not counting the time it was free while the graph was built
+     */
+    private long buildInBackground() throws InterruptedException {
+        final Lazy<Graph> lazyGraph = new Lazy<Graph>() {
+            @Override
+            protected Graph create(Context context) {
+                return new Graph(context);
+            }
+        };
+        final MutableLiveData<Boolean> ready = new MutableLiveData<>();
+        final CountDownLatch delivered = new CountDownLatch(1);
+        final long[] busy = new long[1];
+        final Observer<Boolean> observer = new Observer<Boolean>() {
+            @Override
+            public void onChanged(@Nullable Boolean isReady) {
+                long start = SystemClock.elapsedRealtimeNanos();
+                lazyGraph.get(context);
+                busy[0] += SystemClock.elapsedRealtimeNanos() - start;
+                delivered.countDown();
+            }
+        };
+
+        InstrumentationRegistry.getInstrumentation().runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                long start = SystemClock.elapsedRealtimeNanos();
+                background.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        lazyGraph.get(context);
+                        ready.postValue(true);
+                    }
+                });
+                ready.observeForever(observer);
+                busy[0] += SystemClock.elapsedRealtimeNanos() - start;
+            }
+        });
+        assertTrue(delivered.await(10, TimeUnit.SECONDS));
+
+        InstrumentationRegistry.getInstrumentation().runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                ready.removeObserver(observer);
+            }
+        });
+        lazyGraph.get(context).close();
+        return busy[0];
+    }
+
+    /**
+     * The parts of the data layer that are built before the first query
+     */
+    private class Graph {
+
+        final SunshineDatabase database;
+
+        Graph(Context context) {
+            database = Room.databaseBuilder(context, SunshineDatabase.class, DATABASE_NAME).build();
+            new ForecastResponseCache(cacheDirectory, 1024 * 1024, Clock.SYSTEM);
+            new ForecastSnapshot(snapshotFile);
+            database.getOpenHelper().getWritableDatabase();
+        }
+
+        void close() {
+            database.close();
+        }
+    }
+}
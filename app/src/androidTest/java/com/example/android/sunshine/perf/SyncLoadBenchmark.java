@@ -0,0 +1,160 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.perf;
+
+import android.arch.persistence.room.Room;
+import android.content.Context;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+import android.util.Log;
+
+import com.example.android.sunshine.AppExecutor;
+import com.example.android.sunshine.data.database.SunshineDatabase;
+import com.example.android.sunshine.data.database.WeatherBulkWriter;
+import com.example.android.sunshine.data.network.ForecastIngestQueue;
+import com.example.android.sunshine.data.network.ForecastResponseCache;
+import com.example.android.sunshine.data.network.HttpConnectionManager;
+import com.example.android.sunshine.data.network.NetworkUtils;
+import com.example.android.sunshine.data.network.sync.SyncTracer;
+import com.example.android.sunshine.utilities.Clock;
+import com.example.android.sunshine.utils.LocalWeatherServer;
+import com.example.android.sunshine.utils.SyncLoadGenerator;
+import com.example.android.sunshine.utils.WeatherTestData;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.File;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertTrue;
+
+/**
+ * Drives the real sync path, from the request to the database write, against a local stand-in
+ * weather server, and logs throughput, latency percentiles and heap growth. Forecasts are written
+ * to an in-memory database, so the app's own data is left alone.
+ */
+@RunWith(AndroidJUnit4.class)
+public class SyncLoadBenchmark {
+
+    private static final String TAG = SyncLoadBenchmark.class.getSimpleName();
+
+    private static final int DAYS = 14;
+    private static final long TIMEOUT_MILLIS = TimeUnit.MINUTES.toMillis(3);
+
+    private final Context context = InstrumentationRegistry.getTargetContext();
+
+    private LocalWeatherServer server;
+    private SunshineDatabase database;
+    private ForecastIngestQueue ingestQueue;
+    private File cacheDirectory;
+
+    @Before
+    public void before() throws Exception {
+        server = new LocalWeatherServer();
+        server.setResponse(WeatherTestData.createForecastJson(DAYS, 41), "\"forecast\"",
+                Collections.singletonMap("Cache-Control", "no-cache"));
+        NetworkUtils.setForecastBaseUrl(server.url("/weather").toString());
+        NetworkUtils.setConnectionManager(new HttpConnectionManager.Builder().build());
+
+        cacheDirectory = new File(context.getCacheDir(), "sync-load-responses");
+        NetworkUtils.setResponseCache(
+                new ForecastResponseCache(cacheDirectory, 256 * 1024, Clock.SYSTEM));
+
+        database = Room.inMemoryDatabaseBuilder(context, SunshineDatabase.class).build();
+        final WeatherBulkWriter writer = new WeatherBulkWriter(database);
+        AppExecutor executor = AppExecutor.getInstance();
+        ingestQueue = new ForecastIngestQueue(executor.getDiskIO(), 4, 2000);
+        ingestQueue.setWriter(new ForecastIngestQueue.Writer() {
+            @Override
+            public void write(List<ForecastIngestQueue.Batch> batches) {
+                for (ForecastIngestQueue.Batch batch : batches) {
+                    writer.upsert(batch.getForecasts());
+                    SyncTracer.Trace trace = batch.getTrace();
+                    if (trace != null) trace.finish();
+                }
+            }
+        });
+    }
+
+    @After
+    public void after() throws Exception {
+        NetworkUtils.setForecastBaseUrl(null);
+        NetworkUtils.setResponseCache(null);
+        server.shutdown();
+        database.close();
+        File[] files = cacheDirectory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        cacheDirectory.delete();
+    }
+
+    /**
+     * A forecast that changes every tenth request, over a slow network. Most syncs revalidate
+     * their cached response and get a 304.
+     */
+    @Test
+    public void steadyLoad() throws Exception {
+        server.setLatencyMillis(50);
+        server.setEtagChangeInterval(10);
+
+        SyncLoadGenerator.Report report = generator().run(5, 60, TIMEOUT_MILLIS);
+        log("steady", report);
+
+        assertEquals(0, report.getCancelled());
+        assertEquals(60, report.getFinished());
+        assertEquals(60, server.getRequestCount());
+        assertTrue("No response was revalidated", server.getNotModifiedCount() > 0);
+    }
+
+    /**
+     * A server failing a tenth of its requests. Failed requests are retried with backoff, so
+     * latency grows, but every sync still ends.
+     */
+    @Test
+    public void failingServer() throws Exception {
+        server.setLatencyMillis(20);
+        server.setErrorRate(0.1);
+
+        SyncLoadGenerator.Report report = generator().run(5, 40, TIMEOUT_MILLIS);
+        log("failing", report);
+
+        assertEquals(0, report.getCancelled());
+        assertEquals(40, report.getFinished());
+        assertTrue(server.getErrorCount() > 0);
+    }
+
+    private SyncLoadGenerator generator() {
+        return new SyncLoadGenerator(context, AppExecutor.getInstance(), ingestQueue);
+    }
+
+    private void log(String name, SyncLoadGenerator.Report report) {
+        Log.i(TAG, name + ": " + report + "; server: " + server.getRequestCount() + " requests, "
+                + server.getNotModifiedCount() + " not modified, " + server.getErrorCount()
+                + " errors, " + server.getAcceptedConnections() + " connections; queue: "
+                + ingestQueue.getConflatedCount() + " conflated, "
+                + ingestQueue.getDroppedCount() + " dropped, "
+                + ingestQueue.getWriteCount() + " writes");
+    }
+}
@@ -0,0 +1,108 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.perf;
+
+import android.arch.persistence.room.Room;
+import android.content.Context;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+import android.util.Log;
+
+import com.example.android.sunshine.data.database.SunshineDatabase;
+import com.example.android.sunshine.data.database.WeatherBulkWriter;
+import com.example.android.sunshine.data.network.sync.SyncRecorder;
+import com.example.android.sunshine.utils.SyncReplayer;
+import com.example.android.sunshine.utils.WeatherTestData;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.File;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+import static junit.framework.Assert.assertEquals;
+
+/**
+ * Replays a recording of sync responses into an in-memory database and logs the timings of every
+ * stage. The recording the app keeps when record_sync_payloads is on is used if there is one, pull
+ * it from another device with adb to replay a slow sync from the field. Otherwise a synthetic
+ * recording is made, where the forecast changes every fifth response.
+ */
+@RunWith(AndroidJUnit4.class)
+public class SyncReplayBenchmark {
+
+    private static final String TAG = SyncReplayBenchmark.class.getSimpleName();
+
+    private static final String RECORDING_FILE_NAME = "sync-recording.log";
+    private static final int SYNTHETIC_RECORDS = 50;
+    private static final int DAYS = 14;
+
+    private final Context context = InstrumentationRegistry.getTargetContext();
+
+    private SunshineDatabase database;
+    private File synthetic;
+
+    @Before
+    public void before() {
+        database = Room.inMemoryDatabaseBuilder(context, SunshineDatabase.class).build();
+        synthetic = new File(context.getCacheDir(), "sync-replay-benchmark.log");
+        synthetic.delete();
+    }
+
+    @After
+    public void after() {
+        database.close();
+        synthetic.delete();
+    }
+
+    @Test
+    public void replayRecording() throws Exception {
+        File recording = new File(context.getFilesDir(), RECORDING_FILE_NAME);
+        if (!recording.exists() || recording.length() == 0) {
+            recording = recordSynthetic();
+        }
+        List<SyncRecorder.Record> records = SyncRecorder.read(recording);
+
+        // A first pass warms up the parser and the database
+        new SyncReplayer(new WeatherBulkWriter(database)).replay(records);
+        SyncReplayer.Result result = new SyncReplayer(new WeatherBulkWriter(database))
+                .replay(records);
+        Log.i(TAG, recording.getName() + ": " + result.summarize());
+
+        assertEquals(records.size(), result.getRecords());
+    }
+
+    private File recordSynthetic() {
+        // Written on this thread, so the recording is complete once the loop is done
+        SyncRecorder recorder = new SyncRecorder(new Executor() {
+            @Override
+            public void execute(Runnable command) {
+                command.run();
+            }
+        });
+        recorder.setFile(synthetic, Long.MAX_VALUE);
+        long receivedAt = System.currentTimeMillis();
+        for (int i = 0; i < SYNTHETIC_RECORDS; i++) {
+            String body = WeatherTestData.createForecastJson(DAYS, i / 5);
+            recorder.record("http://localhost/weather", receivedAt + i * 60000L, 20000000L, body);
+        }
+        recorder.setFile(null, 0);
+        return synthetic;
+    }
+}
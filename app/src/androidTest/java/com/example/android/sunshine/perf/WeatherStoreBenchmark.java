@@ -0,0 +1,149 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.perf;
+
+import android.arch.persistence.room.Room;
+import android.content.Context;
+import android.os.SystemClock;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+import android.util.Log;
+
+import com.example.android.sunshine.AppExecutor;
+import com.example.android.sunshine.data.database.HistoryRetentionPolicy;
+import com.example.android.sunshine.data.database.LogWeatherStore;
+import com.example.android.sunshine.data.database.RoomWeatherStore;
+import com.example.android.sunshine.data.database.SunshineDatabase;
+import com.example.android.sunshine.data.database.WeatherEntry;
+import com.example.android.sunshine.data.database.WeatherStore;
+import com.example.android.sunshine.utilities.SunshineDateUtils;
+import com.example.android.sunshine.utils.WeatherTestData;
+
+import org.junit.After;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.File;
+import java.util.Arrays;
+
+import static junit.framework.Assert.assertEquals;
+
+/**
+ * Compares the ingest and range read throughput of the two {@link WeatherStore} backends. Both
+ * write to files, so every commit is as durable as it is in the app. Each sync writes two weeks
+ * in one transaction, first into an empty store, then again with a tenth of the days changed,
+ * and the reads are two-week windows over the whole store.
+ */
+@RunWith(AndroidJUnit4.class)
+public class WeatherStoreBenchmark {
+
+    private static final String TAG = WeatherStoreBenchmark.class.getSimpleName();
+
+    private static final String DATABASE_NAME = "weather-store-benchmark.db";
+    private static final String LOG_DIRECTORY = "weather-store-benchmark";
+
+    private static final int DAYS_PER_SYNC = 14;
+    private static final int READS = 2000;
+
+    private final Context context = InstrumentationRegistry.getTargetContext();
+    private final long today = SunshineDateUtils.getNormalizedUtcMsForToday();
+
+    private SunshineDatabase database;
+
+    @After
+    public void after() {
+        if (database != null) database.close();
+        context.deleteDatabase(DATABASE_NAME);
+        deleteLog();
+    }
+
+    @Test
+    public void thousandDays() throws Exception {
+        benchmark(1000);
+    }
+
+    @Test
+    public void hundredThousandDays() throws Exception {
+        benchmark(100000);
+    }
+
+    private void benchmark(int days) throws Exception {
+        context.deleteDatabase(DATABASE_NAME);
+        database = Room.databaseBuilder(context, SunshineDatabase.class, DATABASE_NAME).build();
+        String room = run("room", new RoomWeatherStore(database, HistoryRetentionPolicy.DEFAULT),
+                days);
+        database.close();
+        database = null;
+
+        deleteLog();
+        String log = run("log", LogWeatherStore.open(new File(context.getFilesDir(), LOG_DIRECTORY),
+                1024 * 1024, AppExecutor.getInstance().getDiskIO()), days);
+
+        Log.i(TAG, days + " days, " + room + "; " + log);
+    }
+
+    private String run(String name, WeatherStore store, int days) {
+        WeatherEntry[] first = WeatherTestData.createForecasts(today, days, 1);
+        WeatherEntry[] second = Arrays.copyOf(first, days);
+        WeatherEntry[] changed = WeatherTestData.createForecasts(today, days, 2);
+        for (int i = 0; i < days; i += 10) {
+            second[i] = changed[i];
+        }
+
+        long firstNanos = ingest(store, first);
+        long secondNanos = ingest(store, second);
+        assertEquals(days, store.count());
+
+        long start = SystemClock.elapsedRealtimeNanos();
+        int read = 0;
+        for (int i = 0; i < READS; i++) {
+            long from = today + (long) (i * 7919 % days) * SunshineDateUtils.DAY_IN_MILLIS;
+            read += store.getWeatherBetween(from,
+                    from + (DAYS_PER_SYNC - 1) * SunshineDateUtils.DAY_IN_MILLIS).size();
+        }
+        long readNanos = SystemClock.elapsedRealtimeNanos() - start;
+
+        return String.format("%s: first sync %.0f days/s, re-sync %.0f days/s, reads %.0f days/s",
+                name, perSecond(days, firstNanos), perSecond(days, secondNanos),
+                perSecond(read, readNanos));
+    }
+
+    /**
+     * @return Time spent writing the days, one transaction per sync, in nanoseconds
+     */
+    private static long ingest(WeatherStore store, WeatherEntry[] days) {
+        long start = SystemClock.elapsedRealtimeNanos();
+        for (int from = 0; from < days.length; from += DAYS_PER_SYNC) {
+            store.upsert(Arrays.copyOfRange(days, from, Math.min(days.length, from + DAYS_PER_SYNC)));
+        }
+        return SystemClock.elapsedRealtimeNanos() - start;
+    }
+
+    private static double perSecond(int count, long nanos) {
+        return count * 1e9 / Math.max(1, nanos);
+    }
+
+    private void deleteLog() {
+        File directory = new File(context.getFilesDir(), LOG_DIRECTORY);
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        directory.delete();
+    }
+}
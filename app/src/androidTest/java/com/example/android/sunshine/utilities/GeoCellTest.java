@@ -0,0 +1,74 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.utilities;
+
+import android.support.test.runner.AndroidJUnit4;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertTrue;
+import static junit.framework.Assert.fail;
+
+@RunWith(AndroidJUnit4.class)
+public class GeoCellTest {
+
+    @Test
+    public void testEncodesKnownCells() {
+        assertEquals("u4pruydqqvj", GeoCell.encode(57.64911, 10.40744, 11));
+        assertEquals("9q9hv", GeoCell.encode(37.4220, -122.0841, 5));
+        assertEquals("s0000", GeoCell.encode(0, 0, 5));
+    }
+
+    @Test
+    public void testCenterIsInsideItsCell() {
+        String cell = GeoCell.encode(-33.8688, 151.2093, 6);
+        double[] center = GeoCell.center(cell);
+
+        assertEquals(cell, GeoCell.encode(center[0], center[1], 6));
+        // A 6 character cell is about 0.0055 degrees high and 0.011 wide
+        assertEquals(-33.8688, center[0], 0.0055);
+        assertEquals(151.2093, center[1], 0.011);
+    }
+
+    @Test
+    public void testNearbyPointsShareCell() {
+        // About 20 m apart
+        assertEquals(GeoCell.encode(37.4220, -122.0841, 5),
+                GeoCell.encode(37.4222, -122.0843, 5));
+        // About 5 km apart
+        assertFalse(GeoCell.encode(37.4220, -122.0841, 6)
+                .equals(GeoCell.encode(37.4419, -122.1430, 6)));
+        assertTrue(GeoCell.encode(37.4220, -122.0841, 7)
+                .startsWith(GeoCell.encode(37.4220, -122.0841, 4)));
+    }
+
+    @Test
+    public void testRejectsBadInput() {
+        try {
+            GeoCell.encode(0, 0, 0);
+            fail("Precision 0 was accepted");
+        } catch (IllegalArgumentException expected) {
+        }
+        try {
+            GeoCell.center("9qa");
+            fail("A hash with an 'a' was accepted");
+        } catch (IllegalArgumentException expected) {
+        }
+    }
+}
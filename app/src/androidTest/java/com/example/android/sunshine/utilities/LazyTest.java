@@ -0,0 +1,147 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.utilities;
+
+import android.content.Context;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertSame;
+import static junit.framework.Assert.assertTrue;
+import static junit.framework.Assert.fail;
+
+@RunWith(AndroidJUnit4.class)
+public class LazyTest {
+
+    private static final int THREADS = 8;
+
+    private final Context context = InstrumentationRegistry.getTargetContext();
+
+    @Test
+    public void testCreatesOnFirstUse() {
+        CountingLazy lazy = new CountingLazy(0);
+        assertFalse(lazy.isCreated());
+
+        Object first = lazy.get(context);
+        assertTrue(lazy.isCreated());
+        assertSame(first, lazy.get(context));
+        assertEquals(1, lazy.creations.get());
+    }
+
+    @Test
+    public void testCreatesOnceUnderContention() throws Exception {
+        final CountingLazy lazy = new CountingLazy(50);
+        final CountDownLatch start = new CountDownLatch(1);
+        final Object[] results = new Object[THREADS];
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < THREADS; i++) {
+            final int index = i;
+            Thread thread = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        start.await();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                    results[index] = lazy.get(context);
+                }
+            });
+            thread.start();
+            threads.add(thread);
+        }
+
+        start.countDown();
+        for (Thread thread : threads) {
+            thread.join(TimeUnit.SECONDS.toMillis(10));
+        }
+
+        assertEquals(1, lazy.creations.get());
+        for (Object result : results) {
+            assertSame(results[0], result);
+        }
+    }
+
+    @Test
+    public void testWaitersSeeTheFailure() throws Exception {
+        final CountDownLatch creating = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final Lazy<Object> lazy = new Lazy<Object>() {
+            @Override
+            protected Object create(Context context) {
+                creating.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException ignored) {
+                }
+                throw new IllegalArgumentException("broken");
+            }
+        };
+
+        Thread creator = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    lazy.get(context);
+                } catch (IllegalArgumentException expected) {
+                }
+            }
+        });
+        creator.start();
+        assertTrue(creating.await(10, TimeUnit.SECONDS));
+        release.countDown();
+        creator.join(TimeUnit.SECONDS.toMillis(10));
+
+        try {
+            lazy.get(context);
+            fail("A failed creation must not hand out null");
+        } catch (IllegalStateException expected) {
+            assertTrue(expected.getCause() instanceof IllegalArgumentException);
+        }
+        assertFalse(lazy.isCreated());
+    }
+
+    private static class CountingLazy extends Lazy<Object> {
+
+        final AtomicInteger creations = new AtomicInteger();
+        private final long delayMillis;
+
+        CountingLazy(long delayMillis) {
+            this.delayMillis = delayMillis;
+        }
+
+        @Override
+        protected Object create(Context context) {
+            creations.incrementAndGet();
+            try {
+                Thread.sleep(delayMillis);
+            } catch (InterruptedException ignored) {
+            }
+            return new Object();
+        }
+    }
+}
@@ -0,0 +1,47 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.utils;
+
+import com.example.android.sunshine.utilities.Clock;
+
+/**
+ * A {@link Clock} that only moves when the test advances it.
+ */
+public class FakeClock implements Clock {
+
+    private long now;
+
+    public FakeClock(long now) {
+        this.now = now;
+    }
+
+    @Override
+    public synchronized long elapsedRealtime() {
+        return now;
+    }
+
+    /**
+     * The fake wall clock moves together with the elapsed time
+     */
+    @Override
+    public synchronized long currentTimeMillis() {
+        return now;
+    }
+
+    public synchronized void advance(long millis) {
+        now += millis;
+    }
+}
@@ -0,0 +1,88 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.utils;
+
+import android.content.Context;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.GeneralSecurityException;
+import java.security.KeyStore;
+import java.security.cert.Certificate;
+
+import javax.net.ssl.KeyManagerFactory;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.TrustManagerFactory;
+
+/**
+ * TLS setup for the {@link LocalWeatherServer}. The test APK bundles a self-signed certificate
+ * for 127.0.0.1 in its assets; the server presents it and clients trust only it.
+ */
+public final class LocalTls {
+
+    private static final String KEY_STORE_ASSET = "localhost.p12";
+    private static final String KEY_ALIAS = "local";
+    private static final char[] PASSWORD = "sunshine".toCharArray();
+
+    private LocalTls() {
+    }
+
+    /**
+     * @param testContext The test APK's context, which holds the certificate asset
+     */
+    public static SSLContext serverContext(Context testContext)
+            throws IOException, GeneralSecurityException {
+        KeyManagerFactory keyManagers =
+                KeyManagerFactory.getInstance(KeyManagerFactory.getDefaultAlgorithm());
+        keyManagers.init(loadKeyStore(testContext), PASSWORD);
+
+        SSLContext context = SSLContext.getInstance("TLS");
+        context.init(keyManagers.getKeyManagers(), null, null);
+        return context;
+    }
+
+    /**
+     * @param testContext The test APK's context, which holds the certificate asset
+     * @return A context whose socket factory trusts the local server's certificate
+     */
+    public static SSLContext clientContext(Context testContext)
+            throws IOException, GeneralSecurityException {
+        Certificate certificate = loadKeyStore(testContext).getCertificate(KEY_ALIAS);
+        KeyStore trusted = KeyStore.getInstance(KeyStore.getDefaultType());
+        trusted.load(null, null);
+        trusted.setCertificateEntry(KEY_ALIAS, certificate);
+
+        TrustManagerFactory trustManagers =
+                TrustManagerFactory.getInstance(TrustManagerFactory.getDefaultAlgorithm());
+        trustManagers.init(trusted);
+
+        SSLContext context = SSLContext.getInstance("TLS");
+        context.init(null, trustManagers.getTrustManagers(), null);
+        return context;
+    }
+
+    private static KeyStore loadKeyStore(Context testContext)
+            throws IOException, GeneralSecurityException {
+        KeyStore keyStore = KeyStore.getInstance("PKCS12");
+        InputStream in = testContext.getAssets().open(KEY_STORE_ASSET);
+        try {
+            keyStore.load(in, PASSWORD);
+        } finally {
+            in.close();
+        }
+        return keyStore;
+    }
+}
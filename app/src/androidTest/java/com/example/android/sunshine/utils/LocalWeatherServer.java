@@ -0,0 +1,285 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.utils;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.net.URL;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.net.ssl.SSLContext;
+
+/**
+ * A small HTTP/1.1 server on the loopback interface that stands in for the weather server in
+ * tests. It serves one configurable response to every GET, answers conditional requests with
+ * 304 when the ETag matches, keeps connections alive unless asked not to, and counts the
+ * connections and requests it saw. With an SSLContext it serves HTTPS, and every accepted
+ * connection is a TLS handshake.
+ * <p>
+ * For load tests it can also delay every response, fail a share of the requests with a 500, and
+ * change its ETag every few requests as if the forecast had been updated.
+ */
+public class LocalWeatherServer {
+
+    private final ServerSocket serverSocket;
+    private final boolean tls;
+    private final ExecutorService connections = Executors.newCachedThreadPool();
+
+    private final AtomicInteger acceptedConnections = new AtomicInteger();
+    private final AtomicInteger requests = new AtomicInteger();
+    private final AtomicInteger notModified = new AtomicInteger();
+    private final AtomicInteger errors = new AtomicInteger();
+
+    private volatile byte[] body = "{}".getBytes();
+    private volatile String etag;
+    private volatile Map<String, String> headers = new LinkedHashMap<>();
+
+    private volatile long latencyMillis;
+    private volatile double errorRate;
+    private volatile int etagChangeInterval;
+    private final Random random = new Random(41);
+
+    public LocalWeatherServer() throws IOException {
+        this(null);
+    }
+
+    /**
+     * @param sslContext The server's TLS identity, or null to serve plain HTTP
+     */
+    public LocalWeatherServer(SSLContext sslContext) throws IOException {
+        InetAddress loopback = InetAddress.getByName("127.0.0.1");
+        tls = sslContext != null;
+        serverSocket = tls
+                ? sslContext.getServerSocketFactory().createServerSocket(0, 50, loopback)
+                : new ServerSocket(0, 50, loopback);
+        Thread acceptThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                acceptLoop();
+            }
+        }, "LocalWeatherServer");
+        acceptThread.setDaemon(true);
+        acceptThread.start();
+    }
+
+    /**
+     * @return A URL on this server, with the given path and query
+     */
+    public URL url(String pathAndQuery) throws IOException {
+        return new URL((tls ? "https" : "http") + "://127.0.0.1:" + serverSocket.getLocalPort()
+                + pathAndQuery);
+    }
+
+    /**
+     * Sets the response to every following request.
+     *
+     * @param body    The body
+     * @param etag    The ETag, or null to send none and never answer 304
+     * @param headers Extra headers, like Cache-Control
+     */
+    public void setResponse(String body, String etag, Map<String, String> headers) {
+        try {
+            this.body = body.getBytes("UTF-8");
+        } catch (IOException e) {
+            throw new AssertionError(e);
+        }
+        this.etag = etag;
+        this.headers = new LinkedHashMap<>(headers);
+    }
+
+    /**
+     * Delays every following response, like a slow network would
+     */
+    public void setLatencyMillis(long latencyMillis) {
+        this.latencyMillis = latencyMillis;
+    }
+
+    /**
+     * Answers a share of the following requests with 500 Internal Server Error.
+     *
+     * @param errorRate From 0 for none to 1 for all
+     */
+    public void setErrorRate(double errorRate) {
+        this.errorRate = errorRate;
+    }
+
+    /**
+     * Changes the ETag every given number of requests, so cached responses go out of date as if
+     * the forecast had been updated, or 0 to keep it.
+     */
+    public void setEtagChangeInterval(int requests) {
+        this.etagChangeInterval = requests;
+    }
+
+    public int getAcceptedConnections() {
+        return acceptedConnections.get();
+    }
+
+    public int getRequestCount() {
+        return requests.get();
+    }
+
+    public int getNotModifiedCount() {
+        return notModified.get();
+    }
+
+    public int getErrorCount() {
+        return errors.get();
+    }
+
+    public void shutdown() throws IOException {
+        serverSocket.close();
+        connections.shutdownNow();
+    }
+
+    private void acceptLoop() {
+        while (!serverSocket.isClosed()) {
+            try {
+                final Socket socket = serverSocket.accept();
+                acceptedConnections.incrementAndGet();
+                connections.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        serve(socket);
+                    }
+                });
+            } catch (SocketException e) {
+                /* The server socket was closed */
+                return;
+            } catch (IOException e) {
+                return;
+            }
+        }
+    }
+
+    private void serve(Socket socket) {
+        try {
+            InputStream in = new BufferedInputStream(socket.getInputStream());
+            OutputStream out = socket.getOutputStream();
+            while (true) {
+                String requestLine = readLine(in);
+                if (requestLine == null || requestLine.isEmpty()) return;
+
+                Map<String, String> requestHeaders = new LinkedHashMap<>();
+                String line;
+                while ((line = readLine(in)) != null && !line.isEmpty()) {
+                    int colon = line.indexOf(':');
+                    if (colon > 0) {
+                        requestHeaders.put(line.substring(0, colon).trim().toLowerCase(Locale.US),
+                                line.substring(colon + 1).trim());
+                    }
+                }
+                int request = requests.incrementAndGet();
+
+                boolean close = "close".equalsIgnoreCase(requestHeaders.get("connection"));
+                long delay = latencyMillis;
+                if (delay > 0) Thread.sleep(delay);
+                respond(out, requestHeaders, request, close);
+                if (close) return;
+            }
+        } catch (IOException e) {
+            /* The client went away */
+        } catch (InterruptedException e) {
+            /* The server was shut down */
+        } finally {
+            try {
+                socket.close();
+            } catch (IOException ignored) {
+            }
+        }
+    }
+
+    private void respond(OutputStream out, Map<String, String> requestHeaders, int request,
+                         boolean close) throws IOException {
+        if (fails()) {
+            errors.incrementAndGet();
+            out.write(("HTTP/1.1 500 Internal Server Error\r\nContent-Length: 0\r\n"
+                    + "Connection: " + (close ? "close" : "keep-alive") + "\r\n\r\n")
+                    .getBytes("US-ASCII"));
+            out.flush();
+            return;
+        }
+
+        String currentEtag = etag;
+        int interval = etagChangeInterval;
+        if (currentEtag != null && interval > 0) {
+            currentEtag = withVersion(currentEtag, (request - 1) / interval);
+        }
+        byte[] currentBody = body;
+        boolean matches = currentEtag != null
+                && currentEtag.equals(requestHeaders.get("if-none-match"));
+
+        StringBuilder response = new StringBuilder();
+        if (matches) {
+            notModified.incrementAndGet();
+            response.append("HTTP/1.1 304 Not Modified\r\n");
+        } else {
+            response.append("HTTP/1.1 200 OK\r\n");
+            response.append("Content-Type: application/json; charset=utf-8\r\n");
+        }
+        response.append("Content-Length: ").append(matches ? 0 : currentBody.length).append("\r\n");
+        if (currentEtag != null) response.append("ETag: ").append(currentEtag).append("\r\n");
+        for (Map.Entry<String, String> header : headers.entrySet()) {
+            response.append(header.getKey()).append(": ").append(header.getValue()).append("\r\n");
+        }
+        response.append("Connection: ").append(close ? "close" : "keep-alive").append("\r\n\r\n");
+
+        out.write(response.toString().getBytes("US-ASCII"));
+        if (!matches) out.write(currentBody);
+        out.flush();
+    }
+
+    /**
+     * @return The ETag with a version number added inside its quotes, if it has any
+     */
+    private static String withVersion(String etag, int version) {
+        if (etag.endsWith("\"")) {
+            return etag.substring(0, etag.length() - 1) + "-" + version + "\"";
+        }
+        return etag + "-" + version;
+    }
+
+    private boolean fails() {
+        double rate = errorRate;
+        if (rate <= 0) return false;
+        synchronized (random) {
+            return random.nextDouble() < rate;
+        }
+    }
+
+    private static String readLine(InputStream in) throws IOException {
+        ByteArrayOutputStream line = new ByteArrayOutputStream();
+        int b;
+        while ((b = in.read()) != -1) {
+            if (b == '\n') return line.toString("US-ASCII").trim();
+            line.write(b);
+        }
+        return line.size() == 0 ? null : line.toString("US-ASCII").trim();
+    }
+}
@@ -0,0 +1,223 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.utils;
+
+import android.content.Context;
+
+import com.example.android.sunshine.AppExecutor;
+import com.example.android.sunshine.data.network.ForecastIngestQueue;
+import com.example.android.sunshine.data.network.sync.SunshineSyncTask;
+import com.example.android.sunshine.data.network.sync.SyncJob;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Starts the app's own sync, {@link SunshineSyncTask}, at a target rate and reports throughput,
+ * latency percentiles and heap use. A sync's latency runs from its start until its
+ * {@link SyncJob} finishes, so it covers the request, the parse, the wait in the ingest queue and
+ * the write. Point NetworkUtils at a {@link LocalWeatherServer} first.
+ */
+public class SyncLoadGenerator {
+
+    private static final long HEAP_SAMPLE_MILLIS = 20;
+
+    private final Context context;
+    private final AppExecutor executor;
+    private final ForecastIngestQueue ingestQueue;
+
+    /**
+     * @param executor    Where the syncs run, the app's executor for the real thread limits
+     * @param ingestQueue Where the syncs hand their forecasts, with a writer set
+     */
+    public SyncLoadGenerator(Context context, AppExecutor executor,
+                             ForecastIngestQueue ingestQueue) {
+        this.context = context;
+        this.executor = executor;
+        this.ingestQueue = ingestQueue;
+    }
+
+    /**
+     * Starts syncs at a fixed rate and waits for them to finish. Syncs still running at the
+     * timeout are cancelled.
+     *
+     * @param syncsPerSecond The target rate
+     * @param syncs          How many syncs to start
+     * @param timeoutMillis  How long to wait for all of them, from the first start
+     */
+    public Report run(double syncsPerSecond, final int syncs, long timeoutMillis)
+            throws InterruptedException {
+        final List<Long> latencies = Collections.synchronizedList(new ArrayList<Long>());
+        final List<SyncJob> jobs = Collections.synchronizedList(new ArrayList<SyncJob>());
+        final CountDownLatch finished = new CountDownLatch(syncs);
+        final AtomicInteger started = new AtomicInteger();
+
+        final Runtime runtime = Runtime.getRuntime();
+        runtime.gc();
+        final long heapBefore = runtime.totalMemory() - runtime.freeMemory();
+        final AtomicLong peakHeap = new AtomicLong(heapBefore);
+
+        ScheduledExecutorService scheduler = Executors.newScheduledThreadPool(2);
+        scheduler.scheduleAtFixedRate(new Runnable() {
+            @Override
+            public void run() {
+                long used = runtime.totalMemory() - runtime.freeMemory();
+                long peak;
+                while (used > (peak = peakHeap.get()) && !peakHeap.compareAndSet(peak, used)) {
+                    // Another sample raced this one, compare again
+                }
+            }
+        }, 0, HEAP_SAMPLE_MILLIS, TimeUnit.MILLISECONDS);
+
+        long start = System.nanoTime();
+        scheduler.scheduleAtFixedRate(new Runnable() {
+            @Override
+            public void run() {
+                if (started.get() >= syncs) return;
+                started.incrementAndGet();
+                final long syncStart = System.nanoTime();
+                SyncJob job = SunshineSyncTask.syncWeather(context, executor, ingestQueue);
+                jobs.add(job);
+                job.setCallback(new SyncJob.Callback() {
+                    @Override
+                    public void onSyncJobFinished(SyncJob finishedJob) {
+                        latencies.add(System.nanoTime() - syncStart);
+                        finished.countDown();
+                    }
+                });
+            }
+        }, 0, (long) (TimeUnit.SECONDS.toNanos(1) / syncsPerSecond), TimeUnit.NANOSECONDS);
+
+        boolean allFinished = finished.await(timeoutMillis, TimeUnit.MILLISECONDS);
+        long elapsedNanos = System.nanoTime() - start;
+        scheduler.shutdownNow();
+
+        int cancelled = 0;
+        if (!allFinished) {
+            synchronized (jobs) {
+                for (SyncJob job : jobs) {
+                    if (job.isFinished()) continue;
+                    job.cancel();
+                    cancelled++;
+                }
+            }
+        }
+
+        long[] sorted;
+        synchronized (latencies) {
+            sorted = new long[latencies.size()];
+            for (int i = 0; i < sorted.length; i++) {
+                sorted[i] = latencies.get(i);
+            }
+        }
+        Arrays.sort(sorted);
+        runtime.gc();
+        long heapAfter = runtime.totalMemory() - runtime.freeMemory();
+        return new Report(started.get(), sorted, cancelled, elapsedNanos, heapBefore,
+                peakHeap.get(), heapAfter);
+    }
+
+    /**
+     * What a run measured
+     */
+    public static class Report {
+
+        private final int started;
+        private final long[] sortedLatencyNanos;
+        private final int cancelled;
+        private final long elapsedNanos;
+        private final long heapBeforeBytes;
+        private final long peakHeapBytes;
+        private final long heapAfterBytes;
+
+        Report(int started, long[] sortedLatencyNanos, int cancelled, long elapsedNanos,
+               long heapBeforeBytes, long peakHeapBytes, long heapAfterBytes) {
+            this.started = started;
+            this.sortedLatencyNanos = sortedLatencyNanos;
+            this.cancelled = cancelled;
+            this.elapsedNanos = elapsedNanos;
+            this.heapBeforeBytes = heapBeforeBytes;
+            this.peakHeapBytes = peakHeapBytes;
+            this.heapAfterBytes = heapAfterBytes;
+        }
+
+        public int getStarted() {
+            return started;
+        }
+
+        public int getFinished() {
+            return sortedLatencyNanos.length;
+        }
+
+        /**
+         * @return Syncs cancelled because they were still running at the timeout
+         */
+        public int getCancelled() {
+            return cancelled;
+        }
+
+        /**
+         * @return Finished syncs per second
+         */
+        public double getThroughput() {
+            return sortedLatencyNanos.length / (elapsedNanos / 1e9);
+        }
+
+        /**
+         * @param percentile Between 1 and 100
+         * @return The latency in milliseconds, using the nearest rank, or -1 if none finished
+         */
+        public double getLatencyMillis(int percentile) {
+            int count = sortedLatencyNanos.length;
+            if (count == 0) return -1;
+            int rank = (int) Math.ceil(percentile / 100.0 * count);
+            return sortedLatencyNanos[Math.min(count, Math.max(1, rank)) - 1] / 1e6;
+        }
+
+        /**
+         * @return How much the heap grew at its peak during the run, in bytes
+         */
+        public long getPeakHeapGrowthBytes() {
+            return peakHeapBytes - heapBeforeBytes;
+        }
+
+        /**
+         * @return How much the heap grew over the run after a collection, in bytes
+         */
+        public long getRetainedHeapGrowthBytes() {
+            return heapAfterBytes - heapBeforeBytes;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.US, "%d/%d syncs finished, %d cancelled, %.2f syncs/s, "
+                            + "latency p50 %.1f ms, p95 %.1f ms, p99 %.1f ms, "
+                            + "heap peak +%d KB, retained %+d KB",
+                    getFinished(), started, cancelled, getThroughput(),
+                    getLatencyMillis(50), getLatencyMillis(95), getLatencyMillis(99),
+                    getPeakHeapGrowthBytes() / 1024, getRetainedHeapGrowthBytes() / 1024);
+        }
+    }
+}
@@ -0,0 +1,161 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.utils;
+
+import com.example.android.sunshine.data.database.UpsertResult;
+import com.example.android.sunshine.data.database.WeatherBulkWriter;
+import com.example.android.sunshine.data.network.OpenWeatherJsonUtils;
+import com.example.android.sunshine.data.network.WeatherResponse;
+import com.example.android.sunshine.data.network.sync.SyncRecorder;
+
+import org.json.JSONException;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Feeds recorded sync responses back through the stages that follow the download: the parse,
+ * then the comparison with the stored rows and the write done by {@link WeatherBulkWriter}. The
+ * records are replayed back to back, without the recorded delays, and every stage is timed.
+ */
+public class SyncReplayer {
+
+    private final WeatherBulkWriter writer;
+
+    public SyncReplayer(WeatherBulkWriter writer) {
+        this.writer = writer;
+    }
+
+    public Result replay(List<SyncRecorder.Record> records) throws JSONException {
+        int count = records.size();
+        long[] downloadNanos = new long[count];
+        long[] parseNanos = new long[count];
+        long[] storeNanos = new long[count];
+        int stored = 0;
+        int changedRows = 0;
+        int unchangedRows = 0;
+        int errorResponses = 0;
+
+        long start = System.nanoTime();
+        for (int i = 0; i < count; i++) {
+            SyncRecorder.Record record = records.get(i);
+            downloadNanos[i] = record.getDownloadNanos();
+
+            long parseStart = System.nanoTime();
+            WeatherResponse response = OpenWeatherJsonUtils.parse(record.getBody());
+            long storeStart = System.nanoTime();
+            parseNanos[i] = storeStart - parseStart;
+
+            if (response == null || response.getWeatherForecast().length == 0) {
+                errorResponses++;
+                continue;
+            }
+            UpsertResult result = writer.upsert(response.getWeatherForecast());
+            storeNanos[stored++] = System.nanoTime() - storeStart;
+            changedRows += result.getInserted() + result.getUpdated();
+            unchangedRows += result.getUnchanged();
+        }
+        long elapsedNanos = System.nanoTime() - start;
+
+        return new Result(count, elapsedNanos, downloadNanos, parseNanos,
+                Arrays.copyOf(storeNanos, stored), changedRows, unchangedRows, errorResponses);
+    }
+
+    /**
+     * The timings of a replay
+     */
+    public static class Result {
+
+        private final int records;
+        private final long elapsedNanos;
+        private final long[] downloadNanos;
+        private final long[] parseNanos;
+        private final long[] storeNanos;
+        private final int changedRows;
+        private final int unchangedRows;
+        private final int errorResponses;
+
+        Result(int records, long elapsedNanos, long[] downloadNanos, long[] parseNanos,
+               long[] storeNanos, int changedRows, int unchangedRows, int errorResponses) {
+            this.records = records;
+            this.elapsedNanos = elapsedNanos;
+            this.downloadNanos = sorted(downloadNanos);
+            this.parseNanos = sorted(parseNanos);
+            this.storeNanos = sorted(storeNanos);
+            this.changedRows = changedRows;
+            this.unchangedRows = unchangedRows;
+            this.errorResponses = errorResponses;
+        }
+
+        public int getRecords() {
+            return records;
+        }
+
+        /**
+         * @return Records replayed per second
+         */
+        public double getThroughput() {
+            return records / (elapsedNanos / 1e9);
+        }
+
+        public int getChangedRows() {
+            return changedRows;
+        }
+
+        public int getUnchangedRows() {
+            return unchangedRows;
+        }
+
+        /**
+         * @return Records whose response was an error, so nothing was stored
+         */
+        public int getErrorResponses() {
+            return errorResponses;
+        }
+
+        /**
+         * @return One line per stage with its p50, p95 and p99 in milliseconds. The download is
+         * the time recorded on the device, the other stages are timed by the replay.
+         */
+        public String summarize() {
+            return String.format(Locale.US, "%d records, %.1f records/s, %d rows changed, "
+                            + "%d unchanged, %d error responses%n",
+                    records, getThroughput(), changedRows, unchangedRows, errorResponses)
+                    + stage("download", downloadNanos)
+                    + stage("parse", parseNanos)
+                    + stage("store", storeNanos);
+        }
+
+        private static String stage(String name, long[] sortedNanos) {
+            if (sortedNanos.length == 0) return "";
+            return String.format(Locale.US, "%-10s p50=%.2fms p95=%.2fms p99=%.2fms%n", name,
+                    percentile(sortedNanos, 50) / 1e6, percentile(sortedNanos, 95) / 1e6,
+                    percentile(sortedNanos, 99) / 1e6);
+        }
+
+        private static long percentile(long[] sortedNanos, int percentile) {
+            int rank = (int) Math.ceil(percentile / 100.0 * sortedNanos.length);
+            return sortedNanos[Math.min(sortedNanos.length, Math.max(1, rank)) - 1];
+        }
+
+        private static long[] sorted(long[] nanos) {
+            long[] copy = nanos.clone();
+            Arrays.sort(copy);
+            return copy;
+        }
+    }
+}
@@ -0,0 +1,101 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.utils;
+
+import com.example.android.sunshine.data.database.WeatherEntry;
+import com.example.android.sunshine.utilities.SunshineDateUtils;
+
+import java.util.Locale;
+import java.util.Random;
+
+/**
+ * Builds deterministic weather rows for the database and performance tests.
+ */
+public final class WeatherTestData {
+
+    private WeatherTestData() {
+    }
+
+    /**
+     * Creates one forecast per day, starting today.
+     *
+     * @param count Number of days
+     * @param seed  Seed for the generated values, the same seed always gives the same rows
+     * @return The forecasts, in date order
+     */
+    public static WeatherEntry[] createForecasts(int count, long seed) {
+        return createForecasts(SunshineDateUtils.getNormalizedUtcMsForToday(), count, seed);
+    }
+
+    /**
+     * Creates one forecast per day, starting at the given day.
+     *
+     * @param startDate First day, as a normalized UTC timestamp in milliseconds
+     * @param count     Number of days
+     * @param seed      Seed for the generated values
+     * @return The forecasts, in date order
+     */
+    public static WeatherEntry[] createForecasts(long startDate, int count, long seed) {
+        Random random = new Random(seed);
+        WeatherEntry[] entries = new WeatherEntry[count];
+        for (int i = 0; i < count; i++) {
+            double min = -10 + random.nextInt(200) / 10.0;
+            entries[i] = new WeatherEntry(
+                    200 + random.nextInt(600),
+                    startDate + i * SunshineDateUtils.DAY_IN_MILLIS,
+                    min,
+                    min + random.nextInt(150) / 10.0,
+                    random.nextInt(100),
+                    980 + random.nextInt(50),
+                    random.nextInt(300) / 10.0,
+                    random.nextInt(360));
+        }
+        return entries;
+    }
+
+    /**
+     * Creates a forecast response shaped like OpenWeatherMap's daily forecast, with the values of
+     * {@link #createForecasts(int, long)}. Each day adds about 300 bytes.
+     *
+     * @param count Number of days
+     * @param seed  Seed for the generated values
+     * @return The JSON
+     */
+    public static String createForecastJson(int count, long seed) {
+        WeatherEntry[] entries = createForecasts(count, seed);
+        StringBuilder json = new StringBuilder(128 + count * 320);
+        json.append("{\"city\":{\"id\":5375480,\"name\":\"Mountain View\",")
+                .append("\"coord\":{\"lat\":37.3861,\"lon\":-122.0839},\"country\":\"US\"},")
+                .append("\"cod\":\"200\",\"message\":0.0123,\"cnt\":").append(count)
+                .append(",\"list\":[");
+        for (int i = 0; i < count; i++) {
+            WeatherEntry entry = entries[i];
+            if (i > 0) json.append(',');
+            json.append(String.format(Locale.US, "{\"dt\":%d,"
+                            + "\"temp\":{\"day\":%.2f,\"min\":%.2f,\"max\":%.2f,"
+                            + "\"night\":%.2f,\"eve\":%.2f,\"morn\":%.2f},"
+                            + "\"pressure\":%.2f,\"humidity\":%d,"
+                            + "\"weather\":[{\"id\":%d,\"main\":\"Clear\","
+                            + "\"description\":\"sky is clear\",\"icon\":\"01d\"}],"
+                            + "\"speed\":%.2f,\"deg\":%d,\"clouds\":0}",
+                    entry.getDate() / 1000, entry.getMax(), entry.getMin(), entry.getMax(),
+                    entry.getMin(), entry.getMax(), entry.getMin(), entry.getPressure(),
+                    (int) entry.getHumidity(), entry.getWeatherIconId(), entry.getWind(),
+                    (int) entry.getDegrees()));
+        }
+        return json.append("]}").toString();
+    }
+}
@@ -0,0 +1,103 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine;
+
+import android.os.SystemClock;
+import android.util.Log;
+
+/**
+ * Measures a location switch, from the change of the location setting to the first frame that
+ * shows the new location's forecasts. The time until the forecasts were stored is recorded on
+ * the way, with whether they came from memory or had to wait for a sync. Times are
+ * {@link SystemClock#elapsedRealtime()} milliseconds.
+ * <p>
+ * A change made before the previous switch was drawn starts the measurement over.
+ */
+public class LocationSwitchTimings {
+
+    private static final String LOG_TAG = LocationSwitchTimings.class.getSimpleName();
+
+    private static LocationSwitchTimings sInstance;
+    private static final Object LOCK = new Object();
+
+    /* 0 while no switch is being measured */
+    private long changedAt;
+    /* 0 until the forecasts of the new location are stored */
+    private long storedAt;
+    private boolean storedFromMemory;
+
+    private long lastSwitchMillis = -1;
+
+    public static LocationSwitchTimings getInstance() {
+        if (sInstance == null) {
+            synchronized (LOCK) {
+                if (sInstance == null) {
+                    sInstance = new LocationSwitchTimings();
+                }
+            }
+        }
+        return sInstance;
+    }
+
+    /**
+     * Records that the location setting changed
+     */
+    public synchronized void markChanged() {
+        changedAt = SystemClock.elapsedRealtime();
+        storedAt = 0;
+    }
+
+    /**
+     * Records that the forecasts of the new location were stored, unless they were before
+     *
+     * @param fromMemory Whether they were kept in memory rather than synced after the change
+     */
+    public synchronized void markStored(boolean fromMemory) {
+        if (changedAt == 0 || storedAt != 0) return;
+        storedAt = SystemClock.elapsedRealtime();
+        storedFromMemory = fromMemory;
+    }
+
+    /**
+     * @return true if the forecasts of a new location are stored but not drawn yet
+     */
+    public synchronized boolean isAwaitingFrame() {
+        return storedAt != 0;
+    }
+
+    /**
+     * Records that the first frame with the new location's forecasts is drawn, and logs the
+     * switch
+     */
+    public synchronized void markDrawn() {
+        if (storedAt == 0) return;
+        long drawnAt = SystemClock.elapsedRealtime();
+        lastSwitchMillis = drawnAt - changedAt;
+        Log.i(LOG_TAG, "Location switch: forecasts stored after " + (storedAt - changedAt)
+                + " ms " + (storedFromMemory ? "from memory" : "by a sync")
+                + ", first row drawn after " + lastSwitchMillis + " ms");
+        changedAt = 0;
+        storedAt = 0;
+    }
+
+    /**
+     * @return Milliseconds from the last location change to its first frame, or -1 if no switch
+     * was drawn yet
+     */
+    public synchronized long getLastSwitchMillis() {
+        return lastSwitchMillis;
+    }
+}
@@ -0,0 +1,207 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine;
+
+import android.os.SystemClock;
+import android.support.annotation.Nullable;
+import android.support.annotation.VisibleForTesting;
+import android.util.Log;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Records when a launch reaches each step on the way from process start to the first forecast
+ * on screen. Every milestone is recorded once per process, in {@link SystemClock#elapsedRealtime()}
+ * milliseconds, from whichever thread reaches it.
+ * <p>
+ * When the first frame with forecasts is drawn, the launch is logged and appended to a local
+ * log file, which keeps the last {@link #MAX_LOG_LINES} launches.
+ */
+public class StartupTimings {
+
+    private static final String LOG_TAG = StartupTimings.class.getSimpleName();
+
+    public static final int MILESTONE_PROCESS_START = 0;
+    public static final int MILESTONE_ACTIVITY_CREATE = 1;
+    public static final int MILESTONE_DB_OPEN = 2;
+    public static final int MILESTONE_FIRST_QUERY = 3;
+    public static final int MILESTONE_FIRST_EMISSION = 4;
+    public static final int MILESTONE_FIRST_BIND = 5;
+    public static final int MILESTONE_FIRST_FRAME = 6;
+
+    private static final String[] MILESTONE_NAMES = {
+            "process start", "activity create", "db open", "first query", "first emission",
+            "first bind", "first frame"};
+
+    private static final int MAX_LOG_LINES = 50;
+
+    private static StartupTimings sInstance;
+    private static final Object LOCK = new Object();
+
+    /* 0 until the milestone is reached */
+    private final AtomicLongArray times = new AtomicLongArray(MILESTONE_NAMES.length);
+
+    private volatile File logFile;
+
+    public static StartupTimings getInstance() {
+        if (sInstance == null) {
+            synchronized (LOCK) {
+                if (sInstance == null) {
+                    sInstance = new StartupTimings();
+                }
+            }
+        }
+        return sInstance;
+    }
+
+    /**
+     * @param logFile Where launches are appended, or null to only log them
+     */
+    public void setLogFile(@Nullable File logFile) {
+        this.logFile = logFile;
+    }
+
+    /**
+     * Records when the process started, which happens before any of the app's code runs
+     *
+     * @param elapsedRealtimeMillis The start time, in {@link SystemClock#elapsedRealtime()} time
+     */
+    public void markProcessStart(long elapsedRealtimeMillis) {
+        times.compareAndSet(MILESTONE_PROCESS_START, 0, elapsedRealtimeMillis);
+    }
+
+    /**
+     * Records that a milestone was reached now, unless it was reached before
+     *
+     * @return true if this was the first time
+     */
+    public boolean mark(int milestone) {
+        if (times.get(milestone) != 0) return false;
+        if (!times.compareAndSet(milestone, 0, SystemClock.elapsedRealtime())) return false;
+
+        if (milestone == MILESTONE_FIRST_FRAME) {
+            final String line = summarize();
+            Log.i(LOG_TAG, line);
+            final File file = logFile;
+            if (file != null) {
+                AppExecutor.getInstance().getDiskIO().execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        appendToLog(file, line);
+                    }
+                });
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return Milliseconds from process start to the milestone, or -1 if either was not reached
+     */
+    public long getMillisSinceProcessStart(int milestone) {
+        return getMillisBetween(MILESTONE_PROCESS_START, milestone);
+    }
+
+    /**
+     * @return Milliseconds between two milestones, or -1 if either was not reached
+     */
+    public long getMillisBetween(int from, int to) {
+        long start = times.get(from);
+        long end = times.get(to);
+        if (start == 0 || end == 0) return -1;
+        return end - start;
+    }
+
+    /**
+     * @return One line with every milestone reached, in milliseconds since process start
+     */
+    public String summarize() {
+        StringBuilder summary = new StringBuilder();
+        for (int milestone = MILESTONE_ACTIVITY_CREATE; milestone < MILESTONE_NAMES.length;
+             milestone++) {
+            if (summary.length() > 0) summary.append(", ");
+            summary.append(MILESTONE_NAMES[milestone]).append(' ');
+            long millis = getMillisSinceProcessStart(milestone);
+            summary.append(millis < 0 ? "-" : "+" + millis + " ms");
+        }
+        return summary.toString();
+    }
+
+    /**
+     * Forgets every milestone after process start, so a test can measure a launch of its own
+     */
+    @VisibleForTesting
+    public void reset() {
+        for (int milestone = MILESTONE_ACTIVITY_CREATE; milestone < MILESTONE_NAMES.length;
+             milestone++) {
+            times.set(milestone, 0);
+        }
+    }
+
+    private static void appendToLog(File file, String line) {
+        List<String> lines = new ArrayList<>();
+        if (file.isFile()) {
+            BufferedReader reader = null;
+            try {
+                reader = new BufferedReader(new FileReader(file));
+                String existing;
+                while ((existing = reader.readLine()) != null) {
+                    lines.add(existing);
+                }
+            } catch (IOException e) {
+                Log.w(LOG_TAG, "Could not read the startup log", e);
+            } finally {
+                closeQuietly(reader);
+            }
+        }
+        String time = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss", Locale.US).format(new Date());
+        lines.add(time + " " + line);
+        List<String> kept = lines.subList(Math.max(0, lines.size() - MAX_LOG_LINES), lines.size());
+
+        Writer writer = null;
+        try {
+            writer = new FileWriter(file);
+            for (String keptLine : kept) {
+                writer.write(keptLine);
+                writer.write('\n');
+            }
+        } catch (IOException e) {
+            Log.w(LOG_TAG, "Could not write the startup log", e);
+        } finally {
+            closeQuietly(writer);
+        }
+    }
+
+    private static void closeQuietly(Closeable closeable) {
+        if (closeable == null) return;
+        try {
+            closeable.close();
+        } catch (IOException ignored) {
+        }
+    }
+}
@@ -0,0 +1,81 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine;
+
+import android.app.Application;
+import android.arch.lifecycle.LiveData;
+import android.arch.lifecycle.MutableLiveData;
+import android.os.Build;
+import android.os.Process;
+import android.os.SystemClock;
+import android.util.Log;
+
+import com.example.android.sunshine.utilities.InjectorUtils;
+
+import java.io.File;
+
+/**
+ * Builds the repository and everything it depends on off the main thread as soon as the process
+ * starts, then opens the database, so the first screen does not pay for either.
+ */
+public class SunshineApplication extends Application {
+
+    private static final String LOG_TAG = SunshineApplication.class.getSimpleName();
+
+    private static final String STARTUP_LOG_FILE_NAME = "startup-timings.log";
+
+    private final MutableLiveData<Boolean> mDependenciesReady = new MutableLiveData<>();
+
+    @Override
+    public void onCreate() {
+        super.onCreate();
+        StartupTimings startupTimings = StartupTimings.getInstance();
+        startupTimings.markProcessStart(Build.VERSION.SDK_INT >= Build.VERSION_CODES.N
+                ? Process.getStartElapsedRealtime() : SystemClock.elapsedRealtime());
+        startupTimings.setLogFile(new File(getFilesDir(), STARTUP_LOG_FILE_NAME));
+
+        AppExecutor.getInstance().getDiskIO().execute(new Runnable() {
+            @Override
+            public void run() {
+                boolean ready = false;
+                try {
+                    InjectorUtils.provideRepository(SunshineApplication.this);
+                    ready = true;
+                } catch (RuntimeException e) {
+                    Log.e(LOG_TAG, "Could not build the repository", e);
+                } finally {
+                    // Always release the screens waiting for it, even if building it failed
+                    mDependenciesReady.postValue(ready);
+                }
+                if (!ready) return;
+
+                // Run the open, and any migration, before the first query needs it
+                InjectorUtils.provideSunshineDatabase(SunshineApplication.this)
+                        .getOpenHelper().getWritableDatabase();
+                Log.d(LOG_TAG, "Database warmed up");
+            }
+        });
+    }
+
+    /**
+     * @return Becomes true once {@link InjectorUtils} can hand out the repository and its
+     * dependencies without building them on the calling thread, or false if building them
+     * failed, in which case they cannot be had at all
+     */
+    public LiveData<Boolean> getDependenciesReady() {
+        return mDependenciesReady;
+    }
+}
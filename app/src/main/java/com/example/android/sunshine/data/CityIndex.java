@@ -0,0 +1,271 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.data;
+
+import android.support.annotation.Nullable;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Searches the cities bundled with the app by the start of their name or of any word in it, so
+ * the location setting can suggest cities as the user types and resolve the chosen one to
+ * coordinates without a request.
+ * <p>
+ * The index is a sorted array of keys, one for every word a city name has, running from that
+ * word to the end of the name: "New York" is found under "new york" and "york". The keys that
+ * start with a prefix are next to each other, so a search is two binary searches and a scan of
+ * the matches. Case and accents are ignored. Matches are ranked by population.
+ */
+public class CityIndex {
+
+    private static final Comparator<City> BY_POPULATION = new Comparator<City>() {
+        @Override
+        public int compare(City first, City second) {
+            return first.population > second.population ? -1
+                    : (first.population == second.population ? 0 : 1);
+        }
+    };
+
+    private final City[] cities;
+    /* Sorted search keys, and the city each one belongs to */
+    private final String[] keys;
+    private final int[] keyCities;
+
+    public CityIndex(List<City> cities) {
+        this.cities = cities.toArray(new City[cities.size()]);
+
+        List<Key> keyList = new ArrayList<>();
+        for (int i = 0; i < this.cities.length; i++) {
+            String name = this.cities[i].normalizedName;
+            for (int start = 0; start < name.length(); start++) {
+                if (start == 0 || name.charAt(start - 1) == ' ') {
+                    keyList.add(new Key(name.substring(start), i));
+                }
+            }
+        }
+        Key[] sorted = keyList.toArray(new Key[keyList.size()]);
+        Arrays.sort(sorted);
+        keys = new String[sorted.length];
+        keyCities = new int[sorted.length];
+        for (int i = 0; i < sorted.length; i++) {
+            keys[i] = sorted[i].text;
+            keyCities[i] = sorted[i].city;
+        }
+    }
+
+    /**
+     * Reads cities from CSV lines of name, country code, latitude, longitude and population.
+     * Blank lines and lines starting with # are skipped.
+     */
+    public static CityIndex load(InputStream in) throws IOException {
+        List<City> cities = new ArrayList<>();
+        BufferedReader reader = new BufferedReader(new InputStreamReader(in, "UTF-8"));
+        try {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                line = line.trim();
+                if (line.isEmpty() || line.startsWith("#")) continue;
+                String[] fields = line.split(",");
+                if (fields.length != 5) throw new IOException("Malformed city: " + line);
+                try {
+                    cities.add(new City(fields[0].trim(), fields[1].trim(),
+                            Double.parseDouble(fields[2]), Double.parseDouble(fields[3]),
+                            Long.parseLong(fields[4].trim())));
+                } catch (NumberFormatException e) {
+                    throw new IOException("Malformed city: " + line, e);
+                }
+            }
+        } finally {
+            reader.close();
+        }
+        return new CityIndex(cities);
+    }
+
+    public int size() {
+        return cities.length;
+    }
+
+    /**
+     * @param query What the user typed so far. Anything after a comma is taken as the start of
+     *              a country code.
+     * @param limit Most cities returned
+     * @return The cities with a word starting with the query, most populous first
+     */
+    public List<City> search(String query, int limit) {
+        String[] parts = splitCountry(query);
+        String prefix = normalize(parts[0]);
+        if (prefix.isEmpty() || limit <= 0) return Collections.emptyList();
+        String countryPrefix = parts[1];
+
+        boolean[] seen = new boolean[cities.length];
+        List<City> matches = new ArrayList<>();
+        for (int i = firstKeyFrom(prefix); i < keys.length && keys[i].startsWith(prefix); i++) {
+            int city = keyCities[i];
+            if (seen[city]) continue;
+            seen[city] = true;
+            if (countryPrefix == null || cities[city].country.startsWith(countryPrefix)) {
+                matches.add(cities[city]);
+            }
+        }
+        Collections.sort(matches, BY_POPULATION);
+        return matches.size() > limit ? new ArrayList<>(matches.subList(0, limit)) : matches;
+    }
+
+    /**
+     * Finds the city a location setting names: the most populous city with exactly that name,
+     * in the country after the comma if there is one.
+     *
+     * @return The city, or null if none is bundled under the name
+     */
+    @Nullable
+    public City resolve(String location) {
+        String[] parts = splitCountry(location);
+        String name = normalize(parts[0]);
+        if (name.isEmpty()) return null;
+        String country = parts[1];
+
+        City best = null;
+        for (int i = firstKeyFrom(name); i < keys.length && keys[i].equals(name); i++) {
+            City city = cities[keyCities[i]];
+            if (!city.normalizedName.equals(name)) continue;
+            if (country != null && !city.country.equals(country)) continue;
+            if (best == null || city.population > best.population) best = city;
+        }
+        return best;
+    }
+
+    private int firstKeyFrom(String prefix) {
+        int index = Arrays.binarySearch(keys, prefix);
+        if (index < 0) return -index - 1;
+        // Equal keys may repeat, step back to the first one
+        while (index > 0 && keys[index - 1].equals(prefix)) index--;
+        return index;
+    }
+
+    /**
+     * @return The name part, and the country part upper-cased or null if there is no comma
+     */
+    private static String[] splitCountry(String location) {
+        int comma = location.indexOf(',');
+        if (comma < 0) return new String[]{location, null};
+        String country = location.substring(comma + 1).trim().toUpperCase(Locale.ROOT);
+        return new String[]{location.substring(0, comma), country};
+    }
+
+    /**
+     * Lower-cases a name and drops accents and punctuation, so "São Paulo" and "sao paulo" or
+     * "St. Louis" and "st louis" are the same key
+     */
+    static String normalize(String name) {
+        String decomposed = Normalizer.normalize(name, Normalizer.Form.NFD);
+        StringBuilder normalized = new StringBuilder(decomposed.length());
+        boolean space = true;
+        for (int i = 0; i < decomposed.length(); i++) {
+            char c = decomposed.charAt(i);
+            if (Character.getType(c) == Character.NON_SPACING_MARK) continue;
+            if (Character.isLetterOrDigit(c)) {
+                normalized.append(Character.toLowerCase(c));
+                space = false;
+            } else if (!space) {
+                normalized.append(' ');
+                space = true;
+            }
+        }
+        int length = normalized.length();
+        if (length > 0 && normalized.charAt(length - 1) == ' ') normalized.setLength(length - 1);
+        return normalized.toString();
+    }
+
+    /**
+     * A bundled city
+     */
+    public static class City {
+
+        private final String name;
+        private final String country;
+        private final double latitude;
+        private final double longitude;
+        private final long population;
+        private final String normalizedName;
+
+        public City(String name, String country, double latitude, double longitude,
+                    long population) {
+            this.name = name;
+            this.country = country.toUpperCase(Locale.ROOT);
+            this.latitude = latitude;
+            this.longitude = longitude;
+            this.population = population;
+            this.normalizedName = normalize(name);
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * @return The ISO 3166 country code
+         */
+        public String getCountry() {
+            return country;
+        }
+
+        public double getLatitude() {
+            return latitude;
+        }
+
+        public double getLongitude() {
+            return longitude;
+        }
+
+        public long getPopulation() {
+            return population;
+        }
+
+        /**
+         * @return The name and the country, as the location setting stores them
+         */
+        @Override
+        public String toString() {
+            return name + ", " + country;
+        }
+    }
+
+    private static class Key implements Comparable<Key> {
+
+        final String text;
+        final int city;
+
+        Key(String text, int city) {
+            this.text = text;
+            this.city = city;
+        }
+
+        @Override
+        public int compareTo(Key other) {
+            return text.compareTo(other.text);
+        }
+    }
+}
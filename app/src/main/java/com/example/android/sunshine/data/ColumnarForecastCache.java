@@ -0,0 +1,334 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.data;
+
+import android.support.annotation.Nullable;
+
+import com.example.android.sunshine.data.database.WeatherEntry;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The forecasts of recently synced locations kept in memory as columns: one array per value, indexed
+ * by day in date order, instead of one object per day. A day costs 36 bytes instead of a
+ * {@link WeatherEntry} of about 80 bytes plus its reference in a list, and reading it allocates
+ * nothing.
+ * <p>
+ * The columns of a location never change once published. Syncs merge their forecasts into new
+ * columns that replace the old ones, so readers hold a consistent {@link ForecastColumns} without
+ * locking. The measurements are kept as floats: the forecasts arrive with two decimals at most.
+ * Each location also keeps when it was last synced, for the sync state once it is stored.
+ * <p>
+ * Once more locations are kept than the cache holds, the least recently synced or read one is
+ * dropped.
+ */
+public class ColumnarForecastCache {
+
+    private static final Comparator<WeatherEntry> BY_DATE = new Comparator<WeatherEntry>() {
+        @Override
+        public int compare(WeatherEntry first, WeatherEntry second) {
+            return first.getDate() < second.getDate() ? -1
+                    : (first.getDate() == second.getDate() ? 0 : 1);
+        }
+    };
+
+    private final int maxLocations;
+    /* Location keys to their columns, least recently used first */
+    private final LinkedHashMap<String, ForecastColumns> locations;
+
+    /**
+     * Creates a cache keeping every location
+     */
+    public ColumnarForecastCache() {
+        this(Integer.MAX_VALUE);
+    }
+
+    /**
+     * @param maxLocations Locations kept before the least recently used one is dropped
+     */
+    public ColumnarForecastCache(final int maxLocations) {
+        this.maxLocations = maxLocations;
+        this.locations = new LinkedHashMap<String, ForecastColumns>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, ForecastColumns> eldest) {
+                return size() > ColumnarForecastCache.this.maxLocations;
+            }
+        };
+    }
+
+    /**
+     * @return The forecasts of a location, or null if none were synced
+     */
+    @Nullable
+    public synchronized ForecastColumns get(String locationKey) {
+        return locations.get(locationKey);
+    }
+
+    public synchronized int getLocationCount() {
+        return locations.size();
+    }
+
+    /**
+     * @return The keys of the locations kept, most recently used first
+     */
+    public synchronized List<String> getLocationKeys() {
+        List<String> keys = new ArrayList<>(locations.keySet());
+        Collections.reverse(keys);
+        return keys;
+    }
+
+    /**
+     * Merges the forecasts of a sync made now into a location, see
+     * {@link #apply(String, WeatherEntry[], long)}
+     */
+    public boolean apply(String locationKey, WeatherEntry[] forecasts) {
+        return apply(locationKey, forecasts, System.currentTimeMillis());
+    }
+
+    /**
+     * Merges the forecasts of a sync into a location: new days are added, stored days are
+     * replaced. If the same day is given more than once the last one wins. The columns are only
+     * copied if a value changed; the sync time is updated either way.
+     *
+     * @param syncedAtMillis When the forecasts were synced, in UNIX milliseconds
+     * @return true if the location changed
+     */
+    public boolean apply(String locationKey, WeatherEntry[] forecasts, long syncedAtMillis) {
+        if (forecasts.length == 0) return false;
+        // A stable sort keeps the input order for equal dates, so the last one can be picked
+        WeatherEntry[] sorted = Arrays.copyOf(forecasts, forecasts.length);
+        Arrays.sort(sorted, BY_DATE);
+
+        synchronized (this) {
+            ForecastColumns current = locations.get(locationKey);
+            if (current == null) current = ForecastColumns.EMPTY;
+            ForecastColumns merged = current.merge(sorted);
+            locations.put(locationKey, merged.syncedAt(syncedAtMillis));
+            return merged != current;
+        }
+    }
+
+    /**
+     * Drops the days before a date from every location, for when they were archived
+     */
+    public synchronized void evictBefore(long date) {
+        for (Map.Entry<String, ForecastColumns> location : locations.entrySet()) {
+            location.setValue(location.getValue().from(date));
+        }
+    }
+
+    /**
+     * The forecasts of one location, in date order. Never changes once built.
+     */
+    public static class ForecastColumns {
+
+        static final ForecastColumns EMPTY = new ForecastColumns(0, 0);
+
+        private final long syncedAtMillis;
+        private final int size;
+        private final long[] dates;
+        private final int[] weatherIconIds;
+        private final float[] min;
+        private final float[] max;
+        private final float[] humidity;
+        private final float[] pressure;
+        private final float[] wind;
+        private final float[] degrees;
+
+        ForecastColumns(int size, long syncedAtMillis) {
+            this.syncedAtMillis = syncedAtMillis;
+            this.size = size;
+            dates = new long[size];
+            weatherIconIds = new int[size];
+            min = new float[size];
+            max = new float[size];
+            humidity = new float[size];
+            pressure = new float[size];
+            wind = new float[size];
+            degrees = new float[size];
+        }
+
+        /**
+         * Shares the columns of another, which never change, with another sync time
+         */
+        private ForecastColumns(ForecastColumns columns, long syncedAtMillis) {
+            this.syncedAtMillis = syncedAtMillis;
+            size = columns.size;
+            dates = columns.dates;
+            weatherIconIds = columns.weatherIconIds;
+            min = columns.min;
+            max = columns.max;
+            humidity = columns.humidity;
+            pressure = columns.pressure;
+            wind = columns.wind;
+            degrees = columns.degrees;
+        }
+
+        /**
+         * @return When the location was last synced, in UNIX milliseconds
+         */
+        public long getSyncedAtMillis() {
+            return syncedAtMillis;
+        }
+
+        public int size() {
+            return size;
+        }
+
+        /**
+         * @return The index of a day, or a negative value if it is not stored
+         */
+        public int indexOf(long date) {
+            return Arrays.binarySearch(dates, 0, size, date);
+        }
+
+        public long getDate(int index) {
+            return dates[index];
+        }
+
+        public int getWeatherIconId(int index) {
+            return weatherIconIds[index];
+        }
+
+        public double getMin(int index) {
+            return min[index];
+        }
+
+        public double getMax(int index) {
+            return max[index];
+        }
+
+        public double getHumidity(int index) {
+            return humidity[index];
+        }
+
+        public double getPressure(int index) {
+            return pressure[index];
+        }
+
+        public double getWind(int index) {
+            return wind[index];
+        }
+
+        public double getDegrees(int index) {
+            return degrees[index];
+        }
+
+        /**
+         * @return A {@link WeatherEntry} of one day, for code that needs the object
+         */
+        public WeatherEntry toWeatherEntry(int index) {
+            return new WeatherEntry(weatherIconIds[index], dates[index], min[index], max[index],
+                    humidity[index], pressure[index], wind[index], degrees[index]);
+        }
+
+        /**
+         * @return These columns with the sorted forecasts merged in, or these columns if that
+         * changes nothing
+         */
+        ForecastColumns merge(WeatherEntry[] sorted) {
+            int inserted = 0;
+            boolean changed = false;
+            for (int i = 0; i < sorted.length; i++) {
+                if (i + 1 < sorted.length && sorted[i + 1].getDate() == sorted[i].getDate()) continue;
+                int index = indexOf(sorted[i].getDate());
+                if (index < 0) {
+                    inserted++;
+                } else if (!changed && !sameValues(index, sorted[i])) {
+                    changed = true;
+                }
+            }
+            if (inserted == 0 && !changed) return this;
+
+            ForecastColumns merged = new ForecastColumns(size + inserted, syncedAtMillis);
+            int from = 0;
+            int to = 0;
+            for (int i = 0; i < sorted.length; i++) {
+                WeatherEntry entry = sorted[i];
+                if (i + 1 < sorted.length && sorted[i + 1].getDate() == entry.getDate()) continue;
+                while (from < size && dates[from] < entry.getDate()) {
+                    copy(from++, merged, to++);
+                }
+                if (from < size && dates[from] == entry.getDate()) from++;
+                merged.set(to++, entry);
+            }
+            while (from < size) {
+                copy(from++, merged, to++);
+            }
+            return merged;
+        }
+
+        /**
+         * @return These columns without the days before a date
+         */
+        ForecastColumns from(long date) {
+            int index = indexOf(date);
+            int first = index >= 0 ? index : -index - 1;
+            if (first == 0) return this;
+            ForecastColumns kept = new ForecastColumns(size - first, syncedAtMillis);
+            for (int i = first; i < size; i++) {
+                copy(i, kept, i - first);
+            }
+            return kept;
+        }
+
+        /**
+         * @return These columns synced at the given time
+         */
+        ForecastColumns syncedAt(long syncedAtMillis) {
+            if (syncedAtMillis == this.syncedAtMillis) return this;
+            return new ForecastColumns(this, syncedAtMillis);
+        }
+
+        private boolean sameValues(int index, WeatherEntry entry) {
+            return weatherIconIds[index] == entry.getWeatherIconId()
+                    && min[index] == (float) entry.getMin()
+                    && max[index] == (float) entry.getMax()
+                    && humidity[index] == (float) entry.getHumidity()
+                    && pressure[index] == (float) entry.getPressure()
+                    && wind[index] == (float) entry.getWind()
+                    && degrees[index] == (float) entry.getDegrees();
+        }
+
+        private void copy(int index, ForecastColumns target, int targetIndex) {
+            target.dates[targetIndex] = dates[index];
+            target.weatherIconIds[targetIndex] = weatherIconIds[index];
+            target.min[targetIndex] = min[index];
+            target.max[targetIndex] = max[index];
+            target.humidity[targetIndex] = humidity[index];
+            target.pressure[targetIndex] = pressure[index];
+            target.wind[targetIndex] = wind[index];
+            target.degrees[targetIndex] = degrees[index];
+        }
+
+        private void set(int index, WeatherEntry entry) {
+            dates[index] = entry.getDate();
+            weatherIconIds[index] = entry.getWeatherIconId();
+            min[index] = (float) entry.getMin();
+            max[index] = (float) entry.getMax();
+            humidity[index] = (float) entry.getHumidity();
+            pressure[index] = (float) entry.getPressure();
+            wind[index] = (float) entry.getWind();
+            degrees[index] = (float) entry.getDegrees();
+        }
+    }
+}
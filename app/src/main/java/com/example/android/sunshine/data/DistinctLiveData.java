@@ -0,0 +1,93 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.data;
+
+import android.arch.lifecycle.LiveData;
+import android.arch.lifecycle.MediatorLiveData;
+import android.arch.lifecycle.Observer;
+import android.support.annotation.MainThread;
+import android.support.annotation.Nullable;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A {@link LiveData} that only emits values whose content differs from the last one emitted.
+ * A query that runs again and returns the same rows, like after a sync that changed nothing,
+ * then causes no work in the ViewModels and views observing it. Contents are compared by a
+ * {@link Fingerprint}, a hash of the rows, so no previous result has to be kept or walked.
+ */
+public class DistinctLiveData<T> extends MediatorLiveData<T> {
+
+    /**
+     * Hashes the content of a value
+     */
+    public interface Fingerprint<T> {
+        long of(T value);
+    }
+
+    private final Fingerprint<T> fingerprint;
+    private final AtomicInteger suppressedCount;
+
+    private boolean emitted;
+    private boolean lastWasNull;
+    private long lastFingerprint;
+
+    /**
+     * @param fingerprint     Hashes the content of the values
+     * @param suppressedCount Counts the values that were not emitted, may be shared
+     */
+    public DistinctLiveData(Fingerprint<T> fingerprint, AtomicInteger suppressedCount) {
+        this.fingerprint = fingerprint;
+        this.suppressedCount = suppressedCount;
+    }
+
+    /**
+     * Must be called on the main thread.
+     *
+     * @return The values of the source, without the ones that repeat the last value emitted
+     */
+    public static <T> DistinctLiveData<T> of(LiveData<T> source, Fingerprint<T> fingerprint,
+                                             AtomicInteger suppressedCount) {
+        final DistinctLiveData<T> distinct = new DistinctLiveData<>(fingerprint, suppressedCount);
+        distinct.addSource(source, new Observer<T>() {
+            @Override
+            public void onChanged(@Nullable T value) {
+                distinct.offer(value);
+            }
+        });
+        return distinct;
+    }
+
+    /**
+     * Emits a value, unless it has the same content as the last value emitted
+     *
+     * @return true if the value was emitted
+     */
+    @MainThread
+    public boolean offer(@Nullable T value) {
+        boolean isNull = value == null;
+        long valueFingerprint = isNull ? 0 : fingerprint.of(value);
+        if (emitted && isNull == lastWasNull && valueFingerprint == lastFingerprint) {
+            suppressedCount.incrementAndGet();
+            return false;
+        }
+        emitted = true;
+        lastWasNull = isNull;
+        lastFingerprint = valueFingerprint;
+        setValue(value);
+        return true;
+    }
+}
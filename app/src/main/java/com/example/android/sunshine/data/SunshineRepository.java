@@ -3,82 +3,513 @@ package com.example.android.sunshine.data;
 import android.arch.lifecycle.LiveData;
 import android.arch.lifecycle.Observer;
 import android.support.annotation.Nullable;
+import android.support.annotation.VisibleForTesting;
+import android.support.annotation.WorkerThread;
 
 import com.example.android.sunshine.AppExecutor;
+import com.example.android.sunshine.LocationSwitchTimings;
+import com.example.android.sunshine.StartupTimings;
+import com.example.android.sunshine.data.database.ArchiveDao;
+import com.example.android.sunshine.data.database.ContentHash;
+import com.example.android.sunshine.data.database.ForecastSnapshot;
 import com.example.android.sunshine.data.database.ListWeatherEntry;
-import com.example.android.sunshine.data.database.WeatherDao;
+import com.example.android.sunshine.data.database.SyncMetadata;
+import com.example.android.sunshine.data.database.SyncMetadataDao;
+import com.example.android.sunshine.data.database.UpsertResult;
 import com.example.android.sunshine.data.database.WeatherEntry;
+import com.example.android.sunshine.data.database.WeatherRollup;
+import com.example.android.sunshine.data.database.WeatherStore;
+import com.example.android.sunshine.data.network.ForecastIngestQueue;
 import com.example.android.sunshine.data.network.WeatherNetworkDataSource;
+import com.example.android.sunshine.data.network.sync.SyncTracer;
 import com.example.android.sunshine.utilities.SunshineDateUtils;
 
-import java.util.Date;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class SunshineRepository {
 
     private static final String LOG_TAG = SunshineRepository.class.getSimpleName();
 
+    /* Days on each side of an opened detail day that are loaded into the detail cache */
+    private static final int PREFETCH_DAYS = 2;
+
+    private static final DistinctLiveData.Fingerprint<List<ListWeatherEntry>> LIST_FINGERPRINT =
+            new DistinctLiveData.Fingerprint<List<ListWeatherEntry>>() {
+                @Override
+                public long of(List<ListWeatherEntry> rows) {
+                    return ContentHash.of(rows);
+                }
+            };
+
+    private static final DistinctLiveData.Fingerprint<WeatherEntry> DAY_FINGERPRINT =
+            new DistinctLiveData.Fingerprint<WeatherEntry>() {
+                @Override
+                public long of(WeatherEntry day) {
+                    return day.contentHash();
+                }
+            };
+
     private static SunshineRepository sunshineRepository;
     private static final Object LOCK = new Object();
 
     private final AppExecutor appExecutor;
     private final WeatherNetworkDataSource weatherNetworkDataSource;
-    private final WeatherDao weatherDao;
+    private final WeatherStore weatherStore;
+    private final ArchiveDao archiveDao;
+    private final SyncMetadataDao syncMetadataDao;
+    private final ForecastSnapshot forecastSnapshot;
+    private final WeatherDetailCache detailCache;
+    private final WeatherInvalidationTracker invalidationTracker;
+    /* The synced forecasts of the recent locations, kept up to date by the ingest */
+    private final ColumnarForecastCache columnarCache;
+    /* The location whose forecasts are stored and shown, null to store every batch */
+    private volatile String shownLocationKey;
+    /* Query results not delivered because they repeated the last one */
+    private final AtomicInteger suppressedEmissionCount = new AtomicInteger();
 
-    private SunshineRepository(final WeatherDao weatherDao,
-                               WeatherNetworkDataSource weatherNetworkDataSource,
-                               final AppExecutor appExecutor){
-        this.weatherDao = weatherDao;
+    /**
+     * @param ingestQueue Where the synced forecasts come from, the queue of the network data
+     *                    source outside of tests
+     */
+    @VisibleForTesting
+    SunshineRepository(final WeatherStore weatherStore,
+                       ArchiveDao archiveDao,
+                       SyncMetadataDao syncMetadataDao,
+                       ForecastSnapshot forecastSnapshot,
+                       WeatherDetailCache detailCache,
+                       ColumnarForecastCache columnarCache,
+                       @Nullable String shownLocationKey,
+                       ForecastIngestQueue ingestQueue,
+                       WeatherNetworkDataSource weatherNetworkDataSource,
+                       final AppExecutor appExecutor){
+        this.weatherStore = weatherStore;
+        this.archiveDao = archiveDao;
+        this.syncMetadataDao = syncMetadataDao;
+        this.forecastSnapshot = forecastSnapshot;
+        this.detailCache = detailCache;
+        this.columnarCache = columnarCache;
+        this.shownLocationKey = shownLocationKey;
         this.weatherNetworkDataSource = weatherNetworkDataSource;
         this.appExecutor = appExecutor;
+        this.invalidationTracker = new WeatherInvalidationTracker(appExecutor.getDiskIO());
 
-        LiveData<WeatherEntry[]> networkData =
-                weatherNetworkDataSource.getCurrentWeatherForecasts();
-        networkData.observeForever(new Observer<WeatherEntry[]>() {
+        ingestQueue.setWriter(new ForecastIngestQueue.Writer() {
             @Override
-            public void onChanged(@Nullable final WeatherEntry[] weatherEntries) {
-                appExecutor.getDiskIO().execute(new Runnable() {
-                    @Override
-                    public void run() {
-                        deleteOldData();
-
-                        weatherDao.bulkInsert(weatherEntries);
-                    }
-                });
+            public void write(List<ForecastIngestQueue.Batch> batches) {
+                storeForecasts(batches);
             }
         });
-
     }
 
-
-    public synchronized static SunshineRepository getInstance(WeatherDao weatherDao,
+    public synchronized static SunshineRepository getInstance(WeatherStore weatherStore,
+                                                 ArchiveDao archiveDao,
+                                                 SyncMetadataDao syncMetadataDao,
+                                                 ForecastSnapshot forecastSnapshot,
+                                                 WeatherDetailCache detailCache,
+                                                 ColumnarForecastCache columnarCache,
+                                                 @Nullable String shownLocationKey,
                                                  WeatherNetworkDataSource weatherNetworkDataSource,
                                                  AppExecutor appExecutor){
         if (sunshineRepository == null){
             synchronized (LOCK){
-                sunshineRepository = new SunshineRepository(weatherDao,weatherNetworkDataSource,appExecutor);
+                sunshineRepository = new SunshineRepository(weatherStore, archiveDao,
+                        syncMetadataDao, forecastSnapshot, detailCache, columnarCache,
+                        shownLocationKey, weatherNetworkDataSource.getIngestQueue(),
+                        weatherNetworkDataSource, appExecutor);
             }
         }
         return sunshineRepository ;
     }
 
+    /**
+     * Stores the forecasts taken from the ingest queue, on the disk IO thread. Archiving and the
+     * upsert of every batch commit as one transaction, rolled back if all their syncs were
+     * cancelled by then. The store holds the forecasts of one location, so the batches are
+     * written in the order they arrived and the latest wins. The sync metadata of that location
+     * is recorded in the same transaction; with a store outside the database it is written just
+     * before the store commits. Once it commits, only the queries over the dates
+     * that changed are run again, every batch is merged into the columnar cache of its
+     * location, and the user may be notified of the new weather before the traces finish.
+     * <p>
+     * Batches of other locations than the shown one, prefetched or synced before a switch, are
+     * only merged into the columnar cache.
+     */
+    private void storeForecasts(List<ForecastIngestQueue.Batch> queued) {
+        final List<ForecastIngestQueue.Batch> batches = new ArrayList<>(queued.size());
+        String shown = shownLocationKey;
+        for (ForecastIngestQueue.Batch batch : queued) {
+            if (shown == null || shown.equals(batch.getLocationKey())) {
+                batches.add(batch);
+            } else {
+                keepInMemory(batch);
+            }
+        }
+        if (batches.isEmpty()) return;
+
+        int count = 0;
+        for (ForecastIngestQueue.Batch batch : batches) {
+            count += batch.getForecasts().length;
+        }
+        final WeatherEntry[] weatherEntries = new WeatherEntry[count];
+        int offset = 0;
+        for (ForecastIngestQueue.Batch batch : batches) {
+            WeatherEntry[] forecasts = batch.getForecasts();
+            System.arraycopy(forecasts, 0, weatherEntries, offset, forecasts.length);
+            offset += forecasts.length;
+        }
+
+        final long[] spans = new long[3];
+        final UpsertResult[] result = new UpsertResult[1];
+        final int[] archived = new int[1];
+        final long today = SunshineDateUtils.getNormalizedUtcMsForToday();
+        final long syncedAtMillis = System.currentTimeMillis();
+        spans[0] = System.nanoTime();
+        try {
+            weatherStore.runInTransaction(new Runnable() {
+                @Override
+                public void run() {
+                    archived[0] = deleteOldData(today);
+                    spans[1] = System.nanoTime();
+                    result[0] = weatherStore.upsert(weatherEntries);
+                    // Roll back if every sync in the write was cancelled meanwhile
+                    if (allCancelled(batches)) {
+                        throw new CancellationException("Every sync in the write was cancelled");
+                    }
+                    ForecastIngestQueue.Batch latest = batches.get(batches.size() - 1);
+                    syncMetadataDao.recordSync(latest.getLocationKey(), syncedAtMillis,
+                            weatherStore, latest.getEtag(), latest.getLastModified());
+                }
+            });
+        } catch (CancellationException e) {
+            failTraces(batches, spans[0], e);
+            return;
+        } catch (RuntimeException e) {
+            failTraces(batches, spans[0], e);
+            throw e;
+        }
+        spans[2] = System.nanoTime();
+
+        for (ForecastIngestQueue.Batch batch : batches) {
+            columnarCache.apply(batch.getLocationKey(), batch.getForecasts(), syncedAtMillis);
+        }
+        publish(result[0], archived[0], 0, today);
+        LocationSwitchTimings.getInstance().markStored(false);
+        weatherNetworkDataSource.onForecastsStored(result[0]);
+        long notificationStart = System.nanoTime();
+        weatherNetworkDataSource.notifyNewWeather();
+        long notificationEnd = System.nanoTime();
+
+        // Every sync in the write waited for the same transaction and notification
+        for (ForecastIngestQueue.Batch batch : batches) {
+            SyncTracer.Trace trace = batch.getTrace();
+            if (trace == null) continue;
+            trace.record(SyncTracer.STAGE_DELETE, spans[0], spans[1]);
+            trace.record(SyncTracer.STAGE_INSERT, spans[1], spans[2]);
+            trace.record(SyncTracer.STAGE_NOTIFICATION, notificationStart, notificationEnd);
+            trace.finish();
+        }
+    }
+
+    /**
+     * Records the syncs of a write that was rolled back as failed
+     */
+    private static void failTraces(List<ForecastIngestQueue.Batch> batches, long start,
+                                   Exception error) {
+        for (ForecastIngestQueue.Batch batch : batches) {
+            SyncTracer.Trace trace = batch.getTrace();
+            if (trace != null) trace.fail(SyncTracer.STAGE_INSERT, start, error);
+        }
+    }
+
+    /**
+     * Merges the forecasts of a location that is not shown into the columnar cache, unless its
+     * sync was cancelled
+     */
+    private void keepInMemory(ForecastIngestQueue.Batch batch) {
+        SyncTracer.Trace trace = batch.getTrace();
+        if (batch.isCancelled()) {
+            if (trace != null) {
+                trace.fail(SyncTracer.STAGE_INSERT, trace.now(),
+                        new CancellationException("The sync was cancelled"));
+            }
+            return;
+        }
+        long start = trace == null ? 0 : trace.now();
+        columnarCache.apply(batch.getLocationKey(), batch.getForecasts());
+        if (trace != null) {
+            trace.record(SyncTracer.STAGE_INSERT, start, trace.now());
+            trace.finish();
+        }
+    }
+
+    /**
+     * Brings the caches and the observed queries in step with a committed write
+     *
+     * @param archived Days removed before today
+     * @param cleared  Days of another location removed from today on
+     */
+    private void publish(UpsertResult result, int archived, int cleared, long today) {
+        if (archived > 0) {
+            detailCache.evictBefore(today);
+            columnarCache.evictBefore(today);
+            invalidationTracker.notifyRangeChanged(Long.MIN_VALUE, today - 1);
+        }
+        if (cleared > 0) {
+            detailCache.evictAll();
+            invalidationTracker.notifyRangeChanged(today, Long.MAX_VALUE);
+        }
+        if (result.hasChanges()) {
+            invalidationTracker.notifyChanged(result.getTouchedDates());
+            refreshDetailCache(result.getTouchedDates());
+        }
+        if (cleared > 0 || result.hasChanges()) {
+            writeSnapshot();
+        }
+    }
+
+    /**
+     * Shows another location, on the disk IO thread. The store holds one location at a time, so
+     * the days of the previous one are removed. If the forecasts of the new location are in the
+     * columnar cache, prefetched or kept from when it was last shown, they are stored in the
+     * same transaction, so the list and the details switch without waiting for the sync of the
+     * new location, which then only refreshes them. Otherwise the list stays empty until that
+     * sync is stored. From now on, batches of the previous location still in flight are only
+     * kept in memory. The sync state records when the cached forecasts were synced, or is left
+     * out if there are none, so the next check syncs the new location.
+     *
+     * @param locationKey The new location, see SunshinePreferences.getLocationKey
+     * @return true if the new location was shown from memory
+     */
+    @WorkerThread
+    public boolean switchLocation(final String locationKey) {
+        shownLocationKey = locationKey;
+        final long today = SunshineDateUtils.getNormalizedUtcMsForToday();
+        ColumnarForecastCache.ForecastColumns columns = columnarCache.get(locationKey);
+        final WeatherEntry[] forecasts = cachedForecastsFrom(columns, today);
+        final long cachedSyncMillis = columns == null ? 0 : columns.getSyncedAtMillis();
+
+        final UpsertResult[] result = new UpsertResult[1];
+        final int[] archived = new int[1];
+        final int[] cleared = new int[1];
+        weatherStore.runInTransaction(new Runnable() {
+            @Override
+            public void run() {
+                archived[0] = deleteOldData(today);
+                // Only the location the store holds has sync metadata, see recordSync
+                SyncMetadata stored = syncMetadataDao.getSyncMetadata(locationKey);
+                if (stored == null) {
+                    cleared[0] = weatherStore.removeFrom(today);
+                }
+                result[0] = weatherStore.upsert(forecasts);
+                if (stored != null) {
+                    syncMetadataDao.recordSync(locationKey, stored.getLastSyncMillis(),
+                            weatherStore, stored.getEtag(), stored.getLastModified());
+                } else if (forecasts.length > 0) {
+                    // The ETag and Last-Modified date of the cached forecasts are not kept
+                    syncMetadataDao.recordSync(locationKey, cachedSyncMillis, weatherStore,
+                            null, null);
+                } else {
+                    // Nothing is stored for any location now
+                    syncMetadataDao.deleteAll();
+                }
+            }
+        });
+        publish(result[0], archived[0], cleared[0], today);
+        if (forecasts.length == 0) return false;
+        LocationSwitchTimings.getInstance().markStored(true);
+        return true;
+    }
+
+    /**
+     * @return The forecasts of a location in the columnar cache from a day on, none if it is not
+     * cached
+     */
+    private static WeatherEntry[] cachedForecastsFrom(
+            @Nullable ColumnarForecastCache.ForecastColumns columns, long date) {
+        if (columns == null) return new WeatherEntry[0];
+        int index = columns.indexOf(date);
+        int first = index >= 0 ? index : -index - 1;
+        WeatherEntry[] forecasts = new WeatherEntry[Math.max(0, columns.size() - first)];
+        for (int i = 0; i < forecasts.length; i++) {
+            forecasts[i] = columns.toWeatherEntry(first + i);
+        }
+        return forecasts;
+    }
+
+    private static boolean allCancelled(List<ForecastIngestQueue.Batch> batches) {
+        for (ForecastIngestQueue.Batch batch : batches) {
+            if (!batch.isCancelled()) return false;
+        }
+        return true;
+    }
+
+    /**
+     * Forecasts from today on. The last snapshot, if there is one, is delivered right away so the
+     * list can show before the database is open; the database's rows replace it when they
+     * arrive, unless they are the same. The rows are queried again only after a write changed
+     * one of the days from today on, and delivered only if their content changed. The snapshot
+     * is only written after a write, see publish.
+     */
     public LiveData<List<ListWeatherEntry>> getCurrentWeatherForecasts() {
         weatherNetworkDataSource.initialize();
-        Date today = SunshineDateUtils.getNormalizedUtcDateForToday();
-        return weatherDao.getCurrentWeatherForecasts(today);
+        final long today = SunshineDateUtils.getNormalizedUtcMsForToday();
+
+        final DistinctLiveData<List<ListWeatherEntry>> forecasts =
+                new DistinctLiveData<>(LIST_FINGERPRINT, suppressedEmissionCount);
+        List<ListWeatherEntry> snapshot = forecastSnapshot.read(today);
+        if (snapshot != null && !snapshot.isEmpty()) {
+            forecasts.offer(snapshot);
+        }
+        StartupTimings.getInstance().mark(StartupTimings.MILESTONE_FIRST_QUERY);
+        LiveData<List<ListWeatherEntry>> stored = invalidationTracker.observe(today, Long.MAX_VALUE,
+                new Callable<List<ListWeatherEntry>>() {
+                    @Override
+                    public List<ListWeatherEntry> call() {
+                        return weatherStore.getListWeatherFrom(today);
+                    }
+                });
+        forecasts.addSource(stored,
+                new Observer<List<ListWeatherEntry>>() {
+                    @Override
+                    public void onChanged(@Nullable List<ListWeatherEntry> stored) {
+                        // The snapshot and the detail cache are brought in step by the write
+                        forecasts.offer(stored);
+                    }
+                });
+        return forecasts;
     }
 
-    public LiveData<WeatherEntry> getWeatherByDate(Date date) {
+    /**
+     * The weather of a single day. A cached day is delivered from memory right away; otherwise
+     * it is queried, and queried again only when a write changed that day. Either way the
+     * neighbouring days are loaded into the cache, so swiping or going back to the list and
+     * opening the next day does not query again. The day is delivered again only if its
+     * content changed.
+     */
+    public LiveData<WeatherEntry> getWeatherByDate(final long date) {
         weatherNetworkDataSource.initialize();
-        return weatherDao.getWeatherByDate(date);
+        WeatherEntry cached = detailCache.get(date);
+        prefetchAround(date);
+        LiveData<WeatherEntry> weather;
+        if (cached != null) {
+            weather = detailCache.observe(date);
+        } else {
+            weather = invalidationTracker.observe(date, date, new Callable<WeatherEntry>() {
+                @Override
+                public WeatherEntry call() {
+                    return weatherStore.getWeatherByDate(date);
+                }
+            });
+        }
+        return DistinctLiveData.of(weather, DAY_FINGERPRINT, suppressedEmissionCount);
+    }
+
+    /**
+     * @return The cache of full day details, with its hit rate
+     */
+    public WeatherDetailCache getDetailCache() {
+        return detailCache;
+    }
+
+    /**
+     * @return What decides which weather queries run again after a write, with how many it
+     * spared
+     */
+    public WeatherInvalidationTracker getInvalidationTracker() {
+        return invalidationTracker;
+    }
+
+    /**
+     * @return The forecasts of the recent locations, as columns
+     */
+    public ColumnarForecastCache getColumnarCache() {
+        return columnarCache;
+    }
+
+    /**
+     * @return Query results that were not delivered because their content repeated the last
+     * result
+     */
+    public int getSuppressedEmissionCount() {
+        return suppressedEmissionCount.get();
+    }
+
+    /**
+     * Weekly aggregates of the archived weather of a location, oldest first
+     *
+     * @param locationKey The location, see SunshinePreferences.getLocationKey
+     */
+    public LiveData<List<WeatherRollup>> getWeeklyRollups(String locationKey) {
+        return archiveDao.getRollups(locationKey, WeatherRollup.PERIOD_WEEK);
+    }
+
+    /**
+     * Monthly aggregates of the archived weather of a location, oldest first
+     *
+     * @param locationKey The location, see SunshinePreferences.getLocationKey
+     */
+    public LiveData<List<WeatherRollup>> getMonthlyRollups(String locationKey) {
+        return archiveDao.getRollups(locationKey, WeatherRollup.PERIOD_MONTH);
+    }
+
+    /**
+     * Saves the forecasts as they are now in the store for the next cold start
+     */
+    private void writeSnapshot() {
+        long today = SunshineDateUtils.getNormalizedUtcMsForToday();
+        forecastSnapshot.write(weatherStore.getListWeatherFrom(today));
+    }
+
+    /**
+     * Loads the days around a date into the detail cache, unless they are all there
+     */
+    private void prefetchAround(long date) {
+        final long start = date - PREFETCH_DAYS * SunshineDateUtils.DAY_IN_MILLIS;
+        final long end = date + PREFETCH_DAYS * SunshineDateUtils.DAY_IN_MILLIS;
+        boolean missing = false;
+        for (long day = start; day <= end && !missing; day += SunshineDateUtils.DAY_IN_MILLIS) {
+            missing = !detailCache.contains(day);
+        }
+        if (!missing) return;
+
+        appExecutor.getDiskIO().execute(new Runnable() {
+            @Override
+            public void run() {
+                detailCache.putAll(weatherStore.getWeatherBetween(start, end));
+            }
+        });
+    }
+
+    /**
+     * Replaces the cached details of the days a sync changed with what is now stored
+     *
+     * @param touchedDates The changed days, sorted
+     */
+    private void refreshDetailCache(long[] touchedDates) {
+        List<WeatherEntry> stored = weatherStore.getWeatherBetween(
+                touchedDates[0], touchedDates[touchedDates.length - 1]);
+        List<WeatherEntry> changed = new ArrayList<>(touchedDates.length);
+        for (WeatherEntry entry : stored) {
+            if (Arrays.binarySearch(touchedDates, entry.getDate()) >= 0) changed.add(entry);
+        }
+        detailCache.putAll(changed);
     }
 
     /**
-     * Deletes old weather data because we don't need to keep multiple days' data
+     * Removes the days before today from the store, so it only keeps today and the future. The
+     * Room store moves them into the archive, where the history and its rollups stay available
+     * for trends. The log store drops them, so the rollups stop growing while it is in use, see
+     * {@link WeatherStore#removeBefore(long)}.
+     *
+     * @return Number of days removed
      */
-    private void deleteOldData() {
-        Date today = SunshineDateUtils.getNormalizedUtcDateForToday();
-        weatherDao.deleteOldWeather(today);
+    private int deleteOldData(long today) {
+        return weatherStore.removeBefore(today);
     }
 
 
@@ -0,0 +1,197 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.data;
+
+import android.arch.lifecycle.LiveData;
+import android.support.annotation.Nullable;
+
+import com.example.android.sunshine.data.database.WeatherEntry;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The full weather of recently shown and nearby days, keyed by date, so the detail screen can
+ * bind from memory instead of querying the database every time it opens.
+ * <p>
+ * The least recently used day is dropped once the cache is full. A day can be observed through
+ * {@link #observe(long)}, which follows the cached entry as it is replaced after a sync.
+ */
+public class WeatherDetailCache {
+
+    private final int maxEntries;
+
+    /* Dates to their weather, least recently used first */
+    private final LinkedHashMap<Long, WeatherEntry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    /* Dates to the active LiveData following them */
+    private final Map<Long, List<CachedWeather>> observers = new HashMap<>();
+
+    private int hitCount;
+    private int missCount;
+
+    /**
+     * @param maxEntries Days kept in memory
+     */
+    public WeatherDetailCache(int maxEntries) {
+        this.maxEntries = maxEntries;
+    }
+
+    /**
+     * Looks up a day, counting a hit or a miss
+     *
+     * @return The weather, or null if the day is not cached
+     */
+    @Nullable
+    public synchronized WeatherEntry get(long date) {
+        WeatherEntry entry = entries.get(date);
+        if (entry == null) {
+            missCount++;
+        } else {
+            hitCount++;
+        }
+        return entry;
+    }
+
+    /**
+     * @return true if the day is cached, without counting a lookup or marking it as used
+     */
+    public synchronized boolean contains(long date) {
+        return entries.containsKey(date);
+    }
+
+    /**
+     * Caches the weather of some days, replacing what was cached for them
+     */
+    public void putAll(List<WeatherEntry> weather) {
+        List<CachedWeather> toNotify = new ArrayList<>();
+        List<WeatherEntry> values = new ArrayList<>();
+        synchronized (this) {
+            for (WeatherEntry entry : weather) {
+                entries.put(entry.getDate(), entry);
+                List<CachedWeather> following = observers.get(entry.getDate());
+                if (following == null) continue;
+                for (CachedWeather liveData : following) {
+                    toNotify.add(liveData);
+                    values.add(entry);
+                }
+            }
+            trimToSize();
+        }
+        for (int i = 0; i < toNotify.size(); i++) {
+            toNotify.get(i).postValue(values.get(i));
+        }
+    }
+
+    /**
+     * Drops every day, for when the stored weather changed
+     */
+    public synchronized void evictAll() {
+        entries.clear();
+    }
+
+    /**
+     * Drops the days before a date, for when they were moved out of the weather table
+     */
+    public synchronized void evictBefore(long date) {
+        Iterator<Long> dates = entries.keySet().iterator();
+        while (dates.hasNext()) {
+            if (dates.next() < date) dates.remove();
+        }
+    }
+
+    /**
+     * Must be called on the main thread.
+     *
+     * @return The weather of a cached day, set right away, and again whenever the day is
+     * cached anew
+     */
+    public LiveData<WeatherEntry> observe(long date) {
+        return new CachedWeather(date);
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    public synchronized int getHitCount() {
+        return hitCount;
+    }
+
+    public synchronized int getMissCount() {
+        return missCount;
+    }
+
+    /**
+     * @return The share of lookups that were hits, from 0 to 1, or 0 before the first lookup
+     */
+    public synchronized float getHitRate() {
+        int lookups = hitCount + missCount;
+        return lookups == 0 ? 0 : (float) hitCount / lookups;
+    }
+
+    private void trimToSize() {
+        while (entries.size() > maxEntries) {
+            Long eldest = entries.keySet().iterator().next();
+            entries.remove(eldest);
+        }
+    }
+
+    private class CachedWeather extends LiveData<WeatherEntry> {
+
+        private final long date;
+
+        CachedWeather(long date) {
+            this.date = date;
+            WeatherEntry entry;
+            synchronized (WeatherDetailCache.this) {
+                entry = entries.get(date);
+            }
+            if (entry != null) setValue(entry);
+        }
+
+        @Override
+        protected void onActive() {
+            synchronized (WeatherDetailCache.this) {
+                List<CachedWeather> following = observers.get(date);
+                if (following == null) {
+                    following = new ArrayList<>();
+                    observers.put(date, following);
+                }
+                following.add(this);
+            }
+        }
+
+        @Override
+        protected void onInactive() {
+            synchronized (WeatherDetailCache.this) {
+                List<CachedWeather> following = observers.get(date);
+                if (following == null) return;
+                following.remove(this);
+                if (following.isEmpty()) observers.remove(date);
+            }
+        }
+
+        /* Overridden so the cache can post to it */
+        @Override
+        protected void postValue(WeatherEntry value) {
+            super.postValue(value);
+        }
+    }
+}
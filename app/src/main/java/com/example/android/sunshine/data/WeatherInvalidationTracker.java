@@ -0,0 +1,198 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.data;
+
+import android.arch.lifecycle.LiveData;
+import android.support.annotation.Nullable;
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Wakes weather queries only when a write touched the dates they select. Room invalidates every
+ * query on the weather table after any write to it, so each open detail screen and the list
+ * query again after every sync even when their days did not change. Queries observed through
+ * {@link #observe(long, long, Callable)} are instead run again only when
+ * {@link #notifyChanged(long[])} or {@link #notifyRangeChanged(long, long)} reports a date in
+ * their range.
+ * <p>
+ * Every write to the weather table must be reported here, or the queries will miss it.
+ */
+public class WeatherInvalidationTracker {
+
+    private static final String LOG_TAG = WeatherInvalidationTracker.class.getSimpleName();
+
+    private final Executor queryExecutor;
+
+    /* The queries with an active observer */
+    private final List<RangeQuery<?>> active = new ArrayList<>();
+    /* Counts the reported writes, so a query can tell it missed one while it was inactive */
+    private long version;
+
+    private int requeryCount;
+    private int avoidedRequeryCount;
+
+    /**
+     * @param queryExecutor Where the queries run, off the main thread
+     */
+    public WeatherInvalidationTracker(Executor queryExecutor) {
+        this.queryExecutor = queryExecutor;
+    }
+
+    /**
+     * Must be called on the main thread.
+     *
+     * @param start First date the query selects, inclusive
+     * @param end   Last date the query selects, inclusive
+     * @param query Runs the query, on the query executor
+     * @return The result of the query, run when first observed and again whenever a date in its
+     * range changed
+     */
+    public <T> LiveData<T> observe(long start, long end, Callable<T> query) {
+        return new RangeQuery<>(start, end, query);
+    }
+
+    /**
+     * Reports the dates a committed write inserted, updated or deleted
+     *
+     * @param sortedDates Normalized UTC dates, sorted
+     */
+    public void notifyChanged(long[] sortedDates) {
+        if (sortedDates.length == 0) return;
+        invalidate(sortedDates, 0, 0);
+    }
+
+    /**
+     * Reports that a committed write may have changed any date in a range, like a delete
+     *
+     * @param start First date, inclusive
+     * @param end   Last date, inclusive
+     */
+    public void notifyRangeChanged(long start, long end) {
+        invalidate(null, start, end);
+    }
+
+    /**
+     * Runs again the active queries whose range holds one of the dates, or else overlaps the
+     * range from start to end
+     */
+    private void invalidate(@Nullable long[] sortedDates, long start, long end) {
+        List<RangeQuery<?>> toRequery = new ArrayList<>();
+        synchronized (this) {
+            version++;
+            for (RangeQuery<?> query : active) {
+                boolean touched = sortedDates != null
+                        ? overlaps(sortedDates, query.start, query.end)
+                        : query.start <= end && start <= query.end;
+                if (touched) {
+                    toRequery.add(query);
+                } else {
+                    avoidedRequeryCount++;
+                }
+            }
+            requeryCount += toRequery.size();
+        }
+        for (RangeQuery<?> query : toRequery) {
+            query.invalidate();
+        }
+    }
+
+    /**
+     * @return Active queries run again because a write touched their range
+     */
+    public synchronized int getRequeryCount() {
+        return requeryCount;
+    }
+
+    /**
+     * @return Active queries left alone because a write missed their range, each one a query
+     * Room would have run again
+     */
+    public synchronized int getAvoidedRequeryCount() {
+        return avoidedRequeryCount;
+    }
+
+    /**
+     * @return true if one of the sorted dates falls between start and end, inclusive
+     */
+    static boolean overlaps(long[] sortedDates, long start, long end) {
+        int index = Arrays.binarySearch(sortedDates, start);
+        if (index >= 0) return true;
+        // Not found, so this is where start would be inserted: the first date after it
+        int after = -index - 1;
+        return after < sortedDates.length && sortedDates[after] <= end;
+    }
+
+    private class RangeQuery<T> extends LiveData<T> {
+
+        private final long start;
+        private final long end;
+        private final Callable<T> query;
+
+        /* Set when the result may be out of date, cleared by the run that replaces it */
+        private final AtomicBoolean invalid = new AtomicBoolean(true);
+        /* The version when the query stopped following writes */
+        private long inactiveVersion = -1;
+
+        private final Runnable refresh = new Runnable() {
+            @Override
+            public void run() {
+                if (!invalid.compareAndSet(true, false)) return;
+                try {
+                    postValue(query.call());
+                } catch (Exception e) {
+                    Log.e(LOG_TAG, "Weather query failed", e);
+                }
+            }
+        };
+
+        RangeQuery(long start, long end, Callable<T> query) {
+            this.start = start;
+            this.end = end;
+            this.query = query;
+        }
+
+        @Override
+        protected void onActive() {
+            synchronized (WeatherInvalidationTracker.this) {
+                active.add(this);
+                if (inactiveVersion != -1 && inactiveVersion != version) {
+                    // A write came in while nothing observed the query, it may have missed it
+                    invalid.set(true);
+                }
+            }
+            if (invalid.get()) queryExecutor.execute(refresh);
+        }
+
+        @Override
+        protected void onInactive() {
+            synchronized (WeatherInvalidationTracker.this) {
+                active.remove(this);
+                inactiveVersion = version;
+            }
+        }
+
+        void invalidate() {
+            invalid.set(true);
+            queryExecutor.execute(refresh);
+        }
+    }
+}
@@ -0,0 +1,155 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.android.sunshine.data.database;
+
+import android.arch.lifecycle.LiveData;
+import android.arch.persistence.room.Dao;
+import android.arch.persistence.room.Insert;
+import android.arch.persistence.room.OnConflictStrategy;
+import android.arch.persistence.room.Query;
+import android.arch.persistence.room.Transaction;
+
+import com.example.android.sunshine.utilities.SunshineDateUtils;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * {@link Dao} for the weather archive. Expired forecasts are moved from the weather table into
+ * the weather_history table, and folded into the weekly and monthly weather_rollup rows, before
+ * they are pruned. Both are kept per location.
+ */
+@Dao
+public abstract class ArchiveDao {
+
+    /**
+     * Moves every forecast older than the given day into the archive, updates the rollups for
+     * the days that were archived and applies the retention policy. Everything happens in one
+     * transaction, so a day is either archived and counted once, or left in the weather table.
+     * <p>
+     * The days are archived for the location the sync metadata names, which is the one the
+     * weather table holds. Call it before recording a sync of another location. Without
+     * metadata, as after the upgrade to version 5, the location is unknown and the days are
+     * archived under an empty key.
+     *
+     * @param date   The normalized UTC date to archive all prior weather from (exclusive)
+     * @param policy How long archived data is kept
+     * @return Number of forecasts moved out of the weather table
+     */
+    @Transaction
+    public int archiveOldWeather(long date, HistoryRetentionPolicy policy) {
+        List<WeatherEntry> expired = getWeatherBefore(date);
+        if (!expired.isEmpty()) {
+            String locationKey = getStoredLocationKey();
+            if (locationKey == null) locationKey = "";
+            List<WeatherHistoryEntry> history = new ArrayList<>(expired.size());
+            for (WeatherEntry weatherEntry : expired) {
+                history.add(new WeatherHistoryEntry(locationKey, weatherEntry));
+            }
+
+            // Days that are already archived are ignored (-1), so they are never counted twice
+            long[] rowIds = insertHistory(history);
+            Map<String, WeatherRollup> touched = new HashMap<>();
+            for (int i = 0; i < rowIds.length; i++) {
+                if (rowIds[i] == -1) continue;
+                WeatherHistoryEntry day = history.get(i);
+                rollupFor(touched, locationKey, WeatherRollup.PERIOD_WEEK, day.getEpochDay())
+                        .add(day);
+                rollupFor(touched, locationKey, WeatherRollup.PERIOD_MONTH, day.getEpochDay())
+                        .add(day);
+            }
+            upsertRollups(new ArrayList<>(touched.values()));
+
+            deleteWeatherBefore(date);
+        }
+
+        long today = SunshineDateUtils.elapsedDaysSinceEpoch(date);
+        deleteHistoryBefore(policy.historyCutoff(today));
+        deleteRollupsBefore(WeatherRollup.PERIOD_WEEK, policy.weeklyRollupCutoff(today));
+        deleteRollupsBefore(WeatherRollup.PERIOD_MONTH, policy.monthlyRollupCutoff(today));
+        return expired.size();
+    }
+
+    /**
+     * Returns the rollup for the period containing the given day, reading it from the database
+     * the first time the period is seen in this archive run.
+     */
+    private WeatherRollup rollupFor(Map<String, WeatherRollup> touched, String locationKey,
+                                    int period, long epochDay) {
+        long periodStart = WeatherRollup.periodStartFor(period, epochDay);
+        String key = period + ":" + periodStart;
+        WeatherRollup rollup = touched.get(key);
+        if (rollup == null) {
+            rollup = getRollup(locationKey, period, periodStart);
+            if (rollup == null) rollup = new WeatherRollup(locationKey, period, periodStart);
+            touched.put(key, rollup);
+        }
+        return rollup;
+    }
+
+    /**
+     * Selects the precomputed rollups of one kind for a location, oldest first. The LiveData
+     * will be kept in sync with the database.
+     *
+     * @param locationKey The location, see SunshinePreferences.getLocationKey
+     * @param period      {@link WeatherRollup#PERIOD_WEEK} or {@link WeatherRollup#PERIOD_MONTH}
+     * @return {@link LiveData} list of the rollups
+     */
+    @Query("SELECT * FROM weather_rollup WHERE locationKey = :locationKey AND period = :period ORDER BY periodStart ASC")
+    public abstract LiveData<List<WeatherRollup>> getRollups(String locationKey, int period);
+
+    /**
+     * Selects the archived days of a location in a range, inclusive.
+     *
+     * @param locationKey   The location, see SunshinePreferences.getLocationKey
+     * @param startEpochDay First day, in days since the epoch
+     * @param endEpochDay   Last day, in days since the epoch
+     * @return The archived days, oldest first
+     */
+    @Query("SELECT * FROM weather_history WHERE locationKey = :locationKey AND epochDay BETWEEN :startEpochDay AND :endEpochDay ORDER BY epochDay ASC")
+    public abstract List<WeatherHistoryEntry> getHistory(String locationKey, long startEpochDay,
+                                                         long endEpochDay);
+
+    /**
+     * @return The location the weather table holds, null if no sync was recorded
+     */
+    @Query("SELECT locationKey FROM sync_metadata LIMIT 1")
+    abstract String getStoredLocationKey();
+
+    @Query("SELECT * FROM weather WHERE date < :date")
+    abstract List<WeatherEntry> getWeatherBefore(long date);
+
+    @Insert(onConflict = OnConflictStrategy.IGNORE)
+    abstract long[] insertHistory(List<WeatherHistoryEntry> history);
+
+    @Query("SELECT * FROM weather_rollup WHERE locationKey = :locationKey AND period = :period AND periodStart = :periodStart")
+    abstract WeatherRollup getRollup(String locationKey, int period, long periodStart);
+
+    @Insert(onConflict = OnConflictStrategy.REPLACE)
+    abstract void upsertRollups(List<WeatherRollup> rollups);
+
+    @Query("DELETE FROM weather WHERE date < :date")
+    abstract int deleteWeatherBefore(long date);
+
+    @Query("DELETE FROM weather_history WHERE epochDay < :epochDay")
+    abstract int deleteHistoryBefore(long epochDay);
+
+    @Query("DELETE FROM weather_rollup WHERE period = :period AND periodStart < :periodStart")
+    abstract int deleteRollupsBefore(int period, long periodStart);
+}
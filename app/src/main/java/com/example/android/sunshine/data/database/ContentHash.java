@@ -0,0 +1,51 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.android.sunshine.data.database;
+
+import java.util.List;
+
+/**
+ * 64 bit hashes of row contents, cheap enough to compare query results by before they are
+ * delivered. Two results with the same rows hash the same; different results collide about once
+ * in 2^64 comparisons.
+ */
+public final class ContentHash {
+
+    private static final long MULTIPLIER = 0x9E3779B97F4A7C15L;
+
+    private ContentHash() {
+    }
+
+    /**
+     * Folds a value into a hash
+     */
+    static long mix(long hash, long value) {
+        long mixed = (hash ^ value) * MULTIPLIER;
+        return mixed ^ (mixed >>> 29);
+    }
+
+    /**
+     * @return The hash of a list of forecasts, order included
+     */
+    public static long of(List<ListWeatherEntry> rows) {
+        long hash = rows.size();
+        for (int i = 0; i < rows.size(); i++) {
+            hash = mix(hash, rows.get(i).contentHash());
+        }
+        return hash;
+    }
+}
@@ -0,0 +1,153 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.android.sunshine.data.database;
+
+import android.support.annotation.Nullable;
+import android.support.annotation.WorkerThread;
+import android.util.Log;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A compact binary copy of the forecast list, so a cold start can show the forecasts before
+ * Room has opened the database.
+ * <p>
+ * The file is a small header followed by one fixed size record per row, written after every
+ * sync that changed the forecasts. It is read with a single memory mapped read. Rows for days
+ * that have already passed are skipped when reading, so an old snapshot never shows yesterday.
+ */
+public class ForecastSnapshot {
+
+    private static final String LOG_TAG = ForecastSnapshot.class.getSimpleName();
+
+    /* "SNSH" */
+    private static final int MAGIC = 0x534e5348;
+    private static final int VERSION = 1;
+    private static final int HEADER_BYTES = 3 * 4;
+    /* id, weatherIconId, date, min, max */
+    private static final int ROW_BYTES = 4 + 4 + 8 + 8 + 8;
+
+    private final File file;
+
+    public ForecastSnapshot(File file) {
+        this.file = file;
+    }
+
+    /**
+     * Replaces the snapshot with the given rows. The file is written next to the snapshot and
+     * renamed over it, so a reader never sees half a snapshot.
+     */
+    @WorkerThread
+    public void write(List<ListWeatherEntry> forecasts) {
+        ByteBuffer buffer = ByteBuffer.allocate(HEADER_BYTES + forecasts.size() * ROW_BYTES)
+                .order(ByteOrder.LITTLE_ENDIAN);
+        buffer.putInt(MAGIC).putInt(VERSION).putInt(forecasts.size());
+        for (ListWeatherEntry entry : forecasts) {
+            buffer.putInt(entry.getId())
+                    .putInt(entry.getWeatherIconId())
+                    .putLong(entry.getDate())
+                    .putDouble(entry.getMin())
+                    .putDouble(entry.getMax());
+        }
+        buffer.flip();
+
+        File temporary = new File(file.getPath() + ".tmp");
+        FileOutputStream out = null;
+        try {
+            out = new FileOutputStream(temporary);
+            FileChannel channel = out.getChannel();
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            out.getFD().sync();
+            out.close();
+            out = null;
+            if (!temporary.renameTo(file)) throw new IOException("Could not rename " + temporary);
+        } catch (IOException e) {
+            Log.w(LOG_TAG, "Could not write the forecast snapshot", e);
+            temporary.delete();
+        } finally {
+            closeQuietly(out);
+        }
+    }
+
+    /**
+     * Reads the snapshot.
+     *
+     * @param today Normalized UTC date of today, earlier rows are skipped
+     * @return The rows from today on, in date order, or null if there is no readable snapshot
+     */
+    @Nullable
+    public List<ListWeatherEntry> read(long today) {
+        if (!file.isFile()) return null;
+
+        FileInputStream in = null;
+        try {
+            in = new FileInputStream(file);
+            FileChannel channel = in.getChannel();
+            MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            ByteBuffer buffer = mapped.order(ByteOrder.LITTLE_ENDIAN);
+
+            if (buffer.remaining() < HEADER_BYTES
+                    || buffer.getInt() != MAGIC || buffer.getInt() != VERSION) {
+                Log.w(LOG_TAG, "Ignoring a forecast snapshot in an unknown format");
+                return null;
+            }
+            int count = buffer.getInt();
+            if (count < 0 || buffer.remaining() != count * ROW_BYTES) {
+                Log.w(LOG_TAG, "Ignoring a truncated forecast snapshot");
+                return null;
+            }
+
+            List<ListWeatherEntry> forecasts = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                int id = buffer.getInt();
+                int weatherIconId = buffer.getInt();
+                long date = buffer.getLong();
+                double min = buffer.getDouble();
+                double max = buffer.getDouble();
+                if (date >= today) {
+                    forecasts.add(new ListWeatherEntry(id, weatherIconId, date, min, max));
+                }
+            }
+            return forecasts;
+        } catch (IOException e) {
+            Log.w(LOG_TAG, "Could not read the forecast snapshot", e);
+            return null;
+        } finally {
+            closeQuietly(in);
+        }
+    }
+
+    private static void closeQuietly(Closeable closeable) {
+        if (closeable == null) return;
+        try {
+            closeable.close();
+        } catch (IOException ignored) {
+        }
+    }
+}
@@ -0,0 +1,71 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.android.sunshine.data.database;
+
+import com.example.android.sunshine.utilities.SunshineDateUtils;
+
+import java.util.Calendar;
+import java.util.TimeZone;
+
+/**
+ * How long archived weather is kept. Raw history days are dropped first, the rollups outlive
+ * them so long term trends stay available while the tables stay bounded.
+ */
+public class HistoryRetentionPolicy {
+
+    /* Roughly a year of daily history, two years of weeks and five years of months */
+    public static final HistoryRetentionPolicy DEFAULT = new HistoryRetentionPolicy(400, 104, 60);
+
+    private final int historyDays;
+    private final int rollupWeeks;
+    private final int rollupMonths;
+
+    public HistoryRetentionPolicy(int historyDays, int rollupWeeks, int rollupMonths) {
+        this.historyDays = historyDays;
+        this.rollupWeeks = rollupWeeks;
+        this.rollupMonths = rollupMonths;
+    }
+
+    /**
+     * @param todayEpochDay Today, in days since the epoch
+     * @return The first history day to keep
+     */
+    long historyCutoff(long todayEpochDay) {
+        return todayEpochDay - historyDays;
+    }
+
+    /**
+     * @param todayEpochDay Today, in days since the epoch
+     * @return Start of the first weekly rollup to keep
+     */
+    long weeklyRollupCutoff(long todayEpochDay) {
+        return WeatherRollup.periodStartFor(WeatherRollup.PERIOD_WEEK,
+                todayEpochDay - rollupWeeks * 7L);
+    }
+
+    /**
+     * @param todayEpochDay Today, in days since the epoch
+     * @return Start of the first monthly rollup to keep
+     */
+    long monthlyRollupCutoff(long todayEpochDay) {
+        Calendar calendar = Calendar.getInstance(TimeZone.getTimeZone("UTC"));
+        calendar.setTimeInMillis(todayEpochDay * SunshineDateUtils.DAY_IN_MILLIS);
+        calendar.set(Calendar.DAY_OF_MONTH, 1);
+        calendar.add(Calendar.MONTH, 1 - rollupMonths);
+        return SunshineDateUtils.elapsedDaysSinceEpoch(calendar.getTimeInMillis());
+    }
+}
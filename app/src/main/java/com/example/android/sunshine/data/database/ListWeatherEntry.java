@@ -16,9 +16,6 @@
 
 package com.example.android.sunshine.data.database;
 
-
-import java.util.Date;
-
 /**
  * Simplified {@link WeatherEntry} which only contains the details needed for the weather list in
  * the {@link com.example.android.sunshine.ui.list.ForecastAdapter}
@@ -27,11 +24,11 @@ public class ListWeatherEntry {
 
     private int id;
     private int weatherIconId;
-    private Date date;
+    private long date;
     private double min;
     private double max;
 
-    public ListWeatherEntry(int id, int weatherIconId, Date date, double min, double max) {
+    public ListWeatherEntry(int id, int weatherIconId, long date, double min, double max) {
         this.id = id;
         this.weatherIconId = weatherIconId;
         this.date = date;
@@ -47,7 +44,7 @@ public class ListWeatherEntry {
         return weatherIconId;
     }
 
-    public Date getDate() {
+    public long getDate() {
         return date;
     }
 
@@ -58,4 +55,14 @@ public class ListWeatherEntry {
     public double getMax() {
         return max;
     }
+
+    /**
+     * @return A hash of every value, the same for rows with the same content
+     */
+    public long contentHash() {
+        long hash = ContentHash.mix(id, weatherIconId);
+        hash = ContentHash.mix(hash, date);
+        hash = ContentHash.mix(hash, Double.doubleToLongBits(min));
+        return ContentHash.mix(hash, Double.doubleToLongBits(max));
+    }
 }
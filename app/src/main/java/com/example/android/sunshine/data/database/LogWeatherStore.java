@@ -0,0 +1,677 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.android.sunshine.data.database;
+
+import android.support.annotation.Nullable;
+import android.util.Log;
+
+import com.example.android.sunshine.utilities.SunshineDateUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.Executor;
+
+/**
+ * {@link WeatherStore} kept as an append-only log, for ingest that writes far more than the
+ * weather table needs. Every write appends fixed-size records to the end of the log, with
+ * nothing read or rewritten in place, and an in-memory index from each date to its latest record
+ * serves the reads straight from the mapped file.
+ * <p>
+ * The log is split into segments, each a file mapped into memory. New segments take the
+ * configured size, while a segment already on disk keeps the size it was written with, so
+ * changing the size between runs loses nothing. A transaction
+ * ends with a commit record, and when the log is opened again the records after the last commit
+ * are dropped, so a crash loses at most the transaction it interrupted. Once most records are
+ * superseded, the live days are copied into new segments in the background and the old segments
+ * are deleted. The copy runs without holding the store, so reads and writes carry on meanwhile;
+ * only swapping in the copies does.
+ * <p>
+ * Unlike {@link RoomWeatherStore}, removed days are not archived, and list rows use the number
+ * of days since the epoch as their id.
+ */
+public class LogWeatherStore implements WeatherStore {
+
+    private static final String LOG_TAG = LogWeatherStore.class.getSimpleName();
+
+    private static final String SEGMENT_PREFIX = "segment-";
+    private static final String SEGMENT_SUFFIX = ".log";
+
+    /* Record types, a zero type marks the end of the written part of a segment */
+    private static final byte END = 0;
+    private static final byte PUT = 1;
+    private static final byte REMOVE_BEFORE = 2;
+    private static final byte COMMIT = 3;
+    private static final byte REMOVE_FROM = 4;
+
+    /* Type, date, icon id and the six measurements */
+    static final int RECORD_BYTES = 1 + 8 + 4 + 6 * 8;
+
+    private static final Comparator<WeatherEntry> BY_DATE = new Comparator<WeatherEntry>() {
+        @Override
+        public int compare(WeatherEntry first, WeatherEntry second) {
+            return first.getDate() < second.getDate() ? -1
+                    : (first.getDate() == second.getDate() ? 0 : 1);
+        }
+    };
+
+    private final File directory;
+    /* Size of the segments added from now on */
+    private final int segmentBytes;
+    private final Executor compactionExecutor;
+
+    /* Segments by their number, oldest first. New records go to the last one. */
+    private final TreeMap<Integer, Segment> segments = new TreeMap<>();
+    /* Dates to the position of their latest record, see #position(Segment, int) */
+    private final TreeMap<Long, Long> index = new TreeMap<>();
+    /* Records in the segments, to tell when most of them are superseded */
+    private int recordCount;
+
+    /* Open transactions, and where the outermost one started */
+    private int transactionDepth;
+    private boolean transactionFailed;
+    private int transactionSegment;
+    private int transactionOffset;
+    private int transactionRecords;
+
+    private boolean compactionScheduled;
+    private boolean compacting;
+    private int compactionCount;
+    /* After a failed compaction, the record count the next one waits for */
+    private int compactionRetryRecords;
+    /*
+     * While a compaction copies the live days, segments up to the first number take no more
+     * records, and the numbers up to the second one are kept for the copies, so that writes
+     * made meanwhile replay after them
+     */
+    private int sealedThrough;
+    private int reservedThrough;
+
+    /**
+     * Opens the log in a directory, replaying its committed records into the index
+     *
+     * @param directory          Holds the segments, created if needed
+     * @param segmentBytes       Size of each new segment file, existing ones keep their size
+     * @param compactionExecutor Where compactions run, off the thread that writes
+     * @throws IOException If the segments cannot be created or mapped, or one on disk is not
+     *                     a whole number of records
+     */
+    public static LogWeatherStore open(File directory, int segmentBytes,
+                                       Executor compactionExecutor) throws IOException {
+        LogWeatherStore store = new LogWeatherStore(directory, segmentBytes, compactionExecutor);
+        store.load();
+        return store;
+    }
+
+    private LogWeatherStore(File directory, int segmentBytes, Executor compactionExecutor) {
+        if (segmentBytes < 2 * RECORD_BYTES) {
+            throw new IllegalArgumentException("Segments must hold at least two records");
+        }
+        this.directory = directory;
+        // Records never straddle two segments
+        this.segmentBytes = segmentBytes - segmentBytes % RECORD_BYTES;
+        this.compactionExecutor = compactionExecutor;
+    }
+
+    private synchronized void load() throws IOException {
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Could not create " + directory);
+        }
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                int number = segmentNumber(file);
+                if (number < 0) continue;
+                segments.put(number, mapExisting(number, file));
+            }
+        }
+        replay();
+        if (segments.isEmpty()) {
+            segments.put(1, map(1));
+        }
+    }
+
+    @Override
+    public synchronized void runInTransaction(Runnable writes) {
+        begin();
+        boolean success = false;
+        try {
+            writes.run();
+            success = true;
+        } finally {
+            end(success);
+        }
+    }
+
+    @Override
+    public synchronized UpsertResult upsert(WeatherEntry... weather) {
+        if (weather == null || weather.length == 0) return UpsertResult.EMPTY;
+
+        // A stable sort keeps the input order for equal dates, so the last one can be picked
+        WeatherEntry[] sorted = Arrays.copyOf(weather, weather.length);
+        Arrays.sort(sorted, BY_DATE);
+
+        int inserted = 0;
+        int updated = 0;
+        int unchanged = 0;
+        long[] touchedDates = new long[sorted.length];
+
+        begin();
+        boolean success = false;
+        try {
+            for (int i = 0; i < sorted.length; i++) {
+                WeatherEntry entry = sorted[i];
+                if (i + 1 < sorted.length && sorted[i + 1].getDate() == entry.getDate()) continue;
+
+                Long stored = index.get(entry.getDate());
+                if (stored != null && sameValues(stored, entry)) {
+                    unchanged++;
+                    continue;
+                }
+                if (stored == null) {
+                    inserted++;
+                } else {
+                    updated++;
+                }
+                index.put(entry.getDate(), append(PUT, entry.getDate(), entry));
+                touchedDates[inserted + updated - 1] = entry.getDate();
+            }
+            success = true;
+        } finally {
+            end(success);
+        }
+
+        return new UpsertResult(inserted, updated, unchanged,
+                Arrays.copyOf(touchedDates, inserted + updated));
+    }
+
+    @Override
+    public synchronized int removeBefore(long date) {
+        SortedMap<Long, Long> removed = index.headMap(date);
+        int count = removed.size();
+        if (count == 0) return 0;
+
+        begin();
+        boolean success = false;
+        try {
+            append(REMOVE_BEFORE, date, null);
+            removed.clear();
+            success = true;
+        } finally {
+            end(success);
+        }
+        return count;
+    }
+
+    @Override
+    public synchronized int removeFrom(long date) {
+        SortedMap<Long, Long> removed = index.tailMap(date, true);
+        int count = removed.size();
+        if (count == 0) return 0;
+
+        begin();
+        boolean success = false;
+        try {
+            append(REMOVE_FROM, date, null);
+            removed.clear();
+            success = true;
+        } finally {
+            end(success);
+        }
+        return count;
+    }
+
+    @Nullable
+    @Override
+    public synchronized WeatherEntry getWeatherByDate(long date) {
+        Long position = index.get(date);
+        return position == null ? null : read(position);
+    }
+
+    @Override
+    public synchronized List<WeatherEntry> getWeatherBetween(long start, long end) {
+        if (start > end) return new ArrayList<>();
+        SortedMap<Long, Long> range = index.subMap(start, true, end, true);
+        List<WeatherEntry> weather = new ArrayList<>(range.size());
+        for (long position : range.values()) {
+            weather.add(read(position));
+        }
+        return weather;
+    }
+
+    @Override
+    public synchronized List<ListWeatherEntry> getListWeatherFrom(long date) {
+        SortedMap<Long, Long> range = index.tailMap(date, true);
+        List<ListWeatherEntry> rows = new ArrayList<>(range.size());
+        for (Map.Entry<Long, Long> day : range.entrySet()) {
+            Segment segment = segments.get(segmentOf(day.getValue()));
+            int offset = offsetOf(day.getValue());
+            int id = (int) SunshineDateUtils.elapsedDaysSinceEpoch(day.getKey());
+            rows.add(new ListWeatherEntry(id, segment.buffer.getInt(offset + 9), day.getKey(),
+                    segment.buffer.getDouble(offset + 13), segment.buffer.getDouble(offset + 21)));
+        }
+        return rows;
+    }
+
+    @Override
+    public synchronized int count() {
+        return index.size();
+    }
+
+    @Override
+    public synchronized long getFirstDate() {
+        return index.isEmpty() ? 0 : index.firstKey();
+    }
+
+    @Override
+    public synchronized long getLastDate() {
+        return index.isEmpty() ? 0 : index.lastKey();
+    }
+
+    public synchronized int getSegmentCount() {
+        return segments.size();
+    }
+
+    /**
+     * @return How many times the live days were copied into new segments
+     */
+    public synchronized int getCompactionCount() {
+        return compactionCount;
+    }
+
+    /**
+     * Copies the live days into new segments and deletes the old ones. Runs on its own once most
+     * records are superseded, it only needs calling directly to force it.
+     * <p>
+     * Only taking the live days and swapping in their copies hold the store. Records are never
+     * changed once committed, so the copies are read from and written to the mapped files while
+     * other threads keep reading and writing. A day written meanwhile keeps its newer record.
+     */
+    public void compact() {
+        final TreeMap<Long, Long> live;
+        final TreeMap<Integer, Segment> old;
+        final int firstCompacted;
+        final int recordsBefore;
+        synchronized (this) {
+            compactionScheduled = false;
+            if (compacting || transactionDepth > 0) return;
+            compacting = true;
+            live = new TreeMap<>(index);
+            old = new TreeMap<>(segments);
+            recordsBefore = recordCount;
+            int recordsPerSegment = segmentBytes / RECORD_BYTES;
+            int compactedSegments = (live.size() + 1 + recordsPerSegment - 1) / recordsPerSegment;
+            firstCompacted = Math.max(segments.lastKey(), reservedThrough) + 1;
+            sealedThrough = segments.lastKey();
+            reservedThrough = firstCompacted + compactedSegments - 1;
+        }
+
+        List<Segment> compacted = new ArrayList<>();
+        TreeMap<Long, Long> moved = new TreeMap<>();
+        try {
+            Segment target = null;
+            for (Map.Entry<Long, Long> day : live.entrySet()) {
+                target = compactionTarget(target, firstCompacted, compacted);
+                Segment source = old.get(segmentOf(day.getValue()));
+                write(target, PUT, day.getKey(), read(source.buffer, offsetOf(day.getValue())));
+                moved.put(day.getKey(), position(target, target.position - RECORD_BYTES));
+            }
+            target = compactionTarget(target, firstCompacted, compacted);
+            write(target, COMMIT, 0, null);
+            for (Segment segment : compacted) {
+                segment.buffer.force();
+            }
+        } catch (IOException | RuntimeException e) {
+            Log.e(LOG_TAG, "Could not compact the weather log", e);
+            // Nothing was committed, so the copies can simply be dropped
+            for (Segment segment : compacted) {
+                if (!segment.file.delete()) Log.w(LOG_TAG, "Could not delete " + segment.file);
+            }
+            synchronized (this) {
+                sealedThrough = 0;
+                compacting = false;
+                // Wait for as many records again before the next try
+                compactionRetryRecords = 2 * recordCount;
+            }
+            return;
+        }
+
+        synchronized (this) {
+            for (Segment segment : compacted) {
+                segments.put(segment.number, segment);
+            }
+            for (Map.Entry<Long, Long> day : moved.entrySet()) {
+                Long current = index.get(day.getKey());
+                if (current != null && current.equals(live.get(day.getKey()))) {
+                    index.put(day.getKey(), day.getValue());
+                }
+            }
+            /*
+             * Oldest first: if the process dies halfway, the segments left are replayed before
+             * the compacted ones, which then restore every live day.
+             */
+            for (Segment segment : old.values()) {
+                segments.remove(segment.number);
+                if (!segment.file.delete()) {
+                    Log.w(LOG_TAG, "Could not delete " + segment.file);
+                }
+            }
+            recordCount += live.size() + 1 - recordsBefore;
+            sealedThrough = 0;
+            compacting = false;
+            compactionRetryRecords = 0;
+            compactionCount++;
+        }
+    }
+
+    /**
+     * @return The segment the next copied record goes to, a new one once the current is full
+     */
+    private Segment compactionTarget(@Nullable Segment current, int firstCompacted,
+                                     List<Segment> compacted) throws IOException {
+        if (current != null && current.position + RECORD_BYTES <= current.size) return current;
+        Segment segment = map(firstCompacted + compacted.size());
+        compacted.add(segment);
+        return segment;
+    }
+
+    private void begin() {
+        if (transactionDepth++ > 0) return;
+        Segment last = lastSegment();
+        transactionSegment = last.number;
+        transactionOffset = last.position;
+        transactionRecords = 0;
+        transactionFailed = false;
+    }
+
+    private void end(boolean success) {
+        if (!success) transactionFailed = true;
+        if (--transactionDepth > 0) return;
+
+        if (transactionFailed) {
+            rollBack();
+            return;
+        }
+        if (transactionRecords == 0) return;
+        try {
+            append(COMMIT, 0, null);
+        } catch (RuntimeException e) {
+            rollBack();
+            throw e;
+        }
+        // Segments the transaction filled were flushed when the next one was added
+        lastSegment().buffer.force();
+        scheduleCompaction();
+    }
+
+    /**
+     * Erases the records of the failed transaction and rebuilds the index from what is left
+     */
+    private void rollBack() {
+        deleteSegmentsFrom(transactionSegment + 1);
+        Segment segment = segments.get(transactionSegment);
+        clear(segment, transactionOffset, segment.position);
+        segment.position = transactionOffset;
+        replay();
+    }
+
+    private void scheduleCompaction() {
+        if (compactionScheduled || compacting || segments.size() < 2
+                || recordCount < 2 * (index.size() + 1) || recordCount < compactionRetryRecords) {
+            return;
+        }
+        compactionScheduled = true;
+        compactionExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                compact();
+            }
+        });
+    }
+
+    /**
+     * Appends a record to the last segment, adding a segment when it is full
+     *
+     * @return Where the record was written
+     */
+    private long append(byte type, long date, @Nullable WeatherEntry entry) {
+        Segment segment = lastSegment();
+        if (segment.position + RECORD_BYTES > segment.size || segment.number <= sealedThrough) {
+            try {
+                segment.buffer.force();
+                segment = addSegment();
+            } catch (IOException e) {
+                throw new IllegalStateException("Could not add a weather log segment", e);
+            }
+        }
+        int offset = segment.position;
+        write(segment, type, date, entry);
+        recordCount++;
+        transactionRecords++;
+        return position(segment, offset);
+    }
+
+    /**
+     * Writes a record at the end of a segment, which must have room for it
+     */
+    private static void write(Segment segment, byte type, long date,
+                              @Nullable WeatherEntry entry) {
+        int offset = segment.position;
+        MappedByteBuffer buffer = segment.buffer;
+        buffer.putLong(offset + 1, date);
+        if (entry != null) {
+            buffer.putInt(offset + 9, entry.getWeatherIconId());
+            buffer.putDouble(offset + 13, entry.getMin());
+            buffer.putDouble(offset + 21, entry.getMax());
+            buffer.putDouble(offset + 29, entry.getHumidity());
+            buffer.putDouble(offset + 37, entry.getPressure());
+            buffer.putDouble(offset + 45, entry.getWind());
+            buffer.putDouble(offset + 53, entry.getDegrees());
+        }
+        // The type goes last, a record is not there until it is set
+        buffer.put(offset, type);
+        segment.position += RECORD_BYTES;
+    }
+
+    private WeatherEntry read(long position) {
+        return read(segments.get(segmentOf(position)).buffer, offsetOf(position));
+    }
+
+    private static WeatherEntry read(MappedByteBuffer buffer, int offset) {
+        return new WeatherEntry(buffer.getInt(offset + 9), buffer.getLong(offset + 1),
+                buffer.getDouble(offset + 13), buffer.getDouble(offset + 21),
+                buffer.getDouble(offset + 29), buffer.getDouble(offset + 37),
+                buffer.getDouble(offset + 45), buffer.getDouble(offset + 53));
+    }
+
+    private boolean sameValues(long position, WeatherEntry entry) {
+        MappedByteBuffer buffer = segments.get(segmentOf(position)).buffer;
+        int offset = offsetOf(position);
+        return buffer.getInt(offset + 9) == entry.getWeatherIconId()
+                && Double.compare(buffer.getDouble(offset + 13), entry.getMin()) == 0
+                && Double.compare(buffer.getDouble(offset + 21), entry.getMax()) == 0
+                && Double.compare(buffer.getDouble(offset + 29), entry.getHumidity()) == 0
+                && Double.compare(buffer.getDouble(offset + 37), entry.getPressure()) == 0
+                && Double.compare(buffer.getDouble(offset + 45), entry.getWind()) == 0
+                && Double.compare(buffer.getDouble(offset + 53), entry.getDegrees()) == 0;
+    }
+
+    /**
+     * Rebuilds the index from the segments. Records after the last commit are erased, along
+     * with any segment that only holds such records, and writing continues after the commit.
+     */
+    private void replay() {
+        index.clear();
+        recordCount = 0;
+        List<long[]> uncommitted = new ArrayList<>();
+        int uncommittedRecords = 0;
+        Segment committedSegment = null;
+        int committedOffset = 0;
+
+        for (Segment segment : segments.values()) {
+            MappedByteBuffer buffer = segment.buffer;
+            int offset = 0;
+            for (; offset + RECORD_BYTES <= segment.size; offset += RECORD_BYTES) {
+                byte type = buffer.get(offset);
+                if (type == END) break;
+                uncommittedRecords++;
+                if (type == COMMIT) {
+                    for (long[] record : uncommitted) {
+                        if (record[0] == PUT) {
+                            index.put(record[1], record[2]);
+                        } else if (record[0] == REMOVE_FROM) {
+                            index.tailMap(record[1], true).clear();
+                        } else {
+                            index.headMap(record[1]).clear();
+                        }
+                    }
+                    uncommitted.clear();
+                    recordCount += uncommittedRecords;
+                    uncommittedRecords = 0;
+                    committedSegment = segment;
+                    committedOffset = offset + RECORD_BYTES;
+                } else {
+                    uncommitted.add(new long[]{type, buffer.getLong(offset + 1),
+                            position(segment, offset)});
+                }
+            }
+            segment.position = offset;
+        }
+
+        // Drop what was written after the last commit
+        for (Segment segment : new ArrayList<>(segments.values())) {
+            if (committedSegment != null && segment.number < committedSegment.number) continue;
+            if (segment == committedSegment
+                    || (committedSegment == null && segment == segments.firstEntry().getValue())) {
+                int from = segment == committedSegment ? committedOffset : 0;
+                clear(segment, from, segment.position);
+                segment.position = from;
+                continue;
+            }
+            segments.remove(segment.number);
+            if (!segment.file.delete()) Log.w(LOG_TAG, "Could not delete " + segment.file);
+        }
+    }
+
+    private void deleteSegmentsFrom(int number) {
+        for (Segment segment : new ArrayList<>(segments.tailMap(number, true).values())) {
+            segments.remove(segment.number);
+            if (!segment.file.delete()) Log.w(LOG_TAG, "Could not delete " + segment.file);
+        }
+    }
+
+    private Segment lastSegment() {
+        return segments.lastEntry().getValue();
+    }
+
+    private Segment addSegment() throws IOException {
+        // Numbers kept for the copies of a running compaction are skipped
+        int number = Math.max(segments.isEmpty() ? 1 : segments.lastKey() + 1,
+                reservedThrough + 1);
+        Segment segment = map(number);
+        segments.put(number, segment);
+        return segment;
+    }
+
+    private Segment map(int number) throws IOException {
+        return map(number, new File(directory, SEGMENT_PREFIX + number + SEGMENT_SUFFIX),
+                segmentBytes);
+    }
+
+    /**
+     * Maps a segment left by an earlier run at the size of its file, which is the segment size
+     * it was written with. An empty file never got its first record and takes the current size.
+     */
+    private Segment mapExisting(int number, File file) throws IOException {
+        long length = file.length();
+        if (length == 0) return map(number, file, segmentBytes);
+        if (length % RECORD_BYTES != 0 || length > Integer.MAX_VALUE) {
+            throw new IOException(file + " is " + length + " bytes, not a whole number of "
+                    + RECORD_BYTES + " byte records");
+        }
+        return map(number, file, (int) length);
+    }
+
+    private static Segment map(int number, File file, int size) throws IOException {
+        RandomAccessFile access = new RandomAccessFile(file, "rw");
+        try {
+            MappedByteBuffer buffer = access.getChannel()
+                    .map(FileChannel.MapMode.READ_WRITE, 0, size);
+            return new Segment(number, file, buffer, size);
+        } finally {
+            // The mapping stays valid once the file is closed
+            access.close();
+        }
+    }
+
+    private static void clear(Segment segment, int from, int to) {
+        for (int offset = from; offset < to; offset++) {
+            segment.buffer.put(offset, (byte) 0);
+        }
+    }
+
+    private static int segmentNumber(File file) {
+        String name = file.getName();
+        if (!name.startsWith(SEGMENT_PREFIX) || !name.endsWith(SEGMENT_SUFFIX)) return -1;
+        try {
+            return Integer.parseInt(name.substring(SEGMENT_PREFIX.length(),
+                    name.length() - SEGMENT_SUFFIX.length()));
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    /* Positions pack the segment number in the high half and the offset in the low half */
+    private static long position(Segment segment, int offset) {
+        return ((long) segment.number << 32) | offset;
+    }
+
+    private static int segmentOf(long position) {
+        return (int) (position >>> 32);
+    }
+
+    private static int offsetOf(long position) {
+        return (int) position;
+    }
+
+    private static class Segment {
+
+        final int number;
+        final File file;
+        final MappedByteBuffer buffer;
+        /* Bytes mapped, a whole number of records */
+        final int size;
+        /* Where the next record goes */
+        int position;
+
+        Segment(int number, File file, MappedByteBuffer buffer, int size) {
+            this.number = number;
+            this.file = file;
+            this.buffer = buffer;
+            this.size = size;
+        }
+    }
+}
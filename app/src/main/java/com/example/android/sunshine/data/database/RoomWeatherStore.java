@@ -0,0 +1,94 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.data.database;
+
+import android.support.annotation.Nullable;
+
+import java.util.List;
+
+/**
+ * {@link WeatherStore} on the weather table of the {@link SunshineDatabase}. Writes go through
+ * the {@link WeatherBulkWriter}, and days removed from the table are archived first, see
+ * {@link ArchiveDao#archiveOldWeather(long, HistoryRetentionPolicy)}.
+ */
+public class RoomWeatherStore implements WeatherStore {
+
+    private final WeatherDao weatherDao;
+    private final ArchiveDao archiveDao;
+    private final WeatherBulkWriter bulkWriter;
+    private final HistoryRetentionPolicy retentionPolicy;
+
+    /**
+     * @param retentionPolicy How long the archived days are kept
+     */
+    public RoomWeatherStore(SunshineDatabase database, HistoryRetentionPolicy retentionPolicy) {
+        this.weatherDao = database.weatherDao();
+        this.archiveDao = database.archiveDao();
+        this.bulkWriter = new WeatherBulkWriter(database);
+        this.retentionPolicy = retentionPolicy;
+    }
+
+    @Override
+    public void runInTransaction(Runnable writes) {
+        bulkWriter.runInTransaction(writes);
+    }
+
+    @Override
+    public UpsertResult upsert(WeatherEntry... weather) {
+        return bulkWriter.upsert(weather);
+    }
+
+    @Override
+    public int removeBefore(long date) {
+        return archiveDao.archiveOldWeather(date, retentionPolicy);
+    }
+
+    @Override
+    public int removeFrom(long date) {
+        return weatherDao.deleteWeatherFrom(date);
+    }
+
+    @Nullable
+    @Override
+    public WeatherEntry getWeatherByDate(long date) {
+        return weatherDao.getWeatherByDateNow(date);
+    }
+
+    @Override
+    public List<WeatherEntry> getWeatherBetween(long start, long end) {
+        return weatherDao.getWeatherBetween(start, end);
+    }
+
+    @Override
+    public List<ListWeatherEntry> getListWeatherFrom(long date) {
+        return weatherDao.getCurrentWeatherForecastsNow(date);
+    }
+
+    @Override
+    public int count() {
+        return weatherDao.countWeather();
+    }
+
+    @Override
+    public long getFirstDate() {
+        return weatherDao.getFirstDate();
+    }
+
+    @Override
+    public long getLastDate() {
+        return weatherDao.getLastDate();
+    }
+}
@@ -16,21 +16,26 @@
 
 package com.example.android.sunshine.data.database;
 
+import android.arch.persistence.db.SupportSQLiteDatabase;
 import android.arch.persistence.room.Database;
 import android.arch.persistence.room.Room;
 import android.arch.persistence.room.RoomDatabase;
-import android.arch.persistence.room.TypeConverters;
+import android.arch.persistence.room.migration.Migration;
 import android.content.Context;
 import android.util.Log;
 
+import com.example.android.sunshine.StartupTimings;
+
 /**
  * {@link SunshineDatabase} database for the application including a table for {@link WeatherEntry}
- * with the DAO {@link WeatherDao}.
+ * with the DAO {@link WeatherDao}, the archive tables for {@link WeatherHistoryEntry} and
+ * {@link WeatherRollup} with the DAO {@link ArchiveDao}, and the table for {@link SyncMetadata}
+ * with the DAO {@link SyncMetadataDao}.
  */
 
-// List of the entry classes and associated TypeConverters
-@Database(entities = {WeatherEntry.class}, version = 1)
-@TypeConverters(DateConverter.class)
+// List of the entry classes
+@Database(entities = {WeatherEntry.class, WeatherHistoryEntry.class, WeatherRollup.class,
+        SyncMetadata.class}, version = 5)
 public abstract class SunshineDatabase extends RoomDatabase {
 
     private static final String LOG_TAG = SunshineDatabase.class.getSimpleName();
@@ -40,12 +45,112 @@ public abstract class SunshineDatabase extends RoomDatabase {
     private static final Object LOCK = new Object();
     private static SunshineDatabase sInstance;
 
+    /**
+     * Version 2 adds the weather archive. The existing forecasts are kept, the archive tables
+     * start out empty and are filled the next time old weather is pruned.
+     */
+    static final Migration MIGRATION_1_2 = new Migration(1, 2) {
+        @Override
+        public void migrate(SupportSQLiteDatabase database) {
+            database.execSQL("CREATE TABLE IF NOT EXISTS `weather_history` ("
+                    + "`epochDay` INTEGER NOT NULL, `weatherIconId` INTEGER NOT NULL, "
+                    + "`min` REAL NOT NULL, `max` REAL NOT NULL, `humidity` REAL NOT NULL, "
+                    + "PRIMARY KEY(`epochDay`))");
+            database.execSQL("CREATE TABLE IF NOT EXISTS `weather_rollup` ("
+                    + "`period` INTEGER NOT NULL, `periodStart` INTEGER NOT NULL, "
+                    + "`dayCount` INTEGER NOT NULL, `minTemp` REAL NOT NULL, `maxTemp` REAL NOT NULL, "
+                    + "`sumMeanTemp` REAL NOT NULL, `sumHumidity` REAL NOT NULL, "
+                    + "PRIMARY KEY(`period`, `periodStart`))");
+        }
+    };
+
+    /**
+     * Version 3 stores the weather date as a primitive long instead of a converted Date. The
+     * values were already stored as milliseconds, but the column becomes NOT NULL, which SQLite
+     * can only do by copying the table.
+     */
+    static final Migration MIGRATION_2_3 = new Migration(2, 3) {
+        @Override
+        public void migrate(SupportSQLiteDatabase database) {
+            database.execSQL("CREATE TABLE IF NOT EXISTS `weather_new` ("
+                    + "`id` INTEGER PRIMARY KEY AUTOINCREMENT NOT NULL, "
+                    + "`weatherIconId` INTEGER NOT NULL, `date` INTEGER NOT NULL, "
+                    + "`min` REAL NOT NULL, `max` REAL NOT NULL, `humidity` REAL NOT NULL, "
+                    + "`pressure` REAL NOT NULL, `wind` REAL NOT NULL, `degrees` REAL NOT NULL)");
+            database.execSQL("INSERT INTO `weather_new` (`id`, `weatherIconId`, `date`, `min`, "
+                    + "`max`, `humidity`, `pressure`, `wind`, `degrees`) "
+                    + "SELECT `id`, `weatherIconId`, `date`, `min`, `max`, `humidity`, `pressure`, "
+                    + "`wind`, `degrees` FROM `weather` WHERE `date` IS NOT NULL");
+            database.execSQL("DROP TABLE `weather`");
+            database.execSQL("ALTER TABLE `weather_new` RENAME TO `weather`");
+            database.execSQL("CREATE UNIQUE INDEX `index_weather_date` ON `weather` (`date`)");
+        }
+    };
+
+    /**
+     * Version 4 adds the sync metadata. It starts out empty, so the first start after the upgrade
+     * syncs once and the sync fills it in.
+     */
+    static final Migration MIGRATION_3_4 = new Migration(3, 4) {
+        @Override
+        public void migrate(SupportSQLiteDatabase database) {
+            database.execSQL("CREATE TABLE IF NOT EXISTS `sync_metadata` ("
+                    + "`locationKey` TEXT NOT NULL, `lastSyncMillis` INTEGER NOT NULL, "
+                    + "`firstDate` INTEGER NOT NULL, `lastDate` INTEGER NOT NULL, "
+                    + "`rowCount` INTEGER NOT NULL, `etag` TEXT, `lastModified` TEXT, "
+                    + "PRIMARY KEY(`locationKey`))");
+        }
+    };
+
+    /**
+     * Version 5 adds the location to the keys of the archive, so the days and rollups of
+     * different locations are kept apart. The rows archived so far are kept under an empty key,
+     * since the location they were forecast for is not known.
+     */
+    static final Migration MIGRATION_4_5 = new Migration(4, 5) {
+        @Override
+        public void migrate(SupportSQLiteDatabase database) {
+            database.execSQL("CREATE TABLE IF NOT EXISTS `weather_history_new` ("
+                    + "`locationKey` TEXT NOT NULL, `epochDay` INTEGER NOT NULL, "
+                    + "`weatherIconId` INTEGER NOT NULL, `min` REAL NOT NULL, `max` REAL NOT NULL, "
+                    + "`humidity` REAL NOT NULL, PRIMARY KEY(`locationKey`, `epochDay`))");
+            database.execSQL("INSERT INTO `weather_history_new` (`locationKey`, `epochDay`, "
+                    + "`weatherIconId`, `min`, `max`, `humidity`) "
+                    + "SELECT '', `epochDay`, `weatherIconId`, `min`, `max`, `humidity` "
+                    + "FROM `weather_history`");
+            database.execSQL("DROP TABLE `weather_history`");
+            database.execSQL("ALTER TABLE `weather_history_new` RENAME TO `weather_history`");
+
+            database.execSQL("CREATE TABLE IF NOT EXISTS `weather_rollup_new` ("
+                    + "`locationKey` TEXT NOT NULL, `period` INTEGER NOT NULL, "
+                    + "`periodStart` INTEGER NOT NULL, `dayCount` INTEGER NOT NULL, "
+                    + "`minTemp` REAL NOT NULL, `maxTemp` REAL NOT NULL, "
+                    + "`sumMeanTemp` REAL NOT NULL, `sumHumidity` REAL NOT NULL, "
+                    + "PRIMARY KEY(`locationKey`, `period`, `periodStart`))");
+            database.execSQL("INSERT INTO `weather_rollup_new` (`locationKey`, `period`, "
+                    + "`periodStart`, `dayCount`, `minTemp`, `maxTemp`, `sumMeanTemp`, "
+                    + "`sumHumidity`) SELECT '', `period`, `periodStart`, `dayCount`, `minTemp`, "
+                    + "`maxTemp`, `sumMeanTemp`, `sumHumidity` FROM `weather_rollup`");
+            database.execSQL("DROP TABLE `weather_rollup`");
+            database.execSQL("ALTER TABLE `weather_rollup_new` RENAME TO `weather_rollup`");
+        }
+    };
+
     public static SunshineDatabase getInstance(Context context) {
         Log.d(LOG_TAG, "Getting the database");
         if (sInstance == null) {
             synchronized (LOCK) {
                 sInstance = Room.databaseBuilder(context.getApplicationContext(),
-                        SunshineDatabase.class, SunshineDatabase.DATABASE_NAME).build();
+                        SunshineDatabase.class, SunshineDatabase.DATABASE_NAME)
+                        .addMigrations(MIGRATION_1_2, MIGRATION_2_3, MIGRATION_3_4,
+                                MIGRATION_4_5)
+                        .addCallback(new Callback() {
+                            @Override
+                            public void onOpen(SupportSQLiteDatabase db) {
+                                StartupTimings.getInstance().mark(StartupTimings.MILESTONE_DB_OPEN);
+                            }
+                        })
+                        .build();
                 Log.d(LOG_TAG, "Made new database");
             }
         }
@@ -54,4 +159,8 @@ public abstract class SunshineDatabase extends RoomDatabase {
 
     // The associated DAOs for the database
     public abstract WeatherDao weatherDao();
+
+    public abstract ArchiveDao archiveDao();
+
+    public abstract SyncMetadataDao syncMetadataDao();
 }
@@ -20,6 +20,11 @@ import android.content.SharedPreferences;
 import android.preference.PreferenceManager;
 
 import com.example.android.sunshine.R;
+import com.example.android.sunshine.utilities.GeoCell;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 
 public final class SunshinePreferences {
 
@@ -31,6 +36,12 @@ public final class SunshinePreferences {
     public static final String PREF_COORD_LAT = "coord_lat";
     public static final String PREF_COORD_LONG = "coord_long";
 
+    /* Location keys of coordinates start with this, followed by their geohash cell */
+    public static final String CELL_KEY_PREFIX = "geo:";
+
+    /* Keys of the locations used most recently, newest first, one per line */
+    private static final String PREF_RECENT_LOCATION_KEYS = "recent_location_keys";
+
     /**
      * Helper method to handle setting location details in Preferences (city name, latitude,
      * longitude)
@@ -155,6 +166,65 @@ public final class SunshinePreferences {
         return spContainBothLatitudeAndLongitude;
     }
 
+    /**
+     * Returns a key identifying the location weather is synced for: the coordinates when they
+     * are available, as they are what the sync requests, and the location name otherwise.
+     * Coordinates are keyed by their geohash cell, so moving within the cell keeps the key.
+     *
+     * @param context Context used to get the SharedPreferences
+     * @return The key of the current location
+     */
+    public static String getLocationKey(Context context) {
+        if (isLocationLatLonAvailable(context)) {
+            double[] coordinates = getLocationCoordinates(context);
+            int precision = context.getResources().getInteger(R.integer.location_cell_precision);
+            if (precision > 0) {
+                return CELL_KEY_PREFIX + GeoCell.encode(coordinates[0], coordinates[1], precision);
+            }
+            return coordinates[0] + "," + coordinates[1];
+        }
+        return getPreferredWeatherLocation(context);
+    }
+
+    /**
+     * Returns the keys of the locations weather was shown for most recently, newest first. The
+     * current location is first once it was recorded with {@link #addRecentLocationKey}.
+     *
+     * @param context Context used to get the SharedPreferences
+     * @return The location keys, see {@link #getLocationKey(Context)}
+     */
+    public static List<String> getRecentLocationKeys(Context context) {
+        SharedPreferences sp = PreferenceManager.getDefaultSharedPreferences(context);
+        String keys = sp.getString(PREF_RECENT_LOCATION_KEYS, "");
+        if (keys.isEmpty()) return new ArrayList<>();
+        return new ArrayList<>(Arrays.asList(keys.split("\n")));
+    }
+
+    /**
+     * Moves a location to the front of the recent locations, dropping the oldest ones beyond
+     * the number kept.
+     *
+     * @param context     Context used to get the SharedPreferences
+     * @param locationKey The key of the location
+     * @return The recent location keys, newest first
+     */
+    public static List<String> addRecentLocationKey(Context context, String locationKey) {
+        int max = context.getResources().getInteger(R.integer.recent_locations_max);
+        List<String> keys = getRecentLocationKeys(context);
+        keys.remove(locationKey);
+        keys.add(0, locationKey);
+        while (keys.size() > max) keys.remove(keys.size() - 1);
+
+        StringBuilder joined = new StringBuilder();
+        for (String key : keys) {
+            if (joined.length() > 0) joined.append('\n');
+            joined.append(key);
+        }
+        SharedPreferences sp = PreferenceManager.getDefaultSharedPreferences(context);
+        sp.edit().putString(PREF_RECENT_LOCATION_KEYS, joined.toString()).apply();
+        return keys;
+    }
+
     /**
      * Returns true if the user prefers to see notifications from Sunshine, false otherwise. This
      * preference can be changed by the user within the SettingsFragment.
@@ -242,4 +312,32 @@ public final class SunshinePreferences {
         editor.putLong(lastNotificationKey, timeOfNotification);
         editor.apply();
     }
-}
\ No newline at end of file
+
+    /**
+     * Returns the interval the periodic sync is currently scheduled with. The interval adapts to
+     * how often the forecasts change, see the AdaptiveSyncScheduler.
+     *
+     * @param context         Used to access SharedPreferences
+     * @param defaultInterval Interval to return if none was saved yet, in seconds
+     * @return The sync interval in seconds
+     */
+    public static long getSyncIntervalSeconds(Context context, long defaultInterval) {
+        SharedPreferences sp = PreferenceManager.getDefaultSharedPreferences(context);
+        String syncIntervalKey = context.getString(R.string.pref_sync_interval);
+        return sp.getLong(syncIntervalKey, defaultInterval);
+    }
+
+    /**
+     * Saves the interval the periodic sync is scheduled with.
+     *
+     * @param context         Used to access SharedPreferences
+     * @param intervalSeconds The sync interval in seconds
+     */
+    public static void saveSyncIntervalSeconds(Context context, long intervalSeconds) {
+        SharedPreferences sp = PreferenceManager.getDefaultSharedPreferences(context);
+        SharedPreferences.Editor editor = sp.edit();
+        String syncIntervalKey = context.getString(R.string.pref_sync_interval);
+        editor.putLong(syncIntervalKey, intervalSeconds);
+        editor.apply();
+    }
+}
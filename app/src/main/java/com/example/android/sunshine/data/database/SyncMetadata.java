@@ -0,0 +1,101 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.android.sunshine.data.database;
+
+import android.arch.persistence.room.Entity;
+import android.arch.persistence.room.PrimaryKey;
+import android.support.annotation.NonNull;
+
+import com.example.android.sunshine.utilities.SunshineDateUtils;
+
+/**
+ * What the last stored sync left in the weather table, kept in the sync_metadata table so
+ * deciding whether to sync is a lookup by location instead of a scan of the weather. The row is
+ * written in the same transaction as the forecasts, see
+ * {@link SyncMetadataDao#recordSync(String, long, WeatherStore, String, String)}.
+ */
+@Entity(tableName = "sync_metadata")
+public class SyncMetadata {
+
+    /* See SunshinePreferences.getLocationKey */
+    @PrimaryKey
+    @NonNull
+    private String locationKey;
+    /* When the forecasts were stored, in UNIX milliseconds */
+    private long lastSyncMillis;
+    /* Dates of the first and last stored forecasts, normalized UTC milliseconds */
+    private long firstDate;
+    private long lastDate;
+    private int rowCount;
+    private String etag;
+    private String lastModified;
+
+    // Constructor used by Room to create SyncMetadata
+    public SyncMetadata(@NonNull String locationKey, long lastSyncMillis, long firstDate,
+                        long lastDate, int rowCount, String etag, String lastModified) {
+        this.locationKey = locationKey;
+        this.lastSyncMillis = lastSyncMillis;
+        this.firstDate = firstDate;
+        this.lastDate = lastDate;
+        this.rowCount = rowCount;
+        this.etag = etag;
+        this.lastModified = lastModified;
+    }
+
+    /**
+     * Counts the stored days from a day on. The weather table holds one row per day, without
+     * gaps, so this is what counting the rows from that day on would return.
+     *
+     * @param date Normalized UTC date of the first day to count
+     * @return Number of days stored from that date on
+     */
+    public int getDaysFrom(long date) {
+        if (rowCount == 0 || lastDate < date) return 0;
+        long first = Math.max(firstDate, date);
+        long days = (lastDate - first) / SunshineDateUtils.DAY_IN_MILLIS + 1;
+        return (int) Math.min(days, rowCount);
+    }
+
+    @NonNull
+    public String getLocationKey() {
+        return locationKey;
+    }
+
+    public long getLastSyncMillis() {
+        return lastSyncMillis;
+    }
+
+    public long getFirstDate() {
+        return firstDate;
+    }
+
+    public long getLastDate() {
+        return lastDate;
+    }
+
+    public int getRowCount() {
+        return rowCount;
+    }
+
+    public String getEtag() {
+        return etag;
+    }
+
+    public String getLastModified() {
+        return lastModified;
+    }
+}
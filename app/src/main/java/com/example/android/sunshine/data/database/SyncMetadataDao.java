@@ -0,0 +1,69 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.android.sunshine.data.database;
+
+import android.arch.persistence.room.Dao;
+import android.arch.persistence.room.Insert;
+import android.arch.persistence.room.OnConflictStrategy;
+import android.arch.persistence.room.Query;
+import android.arch.persistence.room.Transaction;
+import android.support.annotation.Nullable;
+
+/**
+ * {@link Dao} for the {@link SyncMetadata} of the stored forecasts
+ */
+@Dao
+public abstract class SyncMetadataDao {
+
+    /**
+     * Records what a sync left in the weather store. The store holds the forecasts of one
+     * location, so the rows of every other location are removed. Call it in the transaction that
+     * stored the forecasts, so the row never describes forecasts that were rolled back.
+     *
+     * @param locationKey    The location the forecasts were stored for
+     * @param lastSyncMillis When they were stored, in UNIX milliseconds
+     * @param store          Where they were stored
+     * @param etag           The ETag of the response, or null
+     * @param lastModified   The Last-Modified date of the response, or null
+     */
+    @Transaction
+    public void recordSync(String locationKey, long lastSyncMillis, WeatherStore store,
+                           @Nullable String etag, @Nullable String lastModified) {
+        deleteOtherLocations(locationKey);
+        insert(new SyncMetadata(locationKey, lastSyncMillis, store.getFirstDate(),
+                store.getLastDate(), store.count(), etag, lastModified));
+    }
+
+    /**
+     * @return The metadata of a location, or null if nothing is stored for it
+     */
+    @Query("SELECT * FROM sync_metadata WHERE locationKey = :locationKey")
+    public abstract SyncMetadata getSyncMetadata(String locationKey);
+
+    /**
+     * Removes the metadata of every location, for when the weather store no longer holds
+     * forecasts of a synced location
+     */
+    @Query("DELETE FROM sync_metadata")
+    public abstract int deleteAll();
+
+    @Query("DELETE FROM sync_metadata WHERE locationKey != :locationKey")
+    abstract int deleteOtherLocations(String locationKey);
+
+    @Insert(onConflict = OnConflictStrategy.REPLACE)
+    abstract void insert(SyncMetadata syncMetadata);
+}
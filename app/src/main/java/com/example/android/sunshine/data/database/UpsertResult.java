@@ -0,0 +1,72 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.android.sunshine.data.database;
+
+import java.util.Arrays;
+
+/**
+ * Outcome of writing a batch of forecasts with the {@link WeatherBulkWriter}: how many rows were
+ * new, how many changed and which dates were actually written.
+ */
+public class UpsertResult {
+
+    public static final UpsertResult EMPTY = new UpsertResult(0, 0, 0, new long[0]);
+
+    private final int inserted;
+    private final int updated;
+    private final int unchanged;
+    private final long[] touchedDates;
+
+    UpsertResult(int inserted, int updated, int unchanged, long[] touchedDates) {
+        this.inserted = inserted;
+        this.updated = updated;
+        this.unchanged = unchanged;
+        this.touchedDates = touchedDates;
+    }
+
+    public int getInserted() {
+        return inserted;
+    }
+
+    public int getUpdated() {
+        return updated;
+    }
+
+    public int getUnchanged() {
+        return unchanged;
+    }
+
+    /**
+     * @return true if at least one row was inserted or updated
+     */
+    public boolean hasChanges() {
+        return inserted + updated > 0;
+    }
+
+    /**
+     * @return The normalized UTC dates of the rows that were inserted or updated, sorted
+     */
+    public long[] getTouchedDates() {
+        return touchedDates;
+    }
+
+    @Override
+    public String toString() {
+        return "UpsertResult{inserted=" + inserted + ", updated=" + updated
+                + ", unchanged=" + unchanged + ", touchedDates=" + Arrays.toString(touchedDates) + '}';
+    }
+}
@@ -0,0 +1,258 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.android.sunshine.data.database;
+
+import android.arch.persistence.db.SupportSQLiteStatement;
+import android.database.Cursor;
+import android.support.annotation.WorkerThread;
+import android.util.SparseArray;
+
+import java.util.Arrays;
+import java.util.Comparator;
+
+/**
+ * High throughput write path for forecasts coming from a sync. Unlike
+ * {@link WeatherDao#bulkInsert(WeatherEntry...)}, which replaces every row through Room's entity
+ * adapter, this writer compares the batch with the rows already stored and only touches what
+ * changed: new dates are inserted, changed dates get an UPDATE of just the changed columns, and
+ * identical rows are skipped. All statements are compiled once and reused for every row, and the
+ * whole batch is written in one transaction, so Room's observers are notified once at the end.
+ * <p>
+ * Writes are expected to come from the single disk IO thread; calls are serialized.
+ */
+public class WeatherBulkWriter {
+
+    /* Columns that can change for a date, in the order used by the change mask */
+    private static final String[] VALUE_COLUMNS = {
+            "weatherIconId", "min", "max", "humidity", "pressure", "wind", "degrees"};
+
+    private static final String INSERT_SQL = "INSERT OR REPLACE INTO weather "
+            + "(weatherIconId, min, max, humidity, pressure, wind, degrees, date) "
+            + "VALUES (?, ?, ?, ?, ?, ?, ?, ?)";
+
+    private static final String SELECT_RANGE_SQL = "SELECT date, weatherIconId, min, max, "
+            + "humidity, pressure, wind, degrees FROM weather WHERE date BETWEEN ? AND ? "
+            + "ORDER BY date ASC";
+
+    private static final Comparator<WeatherEntry> BY_DATE = new Comparator<WeatherEntry>() {
+        @Override
+        public int compare(WeatherEntry first, WeatherEntry second) {
+            return first.getDate() < second.getDate() ? -1
+                    : (first.getDate() == second.getDate() ? 0 : 1);
+        }
+    };
+
+    private final SunshineDatabase database;
+
+    private SupportSQLiteStatement insertStatement;
+    /* UPDATE statements, compiled on first use for each combination of changed columns */
+    private final SparseArray<SupportSQLiteStatement> updateStatements = new SparseArray<>();
+
+    public WeatherBulkWriter(SunshineDatabase database) {
+        this.database = database;
+    }
+
+    /**
+     * Writes a batch of forecasts. If the batch contains the same date more than once, the last
+     * one wins, like it does for {@link WeatherDao#bulkInsert(WeatherEntry...)}.
+     *
+     * @param weather The forecasts to store
+     * @return What was actually written
+     */
+    @WorkerThread
+    public synchronized UpsertResult upsert(WeatherEntry... weather) {
+        if (weather == null || weather.length == 0) return UpsertResult.EMPTY;
+
+        // A stable sort keeps the input order for equal dates, so the last one can be picked
+        WeatherEntry[] sorted = Arrays.copyOf(weather, weather.length);
+        Arrays.sort(sorted, BY_DATE);
+
+        int inserted = 0;
+        int updated = 0;
+        int unchanged = 0;
+        long[] touchedDates = new long[sorted.length];
+
+        database.beginTransaction();
+        try {
+            StoredRows stored = readStoredRows(sorted[0].getDate(), sorted[sorted.length - 1].getDate());
+
+            int storedIndex = 0;
+            for (int i = 0; i < sorted.length; i++) {
+                WeatherEntry entry = sorted[i];
+                if (i + 1 < sorted.length && sorted[i + 1].getDate() == entry.getDate()) continue;
+
+                while (storedIndex < stored.count && stored.dates[storedIndex] < entry.getDate()) {
+                    storedIndex++;
+                }
+
+                if (storedIndex < stored.count && stored.dates[storedIndex] == entry.getDate()) {
+                    int changedColumns = stored.changedColumns(storedIndex, entry);
+                    if (changedColumns == 0) {
+                        unchanged++;
+                        continue;
+                    }
+                    update(changedColumns, entry);
+                    updated++;
+                } else {
+                    insert(entry);
+                    inserted++;
+                }
+                touchedDates[inserted + updated - 1] = entry.getDate();
+            }
+
+            database.setTransactionSuccessful();
+        } finally {
+            database.endTransaction();
+        }
+
+        return new UpsertResult(inserted, updated, unchanged,
+                Arrays.copyOf(touchedDates, inserted + updated));
+    }
+
+    /**
+     * Runs several writes, such as archiving and {@link #upsert(WeatherEntry...)}, as one
+     * transaction, so they commit together and Room's observers are notified once.
+     */
+    @WorkerThread
+    public synchronized void runInTransaction(Runnable writes) {
+        database.beginTransaction();
+        try {
+            writes.run();
+            database.setTransactionSuccessful();
+        } finally {
+            database.endTransaction();
+        }
+    }
+
+    private void insert(WeatherEntry entry) {
+        if (insertStatement == null) {
+            insertStatement = database.compileStatement(INSERT_SQL);
+        }
+        insertStatement.bindLong(1, entry.getWeatherIconId());
+        insertStatement.bindDouble(2, entry.getMin());
+        insertStatement.bindDouble(3, entry.getMax());
+        insertStatement.bindDouble(4, entry.getHumidity());
+        insertStatement.bindDouble(5, entry.getPressure());
+        insertStatement.bindDouble(6, entry.getWind());
+        insertStatement.bindDouble(7, entry.getDegrees());
+        insertStatement.bindLong(8, entry.getDate());
+        insertStatement.executeInsert();
+    }
+
+    private void update(int changedColumns, WeatherEntry entry) {
+        SupportSQLiteStatement statement = updateStatements.get(changedColumns);
+        if (statement == null) {
+            statement = database.compileStatement(buildUpdateSql(changedColumns));
+            updateStatements.put(changedColumns, statement);
+        }
+
+        int index = 1;
+        for (int column = 0; column < VALUE_COLUMNS.length; column++) {
+            if ((changedColumns & (1 << column)) == 0) continue;
+            if (column == 0) {
+                statement.bindLong(index++, entry.getWeatherIconId());
+            } else {
+                statement.bindDouble(index++, valueOf(entry, column));
+            }
+        }
+        statement.bindLong(index, entry.getDate());
+        statement.executeUpdateDelete();
+    }
+
+    private static String buildUpdateSql(int changedColumns) {
+        StringBuilder sql = new StringBuilder("UPDATE weather SET ");
+        boolean first = true;
+        for (int column = 0; column < VALUE_COLUMNS.length; column++) {
+            if ((changedColumns & (1 << column)) == 0) continue;
+            if (!first) sql.append(", ");
+            sql.append(VALUE_COLUMNS[column]).append(" = ?");
+            first = false;
+        }
+        return sql.append(" WHERE date = ?").toString();
+    }
+
+    /**
+     * @return The value of one of the double columns, by its index in {@link #VALUE_COLUMNS}
+     */
+    private static double valueOf(WeatherEntry entry, int column) {
+        switch (column) {
+            case 1: return entry.getMin();
+            case 2: return entry.getMax();
+            case 3: return entry.getHumidity();
+            case 4: return entry.getPressure();
+            case 5: return entry.getWind();
+            case 6: return entry.getDegrees();
+            default:
+                throw new IllegalArgumentException("Invalid value column, value of " + column);
+        }
+    }
+
+    /**
+     * Loads the stored rows in the batch's date range into primitive columns. The cursor is
+     * closed before anything is written, so writes cannot shift rows under it.
+     */
+    private StoredRows readStoredRows(long firstDate, long lastDate) {
+        Cursor cursor = database.query(SELECT_RANGE_SQL, new Object[]{firstDate, lastDate});
+        try {
+            StoredRows stored = new StoredRows(cursor.getCount());
+            while (cursor.moveToNext()) {
+                int row = cursor.getPosition();
+                stored.dates[row] = cursor.getLong(0);
+                stored.iconIds[row] = cursor.getInt(1);
+                for (int column = 1; column < VALUE_COLUMNS.length; column++) {
+                    stored.values[row * (VALUE_COLUMNS.length - 1) + column - 1] =
+                            cursor.getDouble(column + 1);
+                }
+            }
+            return stored;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /**
+     * Stored rows of the batch's date range, in date order. The double columns of a row are
+     * kept next to each other in one array.
+     */
+    private static class StoredRows {
+        final int count;
+        final long[] dates;
+        final int[] iconIds;
+        final double[] values;
+
+        StoredRows(int count) {
+            this.count = count;
+            dates = new long[count];
+            iconIds = new int[count];
+            values = new double[count * (VALUE_COLUMNS.length - 1)];
+        }
+
+        /**
+         * @return A bit mask of the columns of {@link #VALUE_COLUMNS} that differ from the entry
+         */
+        int changedColumns(int row, WeatherEntry entry) {
+            int mask = iconIds[row] == entry.getWeatherIconId() ? 0 : 1;
+            for (int column = 1; column < VALUE_COLUMNS.length; column++) {
+                double stored = values[row * (VALUE_COLUMNS.length - 1) + column - 1];
+                if (Double.compare(stored, valueOf(entry, column)) != 0) {
+                    mask |= 1 << column;
+                }
+            }
+            return mask;
+        }
+    }
+}
@@ -22,7 +22,6 @@ import android.arch.persistence.room.Insert;
 import android.arch.persistence.room.OnConflictStrategy;
 import android.arch.persistence.room.Query;
 
-import java.util.Date;
 import java.util.List;
 
 /**
@@ -35,24 +34,39 @@ public interface WeatherDao {
      * be kept in sync with the database, so that it will automatically notify observers when the
      * values in the table change.
      *
-     * @param date A {@link Date} from which to select all future weather
+     * @param date A normalized UTC date in milliseconds from which to select all future weather
      * @return {@link LiveData} list of all {@link ListWeatherEntry} objects after date
      */
     @Query("SELECT id, weatherIconId, date, min, max FROM weather WHERE date >= :date ORDER BY date ASC")
-    LiveData<List<ListWeatherEntry>> getCurrentWeatherForecasts(Date date);
-
-    @Query("SELECT id, weatherIconId, date, min, max FROM weather WHERE date >= :date")
-    ListWeatherEntry getLastWeatherForecasts(Date date);
+    LiveData<List<ListWeatherEntry>> getCurrentWeatherForecasts(long date);
 
     /**
-     * Selects all ids entries after a give date, inclusive. This is for easily seeing
-     * what entries are in the database without pulling all of the data.
+     * Same selection as {@link #getCurrentWeatherForecasts(long)}, run once on the calling thread
+     * for callers that are already off the main thread.
      *
-     * @param date The date to select after (inclusive)
-     * @return Number of future weather forecasts stored in the database
+     * @param date A normalized UTC date in milliseconds from which to select all future weather
+     * @return List of all {@link ListWeatherEntry} objects after date
      */
-    @Query("SELECT COUNT(id) FROM weather WHERE date >= :date")
-    int countAllFutureWeather(Date date);
+    @Query("SELECT id, weatherIconId, date, min, max FROM weather WHERE date >= :date ORDER BY date ASC")
+    List<ListWeatherEntry> getCurrentWeatherForecastsNow(long date);
+
+    /**
+     * @return Number of days stored
+     */
+    @Query("SELECT COUNT(id) FROM weather")
+    int countWeather();
+
+    /**
+     * @return The first day stored, or 0 if none is
+     */
+    @Query("SELECT IFNULL(MIN(date), 0) FROM weather")
+    long getFirstDate();
+
+    /**
+     * @return The last day stored, or 0 if none is
+     */
+    @Query("SELECT IFNULL(MAX(date), 0) FROM weather")
+    long getLastDate();
 
     /**
      * Gets the weather for a single day
@@ -61,7 +75,26 @@ public interface WeatherDao {
      * @return {@link LiveData} with weather for a single day
      */
     @Query("SELECT * FROM weather WHERE date = :date")
-    LiveData<WeatherEntry> getWeatherByDate(Date date);
+    LiveData<WeatherEntry> getWeatherByDate(long date);
+
+    /**
+     * Same selection as {@link #getWeatherByDate(long)}, run once on the calling thread
+     *
+     * @param date The date you want weather for
+     * @return The weather for the day, or null if it is not stored
+     */
+    @Query("SELECT * FROM weather WHERE date = :date")
+    WeatherEntry getWeatherByDateNow(long date);
+
+    /**
+     * Gets the weather for a range of days, run once on the calling thread
+     *
+     * @param start The first day, inclusive
+     * @param end   The last day, inclusive
+     * @return The weather of the days in the range that are stored, in date order
+     */
+    @Query("SELECT * FROM weather WHERE date BETWEEN :start AND :end ORDER BY date ASC")
+    List<WeatherEntry> getWeatherBetween(long start, long end);
 
     /**
      * Inserts a list of {@link WeatherEntry} into the weather table. If there is a conflicting id
@@ -79,6 +112,15 @@ public interface WeatherDao {
      * @param date The date to delete all prior weather from (exclusive)
      */
     @Query("DELETE FROM weather WHERE date < :date")
-    void deleteOldWeather(Date date);
+    void deleteOldWeather(long date);
+
+    /**
+     * Deletes the weather of a day and every day after it
+     *
+     * @param date The first day deleted (inclusive)
+     * @return Number of days deleted
+     */
+    @Query("DELETE FROM weather WHERE date >= :date")
+    int deleteWeatherFrom(long date);
 
 }
@@ -22,12 +22,11 @@ import android.arch.persistence.room.Index;
 import android.arch.persistence.room.PrimaryKey;
 import android.arch.persistence.room.Room;
 
-import java.util.Date;
-
 /**
  * Defines the schema of a table in {@link Room} for a single weather
  * forecast. The date is used as an {@link Index} so that its uniqueness can be ensured. Indexes
- * also allow for fast lookup for the column.
+ * also allow for fast lookup for the column. The date is kept as a primitive, normalized UTC
+ * timestamp in milliseconds, so reading a row allocates no date objects.
  */
 @Entity(tableName = "weather", indices = {@Index(value = {"date"}, unique = true)})
 public class WeatherEntry {
@@ -38,7 +37,7 @@ public class WeatherEntry {
     @PrimaryKey(autoGenerate = true)
     private int id;
     private int weatherIconId;
-    private Date date;
+    private long date;
     private double min;
     private double max;
     private double humidity;
@@ -50,7 +49,7 @@ public class WeatherEntry {
      * This constructor is used by OpenWeatherJsonParser. When the network fetch has JSON data, it
      * converts this data to WeatherEntry objects using this constructor.
      * @param weatherIconId Image id for weather
-     * @param date Date of weather
+     * @param date Date of weather, as a normalized UTC timestamp in milliseconds
      * @param min Min temperature
      * @param max Max temperature
      * @param humidity Humidity for the day
@@ -59,7 +58,7 @@ public class WeatherEntry {
      * @param degrees Wind direction
      */
     @Ignore
-    public WeatherEntry(int weatherIconId, Date date, double min, double max, double humidity, double pressure, double wind, double degrees) {
+    public WeatherEntry(int weatherIconId, long date, double min, double max, double humidity, double pressure, double wind, double degrees) {
         this.weatherIconId = weatherIconId;
         this.date = date;
         this.min = min;
@@ -71,7 +70,7 @@ public class WeatherEntry {
     }
 
     // Constructor used by Room to create WeatherEntries
-    public WeatherEntry(int id, int weatherIconId, Date date, double min, double max, double humidity, double pressure, double wind, double degrees) {
+    public WeatherEntry(int id, int weatherIconId, long date, double min, double max, double humidity, double pressure, double wind, double degrees) {
         this.id = id;
         this.weatherIconId = weatherIconId;
         this.date = date;
@@ -87,7 +86,7 @@ public class WeatherEntry {
         return id;
     }
 
-    public Date getDate() {
+    public long getDate() {
         return date;
     }
 
@@ -118,4 +117,18 @@ public class WeatherEntry {
     public double getDegrees() {
         return degrees;
     }
+
+    /**
+     * @return A hash of every value, the same for rows with the same content
+     */
+    public long contentHash() {
+        long hash = ContentHash.mix(id, weatherIconId);
+        hash = ContentHash.mix(hash, date);
+        hash = ContentHash.mix(hash, Double.doubleToLongBits(min));
+        hash = ContentHash.mix(hash, Double.doubleToLongBits(max));
+        hash = ContentHash.mix(hash, Double.doubleToLongBits(humidity));
+        hash = ContentHash.mix(hash, Double.doubleToLongBits(pressure));
+        hash = ContentHash.mix(hash, Double.doubleToLongBits(wind));
+        return ContentHash.mix(hash, Double.doubleToLongBits(degrees));
+    }
 }
@@ -0,0 +1,100 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.android.sunshine.data.database;
+
+import android.arch.persistence.room.Entity;
+import android.arch.persistence.room.Ignore;
+import android.support.annotation.NonNull;
+
+import com.example.android.sunshine.utilities.SunshineDateUtils;
+
+/**
+ * Compact copy of a past {@link WeatherEntry}, kept in the weather_history table once the day
+ * has gone by. Only the values used for trends are kept, and the day is stored as the number of
+ * days since the epoch. The location is part of the key, so the days of locations shown one
+ * after the other are kept apart.
+ */
+@Entity(tableName = "weather_history", primaryKeys = {"locationKey", "epochDay"})
+public class WeatherHistoryEntry {
+
+    /* The location the day was forecast for, see SunshinePreferences.getLocationKey */
+    @NonNull
+    private String locationKey;
+    private long epochDay;
+    private int weatherIconId;
+    private double min;
+    private double max;
+    private double humidity;
+
+    // Constructor used by Room to create WeatherHistoryEntries
+    public WeatherHistoryEntry(@NonNull String locationKey, long epochDay, int weatherIconId,
+                               double min, double max, double humidity) {
+        this.locationKey = locationKey;
+        this.epochDay = epochDay;
+        this.weatherIconId = weatherIconId;
+        this.min = min;
+        this.max = max;
+        this.humidity = humidity;
+    }
+
+    /**
+     * Creates the history row for a forecast that is about to be pruned from the weather table.
+     *
+     * @param locationKey  The location the weather table holds
+     * @param weatherEntry The expired forecast
+     */
+    @Ignore
+    public WeatherHistoryEntry(@NonNull String locationKey, WeatherEntry weatherEntry) {
+        this(locationKey, SunshineDateUtils.elapsedDaysSinceEpoch(weatherEntry.getDate()),
+                weatherEntry.getWeatherIconId(),
+                weatherEntry.getMin(),
+                weatherEntry.getMax(),
+                weatherEntry.getHumidity());
+    }
+
+    @NonNull
+    public String getLocationKey() {
+        return locationKey;
+    }
+
+    public long getEpochDay() {
+        return epochDay;
+    }
+
+    public int getWeatherIconId() {
+        return weatherIconId;
+    }
+
+    public double getMin() {
+        return min;
+    }
+
+    public double getMax() {
+        return max;
+    }
+
+    public double getHumidity() {
+        return humidity;
+    }
+
+    /**
+     * @return The mean temperature of the day, used for the rollup averages
+     */
+    public double getMeanTemperature() {
+        return (min + max) / 2;
+    }
+}
@@ -0,0 +1,155 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.android.sunshine.data.database;
+
+import android.arch.persistence.room.Entity;
+import android.arch.persistence.room.Ignore;
+import android.support.annotation.NonNull;
+
+import com.example.android.sunshine.utilities.SunshineDateUtils;
+
+import java.util.Calendar;
+import java.util.TimeZone;
+
+/**
+ * Precomputed weekly or monthly aggregate of the archived weather. Rollups store running sums
+ * rather than averages so that a new day can be folded in without reading the days already
+ * counted; the means are derived on read. Each location has its own rollups.
+ */
+@Entity(tableName = "weather_rollup", primaryKeys = {"locationKey", "period", "periodStart"})
+public class WeatherRollup {
+
+    public static final int PERIOD_WEEK = 0;
+    public static final int PERIOD_MONTH = 1;
+
+    /* The location the days were forecast for, see SunshinePreferences.getLocationKey */
+    @NonNull
+    private String locationKey;
+    private int period;
+    /* First day of the period, in days since the epoch */
+    private long periodStart;
+    private int dayCount;
+    private double minTemp;
+    private double maxTemp;
+    private double sumMeanTemp;
+    private double sumHumidity;
+
+    // Constructor used by Room to create WeatherRollups
+    public WeatherRollup(@NonNull String locationKey, int period, long periodStart, int dayCount,
+                         double minTemp, double maxTemp, double sumMeanTemp, double sumHumidity) {
+        this.locationKey = locationKey;
+        this.period = period;
+        this.periodStart = periodStart;
+        this.dayCount = dayCount;
+        this.minTemp = minTemp;
+        this.maxTemp = maxTemp;
+        this.sumMeanTemp = sumMeanTemp;
+        this.sumHumidity = sumHumidity;
+    }
+
+    /**
+     * Creates an empty rollup for the given period.
+     *
+     * @param locationKey The location the days are folded in for
+     * @param period      {@link #PERIOD_WEEK} or {@link #PERIOD_MONTH}
+     * @param periodStart First day of the period, in days since the epoch
+     */
+    @Ignore
+    public WeatherRollup(@NonNull String locationKey, int period, long periodStart) {
+        this(locationKey, period, periodStart, 0, Double.MAX_VALUE, -Double.MAX_VALUE, 0, 0);
+    }
+
+    /**
+     * Folds one archived day into this rollup.
+     *
+     * @param day The archived day, which must fall into this rollup's period
+     */
+    void add(WeatherHistoryEntry day) {
+        dayCount++;
+        minTemp = Math.min(minTemp, day.getMin());
+        maxTemp = Math.max(maxTemp, day.getMax());
+        sumMeanTemp += day.getMeanTemperature();
+        sumHumidity += day.getHumidity();
+    }
+
+    /**
+     * Returns the first day of the period that contains the given day. Weeks start on Monday and
+     * months on their first day, both in UTC like the rest of the stored dates.
+     *
+     * @param period   {@link #PERIOD_WEEK} or {@link #PERIOD_MONTH}
+     * @param epochDay The day, in days since the epoch
+     * @return The first day of the period, in days since the epoch
+     */
+    public static long periodStartFor(int period, long epochDay) {
+        switch (period) {
+            case PERIOD_WEEK:
+                // January 1st, 1970 was a Thursday, 3 days after a Monday
+                long dayOfWeek = ((epochDay + 3) % 7 + 7) % 7;
+                return epochDay - dayOfWeek;
+
+            case PERIOD_MONTH:
+                Calendar calendar = Calendar.getInstance(TimeZone.getTimeZone("UTC"));
+                calendar.setTimeInMillis(epochDay * SunshineDateUtils.DAY_IN_MILLIS);
+                calendar.set(Calendar.DAY_OF_MONTH, 1);
+                return SunshineDateUtils.elapsedDaysSinceEpoch(calendar.getTimeInMillis());
+
+            default:
+                throw new IllegalArgumentException("Invalid rollup period, value of " + period);
+        }
+    }
+
+    @NonNull
+    public String getLocationKey() {
+        return locationKey;
+    }
+
+    public int getPeriod() {
+        return period;
+    }
+
+    public long getPeriodStart() {
+        return periodStart;
+    }
+
+    public int getDayCount() {
+        return dayCount;
+    }
+
+    public double getMinTemp() {
+        return minTemp;
+    }
+
+    public double getMaxTemp() {
+        return maxTemp;
+    }
+
+    public double getSumMeanTemp() {
+        return sumMeanTemp;
+    }
+
+    public double getSumHumidity() {
+        return sumHumidity;
+    }
+
+    public double getMeanTemperature() {
+        return dayCount == 0 ? 0 : sumMeanTemp / dayCount;
+    }
+
+    public double getMeanHumidity() {
+        return dayCount == 0 ? 0 : sumHumidity / dayCount;
+    }
+}
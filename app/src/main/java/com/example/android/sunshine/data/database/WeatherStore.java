@@ -0,0 +1,101 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.data.database;
+
+import android.support.annotation.Nullable;
+import android.support.annotation.WorkerThread;
+
+import java.util.List;
+
+/**
+ * Where the forecasts are kept. The repository reads and writes forecasts only through this, so
+ * the storage engine can be swapped: {@link RoomWeatherStore} keeps them in the weather table of
+ * the {@link SunshineDatabase}, {@link LogWeatherStore} in an append-only log of memory-mapped
+ * segments. Dates are normalized UTC milliseconds, and a store holds at most one forecast per
+ * date.
+ * <p>
+ * Writes are expected to come from the single disk IO thread. None of the methods may be called
+ * on the main thread.
+ */
+@WorkerThread
+public interface WeatherStore {
+
+    /**
+     * Runs several writes as one transaction: they are all kept, or none if the writes throw.
+     * Transactions can be nested, only the outermost one commits.
+     */
+    void runInTransaction(Runnable writes);
+
+    /**
+     * Writes a batch of forecasts, skipping the days that are stored with the same values. If
+     * the batch holds a date more than once, the last one wins.
+     *
+     * @return What was actually written
+     */
+    UpsertResult upsert(WeatherEntry... weather);
+
+    /**
+     * Removes the forecasts of the days before a date. What happens to them depends on the
+     * store: {@link RoomWeatherStore} moves them into the weather archive in the same
+     * transaction, so they feed the history and the weekly and monthly rollups, while
+     * {@link LogWeatherStore} only drops them and leaves the archive as it is. Callers that
+     * need the history must not assume a removed day was archived.
+     *
+     * @param date The first day kept
+     * @return Number of days removed
+     */
+    int removeBefore(long date);
+
+    /**
+     * Removes the forecasts of a day and every day after it, without archiving them, for when
+     * they belong to a location that is no longer shown
+     *
+     * @param date The first day removed
+     * @return Number of days removed
+     */
+    int removeFrom(long date);
+
+    /**
+     * @return The forecast of a day, or null if it is not stored
+     */
+    @Nullable
+    WeatherEntry getWeatherByDate(long date);
+
+    /**
+     * @return The forecasts from start to end, inclusive, in date order
+     */
+    List<WeatherEntry> getWeatherBetween(long start, long end);
+
+    /**
+     * @return The list rows of the forecasts from a date on, in date order
+     */
+    List<ListWeatherEntry> getListWeatherFrom(long date);
+
+    /**
+     * @return Number of days stored
+     */
+    int count();
+
+    /**
+     * @return The first day stored, or 0 if none is
+     */
+    long getFirstDate();
+
+    /**
+     * @return The last day stored, or 0 if none is
+     */
+    long getLastDate();
+}
@@ -0,0 +1,312 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.data.network;
+
+import android.support.annotation.Nullable;
+import android.util.Log;
+
+import com.example.android.sunshine.data.database.WeatherEntry;
+import com.example.android.sunshine.data.network.sync.SyncJob;
+import com.example.android.sunshine.data.network.sync.SyncTracer;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.Executor;
+
+/**
+ * Hands downloaded forecasts from the sync to storage.
+ * <p>
+ * Pending forecasts are kept per location, and a newer download for a location replaces the
+ * one still waiting, since only the latest can matter. Whatever is pending when the writer runs
+ * is handed to it at once, so a burst of syncs becomes a single write. When more locations are
+ * pending than the queue holds, a sync waits for the writer for a while and then the oldest
+ * pending location is dropped.
+ * <p>
+ * Each batch holds a part of its {@link SyncJob} until it is stored, replaced or dropped, so the
+ * job only finishes once its forecasts are dealt with. Batches of cancelled jobs are not stored.
+ */
+public class ForecastIngestQueue {
+
+    private static final String LOG_TAG = ForecastIngestQueue.class.getSimpleName();
+
+    /**
+     * Stores the forecasts taken from the queue
+     */
+    public interface Writer {
+        /**
+         * Called on the queue's executor with everything that was pending.
+         *
+         * @param batches At most one batch per location, oldest first
+         */
+        void write(List<Batch> batches);
+    }
+
+    private final Executor executor;
+    private final int maxPending;
+    private final long maxWaitMillis;
+
+    /* Location keys to their latest pending forecasts, oldest first */
+    private final LinkedHashMap<String, Batch> pending = new LinkedHashMap<>();
+    private Writer writer;
+    private boolean drainScheduled;
+
+    private int offeredCount;
+    private int conflatedCount;
+    private int droppedCount;
+    private int cancelledCount;
+    private int writtenBatchCount;
+    private int writeCount;
+
+    private final Runnable drain = new Runnable() {
+        @Override
+        public void run() {
+            drain();
+        }
+    };
+
+    /**
+     * @param executor      Where the writer runs, a single thread
+     * @param maxPending    Locations that can be pending at once
+     * @param maxWaitMillis How long a sync waits for room before the oldest location is dropped
+     */
+    public ForecastIngestQueue(Executor executor, int maxPending, long maxWaitMillis) {
+        this.executor = executor;
+        this.maxPending = maxPending;
+        this.maxWaitMillis = maxWaitMillis;
+    }
+
+    /**
+     * Sets who stores the forecasts. Forecasts offered before there is a writer wait for it.
+     */
+    public synchronized void setWriter(Writer writer) {
+        this.writer = writer;
+        scheduleDrain();
+    }
+
+    /**
+     * Queues downloaded forecasts, replacing any still pending for the same location. Blocks
+     * while the queue is full, up to the configured wait.
+     *
+     * @param locationKey Identifies the location the forecasts are for
+     * @param forecasts   The forecasts
+     * @param job         The sync that downloaded them, continued by the writer, or null
+     */
+    public synchronized void offer(String locationKey, WeatherEntry[] forecasts,
+                                   @Nullable SyncJob job) {
+        offeredCount++;
+        if (job != null) job.fork();
+        Batch batch = new Batch(locationKey, forecasts, job);
+
+        Batch replaced = pending.remove(locationKey);
+        if (replaced != null) {
+            conflatedCount++;
+            replaced.finishUnwritten("Conflated with a newer sync of the location");
+        } else if (pending.size() >= maxPending) {
+            waitForRoom();
+            if (pending.size() >= maxPending) {
+                Iterator<Batch> oldest = pending.values().iterator();
+                Batch dropped = oldest.next();
+                oldest.remove();
+                droppedCount++;
+                dropped.finishUnwritten("Dropped from the full ingest queue");
+                Log.w(LOG_TAG, "Ingest queue full, dropped the forecasts for "
+                        + dropped.getLocationKey());
+            }
+        }
+        pending.put(locationKey, batch);
+        scheduleDrain();
+    }
+
+    public synchronized int getPendingCount() {
+        return pending.size();
+    }
+
+    /**
+     * @return Batches offered to the queue
+     */
+    public synchronized int getOfferedCount() {
+        return offeredCount;
+    }
+
+    /**
+     * @return Batches replaced by a newer one for the same location before they were written
+     */
+    public synchronized int getConflatedCount() {
+        return conflatedCount;
+    }
+
+    /**
+     * @return Batches dropped because the queue was full
+     */
+    public synchronized int getDroppedCount() {
+        return droppedCount;
+    }
+
+    /**
+     * @return Batches not stored because their sync was cancelled while they waited
+     */
+    public synchronized int getCancelledCount() {
+        return cancelledCount;
+    }
+
+    /**
+     * @return Batches handed to the writer
+     */
+    public synchronized int getWrittenBatchCount() {
+        return writtenBatchCount;
+    }
+
+    /**
+     * @return Times the writer ran
+     */
+    public synchronized int getWriteCount() {
+        return writeCount;
+    }
+
+    private void waitForRoom() {
+        long deadline = System.currentTimeMillis() + maxWaitMillis;
+        long remaining = maxWaitMillis;
+        while (pending.size() >= maxPending && remaining > 0) {
+            try {
+                wait(remaining);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            remaining = deadline - System.currentTimeMillis();
+        }
+    }
+
+    private void scheduleDrain() {
+        if (drainScheduled || writer == null || pending.isEmpty()) return;
+        drainScheduled = true;
+        executor.execute(drain);
+    }
+
+    private void drain() {
+        Writer currentWriter;
+        List<Batch> batches;
+        synchronized (this) {
+            drainScheduled = false;
+            if (writer == null || pending.isEmpty()) return;
+            currentWriter = writer;
+            batches = new ArrayList<>(pending.size());
+            for (Batch batch : pending.values()) {
+                if (batch.isCancelled()) {
+                    cancelledCount++;
+                    batch.finishUnwritten("The sync was cancelled");
+                } else {
+                    batches.add(batch);
+                }
+            }
+            pending.clear();
+            notifyAll();
+            if (batches.isEmpty()) return;
+            writtenBatchCount += batches.size();
+            writeCount++;
+        }
+
+        for (Batch batch : batches) {
+            batch.endQueueSpan();
+        }
+        try {
+            currentWriter.write(batches);
+        } finally {
+            for (Batch batch : batches) {
+                if (batch.job != null) batch.job.complete();
+            }
+        }
+    }
+
+    /**
+     * The forecasts of one sync for one location
+     */
+    public static class Batch {
+
+        private final String locationKey;
+        private final WeatherEntry[] forecasts;
+        private final SyncJob job;
+        private final SyncTracer.Trace trace;
+        private final long queuedNanos;
+
+        Batch(String locationKey, WeatherEntry[] forecasts, @Nullable SyncJob job) {
+            this.locationKey = locationKey;
+            this.forecasts = forecasts;
+            this.job = job;
+            this.trace = job == null ? null : job.getTrace();
+            this.queuedNanos = trace == null ? 0 : trace.now();
+        }
+
+        public String getLocationKey() {
+            return locationKey;
+        }
+
+        public WeatherEntry[] getForecasts() {
+            return forecasts;
+        }
+
+        /**
+         * @return The sync that downloaded the forecasts, for the writer to finish, or null
+         */
+        @Nullable
+        public SyncTracer.Trace getTrace() {
+            return trace;
+        }
+
+        /**
+         * @return The ETag of the response the forecasts came from, or null
+         */
+        @Nullable
+        public String getEtag() {
+            return job == null ? null : job.getEtag();
+        }
+
+        /**
+         * @return The Last-Modified date of the response the forecasts came from, or null
+         */
+        @Nullable
+        public String getLastModified() {
+            return job == null ? null : job.getLastModified();
+        }
+
+        /**
+         * @return true if the sync that downloaded the forecasts was cancelled
+         */
+        public boolean isCancelled() {
+            return job != null && job.isCancelled();
+        }
+
+        private void endQueueSpan() {
+            if (trace != null) trace.end(SyncTracer.STAGE_QUEUE, queuedNanos);
+        }
+
+        /**
+         * Ends the sync of forecasts that are never written, which the tracer counts as failed
+         *
+         * @param reason Why they are not written
+         */
+        private void finishUnwritten(String reason) {
+            if (job == null) return;
+            if (trace != null) {
+                trace.fail(SyncTracer.STAGE_QUEUE, queuedNanos, new CancellationException(reason));
+            }
+            job.complete();
+        }
+    }
+}
@@ -0,0 +1,403 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.data.network;
+
+import android.support.annotation.Nullable;
+import android.util.Log;
+
+import com.example.android.sunshine.utilities.Clock;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * A bounded on-disk cache of forecast responses, so a process restart does not pay for a full
+ * download when the last response is still fresh.
+ * <p>
+ * Entries are keyed by the normalized request URL and stored one file per entry. Freshness
+ * follows the response's Cache-Control max-age, or its Expires date when there is no max-age;
+ * no-store responses are not kept and no-cache ones are always revalidated. Stale entries keep
+ * their ETag and Last-Modified so they can be revalidated with a conditional request. When the
+ * cache grows over its byte budget the least recently used entries are deleted first; the file
+ * modification time records the use, so the order survives restarts. The entries on disk are
+ * listed on the first use rather than when the cache is created, which may be on the main thread.
+ */
+public class ForecastResponseCache {
+
+    private static final String LOG_TAG = ForecastResponseCache.class.getSimpleName();
+
+    private static final int FORMAT_VERSION = 1;
+    private static final String ENTRY_SUFFIX = ".entry";
+
+    private final File directory;
+    private final long maxBytes;
+    private final Clock clock;
+
+    /* Entry file names to their size, least recently used first */
+    private final LinkedHashMap<String, Long> index = new LinkedHashMap<>(16, 0.75f, true);
+    private long totalBytes;
+    private boolean loaded;
+
+    private int hitCount;
+    private int missCount;
+
+    /**
+     * @param directory Directory holding the entries, created if needed
+     * @param maxBytes  Budget of the entry files, in bytes
+     * @param clock     Wall clock used for expiry dates
+     */
+    public ForecastResponseCache(File directory, long maxBytes, Clock clock) {
+        this.directory = directory;
+        this.maxBytes = maxBytes;
+        this.clock = clock;
+    }
+
+    /**
+     * Lists the entries on disk, once, on the thread of the first use
+     */
+    private void ensureLoaded() {
+        if (loaded) return;
+        loaded = true;
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            Log.e(LOG_TAG, "Could not create the response cache in " + directory);
+            return;
+        }
+        File[] files = directory.listFiles();
+        if (files == null) return;
+
+        Arrays.sort(files, new Comparator<File>() {
+            @Override
+            public int compare(File first, File second) {
+                long difference = first.lastModified() - second.lastModified();
+                return difference < 0 ? -1 : (difference == 0 ? 0 : 1);
+            }
+        });
+        for (File file : files) {
+            if (!file.getName().endsWith(ENTRY_SUFFIX)) continue;
+            index.put(file.getName(), file.length());
+            totalBytes += file.length();
+        }
+        trimToSize();
+    }
+
+    /**
+     * @return The cached response for the URL, fresh or stale, or null if there is none
+     */
+    @Nullable
+    public synchronized Entry get(URL url) {
+        ensureLoaded();
+        String name = fileName(url);
+        if (!index.containsKey(name)) {
+            missCount++;
+            return null;
+        }
+
+        File file = new File(directory, name);
+        DataInputStream in = null;
+        try {
+            in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+            if (in.readInt() != FORMAT_VERSION) throw new IOException("Unknown entry format");
+            Entry entry = new Entry(
+                    in.readUTF(), in.readLong(), emptyToNull(in.readUTF()),
+                    emptyToNull(in.readUTF()), readBody(in));
+            if (!entry.url.equals(normalize(url))) {
+                /* Two URLs with the same hash, treat as a miss and let the put replace it */
+                missCount++;
+                return null;
+            }
+            hitCount++;
+            /* Mark the entry as used, in memory and on disk for the next process */
+            index.get(name);
+            file.setLastModified(clock.currentTimeMillis());
+            return entry;
+        } catch (IOException e) {
+            Log.w(LOG_TAG, "Dropping unreadable cache entry " + name, e);
+            remove(name);
+            missCount++;
+            return null;
+        } finally {
+            closeQuietly(in);
+        }
+    }
+
+    /**
+     * Stores a response, unless its Cache-Control forbids it.
+     *
+     * @param url          The request URL
+     * @param body         The response body
+     * @param cacheControl The Cache-Control header, or null
+     * @param expires      The Expires header as UNIX milliseconds, or 0 if there is none
+     * @param etag         The ETag header, or null
+     * @param lastModified The Last-Modified header, or null
+     */
+    public synchronized void put(URL url, String body, @Nullable String cacheControl,
+                                 long expires, @Nullable String etag, @Nullable String lastModified) {
+        ensureLoaded();
+        long expiresAt = computeExpiry(cacheControl, expires, clock.currentTimeMillis());
+        String name = fileName(url);
+        if (expiresAt == NO_STORE) {
+            remove(name);
+            return;
+        }
+
+        File file = new File(directory, name);
+        File temporary = new File(directory, name + ".tmp");
+        DataOutputStream out = null;
+        try {
+            out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temporary)));
+            out.writeInt(FORMAT_VERSION);
+            out.writeUTF(normalize(url));
+            out.writeLong(expiresAt);
+            out.writeUTF(etag == null ? "" : etag);
+            out.writeUTF(lastModified == null ? "" : lastModified);
+            byte[] bytes = body.getBytes("UTF-8");
+            out.writeInt(bytes.length);
+            out.write(bytes);
+            out.close();
+            out = null;
+
+            remove(name);
+            if (!temporary.renameTo(file)) throw new IOException("Could not rename " + temporary);
+            index.put(name, file.length());
+            totalBytes += file.length();
+            trimToSize();
+        } catch (IOException e) {
+            Log.w(LOG_TAG, "Could not cache the response of " + url, e);
+            temporary.delete();
+        } finally {
+            closeQuietly(out);
+        }
+    }
+
+    /**
+     * Stores a revalidated entry again with the freshness of the 304 response, keeping its body.
+     */
+    public void refresh(URL url, Entry entry, @Nullable String cacheControl, long expires,
+                        @Nullable String etag, @Nullable String lastModified) {
+        put(url, entry.body, cacheControl, expires,
+                etag != null ? etag : entry.etag,
+                lastModified != null ? lastModified : entry.lastModified);
+    }
+
+    public synchronized long size() {
+        ensureLoaded();
+        return totalBytes;
+    }
+
+    public long getMaxBytes() {
+        return maxBytes;
+    }
+
+    public synchronized int getHitCount() {
+        return hitCount;
+    }
+
+    public synchronized int getMissCount() {
+        return missCount;
+    }
+
+    /**
+     * Deletes every entry
+     */
+    public synchronized void evictAll() {
+        ensureLoaded();
+        for (String name : index.keySet()) {
+            new File(directory, name).delete();
+        }
+        index.clear();
+        totalBytes = 0;
+    }
+
+    private void trimToSize() {
+        Iterator<Map.Entry<String, Long>> eldest = index.entrySet().iterator();
+        while (totalBytes > maxBytes && eldest.hasNext()) {
+            Map.Entry<String, Long> entry = eldest.next();
+            new File(directory, entry.getKey()).delete();
+            totalBytes -= entry.getValue();
+            eldest.remove();
+        }
+    }
+
+    private void remove(String name) {
+        Long size = index.remove(name);
+        if (size != null) totalBytes -= size;
+        new File(directory, name).delete();
+    }
+
+    private static final long NO_STORE = -1;
+
+    /**
+     * Works out until when a response is fresh. A max-age directive wins over the Expires
+     * header, as it does in HTTP/1.1.
+     *
+     * @return UNIX milliseconds until which the response is fresh, {@link #NO_STORE} if it must
+     * not be stored
+     */
+    static long computeExpiry(@Nullable String cacheControl, long expires, long now) {
+        if (cacheControl != null) {
+            long maxAge = -1;
+            boolean noCache = false;
+            for (String directive : cacheControl.toLowerCase(Locale.US).split(",")) {
+                directive = directive.trim();
+                if (directive.equals("no-store")) return NO_STORE;
+                if (directive.equals("no-cache")) {
+                    noCache = true;
+                } else if (directive.startsWith("max-age=")) {
+                    try {
+                        maxAge = Long.parseLong(directive.substring(8).trim());
+                    } catch (NumberFormatException e) {
+                        /* An invalid max-age makes the response stale */
+                        maxAge = 0;
+                    }
+                }
+            }
+            if (noCache) return now;
+            if (maxAge >= 0) return now + maxAge * 1000;
+        }
+        return expires > 0 ? expires : now;
+    }
+
+    /**
+     * Normalizes a URL so equivalent requests share an entry: the scheme and host are lower
+     * cased, the default port and the fragment are dropped and the query parameters are sorted.
+     */
+    static String normalize(URL url) {
+        try {
+            URI uri = url.toURI();
+            String scheme = uri.getScheme().toLowerCase(Locale.US);
+            int port = uri.getPort();
+            if (port == url.getDefaultPort()) port = -1;
+
+            String query = uri.getRawQuery();
+            if (query != null) {
+                String[] parameters = query.split("&");
+                Arrays.sort(parameters);
+                StringBuilder sorted = new StringBuilder();
+                for (String parameter : parameters) {
+                    if (parameter.isEmpty()) continue;
+                    if (sorted.length() > 0) sorted.append('&');
+                    sorted.append(parameter);
+                }
+                query = sorted.toString();
+            }
+
+            String path = uri.getRawPath();
+            return scheme + "://" + uri.getHost().toLowerCase(Locale.US)
+                    + (port == -1 ? "" : ":" + port)
+                    + (path == null || path.isEmpty() ? "/" : path)
+                    + (query == null || query.isEmpty() ? "" : "?" + query);
+        } catch (URISyntaxException e) {
+            return url.toString();
+        }
+    }
+
+    private static String fileName(URL url) {
+        try {
+            byte[] digest = MessageDigest.getInstance("MD5").digest(normalize(url).getBytes("UTF-8"));
+            StringBuilder name = new StringBuilder(digest.length * 2 + ENTRY_SUFFIX.length());
+            for (byte b : digest) {
+                name.append(String.format(Locale.US, "%02x", b & 0xff));
+            }
+            return name.append(ENTRY_SUFFIX).toString();
+        } catch (NoSuchAlgorithmException | IOException e) {
+            throw new AssertionError(e);
+        }
+    }
+
+    private static String readBody(DataInputStream in) throws IOException {
+        byte[] bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+        return new String(bytes, "UTF-8");
+    }
+
+    private static String emptyToNull(String value) {
+        return value.isEmpty() ? null : value;
+    }
+
+    private static void closeQuietly(Closeable closeable) {
+        if (closeable == null) return;
+        try {
+            closeable.close();
+        } catch (IOException ignored) {
+        }
+    }
+
+    /**
+     * A cached response
+     */
+    public class Entry {
+
+        private final String url;
+        private final long expiresAt;
+        private final String etag;
+        private final String lastModified;
+        private final String body;
+
+        Entry(String url, long expiresAt, String etag, String lastModified, String body) {
+            this.url = url;
+            this.expiresAt = expiresAt;
+            this.etag = etag;
+            this.lastModified = lastModified;
+            this.body = body;
+        }
+
+        /**
+         * @return true if the entry can be used without asking the server
+         */
+        public boolean isFresh() {
+            return clock.currentTimeMillis() < expiresAt;
+        }
+
+        /**
+         * @return true if the server can be asked whether the entry is still valid
+         */
+        public boolean canRevalidate() {
+            return etag != null || lastModified != null;
+        }
+
+        @Nullable
+        public String getEtag() {
+            return etag;
+        }
+
+        @Nullable
+        public String getLastModified() {
+            return lastModified;
+        }
+
+        public String getBody() {
+            return body;
+        }
+    }
+}
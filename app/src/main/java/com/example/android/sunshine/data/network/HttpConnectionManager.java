@@ -0,0 +1,194 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.data.network;
+
+import android.support.annotation.Nullable;
+
+import com.example.android.sunshine.data.network.sync.SyncJob;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.concurrent.TimeUnit;
+
+import javax.net.ssl.HostnameVerifier;
+import javax.net.ssl.HttpsURLConnection;
+import javax.net.ssl.SSLSocketFactory;
+
+/**
+ * Opens and releases the HTTP connections to the weather server so their sockets can be reused.
+ * <p>
+ * HttpURLConnection keeps a pool of idle keep-alive connections, but a connection only goes
+ * back to the pool once its response body has been read to the end and closed. Calling
+ * {@link HttpURLConnection#disconnect()} instead closes the socket, and the next request pays
+ * for a new TCP and TLS handshake. This class drains and closes the body after each request and
+ * only disconnects when a response could not be read cleanly.
+ * <p>
+ * HttpURLConnection does not pipeline HTTP/1.1 requests and has no public switch for HTTP/2,
+ * so reuse is limited to sequential requests over pooled connections.
+ */
+public class HttpConnectionManager {
+
+    public static final int DEFAULT_CONNECT_TIMEOUT_MILLIS = (int) TimeUnit.SECONDS.toMillis(15);
+    public static final int DEFAULT_READ_TIMEOUT_MILLIS = (int) TimeUnit.SECONDS.toMillis(20);
+
+    private final int connectTimeoutMillis;
+    private final int readTimeoutMillis;
+    private final boolean keepAlive;
+    private final SSLSocketFactory sslSocketFactory;
+    private final HostnameVerifier hostnameVerifier;
+
+    private HttpConnectionManager(Builder builder) {
+        connectTimeoutMillis = builder.connectTimeoutMillis;
+        readTimeoutMillis = builder.readTimeoutMillis;
+        keepAlive = builder.keepAlive;
+        sslSocketFactory = builder.sslSocketFactory;
+        hostnameVerifier = builder.hostnameVerifier;
+    }
+
+    /**
+     * Sizes the pool of idle connections shared by every HttpURLConnection in the process. The
+     * pool reads these properties when it is first used, so this must be called before the
+     * first request.
+     *
+     * @param maxIdleConnections Idle connections kept per address
+     */
+    public static void configureConnectionPool(int maxIdleConnections) {
+        System.setProperty("http.keepAlive", "true");
+        System.setProperty("http.maxConnections", Integer.toString(maxIdleConnections));
+    }
+
+    /**
+     * Opens a connection with the configured timeouts. Pass it to
+     * {@link #release(HttpURLConnection, InputStream)} once done with it.
+     */
+    public HttpURLConnection open(URL url) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+        connection.setConnectTimeout(connectTimeoutMillis);
+        connection.setReadTimeout(readTimeoutMillis);
+        if (!keepAlive) {
+            connection.setRequestProperty("Connection", "close");
+        }
+        if (connection instanceof HttpsURLConnection) {
+            HttpsURLConnection https = (HttpsURLConnection) connection;
+            if (sslSocketFactory != null) https.setSSLSocketFactory(sslSocketFactory);
+            if (hostnameVerifier != null) https.setHostnameVerifier(hostnameVerifier);
+        }
+        return connection;
+    }
+
+    /**
+     * Reads a response body to the end, without closing it.
+     *
+     * @return The body, or null if it is empty
+     */
+    @Nullable
+    public static String readBody(InputStream body) throws IOException {
+        return readBody(body, null);
+    }
+
+    /**
+     * Reads a response body to the end, without closing it, stopping between reads if the sync
+     * doing the request is cancelled.
+     *
+     * @param job The sync doing the request, or null
+     * @return The body, or null if it is empty
+     */
+    @Nullable
+    public static String readBody(InputStream body, @Nullable SyncJob job) throws IOException {
+        Reader reader = new InputStreamReader(body, "UTF-8");
+        StringBuilder response = new StringBuilder();
+        char[] buffer = new char[4096];
+        int read;
+        while ((read = reader.read(buffer)) != -1) {
+            if (job != null) job.throwIfCancelled();
+            response.append(buffer, 0, read);
+        }
+        return response.length() == 0 ? null : response.toString();
+    }
+
+    /**
+     * Finishes with a connection. When the body was handed over, whatever is left of it is
+     * drained and it is closed, which returns the connection to the keep-alive pool. Without a
+     * body, or when draining fails, the connection is closed for good.
+     *
+     * @param connection The connection from {@link #open(URL)}
+     * @param body       The response body that was read, or null if the request failed
+     */
+    public void release(HttpURLConnection connection, @Nullable InputStream body) {
+        if (!keepAlive || body == null) {
+            connection.disconnect();
+            return;
+        }
+        try {
+            byte[] buffer = new byte[1024];
+            while (body.read(buffer) != -1) {
+                // Drain what is left so the connection can carry the next response
+            }
+            body.close();
+        } catch (IOException e) {
+            connection.disconnect();
+        }
+    }
+
+    public static class Builder {
+
+        private int connectTimeoutMillis = DEFAULT_CONNECT_TIMEOUT_MILLIS;
+        private int readTimeoutMillis = DEFAULT_READ_TIMEOUT_MILLIS;
+        private boolean keepAlive = true;
+        private SSLSocketFactory sslSocketFactory;
+        private HostnameVerifier hostnameVerifier;
+
+        public Builder setConnectTimeoutMillis(int connectTimeoutMillis) {
+            this.connectTimeoutMillis = connectTimeoutMillis;
+            return this;
+        }
+
+        public Builder setReadTimeoutMillis(int readTimeoutMillis) {
+            this.readTimeoutMillis = readTimeoutMillis;
+            return this;
+        }
+
+        /**
+         * @param keepAlive false to close the connection after every request
+         */
+        public Builder setKeepAlive(boolean keepAlive) {
+            this.keepAlive = keepAlive;
+            return this;
+        }
+
+        /**
+         * Sets the TLS socket factory of HTTPS connections. Connections are only pooled with
+         * others created by the same factory, so the same instance must be reused.
+         */
+        public Builder setSslSocketFactory(SSLSocketFactory sslSocketFactory) {
+            this.sslSocketFactory = sslSocketFactory;
+            return this;
+        }
+
+        public Builder setHostnameVerifier(HostnameVerifier hostnameVerifier) {
+            this.hostnameVerifier = hostnameVerifier;
+            return this;
+        }
+
+        public HttpConnectionManager build() {
+            return new HttpConnectionManager(this);
+        }
+    }
+}
@@ -0,0 +1,48 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.data.network;
+
+import java.io.IOException;
+import java.net.URL;
+
+/**
+ * Thrown when the weather server answers a request with an error status
+ */
+public class HttpStatusException extends IOException {
+
+    /* 429 Too Many Requests, missing from HttpURLConnection */
+    private static final int HTTP_TOO_MANY_REQUESTS = 429;
+
+    private final int responseCode;
+
+    public HttpStatusException(URL url, int responseCode) {
+        super("HTTP " + responseCode + " for " + url);
+        this.responseCode = responseCode;
+    }
+
+    public int getResponseCode() {
+        return responseCode;
+    }
+
+    /**
+     * @return true if the server may answer the same request later, a server error or being
+     * told to slow down. Other client errors, like a 404 for an unknown city, are answered the
+     * same way every time.
+     */
+    public boolean isServerSide() {
+        return responseCode >= 500 || responseCode == HTTP_TOO_MANY_REQUESTS;
+    }
+}
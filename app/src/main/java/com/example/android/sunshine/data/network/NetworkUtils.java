@@ -17,16 +17,19 @@ package com.example.android.sunshine.data.network;
 
 import android.content.Context;
 import android.net.Uri;
+import android.support.annotation.Nullable;
 import android.util.Log;
 
 import com.example.android.sunshine.data.database.SunshinePreferences;
+import com.example.android.sunshine.data.network.sync.SyncJob;
+import com.example.android.sunshine.data.network.sync.SyncTracer;
+import com.example.android.sunshine.utilities.GeoCell;
 
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.HttpURLConnection;
 import java.net.MalformedURLException;
 import java.net.URL;
-import java.util.Scanner;
 
 /**
  * These utilities will be used to communicate with the weather servers.
@@ -56,6 +59,16 @@ public final class NetworkUtils {
 
     private static final String FORECAST_BASE_URL = STATIC_WEATHER_URL;
 
+    /* Where forecasts are requested from, a local stand-in server in load tests */
+    private static volatile String sForecastBaseUrl = FORECAST_BASE_URL;
+
+    /* Cache of forecast responses, null until the network data source installs it */
+    private static volatile ForecastResponseCache sResponseCache;
+
+    /* Opens connections with timeouts and returns them to the keep-alive pool after use */
+    private static volatile HttpConnectionManager sConnectionManager =
+            new HttpConnectionManager.Builder().build();
+
     /*
      * NOTE: These values only effect responses from OpenWeatherMap, NOT from the fake weather
      * server. They are simply here to allow us to teach you how to build a URL if you were to use
@@ -94,19 +107,41 @@ public final class NetworkUtils {
      * the URL using a latitude and longitude rather than just a location String. This method
      * will "decide" which URL to build and return it.
      *
+     * <p>
+     * The URL is built from the location's key, so the forecasts it returns are always those of
+     * the location {@link SunshinePreferences#getLocationKey(Context)} names.
+     *
      * @param context used to access other Utility methods
      * @return URL to query weather service
      */
     public static URL getUrl(Context context) {
-        if (SunshinePreferences.isLocationLatLonAvailable(context)) {
-            double[] preferredCoordinates = SunshinePreferences.getLocationCoordinates(context);
-            double latitude = preferredCoordinates[0];
-            double longitude = preferredCoordinates[1];
-            return buildUrlWithLatitudeLongitude(latitude, longitude);
-        } else {
-            String locationQuery = SunshinePreferences.getPreferredWeatherLocation(context);
-            return buildUrlWithLocationQuery(locationQuery);
+        return getUrlForLocationKey(SunshinePreferences.getLocationKey(context));
+    }
+
+    /**
+     * Builds the URL of a location from its key. A cell key asks for the center of its cell, so
+     * nearby positions share cached forecasts.
+     *
+     * @param locationKey A key made by {@link SunshinePreferences#getLocationKey(Context)}
+     * @return URL to query weather service
+     */
+    public static URL getUrlForLocationKey(String locationKey) {
+        String cellPrefix = SunshinePreferences.CELL_KEY_PREFIX;
+        if (locationKey.startsWith(cellPrefix)) {
+            double[] center = GeoCell.center(locationKey.substring(cellPrefix.length()));
+            return buildUrlWithLatitudeLongitude(center[0], center[1]);
         }
+        int comma = locationKey.indexOf(',');
+        if (comma > 0) {
+            try {
+                return buildUrlWithLatitudeLongitude(
+                        Double.parseDouble(locationKey.substring(0, comma)),
+                        Double.parseDouble(locationKey.substring(comma + 1)));
+            } catch (NumberFormatException e) {
+                // A location name with a comma in it
+            }
+        }
+        return buildUrlWithLocationQuery(locationKey);
     }
 
     /**
@@ -118,7 +153,7 @@ public final class NetworkUtils {
      * @return The Url to use to query the weather server.
      */
     private static URL buildUrlWithLatitudeLongitude(Double latitude, Double longitude) {
-        Uri weatherQueryUri = Uri.parse(FORECAST_BASE_URL).buildUpon()
+        Uri weatherQueryUri = Uri.parse(sForecastBaseUrl).buildUpon()
                 .appendQueryParameter(LAT_PARAM, String.valueOf(latitude))
                 .appendQueryParameter(LON_PARAM, String.valueOf(longitude))
                 .appendQueryParameter(FORMAT_PARAM, format)
@@ -144,7 +179,7 @@ public final class NetworkUtils {
      * @return The URL to use to query the weather server.
      */
     private static URL buildUrlWithLocationQuery(String locationQuery) {
-        Uri weatherQueryUri = Uri.parse(FORECAST_BASE_URL).buildUpon()
+        Uri weatherQueryUri = Uri.parse(sForecastBaseUrl).buildUpon()
                 .appendQueryParameter(QUERY_PARAM, locationQuery)
                 .appendQueryParameter(FORMAT_PARAM, format)
                 .appendQueryParameter(UNITS_PARAM, units)
@@ -169,22 +204,127 @@ public final class NetworkUtils {
      * @throws IOException Related to network and stream reading
      */
     public static String getResponseFromHttpUrl(URL url) throws IOException {
-        HttpURLConnection urlConnection = (HttpURLConnection) url.openConnection();
+        return getResponseFromHttpUrl(url, null);
+    }
+
+    /**
+     * Sets how connections are opened and released, like their timeouts.
+     */
+    public static void setConnectionManager(HttpConnectionManager connectionManager) {
+        sConnectionManager = connectionManager;
+    }
+
+    /**
+     * Sets the server forecasts are requested from, like a local stand-in server.
+     *
+     * @param baseUrl The URL the query is appended to, or null for the weather server
+     */
+    public static void setForecastBaseUrl(@Nullable String baseUrl) {
+        sForecastBaseUrl = baseUrl == null ? FORECAST_BASE_URL : baseUrl;
+    }
+
+    /**
+     * Sets the cache responses are read through, or null to always download them.
+     */
+    public static void setResponseCache(@Nullable ForecastResponseCache responseCache) {
+        sResponseCache = responseCache;
+    }
+
+    /**
+     * This method returns the entire result from the HTTP response, recording the time spent
+     * connecting and downloading on the sync's trace. Responses are read through the response
+     * cache when one is set: a fresh cached response is returned without any request, a stale
+     * one is revalidated with a conditional request and returned again if the server answers
+     * 304 Not Modified. Cancelling the sync disconnects the request, which ends a blocked read.
+     *
+     * @param url The URL to fetch the HTTP response from.
+     * @param job The sync doing the request, or null
+     * @return The contents of the HTTP response, null if no response
+     * @throws IOException Related to network and stream reading
+     * @throws HttpStatusException If the server answered with a 4xx or 5xx status
+     * @throws java.util.concurrent.CancellationException If the sync was cancelled
+     */
+    public static String getResponseFromHttpUrl(URL url, @Nullable SyncJob job)
+            throws IOException {
+        SyncTracer.Trace trace = job == null ? null : job.getTrace();
+        ForecastResponseCache cache = sResponseCache;
+        ForecastResponseCache.Entry cached = cache == null ? null : cache.get(url);
+        if (cached != null && cached.isFresh()) {
+            Log.v(TAG, "Fresh cached response for " + url);
+            if (job != null) job.setValidators(cached.getEtag(), cached.getLastModified());
+            return cached.getBody();
+        }
+
+        long start = System.nanoTime();
+        HttpConnectionManager connectionManager = sConnectionManager;
+        final HttpURLConnection urlConnection = connectionManager.open(url);
+        if (job != null) {
+            job.setCancelAction(new Runnable() {
+                @Override
+                public void run() {
+                    urlConnection.disconnect();
+                }
+            });
+        }
+        /* The body, once read to the end, so the connection can go back to the pool */
+        InputStream in = null;
         try {
-            InputStream in = urlConnection.getInputStream();
+            if (cached != null && cached.canRevalidate()) {
+                if (cached.getEtag() != null) {
+                    urlConnection.setRequestProperty("If-None-Match", cached.getEtag());
+                }
+                if (cached.getLastModified() != null) {
+                    urlConnection.setRequestProperty("If-Modified-Since", cached.getLastModified());
+                }
+            }
 
-            Scanner scanner = new Scanner(in);
-            scanner.useDelimiter("\\A");
+            int responseCode = urlConnection.getResponseCode();
+            if (responseCode == HttpURLConnection.HTTP_NOT_MODIFIED && cached != null) {
+                if (trace != null) trace.end(SyncTracer.STAGE_CONNECT, start);
+                in = urlConnection.getInputStream();
+                String etag = urlConnection.getHeaderField("ETag");
+                String lastModified = urlConnection.getHeaderField("Last-Modified");
+                cache.refresh(url, cached,
+                        urlConnection.getHeaderField("Cache-Control"),
+                        urlConnection.getHeaderFieldDate("Expires", 0),
+                        etag, lastModified);
+                if (job != null) {
+                    job.setValidators(etag != null ? etag : cached.getEtag(),
+                            lastModified != null ? lastModified : cached.getLastModified());
+                }
+                return cached.getBody();
+            }
+            if (responseCode >= HttpURLConnection.HTTP_BAD_REQUEST) {
+                if (trace != null) trace.end(SyncTracer.STAGE_CONNECT, start);
+                throw new HttpStatusException(url, responseCode);
+            }
+
+            InputStream body = urlConnection.getInputStream();
+            if (trace != null) start = trace.end(SyncTracer.STAGE_CONNECT, start);
+
+            String response = HttpConnectionManager.readBody(body, job);
+            in = body;
+            if (trace != null) trace.end(SyncTracer.STAGE_DOWNLOAD, start);
+            if (job != null) {
+                job.setValidators(urlConnection.getHeaderField("ETag"),
+                        urlConnection.getHeaderField("Last-Modified"));
+            }
 
-            boolean hasInput = scanner.hasNext();
-            String response = null;
-            if (hasInput) {
-                response = scanner.next();
+            if (cache != null && response != null && responseCode == HttpURLConnection.HTTP_OK) {
+                cache.put(url, response,
+                        urlConnection.getHeaderField("Cache-Control"),
+                        urlConnection.getHeaderFieldDate("Expires", 0),
+                        urlConnection.getHeaderField("ETag"),
+                        urlConnection.getHeaderField("Last-Modified"));
             }
-            scanner.close();
             return response;
+        } catch (IOException e) {
+            // A cancelled read fails on the closed socket, report the cancellation instead
+            if (job != null) job.throwIfCancelled();
+            throw e;
         } finally {
-            urlConnection.disconnect();
+            if (job != null) job.setCancelAction(null);
+            connectionManager.release(urlConnection, in);
         }
     }
 }
\ No newline at end of file
@@ -18,6 +18,7 @@ package com.example.android.sunshine.data.network;
 import android.support.annotation.Nullable;
 
 import com.example.android.sunshine.data.database.WeatherEntry;
+import com.example.android.sunshine.data.network.sync.SyncJob;
 import com.example.android.sunshine.utilities.SunshineDateUtils;
 
 import org.json.JSONArray;
@@ -25,7 +26,6 @@ import org.json.JSONException;
 import org.json.JSONObject;
 
 import java.net.HttpURLConnection;
-import java.util.Date;
 
 /**
  * Utility functions to handle OpenWeatherMap JSON data.
@@ -102,6 +102,20 @@ public final class OpenWeatherJsonUtils {
      */
     @Nullable
     public static WeatherResponse parse(final String forecastJsonStr) throws JSONException {
+        return parse(forecastJsonStr, null);
+    }
+
+    /**
+     * Parses the JSON like {@link #parse(String)}, stopping between days if the sync is
+     * cancelled.
+     *
+     * @param forecastJsonStr JSON response from server
+     * @param job             The sync doing the parse, or null
+     * @throws java.util.concurrent.CancellationException If the sync was cancelled
+     */
+    @Nullable
+    public static WeatherResponse parse(final String forecastJsonStr, @Nullable SyncJob job)
+            throws JSONException {
         JSONObject forecastJson = new JSONObject(forecastJsonStr);
 
         // Is there an error?
@@ -109,7 +123,7 @@ public final class OpenWeatherJsonUtils {
             return null;
         }
 
-        WeatherEntry[] weatherForecast = fromJson(forecastJson);
+        WeatherEntry[] weatherForecast = fromJson(forecastJson, job);
 
         return new WeatherResponse(weatherForecast);
     }
@@ -139,12 +153,13 @@ public final class OpenWeatherJsonUtils {
         double min = temperatureObject.getDouble(OWM_MIN);
 
         // Create the weather entry object
-        return new WeatherEntry(weatherId, new Date(dateTimeMillis), max, min,
+        return new WeatherEntry(weatherId, dateTimeMillis, max, min,
                 humidity, pressure, windSpeed, windDirection);
     }
 
 
-    private static WeatherEntry[] fromJson(final JSONObject forecastJson) throws JSONException {
+    private static WeatherEntry[] fromJson(final JSONObject forecastJson, @Nullable SyncJob job)
+            throws JSONException {
         JSONArray jsonWeatherArray = forecastJson.getJSONArray(OWM_LIST);
 
         WeatherEntry[] weatherEntries = new WeatherEntry[jsonWeatherArray.length()];
@@ -158,6 +173,8 @@ public final class OpenWeatherJsonUtils {
         long normalizedUtcStartDay = SunshineDateUtils.getNormalizedUtcMsForToday();
 
         for (int i = 0; i < jsonWeatherArray.length(); i++) {
+            if (job != null) job.throwIfCancelled();
+
             // Get the JSON object representing the day
             JSONObject dayForecast = jsonWeatherArray.getJSONObject(i);
 
@@ -16,23 +16,37 @@
 package com.example.android.sunshine.data.network;
 
 import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
 
+import com.example.android.sunshine.R;
+import com.example.android.sunshine.data.network.sync.AdaptiveSyncScheduler;
+import com.example.android.sunshine.data.network.sync.SyncJob;
 import com.example.android.sunshine.utilities.InjectorUtils;
 import com.firebase.jobdispatcher.Job;
 import com.firebase.jobdispatcher.JobParameters;
 import com.firebase.jobdispatcher.JobService;
 import com.firebase.jobdispatcher.RetryStrategy;
 
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
 
 public class SunshineFirebaseJobService extends JobService {
 
+    /* Syncs that are running, by the tag of their job */
+    private final Map<String, SyncJob> mRunningSyncs = new HashMap<>();
+    private final Handler mHandler = new Handler(Looper.getMainLooper());
+
     /**
      * The entry point to your Job. Implementations should offload work to another thread of
      * execution as soon as possible.
      *
      * This is called by the Job Dispatcher to tell us we should start our job. Keep in mind this
      * method is run on the application's main thread, so we need to offload work to a background
-     * thread.
+     * thread. The job is reported finished once the sync has stored its forecasts or given up,
+     * and a sync still running after the configured timeout is cancelled.
      *
      * @return whether there is more work remaining.
      */
@@ -42,9 +56,34 @@ public class SunshineFirebaseJobService extends JobService {
 
         WeatherNetworkDataSource weatherNetworkDataSource =
                 InjectorUtils.provideNetworkDataSource(context);
-        weatherNetworkDataSource.fetchWeather();
+        final SyncJob syncJob = weatherNetworkDataSource.fetchWeather();
+        synchronized (mRunningSyncs) {
+            mRunningSyncs.put(jobParameters.getTag(), syncJob);
+        }
+
+        final Runnable timeout = new Runnable() {
+            @Override
+            public void run() {
+                syncJob.cancel();
+            }
+        };
+        mHandler.postDelayed(timeout, TimeUnit.SECONDS.toMillis(
+                getResources().getInteger(R.integer.sync_job_timeout_seconds)));
 
-        jobFinished(jobParameters, false);
+        syncJob.setCallback(new SyncJob.Callback() {
+            @Override
+            public void onSyncJobFinished(SyncJob job) {
+                mHandler.removeCallbacks(timeout);
+                boolean stopped;
+                synchronized (mRunningSyncs) {
+                    stopped = mRunningSyncs.remove(jobParameters.getTag()) != job;
+                }
+                // A job stopped by the dispatcher must not be reported again
+                if (!stopped) jobFinished(jobParameters, false);
+                // Only now may the recurring job be replaced with one at a new interval
+                AdaptiveSyncScheduler.getInstance(getApplicationContext()).onSyncJobFinished();
+            }
+        });
 
         return true;
     }
@@ -52,6 +91,7 @@ public class SunshineFirebaseJobService extends JobService {
     /**
      * Called when the scheduling engine has decided to interrupt the execution of a running job,
      * most likely because the runtime constraints associated with the job are no longer satisfied.
+     * The sync is cancelled, which stops its download, parse or write where it is.
      *
      * @return whether the job should be retried
      * @see Job.Builder#setRetryStrategy(RetryStrategy)
@@ -59,6 +99,11 @@ public class SunshineFirebaseJobService extends JobService {
      */
     @Override
     public boolean onStopJob(JobParameters jobParameters) {
+        SyncJob syncJob;
+        synchronized (mRunningSyncs) {
+            syncJob = mRunningSyncs.remove(jobParameters.getTag());
+        }
+        if (syncJob != null) syncJob.cancel();
         return true;
     }
-}
\ No newline at end of file
+}
@@ -17,23 +17,44 @@ package com.example.android.sunshine.data.network;
 
 import android.app.IntentService;
 import android.content.Intent;
+import android.util.Log;
 
+import com.example.android.sunshine.R;
+import com.example.android.sunshine.data.network.sync.SyncJob;
 import com.example.android.sunshine.utilities.InjectorUtils;
 
+import java.util.concurrent.TimeUnit;
+
 /**
  * An {@link IntentService} subclass for handling asynchronous task requests in
  * a service on a separate handler thread.
  */
 public class SunshineSyncIntentService extends IntentService {
 
+    private static final String LOG_TAG = SunshineSyncIntentService.class.getSimpleName();
+
     public SunshineSyncIntentService() {
         super("SunshineSyncIntentService");
     }
 
+    /**
+     * Runs a sync and keeps the service alive until it has really ended, cancelling it if it
+     * runs past the configured timeout.
+     */
     @Override
     protected void onHandleIntent(Intent intent) {
         WeatherNetworkDataSource weatherNetworkDataSource =
                 InjectorUtils.provideNetworkDataSource(this);
-        weatherNetworkDataSource.fetchWeather();
+        SyncJob syncJob = weatherNetworkDataSource.fetchWeather();
+        try {
+            if (!syncJob.await(getResources().getInteger(R.integer.sync_job_timeout_seconds),
+                    TimeUnit.SECONDS)) {
+                Log.w(LOG_TAG, "Sync took too long, cancelled");
+                syncJob.cancel();
+            }
+        } catch (InterruptedException e) {
+            syncJob.cancel();
+            Thread.currentThread().interrupt();
+        }
     }
 }
\ No newline at end of file
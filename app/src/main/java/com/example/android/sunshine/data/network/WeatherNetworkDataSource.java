@@ -1,29 +1,75 @@
 package com.example.android.sunshine.data.network;
 
-import android.arch.lifecycle.LiveData;
-import android.arch.lifecycle.MutableLiveData;
 import android.content.Context;
+import android.content.res.Resources;
+import android.support.annotation.WorkerThread;
+import android.text.format.DateUtils;
 
 import com.example.android.sunshine.AppExecutor;
-import com.example.android.sunshine.data.database.WeatherEntry;
+import com.example.android.sunshine.BuildConfig;
+import com.example.android.sunshine.R;
+import com.example.android.sunshine.data.database.SunshinePreferences;
+import com.example.android.sunshine.data.database.UpsertResult;
+import com.example.android.sunshine.data.network.sync.AdaptiveSyncScheduler;
 import com.example.android.sunshine.data.network.sync.SunshineSyncTask;
 import com.example.android.sunshine.data.network.sync.SunshineSyncUtils;
+import com.example.android.sunshine.data.network.sync.SyncJob;
+import com.example.android.sunshine.data.network.sync.SyncRecorder;
+import com.example.android.sunshine.data.network.sync.SyncTracer;
+import com.example.android.sunshine.utilities.Clock;
+import com.example.android.sunshine.utilities.NotificationUtils;
+
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 public class WeatherNetworkDataSource {
 
     public static final String LOG_TAG = WeatherNetworkDataSource.class.getSimpleName();
 
+    /* Debug builds write the sync trace here after every sync, pull it with adb to inspect it */
+    private static final String TRACE_FILE_NAME = "sync-trace.json";
+
+    /* Raw responses are recorded here when enabled, see SyncRecorder */
+    private static final String RECORDING_FILE_NAME = "sync-recording.log";
+
+    private static final String RESPONSE_CACHE_DIRECTORY = "forecast-responses";
+
     private static WeatherNetworkDataSource weatherNetworkDataSource;
     public static final Object LOCK = new Object();
     private final AppExecutor appExecutor;
     private final Context mContext;
-    private final MutableLiveData<WeatherEntry[]> mDownloadedWeatherForecasts;
-
+    private final ForecastIngestQueue mIngestQueue;
+    private final AtomicBoolean mPrefetchStarted = new AtomicBoolean();
 
     private WeatherNetworkDataSource(Context context, AppExecutor appExecutor){
         this.appExecutor = appExecutor;
         this.mContext = context;
-        this.mDownloadedWeatherForecasts = new MutableLiveData<>();
+        Resources resources = context.getResources();
+        this.mIngestQueue = new ForecastIngestQueue(appExecutor.getDiskIO(),
+                resources.getInteger(R.integer.ingest_queue_max_locations),
+                resources.getInteger(R.integer.ingest_queue_max_wait_millis));
+        HttpConnectionManager.configureConnectionPool(
+                resources.getInteger(R.integer.network_max_idle_connections));
+        NetworkUtils.setConnectionManager(new HttpConnectionManager.Builder()
+                .setConnectTimeoutMillis((int) TimeUnit.SECONDS.toMillis(
+                        resources.getInteger(R.integer.network_connect_timeout_seconds)))
+                .setReadTimeoutMillis((int) TimeUnit.SECONDS.toMillis(
+                        resources.getInteger(R.integer.network_read_timeout_seconds)))
+                .build());
+
+        long responseCacheBytes = 1024L
+                * resources.getInteger(R.integer.response_cache_max_kilobytes);
+        NetworkUtils.setResponseCache(new ForecastResponseCache(
+                new File(context.getCacheDir(), RESPONSE_CACHE_DIRECTORY), responseCacheBytes,
+                Clock.SYSTEM));
+        if (BuildConfig.DEBUG) {
+            SyncTracer.getInstance().setTraceFile(new File(context.getFilesDir(), TRACE_FILE_NAME));
+        }
+        if (resources.getBoolean(R.bool.record_sync_payloads)) {
+            SyncRecorder.getInstance().setFile(new File(context.getFilesDir(), RECORDING_FILE_NAME),
+                    1024L * resources.getInteger(R.integer.sync_recording_max_kilobytes));
+        }
     }
 
     public static WeatherNetworkDataSource getInstance(Context context,AppExecutor appExecutor){
@@ -36,12 +82,45 @@ public class WeatherNetworkDataSource {
         return weatherNetworkDataSource;
     }
 
-    public LiveData<WeatherEntry[]> getCurrentWeatherForecasts() {
-        return mDownloadedWeatherForecasts;
+    /**
+     * @return The queue downloaded forecasts wait in until they are stored
+     */
+    public ForecastIngestQueue getIngestQueue() {
+        return mIngestQueue;
+    }
+
+    /**
+     * Starts a sync.
+     *
+     * @return The job of the sync, to cancel it or learn when it really ended
+     */
+    SyncJob fetchWeather(){
+        return SunshineSyncTask.syncWeather(mContext,appExecutor,mIngestQueue);
+    }
+
+    /**
+     * Tells the sync scheduler what the last sync stored, so it can sync less often while the
+     * forecasts stay the same
+     */
+    public void onForecastsStored(UpsertResult result){
+        AdaptiveSyncScheduler.getInstance(mContext).onSyncCompleted(result.hasChanges());
     }
 
-    void fetchWeather(){
-        SunshineSyncTask.syncWeather(mContext,appExecutor,mDownloadedWeatherForecasts);
+    /**
+     * Tells the user that new weather has been stored if they haven't been notified of the
+     * weather within the last day AND they haven't disabled notifications in the preferences
+     * screen. Called by the repository on the disk IO thread, once a sync of the shown location
+     * is stored.
+     */
+    @WorkerThread
+    public void notifyNewWeather(){
+        if (!SunshinePreferences.areNotificationsEnabled(mContext)) return;
+        // It's important that you shouldn't spam your users with notifications
+        long timeSinceLastNotification = SunshinePreferences
+                .getEllapsedTimeSinceLastNotification(mContext);
+        if (timeSinceLastNotification >= DateUtils.DAY_IN_MILLIS) {
+            NotificationUtils.notifyUserOfNewWeather(mContext);
+        }
     }
 
     public void scheduleRecurringFetchWeatherSync(){
@@ -50,6 +129,29 @@ public class WeatherNetworkDataSource {
 
     public void initialize(){
         SunshineSyncUtils.initialize(mContext,appExecutor);
+        if (mPrefetchStarted.compareAndSet(false, true)) {
+            prefetchRecentLocations();
+        }
+    }
+
+    /**
+     * Syncs the recent locations other than the current one in the background, once per
+     * process, so switching to one of them can show it at once. A fresh cached response costs
+     * no request. The current location is recorded as the most recent one first.
+     */
+    private void prefetchRecentLocations() {
+        appExecutor.getDiskIO().execute(new Runnable() {
+            @Override
+            public void run() {
+                String current = SunshinePreferences.getLocationKey(mContext);
+                for (String locationKey
+                        : SunshinePreferences.addRecentLocationKey(mContext, current)) {
+                    if (locationKey.equals(current)) continue;
+                    SunshineSyncTask.prefetchWeather(mContext, appExecutor, mIngestQueue,
+                            locationKey);
+                }
+            }
+        });
     }
 
     public void startFetchWeatherService(){
@@ -0,0 +1,109 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.data.network.sync;
+
+import android.content.Context;
+import android.content.res.Resources;
+import android.util.Log;
+
+import com.example.android.sunshine.R;
+import com.example.android.sunshine.data.database.SunshinePreferences;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps the periodic sync's interval in step with how often the forecasts actually change.
+ * After every sync it is told whether anything new was stored; the {@link SyncIntervalPolicy}
+ * picks the next interval, which is saved in the preferences and, when it differs, the
+ * recurring job is scheduled again with it once the sync's job has finished. Scheduling it
+ * while the job still runs would replace the running job, and the dispatcher may stop it.
+ */
+public class AdaptiveSyncScheduler {
+
+    private static final String LOG_TAG = AdaptiveSyncScheduler.class.getSimpleName();
+
+    /* Interval used until the first sync result is known */
+    static final long DEFAULT_INTERVAL_SECONDS = TimeUnit.HOURS.toSeconds(3);
+
+    private static AdaptiveSyncScheduler sInstance;
+    private static final Object LOCK = new Object();
+
+    private final Context context;
+    private final SyncIntervalPolicy policy;
+    /* The saved interval differs from the one the recurring job was scheduled with */
+    private boolean reschedulePending;
+
+    private AdaptiveSyncScheduler(Context context, SyncIntervalPolicy policy) {
+        this.context = context;
+        this.policy = policy;
+    }
+
+    public static AdaptiveSyncScheduler getInstance(Context context) {
+        if (sInstance == null) {
+            synchronized (LOCK) {
+                if (sInstance == null) {
+                    Resources resources = context.getResources();
+                    SyncIntervalPolicy policy = new SyncIntervalPolicy(
+                            TimeUnit.HOURS.toSeconds(
+                                    resources.getInteger(R.integer.sync_min_interval_hours)),
+                            TimeUnit.HOURS.toSeconds(
+                                    resources.getInteger(R.integer.sync_max_interval_hours)));
+                    sInstance = new AdaptiveSyncScheduler(context.getApplicationContext(), policy);
+                }
+            }
+        }
+        return sInstance;
+    }
+
+    /**
+     * @return The interval the periodic sync should run with, in seconds
+     */
+    public long getIntervalSeconds() {
+        return policy.clamp(
+                SunshinePreferences.getSyncIntervalSeconds(context, DEFAULT_INTERVAL_SECONDS));
+    }
+
+    /**
+     * Adapts the sync interval to the outcome of a sync. The periodic sync is rescheduled with
+     * it by {@link #onSyncJobFinished()}.
+     *
+     * @param forecastsChanged false if the server had nothing new or every stored row was
+     *                         already up to date
+     */
+    public synchronized void onSyncCompleted(boolean forecastsChanged) {
+        long current = getIntervalSeconds();
+        long next = policy.nextIntervalSeconds(current, forecastsChanged);
+        if (next == current) return;
+
+        Log.d(LOG_TAG, "Forecasts " + (forecastsChanged ? "changed" : "unchanged")
+                + ", sync interval " + current + "s -> " + next + "s");
+        SunshinePreferences.saveSyncIntervalSeconds(context, next);
+        reschedulePending = true;
+    }
+
+    /**
+     * Reschedules the periodic sync if its interval changed. Call it once the periodic sync's
+     * job has been reported finished to the dispatcher. A change made by an immediate sync waits
+     * for the next periodic one, which could be running meanwhile.
+     */
+    public void onSyncJobFinished() {
+        synchronized (this) {
+            if (!reschedulePending) return;
+            reschedulePending = false;
+        }
+        SunshineSyncUtils.scheduleFirebaseJobDispatcherSync(context);
+    }
+}
@@ -0,0 +1,73 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.data.network.sync;
+
+import java.util.Random;
+
+/**
+ * Capped exponential backoff with full jitter. The n-th retry waits a random time between zero
+ * and the smaller of the cap and base * 2^n, so clients that failed together do not retry
+ * together.
+ */
+public class BackoffPolicy {
+
+    private final long baseDelayMillis;
+    private final long maxDelayMillis;
+    private final int maxAttempts;
+    private final Random random;
+
+    /**
+     * @param baseDelayMillis Upper bound of the first retry's delay
+     * @param maxDelayMillis  Upper bound of any retry's delay
+     * @param maxAttempts     Number of attempts, including the first one
+     * @param random          Source of the jitter
+     */
+    public BackoffPolicy(long baseDelayMillis, long maxDelayMillis, int maxAttempts, Random random) {
+        if (baseDelayMillis <= 0 || maxDelayMillis < baseDelayMillis || maxAttempts < 1) {
+            throw new IllegalArgumentException("Invalid backoff, base of " + baseDelayMillis
+                    + ", max of " + maxDelayMillis + " and attempts of " + maxAttempts);
+        }
+        this.baseDelayMillis = baseDelayMillis;
+        this.maxDelayMillis = maxDelayMillis;
+        this.maxAttempts = maxAttempts;
+        this.random = random;
+    }
+
+    public int getMaxAttempts() {
+        return maxAttempts;
+    }
+
+    /**
+     * @param retry 0 for the first retry, 1 for the second...
+     * @return The largest delay the retry may wait, in milliseconds
+     */
+    public long getDelayCapMillis(int retry) {
+        // Past 2^30 the cap has long been reached, this also keeps the shift from overflowing
+        if (retry >= 30) return maxDelayMillis;
+        return Math.min(maxDelayMillis, baseDelayMillis << retry);
+    }
+
+    /**
+     * @param retry 0 for the first retry, 1 for the second...
+     * @return How long to wait before the retry, in milliseconds
+     */
+    public long getDelayMillis(int retry) {
+        long cap = getDelayCapMillis(retry);
+        synchronized (random) {
+            return (long) (random.nextDouble() * (cap + 1));
+        }
+    }
+}
@@ -0,0 +1,118 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.data.network.sync;
+
+import com.example.android.sunshine.utilities.Clock;
+
+/**
+ * Stops calling the weather server while it is failing. After a number of consecutive failures
+ * the breaker opens and every request is refused without touching the network. Once the open
+ * period is over a single trial request is let through: if it succeeds the breaker closes, if it
+ * fails the breaker opens again for another period.
+ */
+public class CircuitBreaker {
+
+    public static final int STATE_CLOSED = 0;
+    public static final int STATE_OPEN = 1;
+    public static final int STATE_HALF_OPEN = 2;
+
+    private final Clock clock;
+    private final int failureThreshold;
+    private final long openDurationMillis;
+
+    private int state = STATE_CLOSED;
+    private int consecutiveFailures;
+    private long openedAt;
+    private boolean trialInFlight;
+
+    /**
+     * @param clock              Time source, a fake one in tests
+     * @param failureThreshold   Consecutive failures that open the breaker
+     * @param openDurationMillis How long requests are refused before a trial request
+     */
+    public CircuitBreaker(Clock clock, int failureThreshold, long openDurationMillis) {
+        this.clock = clock;
+        this.failureThreshold = failureThreshold;
+        this.openDurationMillis = openDurationMillis;
+    }
+
+    /**
+     * Asks whether a request may be made now. When this returns true the caller must report the
+     * outcome with {@link #onSuccess()}, {@link #onFailure()} or {@link #onCancelled()}.
+     *
+     * @return false if the breaker is open, or half open with its trial request still running
+     */
+    public synchronized boolean allowRequest() {
+        if (state == STATE_OPEN && clock.elapsedRealtime() - openedAt >= openDurationMillis) {
+            state = STATE_HALF_OPEN;
+        }
+        switch (state) {
+            case STATE_CLOSED:
+                return true;
+            case STATE_HALF_OPEN:
+                if (trialInFlight) return false;
+                trialInFlight = true;
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    public synchronized void onSuccess() {
+        state = STATE_CLOSED;
+        consecutiveFailures = 0;
+        trialInFlight = false;
+    }
+
+    /**
+     * Reports a request that was abandoned before it had an outcome, like a cancelled sync. It
+     * counts as neither, but frees the trial slot of a half open breaker.
+     */
+    public synchronized void onCancelled() {
+        trialInFlight = false;
+    }
+
+    public synchronized void onFailure() {
+        consecutiveFailures++;
+        trialInFlight = false;
+        if (state == STATE_HALF_OPEN || consecutiveFailures >= failureThreshold) {
+            state = STATE_OPEN;
+            openedAt = clock.elapsedRealtime();
+        }
+    }
+
+    /**
+     * @return One of the STATE constants. An open breaker whose period is over reports half open
+     */
+    public synchronized int getState() {
+        if (state == STATE_OPEN && clock.elapsedRealtime() - openedAt >= openDurationMillis) {
+            return STATE_HALF_OPEN;
+        }
+        return state;
+    }
+
+    public synchronized int getConsecutiveFailures() {
+        return consecutiveFailures;
+    }
+
+    /**
+     * @return Milliseconds until a trial request is allowed, 0 if requests are not refused
+     */
+    public synchronized long getRemainingOpenMillis() {
+        if (state != STATE_OPEN) return 0;
+        return Math.max(0, openedAt + openDurationMillis - clock.elapsedRealtime());
+    }
+}
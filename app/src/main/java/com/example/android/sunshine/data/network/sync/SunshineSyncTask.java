@@ -15,126 +15,256 @@
  */
 package com.example.android.sunshine.data.network.sync;
 
-import android.arch.lifecycle.MutableLiveData;
 import android.content.Context;
-import android.text.format.DateUtils;
+import android.support.annotation.Nullable;
 import android.util.Log;
 
 import com.example.android.sunshine.AppExecutor;
 import com.example.android.sunshine.data.database.SunshinePreferences;
-import com.example.android.sunshine.data.database.WeatherEntry;
+import com.example.android.sunshine.data.network.ForecastIngestQueue;
+import com.example.android.sunshine.data.network.HttpStatusException;
 import com.example.android.sunshine.data.network.NetworkUtils;
 import com.example.android.sunshine.data.network.OpenWeatherJsonUtils;
 import com.example.android.sunshine.data.network.WeatherResponse;
-import com.example.android.sunshine.utilities.NotificationUtils;
+import com.example.android.sunshine.utilities.Clock;
 
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.SocketException;
 import java.net.URL;
+import java.net.UnknownHostException;
+import java.util.Random;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.TimeUnit;
 
 public class SunshineSyncTask {
 
     /**
      * Performs the network request for updated weather, parses the JSON from that request, and
-     * inserts the new weather information into our ContentProvider. Will notify the user that new
-     * weather has been loaded if the user hasn't been notified of the weather within the last day
-     * AND they haven't disabled notifications in the preferences screen.
+     * hands the new weather information to the repository to store. The repository notifies the
+     * user once it is stored.
      *
      * @param context Used to access utility methods and the ContentResolver
      */
 
     private static final String LOG_TAG = SunshineSyncTask.class.getSimpleName();
 
-    public static void syncWeather(final Context context,
-                                   AppExecutor executor,
-                                   final MutableLiveData<WeatherEntry[]> mDownloadedWeatherForecasts) {
+    /*
+     * Transient network errors are retried a few times with a growing, jittered delay. If the
+     * server keeps failing, the breaker opens and syncs are skipped without any network or
+     * parse work until it is worth trying again.
+     */
+    private static final BackoffPolicy sBackoffPolicy = new BackoffPolicy(
+            TimeUnit.SECONDS.toMillis(2), TimeUnit.SECONDS.toMillis(30), 4, new Random());
+    private static final CircuitBreaker sCircuitBreaker =
+            new CircuitBreaker(Clock.SYSTEM, 5, TimeUnit.MINUTES.toMillis(15));
+
+    /**
+     * Starts a sync on the network executor.
+     *
+     * @return The job of the sync, finished once the forecasts are stored or the sync gave up
+     */
+    public static SyncJob syncWeather(Context context,
+                                      AppExecutor executor,
+                                      ForecastIngestQueue ingestQueue) {
+        return startSync(context, executor, ingestQueue, null);
+    }
+
+    /**
+     * Starts a sync of a location that is not shown, on the network executor. Its forecasts are
+     * queued under the location's key, and no notification is shown for them.
+     *
+     * @param locationKey The location, see {@link SunshinePreferences#getLocationKey(Context)}
+     * @return The job of the sync, finished once the forecasts are stored or the sync gave up
+     */
+    public static SyncJob prefetchWeather(Context context, AppExecutor executor,
+                                          ForecastIngestQueue ingestQueue, String locationKey) {
+        return startSync(context, executor, ingestQueue, locationKey);
+    }
 
+    private static SyncJob startSync(final Context context, AppExecutor executor,
+                                     final ForecastIngestQueue ingestQueue,
+                                     @Nullable final String prefetchKey) {
+        final SyncJob job = new SyncJob(SyncTracer.getInstance().beginSync());
         executor.getNetworkIO().execute(new Runnable() {
             @Override
             public void run() {
                 try {
-                    /*
-                     * The getUrl method will return the URL that we need to get the forecast JSON for the
-                     * weather. It will decide whether to create a URL based off of the latitude and
-                     * longitude or off of a simple location as a String.
-                     */
-                    URL weatherRequestUrl = NetworkUtils.getUrl(context);
-
-                    /* Use the URL to retrieve the JSON */
-                    String jsonWeatherResponse = NetworkUtils.getResponseFromHttpUrl(weatherRequestUrl);
+                    syncWeather(context, ingestQueue, job, prefetchKey);
+                } finally {
+                    job.complete();
+                }
+            }
+        });
+        return job;
+    }
 
-                    /* Parse the JSON into a list of weather values */
-                    WeatherResponse weatherValues = OpenWeatherJsonUtils
-                            .parse(jsonWeatherResponse);
-                    Log.d(LOG_TAG, "JSON Parsing finished");
+    /**
+     * @param prefetchKey The location to prefetch, or null to sync the current one
+     */
+    private static void syncWeather(Context context, ForecastIngestQueue ingestQueue,
+                                    SyncJob job, @Nullable String prefetchKey) {
+        SyncTracer.Trace trace = job.getTrace();
+        // A sync that never starts still ends its trace, so it does not linger half open
+        if (job.isCancelled()) {
+            trace.fail(SyncTracer.STAGE_URL_BUILD, trace.now(),
+                    new CancellationException("Sync job " + trace.getId() + " was cancelled"));
+            return;
+        }
+        if (!sCircuitBreaker.allowRequest()) {
+            trace.fail(SyncTracer.STAGE_CONNECT, trace.now(), new IOException(
+                    "Weather server is failing, sync skipped for another "
+                            + sCircuitBreaker.getRemainingOpenMillis() + "ms"));
+            return;
+        }
+        /*
+         * The location is read once, so the forecasts are queued under the key of the location
+         * they were requested for, even if the user picks another one meanwhile
+         */
+        String locationKey = prefetchKey == null ? SunshinePreferences.getLocationKey(context)
+                : prefetchKey;
+        /* Whether the outcome of the request allowed above still has to be reported */
+        boolean requestPending = true;
 
+        int stage = SyncTracer.STAGE_URL_BUILD;
+        long start = trace.now();
+        try {
+            /*
+             * The getUrlForLocationKey method will return the URL that we need to get the
+             * forecast JSON for the weather. It will decide from the key whether to create a URL
+             * based off of the latitude and longitude or off of a simple location as a String.
+             */
+            URL weatherRequestUrl = NetworkUtils.getUrlForLocationKey(locationKey);
+            start = trace.end(stage, start);
 
+            /* Use the URL to retrieve the JSON, the request records connect and download */
+            stage = SyncTracer.STAGE_DOWNLOAD;
+            String jsonWeatherResponse = fetchWithBackoff(weatherRequestUrl, job);
+            SyncRecorder recorder = SyncRecorder.getInstance();
+            if (recorder.isRecording() && jsonWeatherResponse != null) {
+                recorder.record(weatherRequestUrl.toString(), System.currentTimeMillis(),
+                        trace.now() - start, jsonWeatherResponse);
+            }
 
-                    // As long as there are weather forecasts, update the LiveData storing the most recent
-                    // weather forecasts. This will trigger observers of that LiveData, such as the
-                    // SunshineRepository.
+            /* Parse the JSON into a list of weather values */
+            stage = SyncTracer.STAGE_PARSE;
+            start = trace.now();
+            WeatherResponse weatherValues = OpenWeatherJsonUtils
+                    .parse(jsonWeatherResponse, job);
+            trace.end(stage, start);
+            Log.d(LOG_TAG, "JSON Parsing finished");
 
 
 
+            // As long as there are weather forecasts, queue them for the
+            // SunshineRepository to store.
 
-                    /*
-                     * In cases where our JSON contained an error code, getWeatherContentValuesFromJson
-                     * would have returned null. We need to check for those cases here to prevent any
-                     * NullPointerExceptions being thrown. We also have no reason to insert fresh data if
-                     * there isn't any to insert.
-                     */
-                    if (weatherValues != null && weatherValues.getWeatherForecast().length != 0) {
-                        /* Get a handle on the ContentResolver to delete and insert data */
-                        Log.d(LOG_TAG, "JSON not null and has " + weatherValues.getWeatherForecast().length
-                                + " values");
 
-                        Log.d(LOG_TAG, String.format("First value is %1.0f and %1.0f",
-                                weatherValues.getWeatherForecast()[0].getMin(),
-                                weatherValues.getWeatherForecast()[0].getMax()));
 
-                        // When you are off of the main thread and want to update LiveData, use postValue.
-                        // It posts the update to the main thread.
-                        mDownloadedWeatherForecasts.postValue(weatherValues.getWeatherForecast());
 
-                        // If the code reaches this point, we have successfully performed our sync
+            /*
+             * In cases where our JSON contained an error code, getWeatherContentValuesFromJson
+             * would have returned null. We need to check for those cases here to prevent any
+             * NullPointerExceptions being thrown. We also have no reason to insert fresh data if
+             * there isn't any to insert.
+             */
+            if (weatherValues != null && weatherValues.getWeatherForecast().length != 0) {
+                sCircuitBreaker.onSuccess();
+                requestPending = false;
 
-                        /*
-                         * Finally, after we insert data into the ContentProvider, determine whether or not
-                         * we should notify the user that the weather has been refreshed.
-                         */
-                        boolean notificationsEnabled = SunshinePreferences.areNotificationsEnabled(context);
+                /* Get a handle on the ContentResolver to delete and insert data */
+                Log.d(LOG_TAG, "JSON not null and has " + weatherValues.getWeatherForecast().length
+                        + " values");
 
-                        /*
-                         * If the last notification was shown was more than 1 day ago, we want to send
-                         * another notification to the user that the weather has been updated. Remember,
-                         * it's important that you shouldn't spam your users with notifications.
-                         */
-                        long timeSinceLastNotification = SunshinePreferences
-                                .getEllapsedTimeSinceLastNotification(context);
+                Log.d(LOG_TAG, String.format("First value is %1.0f and %1.0f",
+                        weatherValues.getWeatherForecast()[0].getMin(),
+                        weatherValues.getWeatherForecast()[0].getMax()));
 
-                        boolean oneDayPassedSinceLastNotification = false;
+                // Queue the forecasts for the repository to store. The queue keeps only
+                // the latest forecasts of each location, and the repository finishes the
+                // trace once they are stored.
+                job.throwIfCancelled();
+                ingestQueue.offer(locationKey, weatherValues.getWeatherForecast(), job);
+                // The repository tells the user about the new weather once it is stored, see
+                // WeatherNetworkDataSource#notifyNewWeather
 
-                        if (timeSinceLastNotification >= DateUtils.DAY_IN_MILLIS) {
-                            oneDayPassedSinceLastNotification = true;
-                        }
+            } else {
+                /* The server answered with an error, nothing is handed to the repository */
+                sCircuitBreaker.onFailure();
+                requestPending = false;
+                trace.finish();
+            }
 
-                        /*
-                         * We only want to show the notification if the user wants them shown and we
-                         * haven't shown a notification in the past day.
-                         */
-                        if (notificationsEnabled && oneDayPassedSinceLastNotification) {
-                            NotificationUtils.notifyUserOfNewWeather(context);
-                        }
+        } catch (CancellationException e) {
+            /* Stopped on request, which says nothing about the server */
+            if (requestPending) sCircuitBreaker.onCancelled();
+            trace.fail(stage, start, e);
+        } catch (Exception e) {
+            if (requestPending && !(e instanceof CircuitOpenException)) {
+                if (isClientError(e)) {
+                    /* The server answered, the request itself was wrong, like an unknown city */
+                    sCircuitBreaker.onCancelled();
+                } else {
+                    /* Server probably invalid */
+                    sCircuitBreaker.onFailure();
+                }
+            }
+            trace.fail(stage, start, e);
+        }
+    }
 
-                        /* If the code reaches this point, we have successfully performed our sync */
+    /**
+     * Downloads the forecast JSON, retrying transient errors with backoff, see
+     * {@link #isTransient(IOException)}. Any other error is thrown right away. Every failed
+     * attempt that is retried is reported to the circuit breaker, the last one is left to the
+     * caller.
+     *
+     * @throws CircuitOpenException If the breaker opened while retrying
+     */
+    private static String fetchWithBackoff(URL url, SyncJob job)
+            throws IOException, InterruptedException {
+        for (int attempt = 1; ; attempt++) {
+            try {
+                return NetworkUtils.getResponseFromHttpUrl(url, job);
+            } catch (IOException e) {
+                if (!isTransient(e) || attempt >= sBackoffPolicy.getMaxAttempts()) throw e;
+                sCircuitBreaker.onFailure();
 
-                    }
+                long delay = sBackoffPolicy.getDelayMillis(attempt - 1);
+                Log.w(LOG_TAG, "Fetch attempt " + attempt + " failed, retrying in " + delay + "ms", e);
+                job.sleep(delay);
 
-                } catch (Exception e) {
-                    /* Server probably invalid */
-                    e.printStackTrace();
+                if (!sCircuitBreaker.allowRequest()) {
+                    throw new CircuitOpenException(e);
                 }
             }
-        });
+        }
+    }
 
+    /**
+     * @return true if the same request may succeed later: it timed out, could not connect, or
+     * the server answered with a 5xx or 429 status
+     */
+    static boolean isTransient(IOException e) {
+        if (e instanceof HttpStatusException) return ((HttpStatusException) e).isServerSide();
+        return e instanceof InterruptedIOException || e instanceof SocketException
+                || e instanceof UnknownHostException;
+    }
 
+    /**
+     * @return true if the server rejected the request with a 4xx status that retrying will not
+     * change, which says nothing about the health of the server
+     */
+    static boolean isClientError(Exception e) {
+        return e instanceof HttpStatusException && !((HttpStatusException) e).isServerSide();
+    }
+
+    /**
+     * Thrown when retries stop because the circuit breaker opened
+     */
+    private static class CircuitOpenException extends IOException {
+        CircuitOpenException(IOException cause) {
+            super("Weather server keeps failing, circuit breaker opened", cause);
+        }
     }
-}
\ No newline at end of file
+}
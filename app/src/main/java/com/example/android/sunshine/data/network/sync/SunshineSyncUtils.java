@@ -20,8 +20,9 @@ import android.content.Intent;
 import android.support.annotation.NonNull;
 
 import com.example.android.sunshine.AppExecutor;
-import com.example.android.sunshine.data.database.ListWeatherEntry;
 import com.example.android.sunshine.data.database.SunshineDatabase;
+import com.example.android.sunshine.data.database.SunshinePreferences;
+import com.example.android.sunshine.data.database.SyncMetadata;
 import com.example.android.sunshine.data.network.SunshineFirebaseJobService;
 import com.example.android.sunshine.data.network.SunshineSyncIntentService;
 import com.example.android.sunshine.utilities.InjectorUtils;
@@ -34,19 +35,8 @@ import com.firebase.jobdispatcher.Job;
 import com.firebase.jobdispatcher.Lifetime;
 import com.firebase.jobdispatcher.Trigger;
 
-import java.util.Date;
-import java.util.concurrent.TimeUnit;
-
 public class SunshineSyncUtils {
 
-    /*
-     * Interval at which to sync with the weather. Use TimeUnit for convenience, rather than
-     * writing out a bunch of multiplication ourselves and risk making a silly mistake.
-     */
-    private static final int SYNC_INTERVAL_HOURS = 3;
-    private static final int SYNC_INTERVAL_SECONDS = (int) TimeUnit.HOURS.toSeconds(SYNC_INTERVAL_HOURS);
-    private static final int SYNC_FLEXTIME_SECONDS = SYNC_INTERVAL_SECONDS / 3;
-
     private static boolean sInitialized;
 
     private static final String SUNSHINE_SYNC_TAG = "sunshine-sync";
@@ -60,6 +50,14 @@ public class SunshineSyncUtils {
      */
     public static void scheduleFirebaseJobDispatcherSync(@NonNull final Context context) {
 
+        /*
+         * The interval at which to sync with the weather is not fixed, it is stretched while the
+         * forecasts stay the same and shortened when they change. See AdaptiveSyncScheduler.
+         */
+        int syncIntervalSeconds =
+                (int) AdaptiveSyncScheduler.getInstance(context).getIntervalSeconds();
+        int syncFlextimeSeconds = syncIntervalSeconds / 3;
+
         Driver driver = new GooglePlayDriver(context);
         FirebaseJobDispatcher dispatcher = new FirebaseJobDispatcher(driver);
 
@@ -86,15 +84,16 @@ public class SunshineSyncUtils {
                  */
                 .setRecurring(true)
                 /*
-                 * We want the weather data to be synced every 3 to 4 hours. The first argument for
+                 * We want the weather data to be synced every interval plus up to a third of it
+                 * (3 to 4 hours to start with). The first argument for
                  * Trigger's static executionWindow method is the start of the time frame when the
                  * sync should be performed. The second argument is the latest point in time at
                  * which the data should be synced. Please note that this end time is not
                  * guaranteed, but is more of a guideline for FirebaseJobDispatcher to go off of.
                  */
                 .setTrigger(Trigger.executionWindow(
-                        SYNC_INTERVAL_SECONDS,
-                        SYNC_INTERVAL_SECONDS + SYNC_FLEXTIME_SECONDS))
+                        syncIntervalSeconds,
+                        syncIntervalSeconds + syncFlextimeSeconds))
                 /*
                  * If a Job with the tag with provided already exists, this new job will replace
                  * the old one.
@@ -129,35 +128,29 @@ public class SunshineSyncUtils {
          */
         scheduleFirebaseJobDispatcherSync(context);
 
-         final SunshineDatabase sunshineDatabase = InjectorUtils.provideSunshineDatabase(context);
-     executor.getDiskIO().execute(new Runnable() {
+        executor.getDiskIO().execute(new Runnable() {
             @Override
             public void run() {
-                /* URI for every row of weather data in our weather table*/
-               ListWeatherEntry weatherEntry = sunshineDatabase
-                        .weatherDao().
-                               getLastWeatherForecasts(new Date(SunshineDateUtils.normalizeDate(System.currentTimeMillis())));
-
-
-                if (null == weatherEntry ||weatherEntry.getId() <=  0) {
-                    startImmediateSync(context);
-                }
-
                 if (isFetchNeeded(context)) {
                     startImmediateSync(context);
                 }
-
             }
         });
-
-
     }
 
+    /**
+     * Looks up what the last sync stored for the current location, a single primary key lookup
+     * instead of querying the weather table.
+     *
+     * @return true unless a full forecast from today on is stored for the current location
+     */
     private static boolean isFetchNeeded(Context context) {
         SunshineDatabase sunshineDatabase = InjectorUtils.provideSunshineDatabase(context);
-        Date today = SunshineDateUtils.getNormalizedUtcDateForToday();
-        int count = sunshineDatabase.weatherDao().countAllFutureWeather(today);
-        return (count < NUM_DAYS);
+        SyncMetadata syncMetadata = sunshineDatabase.syncMetadataDao()
+                .getSyncMetadata(SunshinePreferences.getLocationKey(context));
+        if (syncMetadata == null) return true;
+        long today = SunshineDateUtils.getNormalizedUtcMsForToday();
+        return syncMetadata.getDaysFrom(today) < NUM_DAYS;
     }
 
     /**
@@ -0,0 +1,69 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.data.network.sync;
+
+/**
+ * Decides how long to wait before the next sync from whether the last one brought anything new.
+ * While the forecasts stay the same the interval grows by half each sync, and as soon as they
+ * change it is halved, so the app follows the server closely while it is publishing and backs
+ * off while it is not. The interval always stays within the bounds, the maximum being the
+ * stalest the forecasts are allowed to get.
+ */
+public class SyncIntervalPolicy {
+
+    private final long minIntervalSeconds;
+    private final long maxIntervalSeconds;
+
+    /**
+     * @param minIntervalSeconds Shortest interval, used while forecasts keep changing
+     * @param maxIntervalSeconds Longest interval, used while forecasts stay the same
+     */
+    public SyncIntervalPolicy(long minIntervalSeconds, long maxIntervalSeconds) {
+        if (minIntervalSeconds <= 0 || maxIntervalSeconds < minIntervalSeconds) {
+            throw new IllegalArgumentException("Invalid sync interval bounds, min of "
+                    + minIntervalSeconds + " and max of " + maxIntervalSeconds);
+        }
+        this.minIntervalSeconds = minIntervalSeconds;
+        this.maxIntervalSeconds = maxIntervalSeconds;
+    }
+
+    public long getMinIntervalSeconds() {
+        return minIntervalSeconds;
+    }
+
+    public long getMaxIntervalSeconds() {
+        return maxIntervalSeconds;
+    }
+
+    /**
+     * @param currentIntervalSeconds The interval the last sync ran with
+     * @param forecastsChanged       Whether the last sync stored anything new
+     * @return The interval for the next sync, in seconds
+     */
+    public long nextIntervalSeconds(long currentIntervalSeconds, boolean forecastsChanged) {
+        long next = forecastsChanged
+                ? currentIntervalSeconds / 2
+                : currentIntervalSeconds + currentIntervalSeconds / 2;
+        return clamp(next);
+    }
+
+    /**
+     * @return The interval moved within the bounds
+     */
+    public long clamp(long intervalSeconds) {
+        return Math.max(minIntervalSeconds, Math.min(maxIntervalSeconds, intervalSeconds));
+    }
+}
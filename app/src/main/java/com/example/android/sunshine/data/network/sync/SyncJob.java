@@ -0,0 +1,192 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.data.network.sync;
+
+import android.support.annotation.Nullable;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A handle on one weather sync, from the request to the forecasts being stored.
+ * <p>
+ * The work of a sync is split between threads: the network thread downloads and parses, then
+ * the disk thread stores. Each part is opened with {@link #fork()} and closed with
+ * {@link #complete()}, and the job is finished once every part is closed, so whoever started it
+ * learns when the work has really ended rather than when it was handed to another thread.
+ * <p>
+ * {@link #cancel()} asks every part to stop. Parts check {@link #throwIfCancelled()} between
+ * steps, and a part blocked on something that can be interrupted, like a socket read, registers
+ * how to interrupt it with {@link #setCancelAction(Runnable)}.
+ */
+public class SyncJob {
+
+    /**
+     * Told when the job is finished, on the thread that closed its last part
+     */
+    public interface Callback {
+        void onSyncJobFinished(SyncJob job);
+    }
+
+    private final SyncTracer.Trace trace;
+    private final CountDownLatch finished = new CountDownLatch(1);
+
+    private volatile boolean cancelled;
+    /* Open parts, the network part is open from the start */
+    private int parts = 1;
+    private Runnable cancelAction;
+    private Callback callback;
+    /* Validators of the response the forecasts came from, stored with the sync state */
+    private volatile String etag;
+    private volatile String lastModified;
+
+    /**
+     * @param trace Where the stages of the sync are recorded
+     */
+    public SyncJob(SyncTracer.Trace trace) {
+        this.trace = trace;
+    }
+
+    public SyncTracer.Trace getTrace() {
+        return trace;
+    }
+
+    /**
+     * Keeps the validators of the response the sync got, for the writer to store
+     *
+     * @param etag         The ETag, or null
+     * @param lastModified The Last-Modified date, or null
+     */
+    public void setValidators(@Nullable String etag, @Nullable String lastModified) {
+        this.etag = etag;
+        this.lastModified = lastModified;
+    }
+
+    @Nullable
+    public String getEtag() {
+        return etag;
+    }
+
+    @Nullable
+    public String getLastModified() {
+        return lastModified;
+    }
+
+    /**
+     * Sets who is told when the job is finished. If it already is, they are told right away.
+     */
+    public void setCallback(Callback callback) {
+        synchronized (this) {
+            if (parts > 0) {
+                this.callback = callback;
+                return;
+            }
+        }
+        callback.onSyncJobFinished(this);
+    }
+
+    /**
+     * Opens a part of the work, for another thread to {@link #complete()}
+     */
+    public synchronized void fork() {
+        if (parts == 0) throw new IllegalStateException("Sync job " + trace.getId() + " is finished");
+        parts++;
+    }
+
+    /**
+     * Closes a part of the work, finishing the job if it was the last one
+     */
+    public void complete() {
+        Callback toNotify;
+        synchronized (this) {
+            if (parts == 0) throw new IllegalStateException("Sync job " + trace.getId() + " is finished");
+            if (--parts > 0) return;
+            cancelAction = null;
+            toNotify = callback;
+            callback = null;
+        }
+        finished.countDown();
+        if (toNotify != null) toNotify.onSyncJobFinished(this);
+    }
+
+    /**
+     * Asks the work to stop. The job still finishes normally, once each part has noticed.
+     */
+    public void cancel() {
+        Runnable action;
+        synchronized (this) {
+            if (cancelled) return;
+            cancelled = true;
+            action = cancelAction;
+            notifyAll();
+        }
+        if (action != null) action.run();
+    }
+
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    public boolean isFinished() {
+        return finished.getCount() == 0;
+    }
+
+    /**
+     * @throws CancellationException If the job was cancelled
+     */
+    public void throwIfCancelled() {
+        if (cancelled) {
+            throw new CancellationException("Sync job " + trace.getId() + " was cancelled");
+        }
+    }
+
+    /**
+     * Sets what interrupts the step in progress when the job is cancelled, or null once the
+     * step is over. Runs it right away if the job already is cancelled.
+     */
+    public void setCancelAction(@Nullable Runnable action) {
+        synchronized (this) {
+            cancelAction = action;
+            if (!cancelled || action == null) return;
+        }
+        action.run();
+    }
+
+    /**
+     * Sleeps, waking up early if the job is cancelled.
+     *
+     * @throws CancellationException If the job was cancelled
+     */
+    public synchronized void sleep(long millis) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + millis;
+        long remaining = millis;
+        while (!cancelled && remaining > 0) {
+            wait(remaining);
+            remaining = deadline - System.currentTimeMillis();
+        }
+        throwIfCancelled();
+    }
+
+    /**
+     * Waits for the job to finish.
+     *
+     * @return true if it finished in time
+     */
+    public boolean await(long timeout, TimeUnit unit) throws InterruptedException {
+        return finished.await(timeout, unit);
+    }
+}
@@ -0,0 +1,249 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.data.network.sync;
+
+import android.support.annotation.Nullable;
+import android.util.Log;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Keeps the raw responses of syncs, so the exact payloads behind a slow sync can be replayed
+ * later. Recording is off until a file is set.
+ * <p>
+ * The file is an append-only log of records, each one gzipped on its own and preceded by its
+ * compressed length. A record holds when the response arrived, how long the download took, the
+ * request URL and the body. Records are compressed and appended on a thread of their own, so a
+ * sync does not wait for them. A record cut short by a crash is ignored when reading. Once the file
+ * would grow over its limit it is moved to a ".1" file, replacing the previous one, and a new
+ * file is started.
+ */
+public class SyncRecorder {
+
+    private static final String LOG_TAG = SyncRecorder.class.getSimpleName();
+
+    private static final int VERSION = 1;
+
+    private static SyncRecorder sInstance;
+    private static final Object LOCK = new Object();
+
+    private final Executor writeExecutor;
+    private volatile File file;
+    private long maxBytes;
+
+    /**
+     * Creates a recorder of its own, the syncs record through {@link #getInstance()}
+     */
+    public SyncRecorder() {
+        this(Executors.newSingleThreadExecutor());
+    }
+
+    /**
+     * @param writeExecutor Compresses and appends the records, one at a time and in order
+     */
+    public SyncRecorder(Executor writeExecutor) {
+        this.writeExecutor = writeExecutor;
+    }
+
+    public static SyncRecorder getInstance() {
+        if (sInstance == null) {
+            synchronized (LOCK) {
+                if (sInstance == null) {
+                    sInstance = new SyncRecorder();
+                }
+            }
+        }
+        return sInstance;
+    }
+
+    /**
+     * Sets the file responses are appended to, or null to stop recording.
+     *
+     * @param maxBytes How large the file may grow before it is moved aside
+     */
+    public synchronized void setFile(@Nullable File file, long maxBytes) {
+        this.file = file;
+        this.maxBytes = maxBytes;
+    }
+
+    public boolean isRecording() {
+        return file != null;
+    }
+
+    /**
+     * Appends a response, unless recording is off. The record is written later, on the write
+     * executor. Failing to write is logged, it never fails the sync.
+     *
+     * @param url              The request
+     * @param receivedAtMillis When the response arrived, in UNIX milliseconds
+     * @param downloadNanos    How long the download took
+     * @param body             The response body
+     */
+    public void record(final String url, final long receivedAtMillis, final long downloadNanos,
+                       final String body) {
+        final File current = file;
+        if (current == null) return;
+        writeExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    byte[] record = compress(url, receivedAtMillis, downloadNanos, body);
+                    append(current, record);
+                } catch (IOException e) {
+                    Log.e(LOG_TAG, "Could not record the sync response", e);
+                }
+            }
+        });
+    }
+
+    private synchronized void append(File current, byte[] record) throws IOException {
+        if (current.length() > 0 && current.length() + 4 + record.length > maxBytes) {
+            File previous = new File(current.getPath() + ".1");
+            if (previous.exists() && !previous.delete()) {
+                throw new IOException("Could not delete " + previous);
+            }
+            if (!current.renameTo(previous)) throw new IOException("Could not rotate " + current);
+        }
+
+        DataOutputStream out = new DataOutputStream(new FileOutputStream(current, true));
+        try {
+            out.writeInt(record.length);
+            out.write(record);
+        } finally {
+            out.close();
+        }
+    }
+
+    private static byte[] compress(String url, long receivedAtMillis, long downloadNanos,
+                                   String body) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(body.length() / 4 + 64);
+        DataOutputStream out = new DataOutputStream(new GZIPOutputStream(bytes));
+        out.writeByte(VERSION);
+        out.writeLong(receivedAtMillis);
+        out.writeLong(downloadNanos);
+        out.writeUTF(url);
+        // writeUTF is limited to 64 KB, so the body is written as length and bytes
+        byte[] bodyBytes = body.getBytes("UTF-8");
+        out.writeInt(bodyBytes.length);
+        out.write(bodyBytes);
+        out.close();
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Reads every complete record of a recording, oldest first. Reading stops at a length that
+     * does not fit in the rest of the file, as left by a record cut short or a damaged file.
+     */
+    public static List<Record> read(File file) throws IOException {
+        List<Record> records = new ArrayList<>();
+        long remaining = file.length();
+        DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+        try {
+            while (remaining >= 4) {
+                int length = in.readInt();
+                remaining -= 4;
+                if (length < 0 || length > remaining) break;
+                byte[] record = new byte[length];
+                try {
+                    in.readFully(record);
+                } catch (EOFException e) {
+                    // Cut short while it was written
+                    break;
+                }
+                remaining -= length;
+                records.add(decompress(record));
+            }
+        } finally {
+            in.close();
+        }
+        return records;
+    }
+
+    private static Record decompress(byte[] record) throws IOException {
+        DataInputStream in = new DataInputStream(
+                new GZIPInputStream(new ByteArrayInputStream(record)));
+        try {
+            int version = in.readByte();
+            if (version != VERSION) throw new IOException("Unknown record version " + version);
+            long receivedAtMillis = in.readLong();
+            long downloadNanos = in.readLong();
+            String url = in.readUTF();
+            int bodyLength = in.readInt();
+            if (bodyLength < 0) throw new IOException("Invalid body length " + bodyLength);
+            // The length is only trusted as far as the data goes, so the body grows as it is read
+            ByteArrayOutputStream body = new ByteArrayOutputStream(
+                    Math.min(bodyLength, record.length * 8));
+            byte[] chunk = new byte[8192];
+            while (body.size() < bodyLength) {
+                int read = in.read(chunk, 0, Math.min(chunk.length, bodyLength - body.size()));
+                if (read < 0) throw new EOFException("Record body cut short");
+                body.write(chunk, 0, read);
+            }
+            return new Record(url, receivedAtMillis, downloadNanos, body.toString("UTF-8"));
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * One recorded response
+     */
+    public static class Record {
+
+        private final String url;
+        private final long receivedAtMillis;
+        private final long downloadNanos;
+        private final String body;
+
+        Record(String url, long receivedAtMillis, long downloadNanos, String body) {
+            this.url = url;
+            this.receivedAtMillis = receivedAtMillis;
+            this.downloadNanos = downloadNanos;
+            this.body = body;
+        }
+
+        public String getUrl() {
+            return url;
+        }
+
+        public long getReceivedAtMillis() {
+            return receivedAtMillis;
+        }
+
+        public long getDownloadNanos() {
+            return downloadNanos;
+        }
+
+        public String getBody() {
+            return body;
+        }
+    }
+}
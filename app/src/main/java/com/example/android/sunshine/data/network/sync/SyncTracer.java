@@ -0,0 +1,346 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.data.network.sync;
+
+import android.support.annotation.Nullable;
+import android.util.JsonWriter;
+import android.util.Log;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Records how long each stage of a weather sync takes. Every sync gets an id and each of its
+ * stages a span measured with {@link System#nanoTime()}. Spans are kept in a fixed size ring
+ * buffer of primitive arrays, so tracing never allocates per span and old syncs are simply
+ * overwritten.
+ * <p>
+ * The buffer can be written as a Chrome trace JSON file, which opens in chrome://tracing and in
+ * the Perfetto UI, and summarized as the 50th, 95th and 99th percentile of every stage. When a
+ * trace file is set, it is rewritten on a thread of its own after syncs finish, never on the
+ * thread that finished the sync.
+ */
+public class SyncTracer {
+
+    private static final String LOG_TAG = SyncTracer.class.getSimpleName();
+
+    public static final int STAGE_SYNC = 0;
+    public static final int STAGE_URL_BUILD = 1;
+    public static final int STAGE_CONNECT = 2;
+    public static final int STAGE_DOWNLOAD = 3;
+    public static final int STAGE_PARSE = 4;
+    public static final int STAGE_QUEUE = 5;
+    public static final int STAGE_DELETE = 6;
+    public static final int STAGE_INSERT = 7;
+    public static final int STAGE_NOTIFICATION = 8;
+
+    private static final String[] STAGE_NAMES = {
+            "sync", "url build", "connect", "download", "parse", "queue", "delete", "insert",
+            "notification"};
+
+    private static final int DEFAULT_CAPACITY = 1024;
+
+    private static SyncTracer sInstance;
+    private static final Object LOCK = new Object();
+
+    private final int capacity;
+    private final long origin = System.nanoTime();
+
+    /* The ring buffer, one slot per span */
+    private final long[] syncIds;
+    private final int[] stages;
+    private final long[] threadIds;
+    private final long[] startNanos;
+    private final long[] durationNanos;
+    private final boolean[] failed;
+    private int next;
+    private int size;
+
+    private long lastSyncId;
+
+    private volatile File traceFile;
+    /* Writes the trace file, so the network and disk threads never wait for it */
+    private final Executor exportExecutor = Executors.newSingleThreadExecutor();
+    private final AtomicBoolean exportPending = new AtomicBoolean();
+
+    SyncTracer(int capacity) {
+        this.capacity = capacity;
+        syncIds = new long[capacity];
+        stages = new int[capacity];
+        threadIds = new long[capacity];
+        startNanos = new long[capacity];
+        durationNanos = new long[capacity];
+        failed = new boolean[capacity];
+    }
+
+    public static SyncTracer getInstance() {
+        if (sInstance == null) {
+            synchronized (LOCK) {
+                if (sInstance == null) {
+                    sInstance = new SyncTracer(DEFAULT_CAPACITY);
+                }
+            }
+        }
+        return sInstance;
+    }
+
+    /**
+     * Sets the file the trace is written to after syncs finish, or null to stop writing it
+     */
+    public void setTraceFile(@Nullable File traceFile) {
+        this.traceFile = traceFile;
+    }
+
+    /**
+     * Starts tracing a new sync.
+     *
+     * @return The trace the stages of this sync are recorded on
+     */
+    public Trace beginSync() {
+        long id;
+        synchronized (this) {
+            id = ++lastSyncId;
+        }
+        return new Trace(this, id, System.nanoTime());
+    }
+
+    /**
+     * Adds a span to the ring buffer, overwriting the oldest one when it is full
+     */
+    synchronized void record(long syncId, int stage, long start, long end, boolean error) {
+        syncIds[next] = syncId;
+        stages[next] = stage;
+        threadIds[next] = Thread.currentThread().getId();
+        startNanos[next] = start;
+        durationNanos[next] = end - start;
+        failed[next] = error;
+        next = (next + 1) % capacity;
+        if (size < capacity) size++;
+    }
+
+    /**
+     * @return The number of spans currently held
+     */
+    public synchronized int getSpanCount() {
+        return size;
+    }
+
+    /**
+     * Returns a percentile of the durations recorded for a stage, using the nearest rank.
+     *
+     * @param stage      One of the STAGE constants
+     * @param percentile Between 1 and 100
+     * @return The duration in nanoseconds, or -1 if the stage has no spans
+     */
+    public long getPercentileNanos(int stage, int percentile) {
+        long[] durations = sortedDurations(stage);
+        if (durations.length == 0) return -1;
+        return durations[rank(durations.length, percentile)];
+    }
+
+    private synchronized long[] sortedDurations(int stage) {
+        long[] durations = new long[size];
+        int count = 0;
+        for (int i = 0; i < size; i++) {
+            if (stages[i] == stage) durations[count++] = durationNanos[i];
+        }
+        durations = Arrays.copyOf(durations, count);
+        Arrays.sort(durations);
+        return durations;
+    }
+
+    private static int rank(int count, int percentile) {
+        int rank = (int) Math.ceil(percentile / 100.0 * count);
+        return Math.min(count, Math.max(1, rank)) - 1;
+    }
+
+    /**
+     * @return One line per stage with its span count and its p50, p95 and p99 in milliseconds
+     */
+    public String summarize() {
+        StringBuilder summary = new StringBuilder();
+        for (int stage = 0; stage < STAGE_NAMES.length; stage++) {
+            long[] durations = sortedDurations(stage);
+            if (durations.length == 0) continue;
+            summary.append(String.format(Locale.US, "%-12s n=%-4d p50=%.2fms p95=%.2fms p99=%.2fms%n",
+                    STAGE_NAMES[stage], durations.length,
+                    durations[rank(durations.length, 50)] / 1e6,
+                    durations[rank(durations.length, 95)] / 1e6,
+                    durations[rank(durations.length, 99)] / 1e6));
+        }
+        return summary.toString();
+    }
+
+    /**
+     * Writes the spans, oldest first, in the Chrome trace event format. Each span is a complete
+     * ("X") event on the thread that ran it, with the sync id in its arguments.
+     */
+    public void writeChromeTrace(Writer out) throws IOException {
+        long[] ids;
+        int[] stagesCopy;
+        long[] threads;
+        long[] starts;
+        long[] durations;
+        boolean[] failures;
+        int first;
+        int count;
+        synchronized (this) {
+            ids = syncIds.clone();
+            stagesCopy = stages.clone();
+            threads = threadIds.clone();
+            starts = startNanos.clone();
+            durations = durationNanos.clone();
+            failures = failed.clone();
+            count = size;
+            first = size < capacity ? 0 : next;
+        }
+
+        JsonWriter writer = new JsonWriter(out);
+        writer.beginObject();
+        writer.name("displayTimeUnit").value("ms");
+        writer.name("traceEvents").beginArray();
+        for (int i = 0; i < count; i++) {
+            int slot = (first + i) % capacity;
+            writer.beginObject();
+            writer.name("name").value(STAGE_NAMES[stagesCopy[slot]]);
+            writer.name("cat").value("sync");
+            writer.name("ph").value("X");
+            // Chrome traces are in microseconds
+            writer.name("ts").value((starts[slot] - origin) / 1000.0);
+            writer.name("dur").value(durations[slot] / 1000.0);
+            writer.name("pid").value(android.os.Process.myPid());
+            writer.name("tid").value(threads[slot]);
+            writer.name("args").beginObject();
+            writer.name("syncId").value(ids[slot]);
+            if (failures[slot]) writer.name("failed").value(true);
+            writer.endObject();
+            writer.endObject();
+        }
+        writer.endArray();
+        writer.endObject();
+        writer.flush();
+    }
+
+    /**
+     * Writes the Chrome trace to a file, replacing it.
+     */
+    public void writeChromeTrace(File file) throws IOException {
+        Writer out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), "UTF-8"));
+        try {
+            writeChromeTrace(out);
+        } finally {
+            out.close();
+        }
+    }
+
+    /**
+     * Schedules a write of the trace file. Syncs that finish while a write is waiting are in
+     * that write, so a burst of syncs rewrites the file once.
+     */
+    private void onSyncFinished() {
+        if (traceFile == null) return;
+        if (!exportPending.compareAndSet(false, true)) return;
+        exportExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                // Cleared before copying the spans, so a sync finishing from now on writes again
+                exportPending.set(false);
+                File file = traceFile;
+                if (file == null) return;
+                try {
+                    writeChromeTrace(file);
+                    Log.d(LOG_TAG, "Syncs traced to " + file + "\n" + summarize());
+                } catch (IOException e) {
+                    Log.e(LOG_TAG, "Could not write the sync trace", e);
+                }
+            }
+        });
+    }
+
+    /**
+     * The spans of one sync. A trace may be passed between threads, each span is recorded on the
+     * thread that ends it.
+     */
+    public static class Trace {
+
+        private final SyncTracer tracer;
+        private final long id;
+        private final long startNanos;
+
+        Trace(SyncTracer tracer, long id, long startNanos) {
+            this.tracer = tracer;
+            this.id = id;
+            this.startNanos = startNanos;
+        }
+
+        public long getId() {
+            return id;
+        }
+
+        /**
+         * @return The current time, to pass as the start of a span
+         */
+        public long now() {
+            return System.nanoTime();
+        }
+
+        /**
+         * Records a stage that started at the given time and ends now.
+         *
+         * @return The end of the span, so the next stage can start from it
+         */
+        public long end(int stage, long start) {
+            long end = System.nanoTime();
+            tracer.record(id, stage, start, end, false);
+            return end;
+        }
+
+        /**
+         * Records a stage measured elsewhere, such as a write shared by several syncs.
+         */
+        public void record(int stage, long start, long end) {
+            tracer.record(id, stage, start, end, false);
+        }
+
+        /**
+         * Records a stage that failed, and the whole sync as failed.
+         */
+        public void fail(int stage, long start, Throwable error) {
+            long end = System.nanoTime();
+            tracer.record(id, stage, start, end, true);
+            tracer.record(id, STAGE_SYNC, startNanos, end, true);
+            Log.e(LOG_TAG, "Sync " + id + " failed during " + STAGE_NAMES[stage], error);
+            tracer.onSyncFinished();
+        }
+
+        /**
+         * Records the whole sync, from {@link SyncTracer#beginSync()} until now.
+         */
+        public void finish() {
+            tracer.record(id, STAGE_SYNC, startNanos, System.nanoTime(), false);
+            tracer.onSyncFinished();
+        }
+    }
+}
@@ -0,0 +1,107 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.ui.setting;
+
+import android.content.Context;
+import android.view.LayoutInflater;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.BaseAdapter;
+import android.widget.Filter;
+import android.widget.Filterable;
+import android.widget.TextView;
+
+import com.example.android.sunshine.data.CityIndex;
+import com.example.android.sunshine.utilities.InjectorUtils;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Suggests bundled cities for what was typed in the location field. The search runs on the
+ * filter's worker thread, which also loads the cities the first time.
+ */
+class CitySuggestionAdapter extends BaseAdapter implements Filterable {
+
+    private final Context context;
+    private final int limit;
+    private List<CityIndex.City> suggestions = Collections.emptyList();
+
+    CitySuggestionAdapter(Context context, int limit) {
+        this.context = context.getApplicationContext();
+        this.limit = limit;
+    }
+
+    @Override
+    public int getCount() {
+        return suggestions.size();
+    }
+
+    @Override
+    public CityIndex.City getItem(int position) {
+        return suggestions.get(position);
+    }
+
+    @Override
+    public long getItemId(int position) {
+        return position;
+    }
+
+    @Override
+    public View getView(int position, View convertView, ViewGroup parent) {
+        View view = convertView;
+        if (view == null) {
+            view = LayoutInflater.from(parent.getContext())
+                    .inflate(android.R.layout.simple_dropdown_item_1line, parent, false);
+        }
+        ((TextView) view.findViewById(android.R.id.text1)).setText(getItem(position).toString());
+        return view;
+    }
+
+    @Override
+    public Filter getFilter() {
+        return new Filter() {
+            @Override
+            protected FilterResults performFiltering(CharSequence constraint) {
+                FilterResults results = new FilterResults();
+                List<CityIndex.City> cities = constraint == null
+                        ? Collections.<CityIndex.City>emptyList()
+                        : InjectorUtils.provideCityIndex(context).search(constraint.toString(), limit);
+                results.values = cities;
+                results.count = cities.size();
+                return results;
+            }
+
+            @Override
+            @SuppressWarnings("unchecked")
+            protected void publishResults(CharSequence constraint, FilterResults results) {
+                suggestions = results.values == null
+                        ? Collections.<CityIndex.City>emptyList()
+                        : (List<CityIndex.City>) results.values;
+                if (suggestions.isEmpty()) {
+                    notifyDataSetInvalidated();
+                } else {
+                    notifyDataSetChanged();
+                }
+            }
+
+            @Override
+            public CharSequence convertResultToString(Object resultValue) {
+                return resultValue.toString();
+            }
+        };
+    }
+}
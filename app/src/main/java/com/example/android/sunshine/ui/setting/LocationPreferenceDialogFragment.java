@@ -0,0 +1,104 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.ui.setting;
+
+import android.os.Bundle;
+import android.support.v7.preference.EditTextPreferenceDialogFragmentCompat;
+import android.text.Editable;
+import android.text.TextWatcher;
+import android.view.View;
+import android.widget.AdapterView;
+import android.widget.AutoCompleteTextView;
+import android.widget.Toast;
+
+import com.example.android.sunshine.R;
+
+/**
+ * The dialog of the location setting. It edits the text like any text setting, with bundled
+ * cities suggested as the user types. Picking one fills in "City, COUNTRY", which
+ * {@link SettingsFragment} resolves to coordinates without a request. Only a picked city is
+ * saved, a typed name nothing was picked for is refused, so no sync is wasted on a misspelled
+ * place.
+ */
+public class LocationPreferenceDialogFragment extends EditTextPreferenceDialogFragmentCompat {
+
+    private static final String SAVE_STATE_PICKED = "LocationPreferenceDialogFragment.picked";
+
+    private AutoCompleteTextView location;
+    /* The text is the location already set, or a city picked from the suggestions */
+    private boolean picked = true;
+
+    public static LocationPreferenceDialogFragment newInstance(String key) {
+        LocationPreferenceDialogFragment fragment = new LocationPreferenceDialogFragment();
+        Bundle arguments = new Bundle(1);
+        arguments.putString(ARG_KEY, key);
+        fragment.setArguments(arguments);
+        return fragment;
+    }
+
+    @Override
+    public void onCreate(Bundle savedInstanceState) {
+        super.onCreate(savedInstanceState);
+        if (savedInstanceState != null) {
+            picked = savedInstanceState.getBoolean(SAVE_STATE_PICKED, true);
+        }
+    }
+
+    @Override
+    public void onSaveInstanceState(Bundle outState) {
+        super.onSaveInstanceState(outState);
+        outState.putBoolean(SAVE_STATE_PICKED, picked);
+    }
+
+    @Override
+    protected void onBindDialogView(View view) {
+        super.onBindDialogView(view);
+        location = (AutoCompleteTextView) view.findViewById(android.R.id.edit);
+        location.setAdapter(new CitySuggestionAdapter(view.getContext(),
+                getResources().getInteger(R.integer.location_suggestion_limit)));
+        // Picking a suggestion replaces the text first, then reports the click
+        location.addTextChangedListener(new TextWatcher() {
+            @Override
+            public void beforeTextChanged(CharSequence s, int start, int count, int after) {
+            }
+
+            @Override
+            public void onTextChanged(CharSequence s, int start, int before, int count) {
+            }
+
+            @Override
+            public void afterTextChanged(Editable s) {
+                picked = false;
+            }
+        });
+        location.setOnItemClickListener(new AdapterView.OnItemClickListener() {
+            @Override
+            public void onItemClick(AdapterView<?> parent, View view, int position, long id) {
+                picked = true;
+            }
+        });
+    }
+
+    @Override
+    public void onDialogClosed(boolean positiveResult) {
+        if (positiveResult && !picked) {
+            Toast.makeText(getContext(), R.string.error_unknown_location, Toast.LENGTH_LONG)
+                    .show();
+            positiveResult = false;
+        }
+        super.onDialogClosed(positiveResult);
+    }
+}
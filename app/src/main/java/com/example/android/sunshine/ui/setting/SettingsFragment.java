@@ -16,6 +16,7 @@
 package com.example.android.sunshine.ui.setting;
 
 import android.app.Activity;
+import android.content.Context;
 import android.content.SharedPreferences;
 import android.os.Bundle;
 import android.support.v7.preference.CheckBoxPreference;
@@ -23,8 +24,12 @@ import android.support.v7.preference.ListPreference;
 import android.support.v7.preference.Preference;
 import android.support.v7.preference.PreferenceFragmentCompat;
 import android.support.v7.preference.PreferenceScreen;
+import android.util.Log;
 
+import com.example.android.sunshine.AppExecutor;
+import com.example.android.sunshine.LocationSwitchTimings;
 import com.example.android.sunshine.R;
+import com.example.android.sunshine.data.CityIndex;
 import com.example.android.sunshine.data.database.SunshinePreferences;
 import com.example.android.sunshine.data.network.WeatherNetworkDataSource;
 import com.example.android.sunshine.ui.weather_list.MainActivity;
@@ -42,6 +47,10 @@ import com.example.android.sunshine.utilities.InjectorUtils;
 public class SettingsFragment extends PreferenceFragmentCompat implements
         SharedPreferences.OnSharedPreferenceChangeListener {
 
+    private static final String LOG_TAG = SettingsFragment.class.getSimpleName();
+
+    private static final String LOCATION_DIALOG_TAG = "location_dialog";
+
     private void setPreferenceSummary(Preference preference, Object value) {
         String stringValue = value.toString();
 
@@ -76,6 +85,19 @@ public class SettingsFragment extends PreferenceFragmentCompat implements
         }
     }
 
+    @Override
+    public void onDisplayPreferenceDialog(Preference preference) {
+        if (!preference.getKey().equals(getString(R.string.pref_location_key))) {
+            super.onDisplayPreferenceDialog(preference);
+            return;
+        }
+        if (getFragmentManager().findFragmentByTag(LOCATION_DIALOG_TAG) != null) return;
+        LocationPreferenceDialogFragment dialog =
+                LocationPreferenceDialogFragment.newInstance(preference.getKey());
+        dialog.setTargetFragment(this, 0);
+        dialog.show(getFragmentManager(), LOCATION_DIALOG_TAG);
+    }
+
     @Override
     public void onStop() {
         super.onStop();
@@ -98,10 +120,9 @@ public class SettingsFragment extends PreferenceFragmentCompat implements
 
         if (key.equals(getString(R.string.pref_location_key))) {
             // we've changed the location
-            // Wipe out any potential PlacePicker latlng values so that we can use this text entry.
-            SunshinePreferences.resetLocationCoordinates(activity);
-            WeatherNetworkDataSource weatherNetworkDataSource = InjectorUtils.provideNetworkDataSource(getContext());
-            weatherNetworkDataSource.startFetchWeatherService();
+            LocationSwitchTimings.getInstance().markChanged();
+            onLocationChanged(activity.getApplicationContext(),
+                    sharedPreferences.getString(key, ""));
           //  SunshineSyncUtils.startImmediateSync(activity);
         } else if (key.equals(getString(R.string.pref_units_key))) {
             // units have changed. update lists of weather entries accordingly
@@ -117,4 +138,30 @@ public class SettingsFragment extends PreferenceFragmentCompat implements
             }
         }
     }
+
+    /**
+     * Syncs the weather of a new location, a bundled city synced by its coordinates, found on
+     * the device. A recent location is shown from memory while it syncs. The location dialog
+     * only saves a picked city, text that names none is not synced.
+     */
+    private static void onLocationChanged(final Context context, final String location) {
+        AppExecutor.getInstance().getDiskIO().execute(new Runnable() {
+            @Override
+            public void run() {
+                CityIndex.City city = InjectorUtils.provideCityIndex(context).resolve(location);
+                if (city == null) {
+                    Log.w(LOG_TAG, "No bundled city named " + location + ", not synced");
+                    return;
+                }
+                SunshinePreferences.setLocationDetails(context, city.getLatitude(),
+                        city.getLongitude());
+                String locationKey = SunshinePreferences.getLocationKey(context);
+                SunshinePreferences.addRecentLocationKey(context, locationKey);
+                InjectorUtils.provideRepository(context).switchLocation(locationKey);
+                WeatherNetworkDataSource weatherNetworkDataSource =
+                        InjectorUtils.provideNetworkDataSource(context);
+                weatherNetworkDataSource.startFetchWeatherService();
+            }
+        });
+    }
 }
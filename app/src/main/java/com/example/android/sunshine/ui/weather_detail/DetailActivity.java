@@ -18,24 +18,24 @@ package com.example.android.sunshine.ui.weather_detail;
 import android.arch.lifecycle.Observer;
 import android.arch.lifecycle.ViewModelProviders;
 import android.content.Intent;
-import android.databinding.DataBindingUtil;
 import android.os.Bundle;
 import android.support.annotation.Nullable;
 import android.support.v4.app.ShareCompat;
+import android.support.v4.view.ViewPager;
 import android.support.v7.app.AppCompatActivity;
 import android.view.Menu;
 import android.view.MenuInflater;
 import android.view.MenuItem;
+import android.widget.Toast;
 
 import com.example.android.sunshine.R;
+import com.example.android.sunshine.SunshineApplication;
 import com.example.android.sunshine.data.database.WeatherEntry;
-import com.example.android.sunshine.databinding.ActivityDetailBinding;
 import com.example.android.sunshine.ui.setting.SettingsActivity;
 import com.example.android.sunshine.utilities.InjectorUtils;
-import com.example.android.sunshine.utilities.SunshineDateUtils;
-import com.example.android.sunshine.utilities.SunshineWeatherUtils;
 
-import java.util.Date;
+import java.util.ArrayList;
+import java.util.List;
 
 public class DetailActivity extends AppCompatActivity {
 
@@ -54,191 +54,78 @@ public class DetailActivity extends AppCompatActivity {
      * whatever number you like, so long as it is unique and consistent.
      */
 
-    /* A summary of the forecast that can be shared by clicking the share button in the ActionBar */
-    private String mForecastSummary;
-
-    /* The URI that is used to access the chosen day's weather details */
+    /* The day the activity was opened for, as a normalized UTC timestamp in milliseconds */
     private long mWeatherDate;
 
-
     /*
-     * This field is used for data binding. Normally, we would have to call findViewById many
-     * times to get references to the Views in this Activity. With data binding however, we only
-     * need to call DataBindingUtil.setContentView and pass in a Context and a layout, as we do
-     * in onCreate of this class. Then, we can access all of the Views in our layout
-     * programmatically without cluttering up the code with findViewById.
+     * Days are paged through horizontally. The pager keeps the current page and two on each
+     * side, matching the days the view model keeps loaded.
      */
-    private ActivityDetailBinding mDetailBinding;
+    private ViewPager mPager;
+    private DetailPagerAdapter mPagerAdapter;
+
+    private DetailActivityViewModel mViewModel;
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
-
-
-        mDetailBinding = DataBindingUtil.setContentView(this, R.layout.activity_detail);
+        setContentView(R.layout.activity_detail);
 
         mWeatherDate = getIntent().getLongExtra(EXTRA_WEATHER_ID_WHEN_NOTIFICATION_CLICKED,0);
         if (mWeatherDate <= 0 ) throw new NullPointerException("URI for DetailActivity cannot be null");
 
-        /* This connects our Activity into the loader lifecycle. */
-        Date date = new Date(mWeatherDate);
+        mPager = (ViewPager) findViewById(R.id.detail_pager);
+        mPager.setOffscreenPageLimit(WeatherWindow.RADIUS_DAYS);
+        mPagerAdapter = new DetailPagerAdapter(getSupportFragmentManager());
+
+        /* Opened from a notification, the process may have only just started */
+        ((SunshineApplication) getApplication()).getDependenciesReady()
+                .observe(this, new Observer<Boolean>() {
+                    @Override
+                    public void onChanged(@Nullable Boolean ready) {
+                        if (ready == null || mViewModel != null) return;
+                        if (ready) {
+                            observeDays();
+                        } else {
+                            Toast.makeText(DetailActivity.this, R.string.error_loading_weather,
+                                    Toast.LENGTH_LONG).show();
+                            finish();
+                        }
+                    }
+                });
 
-        DetailActivityViewModel detailActivityViewModel =
-                ViewModelProviders.of(this,InjectorUtils.provideDetailViewModelFactory(getApplicationContext(),
-                        date)).get(DetailActivityViewModel.class);
+    }
 
-        detailActivityViewModel.getWeather().observe(this, new Observer<WeatherEntry>() {
+    private void observeDays() {
+        mViewModel = ViewModelProviders.of(this,InjectorUtils.provideDetailViewModelFactory(getApplicationContext(),
+                        mWeatherDate)).get(DetailActivityViewModel.class);
+
+        mViewModel.getDates().observe(this, new Observer<List<Long>>() {
             @Override
-            public void onChanged(@Nullable WeatherEntry weatherEntry) {
-                bindDataToViews(weatherEntry);
+            public void onChanged(@Nullable List<Long> dates) {
+                if (dates == null) return;
+                long current = mViewModel.getCurrentDate();
+                if (!dates.contains(current)) {
+                    /* Keep the day that was asked for, even if it is no longer forecast */
+                    dates = new ArrayList<>(dates);
+                    int insertAt = 0;
+                    while (insertAt < dates.size() && dates.get(insertAt) < current) insertAt++;
+                    dates.add(insertAt, current);
+                }
+                boolean first = mPager.getAdapter() == null;
+                mPagerAdapter.setDates(dates);
+                if (first) mPager.setAdapter(mPagerAdapter);
+                int position = mPagerAdapter.getPosition(current);
+                if (mPager.getCurrentItem() != position) mPager.setCurrentItem(position, false);
             }
         });
 
-    }
-
-    private void bindDataToViews(WeatherEntry weatherEntry) {
-        boolean cursorHasValidData = false;
-        if (weatherEntry == null) return;
-
-
-            /****************
-             * Weather Icon *
-             ****************/
-            /* Read weather condition ID from the cursor (ID provided by Open Weather Map) */
-            int weatherId = weatherEntry.getWeatherIconId();
-            /* Use our utility method to determine the resource ID for the proper art */
-            int weatherImageId = SunshineWeatherUtils.getLargeArtResourceIdForWeatherCondition(weatherId);
-
-            /* Set the resource ID on the icon to display the art */
-            mDetailBinding.primaryInfo.weatherIcon.setImageResource(weatherImageId);
-
-            /****************
-             * Weather Date *
-             ****************/
-            /*
-             * Read the date from the cursor. It is important to note that the date from the cursor
-             * is the same date from the weather SQL table. The date that is stored is a GMT
-             * representation at midnight of the date when the weather information was loaded for.
-             *
-             * When displaying this date, one must add the GMT offset (in milliseconds) to acquire
-             * the date representation for the local date in local time.
-             * SunshineDateUtils#getFriendlyDateString takes care of this for us.
-             */
-            long localDateMidnightGmt = weatherEntry.getDate().getTime();
-            String dateText = SunshineDateUtils.getFriendlyDateString(this, localDateMidnightGmt, true);
-
-            mDetailBinding.primaryInfo.date.setText(dateText);
-
-            /***********************
-             * Weather Description *
-             ***********************/
-            /* Use the weatherId to obtain the proper description */
-            String description = SunshineWeatherUtils.getStringForWeatherCondition(this, weatherId);
-
-            /* Create the accessibility (a11y) String from the weather description */
-            String descriptionA11y = getString(R.string.a11y_forecast, description);
-
-            /* Set the text and content description (for accessibility purposes) */
-            mDetailBinding.primaryInfo.weatherDescription.setText(description);
-            mDetailBinding.primaryInfo.weatherDescription.setContentDescription(descriptionA11y);
-
-            /* Set the content description on the weather image (for accessibility purposes) */
-            mDetailBinding.primaryInfo.weatherIcon.setContentDescription(descriptionA11y);
-
-            /**************************
-             * High (max) temperature *
-             **************************/
-            /* Read high temperature from the cursor (in degrees celsius) */
-            double highInCelsius = weatherEntry.getMax();
-            /*
-             * If the user's preference for weather is fahrenheit, formatTemperature will convert
-             * the temperature. This method will also append either °C or °F to the temperature
-             * String.
-             */
-            String highString = SunshineWeatherUtils.formatTemperature(this, highInCelsius);
-
-            /* Create the accessibility (a11y) String from the weather description */
-            String highA11y = getString(R.string.a11y_high_temp, highString);
-
-            /* Set the text and content description (for accessibility purposes) */
-            mDetailBinding.primaryInfo.highTemperature.setText(highString);
-            mDetailBinding.primaryInfo.highTemperature.setContentDescription(highA11y);
-
-            /*************************
-             * Low (min) temperature *
-             *************************/
-            /* Read low temperature from the cursor (in degrees celsius) */
-            double lowInCelsius = weatherEntry.getMin();
-            /*
-             * If the user's preference for weather is fahrenheit, formatTemperature will convert
-             * the temperature. This method will also append either °C or °F to the temperature
-             * String.
-             */
-            String lowString = SunshineWeatherUtils.formatTemperature(this, lowInCelsius);
-
-            String lowA11y = getString(R.string.a11y_low_temp, lowString);
-
-            /* Set the text and content description (for accessibility purposes) */
-            mDetailBinding.primaryInfo.lowTemperature.setText(lowString);
-            mDetailBinding.primaryInfo.lowTemperature.setContentDescription(lowA11y);
-
-            /************
-             * Humidity *
-             ************/
-            /* Read humidity from the cursor */
-            double humidity = weatherEntry.getHumidity();
-            String humidityString = getString(R.string.format_humidity, humidity);
-
-            String humidityA11y = getString(R.string.a11y_humidity, humidityString);
-
-            /* Set the text and content description (for accessibility purposes) */
-            mDetailBinding.extraDetails.humidity.setText(humidityString);
-            mDetailBinding.extraDetails.humidity.setContentDescription(humidityA11y);
-
-            mDetailBinding.extraDetails.humidityLabel.setContentDescription(humidityA11y);
-
-            /****************************
-             * Wind speed and direction *
-             ****************************/
-            /* Read wind speed (in MPH) and direction (in compass degrees) from the cursor  */
-            double windSpeed = weatherEntry.getWind();
-            double windDirection = weatherEntry.getDegrees();
-            String windString = SunshineWeatherUtils.getFormattedWind(this, windSpeed, windDirection);
-
-            String windA11y = getString(R.string.a11y_wind, windString);
-
-            /* Set the text and content description (for accessibility purposes) */
-            mDetailBinding.extraDetails.windMeasurement.setText(windString);
-            mDetailBinding.extraDetails.windMeasurement.setContentDescription(windA11y);
-
-            mDetailBinding.extraDetails.windLabel.setContentDescription(windA11y);
-
-            /************
-             * Pressure *
-             ************/
-            /* Read pressure from the cursor */
-            double pressure = weatherEntry.getPressure();
-
-            /*
-             * Format the pressure text using string resources. The reason we directly access
-             * resources using getString rather than using a method from SunshineWeatherUtils as
-             * we have for other data displayed in this Activity is because there is no
-             * additional logic that needs to be considered in order to properly display the
-             * pressure.
-             */
-            String pressureString = getString(R.string.format_pressure, pressure);
-
-            String pressureA11y = getString(R.string.a11y_pressure, pressureString);
-
-            /* Set the text and content description (for accessibility purposes) */
-            mDetailBinding.extraDetails.pressure.setText(pressureString);
-            mDetailBinding.extraDetails.pressure.setContentDescription(pressureA11y);
-
-            mDetailBinding.extraDetails.pressureLabel.setContentDescription(pressureA11y);
-
-            /* Store the forecast summary String in our forecast summary field to share later */
-            mForecastSummary = String.format("%s - %s - %s/%s",
-                    dateText, description, highString, lowString);
+        mPager.addOnPageChangeListener(new ViewPager.SimpleOnPageChangeListener() {
+            @Override
+            public void onPageSelected(int position) {
+                mViewModel.setCurrentDate(mPagerAdapter.getDate(position));
+            }
+        });
     }
 
         /**
@@ -300,9 +187,17 @@ public class DetailActivity extends AppCompatActivity {
          * @return the Intent to use to share our weather forecast
          */
         private Intent createShareForecastIntent () {
+            String forecastSummary = "";
+            if (mViewModel != null) {
+                WeatherEntry weatherEntry =
+                        mViewModel.getWeather(mViewModel.getCurrentDate()).getValue();
+                if (weatherEntry != null) {
+                    forecastSummary = DetailFragment.createForecastSummary(this, weatherEntry);
+                }
+            }
             Intent shareIntent = ShareCompat.IntentBuilder.from(this)
                     .setType("text/plain")
-                    .setText(mForecastSummary + FORECAST_SHARE_HASHTAG)
+                    .setText(forecastSummary + FORECAST_SHARE_HASHTAG)
                     .getIntent();
             shareIntent.addFlags(Intent.FLAG_ACTIVITY_NEW_DOCUMENT);
             return shareIntent;
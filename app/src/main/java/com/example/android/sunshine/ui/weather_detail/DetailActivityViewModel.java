@@ -16,33 +16,61 @@
 
 package com.example.android.sunshine.ui.weather_detail;
 
+import android.arch.core.util.Function;
 import android.arch.lifecycle.LiveData;
+import android.arch.lifecycle.Transformations;
 import android.arch.lifecycle.ViewModel;
 
 import com.example.android.sunshine.data.SunshineRepository;
+import com.example.android.sunshine.data.database.ListWeatherEntry;
 import com.example.android.sunshine.data.database.WeatherEntry;
 
-import java.util.Date;
+import java.util.ArrayList;
+import java.util.List;
 
 /**
- * {@link ViewModel} for {@link DetailActivity}
+ * {@link ViewModel} for {@link DetailActivity}, the days that can be paged through and the
+ * weather of the days around the current page
  */
 class DetailActivityViewModel extends ViewModel {
 
-    // Weather forecast the user is looking at
-    private final LiveData<WeatherEntry> mWeather;
+    // Days of the forecast, as normalized UTC timestamps in milliseconds, in date order
+    private final LiveData<List<Long>> mDates;
 
-    // Date for the weather forecast
-    private final Date mDate;
-    private final SunshineRepository mRepository;
+    // Weather of the days bound around the current page
+    private final WeatherWindow mWindow;
 
-    public DetailActivityViewModel(SunshineRepository repository, Date date) {
-        mRepository = repository;
-        mDate = date;
-        mWeather = mRepository.getWeatherByDate(mDate);
+    public DetailActivityViewModel(SunshineRepository repository, long date) {
+        mDates = Transformations.map(repository.getCurrentWeatherForecasts(),
+                new Function<List<ListWeatherEntry>, List<Long>>() {
+                    @Override
+                    public List<Long> apply(List<ListWeatherEntry> forecasts) {
+                        List<Long> dates = new ArrayList<>(forecasts.size());
+                        for (ListWeatherEntry forecast : forecasts) {
+                            dates.add(forecast.getDate());
+                        }
+                        return dates;
+                    }
+                });
+        mWindow = new WeatherWindow(repository, date);
     }
 
-    public LiveData<WeatherEntry> getWeather() {
-        return mWeather;
+    public LiveData<List<Long>> getDates() {
+        return mDates;
+    }
+
+    public LiveData<WeatherEntry> getWeather(long date) {
+        return mWindow.get(date);
+    }
+
+    /**
+     * @return The day of the current page
+     */
+    public long getCurrentDate() {
+        return mWindow.getCenter();
+    }
+
+    public void setCurrentDate(long date) {
+        mWindow.moveTo(date);
     }
 }
@@ -0,0 +1,261 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.ui.weather_detail;
+
+import android.arch.lifecycle.Observer;
+import android.arch.lifecycle.ViewModelProviders;
+import android.content.Context;
+import android.databinding.DataBindingUtil;
+import android.os.Bundle;
+import android.support.annotation.Nullable;
+import android.support.v4.app.Fragment;
+import android.view.LayoutInflater;
+import android.view.View;
+import android.view.ViewGroup;
+
+import com.example.android.sunshine.R;
+import com.example.android.sunshine.data.database.WeatherEntry;
+import com.example.android.sunshine.databinding.FragmentDetailBinding;
+import com.example.android.sunshine.utilities.InjectorUtils;
+import com.example.android.sunshine.utilities.SunshineDateUtils;
+import com.example.android.sunshine.utilities.SunshineWeatherUtils;
+
+/**
+ * One page of {@link DetailActivity}, the complete weather of a single day. The weather comes
+ * from the activity's {@link DetailActivityViewModel}, which only keeps the days around the
+ * current page loaded.
+ */
+public class DetailFragment extends Fragment {
+
+    private static final String ARG_DATE = "date";
+
+    /* The day shown, as a normalized UTC timestamp in milliseconds */
+    private long mDate;
+
+    /*
+     * This field is used for data binding. Normally, we would have to call findViewById many
+     * times to get references to the Views in this Fragment. With data binding however, we only
+     * need to call DataBindingUtil.inflate and pass in a LayoutInflater and a layout, as we do
+     * in onCreateView of this class. Then, we can access all of the Views in our layout
+     * programmatically without cluttering up the code with findViewById.
+     */
+    private FragmentDetailBinding mDetailBinding;
+
+    /**
+     * @param date The day to show, as a normalized UTC timestamp in milliseconds
+     */
+    public static DetailFragment newInstance(long date) {
+        Bundle arguments = new Bundle();
+        arguments.putLong(ARG_DATE, date);
+        DetailFragment fragment = new DetailFragment();
+        fragment.setArguments(arguments);
+        return fragment;
+    }
+
+    /**
+     * @return The day this page shows
+     */
+    public long getDate() {
+        return mDate;
+    }
+
+    @Override
+    public void onCreate(@Nullable Bundle savedInstanceState) {
+        super.onCreate(savedInstanceState);
+        mDate = getArguments().getLong(ARG_DATE);
+    }
+
+    @Override
+    public View onCreateView(LayoutInflater inflater, @Nullable ViewGroup container,
+                             @Nullable Bundle savedInstanceState) {
+        mDetailBinding = DataBindingUtil.inflate(inflater, R.layout.fragment_detail, container,
+                false);
+        return mDetailBinding.getRoot();
+    }
+
+    @Override
+    public void onActivityCreated(@Nullable Bundle savedInstanceState) {
+        super.onActivityCreated(savedInstanceState);
+        /*
+         * The activity normally created the view model already. A page restored with the
+         * activity after the process was killed may get here first, so it can create it too.
+         */
+        DetailActivityViewModel viewModel = ViewModelProviders.of(getActivity(),
+                InjectorUtils.provideDetailViewModelFactory(getContext().getApplicationContext(),
+                        mDate)).get(DetailActivityViewModel.class);
+
+        viewModel.getWeather(mDate).observe(getViewLifecycleOwner(), new Observer<WeatherEntry>() {
+            @Override
+            public void onChanged(@Nullable WeatherEntry weatherEntry) {
+                bindDataToViews(weatherEntry);
+            }
+        });
+    }
+
+    /**
+     * @return The text shared for a day, its date, description and high and low temperature
+     */
+    static String createForecastSummary(Context context, WeatherEntry weatherEntry) {
+        int weatherId = weatherEntry.getWeatherIconId();
+        String dateText = SunshineDateUtils.getFriendlyDateString(context,
+                weatherEntry.getDate(), true);
+        String description = SunshineWeatherUtils.getStringForWeatherCondition(context, weatherId);
+        String highString = SunshineWeatherUtils.formatTemperature(context, weatherEntry.getMax());
+        String lowString = SunshineWeatherUtils.formatTemperature(context, weatherEntry.getMin());
+        return String.format("%s - %s - %s/%s", dateText, description, highString, lowString);
+    }
+
+    private void bindDataToViews(WeatherEntry weatherEntry) {
+        if (weatherEntry == null) return;
+        Context context = getContext();
+
+
+            /****************
+             * Weather Icon *
+             ****************/
+            /* Read weather condition ID from the cursor (ID provided by Open Weather Map) */
+            int weatherId = weatherEntry.getWeatherIconId();
+            /* Use our utility method to determine the resource ID for the proper art */
+            int weatherImageId = SunshineWeatherUtils.getLargeArtResourceIdForWeatherCondition(weatherId);
+
+            /* Set the resource ID on the icon to display the art */
+            mDetailBinding.primaryInfo.weatherIcon.setImageResource(weatherImageId);
+
+            /****************
+             * Weather Date *
+             ****************/
+            /*
+             * Read the date from the cursor. It is important to note that the date from the cursor
+             * is the same date from the weather SQL table. The date that is stored is a GMT
+             * representation at midnight of the date when the weather information was loaded for.
+             *
+             * When displaying this date, one must add the GMT offset (in milliseconds) to acquire
+             * the date representation for the local date in local time.
+             * SunshineDateUtils#getFriendlyDateString takes care of this for us.
+             */
+            long localDateMidnightGmt = weatherEntry.getDate();
+            String dateText = SunshineDateUtils.getFriendlyDateString(context, localDateMidnightGmt, true);
+
+            mDetailBinding.primaryInfo.date.setText(dateText);
+
+            /***********************
+             * Weather Description *
+             ***********************/
+            /* Use the weatherId to obtain the proper description */
+            String description = SunshineWeatherUtils.getStringForWeatherCondition(context, weatherId);
+
+            /* Create the accessibility (a11y) String from the weather description */
+            String descriptionA11y = getString(R.string.a11y_forecast, description);
+
+            /* Set the text and content description (for accessibility purposes) */
+            mDetailBinding.primaryInfo.weatherDescription.setText(description);
+            mDetailBinding.primaryInfo.weatherDescription.setContentDescription(descriptionA11y);
+
+            /* Set the content description on the weather image (for accessibility purposes) */
+            mDetailBinding.primaryInfo.weatherIcon.setContentDescription(descriptionA11y);
+
+            /**************************
+             * High (max) temperature *
+             **************************/
+            /* Read high temperature from the cursor (in degrees celsius) */
+            double highInCelsius = weatherEntry.getMax();
+            /*
+             * If the user's preference for weather is fahrenheit, formatTemperature will convert
+             * the temperature. This method will also append either °C or °F to the temperature
+             * String.
+             */
+            String highString = SunshineWeatherUtils.formatTemperature(context, highInCelsius);
+
+            /* Create the accessibility (a11y) String from the weather description */
+            String highA11y = getString(R.string.a11y_high_temp, highString);
+
+            /* Set the text and content description (for accessibility purposes) */
+            mDetailBinding.primaryInfo.highTemperature.setText(highString);
+            mDetailBinding.primaryInfo.highTemperature.setContentDescription(highA11y);
+
+            /*************************
+             * Low (min) temperature *
+             *************************/
+            /* Read low temperature from the cursor (in degrees celsius) */
+            double lowInCelsius = weatherEntry.getMin();
+            /*
+             * If the user's preference for weather is fahrenheit, formatTemperature will convert
+             * the temperature. This method will also append either °C or °F to the temperature
+             * String.
+             */
+            String lowString = SunshineWeatherUtils.formatTemperature(context, lowInCelsius);
+
+            String lowA11y = getString(R.string.a11y_low_temp, lowString);
+
+            /* Set the text and content description (for accessibility purposes) */
+            mDetailBinding.primaryInfo.lowTemperature.setText(lowString);
+            mDetailBinding.primaryInfo.lowTemperature.setContentDescription(lowA11y);
+
+            /************
+             * Humidity *
+             ************/
+            /* Read humidity from the cursor */
+            double humidity = weatherEntry.getHumidity();
+            String humidityString = getString(R.string.format_humidity, humidity);
+
+            String humidityA11y = getString(R.string.a11y_humidity, humidityString);
+
+            /* Set the text and content description (for accessibility purposes) */
+            mDetailBinding.extraDetails.humidity.setText(humidityString);
+            mDetailBinding.extraDetails.humidity.setContentDescription(humidityA11y);
+
+            mDetailBinding.extraDetails.humidityLabel.setContentDescription(humidityA11y);
+
+            /****************************
+             * Wind speed and direction *
+             ****************************/
+            /* Read wind speed (in MPH) and direction (in compass degrees) from the cursor  */
+            double windSpeed = weatherEntry.getWind();
+            double windDirection = weatherEntry.getDegrees();
+            String windString = SunshineWeatherUtils.getFormattedWind(context, windSpeed, windDirection);
+
+            String windA11y = getString(R.string.a11y_wind, windString);
+
+            /* Set the text and content description (for accessibility purposes) */
+            mDetailBinding.extraDetails.windMeasurement.setText(windString);
+            mDetailBinding.extraDetails.windMeasurement.setContentDescription(windA11y);
+
+            mDetailBinding.extraDetails.windLabel.setContentDescription(windA11y);
+
+            /************
+             * Pressure *
+             ************/
+            /* Read pressure from the cursor */
+            double pressure = weatherEntry.getPressure();
+
+            /*
+             * Format the pressure text using string resources. The reason we directly access
+             * resources using getString rather than using a method from SunshineWeatherUtils as
+             * we have for other data displayed in this Fragment is because there is no
+             * additional logic that needs to be considered in order to properly display the
+             * pressure.
+             */
+            String pressureString = getString(R.string.format_pressure, pressure);
+
+            String pressureA11y = getString(R.string.a11y_pressure, pressureString);
+
+            /* Set the text and content description (for accessibility purposes) */
+            mDetailBinding.extraDetails.pressure.setText(pressureString);
+            mDetailBinding.extraDetails.pressure.setContentDescription(pressureA11y);
+
+            mDetailBinding.extraDetails.pressureLabel.setContentDescription(pressureA11y);
+    }
+}
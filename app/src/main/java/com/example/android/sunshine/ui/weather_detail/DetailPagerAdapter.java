@@ -0,0 +1,72 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.ui.weather_detail;
+
+import android.support.v4.app.Fragment;
+import android.support.v4.app.FragmentManager;
+import android.support.v4.app.FragmentStatePagerAdapter;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * One {@link DetailFragment} per day of the forecast. Pages that scroll out of the pager's
+ * offscreen limit are destroyed, keeping only their saved state.
+ */
+class DetailPagerAdapter extends FragmentStatePagerAdapter {
+
+    private List<Long> mDates = new ArrayList<>();
+
+    DetailPagerAdapter(FragmentManager fragmentManager) {
+        super(fragmentManager);
+    }
+
+    /**
+     * @param dates The days to page through, in date order
+     */
+    void setDates(List<Long> dates) {
+        if (dates.equals(mDates)) return;
+        mDates = dates;
+        notifyDataSetChanged();
+    }
+
+    long getDate(int position) {
+        return mDates.get(position);
+    }
+
+    /**
+     * @return The page of a day, or -1 if it is not one of the pages
+     */
+    int getPosition(long date) {
+        return mDates.indexOf(date);
+    }
+
+    @Override
+    public Fragment getItem(int position) {
+        return DetailFragment.newInstance(mDates.get(position));
+    }
+
+    @Override
+    public int getCount() {
+        return mDates.size();
+    }
+
+    @Override
+    public int getItemPosition(Object object) {
+        int position = mDates.indexOf(((DetailFragment) object).getDate());
+        return position < 0 ? POSITION_NONE : position;
+    }
+}
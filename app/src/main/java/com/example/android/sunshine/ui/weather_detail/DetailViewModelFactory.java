@@ -22,8 +22,6 @@ import android.arch.lifecycle.ViewModelProvider;
 import com.example.android.sunshine.data.SunshineRepository;
 import com.example.android.sunshine.data.database.WeatherEntry;
 
-import java.util.Date;
-
 /**
  * Factory method that allows us to create a ViewModel with a constructor that takes a
  * {@link SunshineRepository} and an ID for the current {@link WeatherEntry}
@@ -31,9 +29,9 @@ import java.util.Date;
 public class DetailViewModelFactory extends ViewModelProvider.NewInstanceFactory {
 
     private final SunshineRepository mRepository;
-    private final Date mDate;
+    private final long mDate;
 
-    public DetailViewModelFactory(SunshineRepository repository, Date date) {
+    public DetailViewModelFactory(SunshineRepository repository, long date) {
         this.mRepository = repository;
         this.mDate = date;
     }
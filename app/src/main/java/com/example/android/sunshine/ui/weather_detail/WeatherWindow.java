@@ -0,0 +1,81 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.ui.weather_detail;
+
+import android.arch.lifecycle.LiveData;
+
+import com.example.android.sunshine.data.SunshineRepository;
+import com.example.android.sunshine.data.database.WeatherEntry;
+import com.example.android.sunshine.utilities.SunshineDateUtils;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * The days bound to the detail pager: the current day and {@link #RADIUS_DAYS} on each side.
+ * A day is loaded through the repository the first time a page asks for it, which serves it
+ * from the detail cache and loads its neighbours there, and is let go once the current day
+ * moves away from it.
+ */
+class WeatherWindow {
+
+    static final int RADIUS_DAYS = 2;
+
+    private final SunshineRepository mRepository;
+    private final Map<Long, LiveData<WeatherEntry>> mBound = new HashMap<>();
+    private long mCenter;
+
+    /**
+     * @param center The first current day
+     */
+    WeatherWindow(SunshineRepository repository, long center) {
+        mRepository = repository;
+        mCenter = center;
+    }
+
+    /**
+     * @return The weather of a day, loaded if it is not bound yet
+     */
+    LiveData<WeatherEntry> get(long date) {
+        LiveData<WeatherEntry> weather = mBound.get(date);
+        if (weather == null) {
+            weather = mRepository.getWeatherByDate(date);
+            mBound.put(date, weather);
+        }
+        return weather;
+    }
+
+    /**
+     * Makes a day the current one and lets go of the days that are now outside the window
+     */
+    void moveTo(long date) {
+        mCenter = date;
+        long radius = RADIUS_DAYS * SunshineDateUtils.DAY_IN_MILLIS;
+        Iterator<Long> dates = mBound.keySet().iterator();
+        while (dates.hasNext()) {
+            if (Math.abs(dates.next() - mCenter) > radius) dates.remove();
+        }
+    }
+
+    long getCenter() {
+        return mCenter;
+    }
+
+    int getBoundCount() {
+        return mBound.size();
+    }
+}
@@ -25,11 +25,11 @@ import android.widget.ImageView;
 import android.widget.TextView;
 
 import com.example.android.sunshine.R;
+import com.example.android.sunshine.StartupTimings;
 import com.example.android.sunshine.data.database.ListWeatherEntry;
 import com.example.android.sunshine.utilities.SunshineDateUtils;
 import com.example.android.sunshine.utilities.SunshineWeatherUtils;
 
-import java.util.Date;
 import java.util.List;
 
 /**
@@ -132,6 +132,7 @@ public class ForecastAdapter extends RecyclerView.Adapter<ForecastAdapter.Foreca
      */
     @Override
     public void onBindViewHolder(ForecastAdapterViewHolder forecastAdapterViewHolder, int position) {
+        StartupTimings.getInstance().mark(StartupTimings.MILESTONE_FIRST_BIND);
 
         ListWeatherEntry listWeatherEntry = getItemAtPosition(position);
 
@@ -164,7 +165,7 @@ public class ForecastAdapter extends RecyclerView.Adapter<ForecastAdapter.Foreca
          * Weather Date *
          ****************/
          /* Read date from the cursor */
-        long dateInMillis = toTimestamp(listWeatherEntry.getDate());
+        long dateInMillis = listWeatherEntry.getDate();
          /* Get human readable string using our utility method */
         String dateString = SunshineDateUtils.getFriendlyDateString(mContext, dateInMillis, false);
 
@@ -224,11 +225,6 @@ public class ForecastAdapter extends RecyclerView.Adapter<ForecastAdapter.Foreca
      *
      * @return The number of items available in our forecast
      */
-
-    public static Long toTimestamp(Date date) {
-        return date == null ? null : date.getTime();
-    }
-
     @Override
     public int getItemCount() {
         if (null == listWeatherEntries) return 0;
@@ -308,7 +304,7 @@ public class ForecastAdapter extends RecyclerView.Adapter<ForecastAdapter.Foreca
         public void onClick(View v) {
             int adapterPosition = getAdapterPosition();
 
-            long dateInMillis = listWeatherEntries.get(adapterPosition).getDate().getTime();
+            long dateInMillis = listWeatherEntries.get(adapterPosition).getDate();
             mClickHandler.onClick(dateInMillis);
         }
     }
@@ -30,9 +30,14 @@ import android.view.Menu;
 import android.view.MenuInflater;
 import android.view.MenuItem;
 import android.view.View;
+import android.view.ViewTreeObserver;
 import android.widget.ProgressBar;
+import android.widget.Toast;
 
 import com.example.android.sunshine.R;
+import com.example.android.sunshine.LocationSwitchTimings;
+import com.example.android.sunshine.StartupTimings;
+import com.example.android.sunshine.SunshineApplication;
 import com.example.android.sunshine.data.database.ListWeatherEntry;
 import com.example.android.sunshine.data.database.SunshinePreferences;
 import com.example.android.sunshine.ui.setting.SettingsActivity;
@@ -61,9 +66,12 @@ public class MainActivity extends AppCompatActivity implements
 
     private ProgressBar mLoadingIndicator;
 
+    private MainActivityViewModel mViewModel;
+
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
+        StartupTimings.getInstance().mark(StartupTimings.MILESTONE_ACTIVITY_CREATE);
         setContentView(R.layout.activity_forecast);
         getSupportActionBar().setElevation(0f);
 
@@ -133,21 +141,75 @@ public class MainActivity extends AppCompatActivity implements
          */
 
        //TODO SunshineSyncUtils.initialize(this);
-        MainActivityViewModel mainActivityViewModel =
-                ViewModelProviders.of(this,
+        /*
+         * The repository is built in the background when the process starts. Wait for it rather
+         * than building it here, on the main thread, while the first frame is waiting.
+         */
+        ((SunshineApplication) getApplication()).getDependenciesReady()
+                .observe(this, new Observer<Boolean>() {
+                    @Override
+                    public void onChanged(@Nullable Boolean ready) {
+                        if (ready == null || mViewModel != null) return;
+                        if (ready) {
+                            observeForecast();
+                        } else {
+                            showLoadingFailed();
+                        }
+                    }
+                });
+
+    }
+
+    private void observeForecast() {
+        mViewModel = ViewModelProviders.of(this,
                         InjectorUtils.provideMainActivityViewModelFactory(getApplicationContext())).get(MainActivityViewModel.class);
 
-        mainActivityViewModel.getForecast().observe(this, new Observer<List<ListWeatherEntry>>() {
+        mViewModel.getForecast().observe(this, new Observer<List<ListWeatherEntry>>() {
             @Override
             public void onChanged(@Nullable List<ListWeatherEntry> listWeatherEntries) {
                 mForecastAdapter.setListWeatherEntries(listWeatherEntries);
 
                 if (mPosition == RecyclerView.NO_POSITION) mPosition = 0;
                 mRecyclerView.smoothScrollToPosition(mPosition);
-                if (listWeatherEntries.size() != 0) showWeatherDataView();
+                if (listWeatherEntries.size() != 0) {
+                    showWeatherDataView();
+                    if (StartupTimings.getInstance().mark(StartupTimings.MILESTONE_FIRST_EMISSION)) {
+                        markFirstFrame();
+                    }
+                    if (LocationSwitchTimings.getInstance().isAwaitingFrame()) {
+                        markLocationSwitchFrame();
+                    }
+                }
+            }
+        });
+    }
+
+    /**
+     * Records the startup milestone when the frame with the first forecasts is about to be drawn
+     */
+    private void markFirstFrame() {
+        mRecyclerView.getViewTreeObserver().addOnPreDrawListener(new ViewTreeObserver.OnPreDrawListener() {
+            @Override
+            public boolean onPreDraw() {
+                mRecyclerView.getViewTreeObserver().removeOnPreDrawListener(this);
+                StartupTimings.getInstance().mark(StartupTimings.MILESTONE_FIRST_FRAME);
+                return true;
             }
         });
+    }
 
+    /**
+     * Records when the frame with the forecasts of a new location is about to be drawn
+     */
+    private void markLocationSwitchFrame() {
+        mRecyclerView.getViewTreeObserver().addOnPreDrawListener(new ViewTreeObserver.OnPreDrawListener() {
+            @Override
+            public boolean onPreDraw() {
+                mRecyclerView.getViewTreeObserver().removeOnPreDrawListener(this);
+                LocationSwitchTimings.getInstance().markDrawn();
+                return true;
+            }
+        });
     }
 
     @Override
@@ -221,6 +283,15 @@ public class MainActivity extends AppCompatActivity implements
         mLoadingIndicator.setVisibility(View.VISIBLE);
     }
 
+    /**
+     * This method will hide the loading indicator and tell the user that the weather cannot be
+     * shown, because the data layer could not be built.
+     */
+    private void showLoadingFailed() {
+        mLoadingIndicator.setVisibility(View.INVISIBLE);
+        Toast.makeText(this, R.string.error_loading_weather, Toast.LENGTH_LONG).show();
+    }
+
     /**
      * This is where we inflate and set up the menu for this Activity.
      *
@@ -0,0 +1,51 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.utilities;
+
+import android.os.SystemClock;
+
+/**
+ * Source of time, so time based policies can be tested with a fake clock.
+ */
+public interface Clock {
+
+    /**
+     * The clock used by the app, {@link SystemClock#elapsedRealtime()}, which keeps counting
+     * while the device sleeps and is not affected by changes to the wall clock.
+     */
+    Clock SYSTEM = new Clock() {
+        @Override
+        public long elapsedRealtime() {
+            return SystemClock.elapsedRealtime();
+        }
+
+        @Override
+        public long currentTimeMillis() {
+            return System.currentTimeMillis();
+        }
+    };
+
+    /**
+     * @return Milliseconds since some fixed point, only meaningful compared to other values
+     */
+    long elapsedRealtime();
+
+    /**
+     * @return Wall clock time in UNIX milliseconds, for times that must survive a restart or
+     * come from a server, like HTTP expiry dates
+     */
+    long currentTimeMillis();
+}
@@ -0,0 +1,104 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.utilities;
+
+/**
+ * Geohash cells, which divide the map into a grid keyed by short strings. Each extra character
+ * makes a cell 32 times smaller: a 5 character cell is about 5 km wide, a 6 character one about
+ * 1.2 km. Points in the same cell share the start of their hash, so nearby coordinates can be
+ * rounded to one cell and share its forecast.
+ */
+public final class GeoCell {
+
+    public static final int MAX_PRECISION = 12;
+
+    private static final String BASE32 = "0123456789bcdefghjkmnpqrstuvwxyz";
+
+    private GeoCell() {
+    }
+
+    /**
+     * @param precision Length of the hash, from 1 to {@link #MAX_PRECISION}
+     * @return The cell holding the coordinates
+     */
+    public static String encode(double latitude, double longitude, int precision) {
+        if (precision < 1 || precision > MAX_PRECISION) {
+            throw new IllegalArgumentException("Precision must be from 1 to " + MAX_PRECISION);
+        }
+        double minLatitude = -90, maxLatitude = 90;
+        double minLongitude = -180, maxLongitude = 180;
+        StringBuilder cell = new StringBuilder(precision);
+        boolean longitudeBit = true;
+        int bits = 0;
+        int character = 0;
+        while (cell.length() < precision) {
+            // Bits alternate between longitude and latitude, each halving the cell
+            if (longitudeBit) {
+                double middle = (minLongitude + maxLongitude) / 2;
+                if (longitude >= middle) {
+                    character = character << 1 | 1;
+                    minLongitude = middle;
+                } else {
+                    character <<= 1;
+                    maxLongitude = middle;
+                }
+            } else {
+                double middle = (minLatitude + maxLatitude) / 2;
+                if (latitude >= middle) {
+                    character = character << 1 | 1;
+                    minLatitude = middle;
+                } else {
+                    character <<= 1;
+                    maxLatitude = middle;
+                }
+            }
+            longitudeBit = !longitudeBit;
+            if (++bits == 5) {
+                cell.append(BASE32.charAt(character));
+                bits = 0;
+                character = 0;
+            }
+        }
+        return cell.toString();
+    }
+
+    /**
+     * @return The latitude and longitude of the center of a cell
+     */
+    public static double[] center(String cell) {
+        double minLatitude = -90, maxLatitude = 90;
+        double minLongitude = -180, maxLongitude = 180;
+        boolean longitudeBit = true;
+        for (int i = 0; i < cell.length(); i++) {
+            int character = BASE32.indexOf(cell.charAt(i));
+            if (character < 0) {
+                throw new IllegalArgumentException("Not a geohash: " + cell);
+            }
+            for (int mask = 16; mask > 0; mask >>= 1) {
+                boolean set = (character & mask) != 0;
+                if (longitudeBit) {
+                    double middle = (minLongitude + maxLongitude) / 2;
+                    if (set) minLongitude = middle; else maxLongitude = middle;
+                } else {
+                    double middle = (minLatitude + maxLatitude) / 2;
+                    if (set) minLatitude = middle; else maxLatitude = middle;
+                }
+                longitudeBit = !longitudeBit;
+            }
+        }
+        return new double[]{(minLatitude + maxLatitude) / 2, (minLongitude + maxLongitude) / 2};
+    }
+}
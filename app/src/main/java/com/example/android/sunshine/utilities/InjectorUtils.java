@@ -1,35 +1,137 @@
 package com.example.android.sunshine.utilities;
 
 import android.content.Context;
+import android.util.Log;
 
 import com.example.android.sunshine.AppExecutor;
+import com.example.android.sunshine.R;
+import com.example.android.sunshine.data.CityIndex;
+import com.example.android.sunshine.data.ColumnarForecastCache;
 import com.example.android.sunshine.data.SunshineRepository;
+import com.example.android.sunshine.data.WeatherDetailCache;
+import com.example.android.sunshine.data.database.ForecastSnapshot;
+import com.example.android.sunshine.data.database.HistoryRetentionPolicy;
+import com.example.android.sunshine.data.database.LogWeatherStore;
+import com.example.android.sunshine.data.database.RoomWeatherStore;
 import com.example.android.sunshine.data.database.SunshineDatabase;
-import com.example.android.sunshine.data.database.WeatherDao;
+import com.example.android.sunshine.data.database.SunshinePreferences;
+import com.example.android.sunshine.data.database.WeatherStore;
 import com.example.android.sunshine.data.network.WeatherNetworkDataSource;
 import com.example.android.sunshine.ui.weather_detail.DetailViewModelFactory;
 import com.example.android.sunshine.ui.weather_list.MainViewModelFactory;
 
-import java.util.Date;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Collections;
 
 public class InjectorUtils {
 
+    private static final String LOG_TAG = InjectorUtils.class.getSimpleName();
 
+    private static final String FORECAST_SNAPSHOT_FILE_NAME = "forecast.snapshot";
+
+    private static final String WEATHER_LOG_DIRECTORY = "weather-log";
+
+    /*
+     * The heavy singletons are built by these holders, exactly once, on whichever thread needs
+     * them first. SunshineApplication asks for the repository on a background thread at process
+     * start, so the UI normally finds everything built.
+     */
+    private static final Lazy<SunshineDatabase> sDatabase = new Lazy<SunshineDatabase>() {
+        @Override
+        protected SunshineDatabase create(Context context) {
+            return SunshineDatabase.getInstance(context);
+        }
+    };
+
+    private static final Lazy<WeatherNetworkDataSource> sNetworkDataSource =
+            new Lazy<WeatherNetworkDataSource>() {
+                @Override
+                protected WeatherNetworkDataSource create(Context context) {
+                    return WeatherNetworkDataSource.getInstance(context, provideAppExecutor());
+                }
+            };
+
+    private static final Lazy<SunshineRepository> sRepository = new Lazy<SunshineRepository>() {
+        @Override
+        protected SunshineRepository create(Context context) {
+            SunshineDatabase database = provideSunshineDatabase(context);
+            ForecastSnapshot forecastSnapshot =
+                    new ForecastSnapshot(new File(context.getFilesDir(), FORECAST_SNAPSHOT_FILE_NAME));
+            WeatherDetailCache detailCache = new WeatherDetailCache(
+                    context.getResources().getInteger(R.integer.detail_cache_max_entries));
+            ColumnarForecastCache columnarCache = new ColumnarForecastCache(
+                    context.getResources().getInteger(R.integer.recent_locations_max));
+            return SunshineRepository.getInstance(provideWeatherStore(context),database.archiveDao(),
+                    database.syncMetadataDao(),forecastSnapshot,detailCache,columnarCache,
+                    SunshinePreferences.getLocationKey(context),
+                    provideNetworkDataSource(context),provideAppExecutor());
+        }
+    };
+
+    /*
+     * The forecasts are kept in the database, unless the log store is enabled and opens
+     */
+    private static final Lazy<WeatherStore> sWeatherStore = new Lazy<WeatherStore>() {
+        @Override
+        protected WeatherStore create(Context context) {
+            SunshineDatabase database = provideSunshineDatabase(context);
+            if (context.getResources().getBoolean(R.bool.use_weather_log_store)) {
+                try {
+                    return LogWeatherStore.open(new File(context.getFilesDir(), WEATHER_LOG_DIRECTORY),
+                            1024 * context.getResources().getInteger(R.integer.weather_log_segment_kilobytes),
+                            provideAppExecutor().getDiskIO());
+                } catch (IOException e) {
+                    Log.e(LOG_TAG, "Could not open the weather log, using the database", e);
+                }
+            }
+            return new RoomWeatherStore(database, HistoryRetentionPolicy.DEFAULT);
+        }
+    };
+
+    private static final Lazy<CityIndex> sCityIndex = new Lazy<CityIndex>() {
+        @Override
+        protected CityIndex create(Context context) {
+            InputStream in = context.getResources().openRawResource(R.raw.cities);
+            try {
+                return CityIndex.load(in);
+            } catch (IOException e) {
+                Log.e(LOG_TAG, "Could not load the bundled cities", e);
+                return new CityIndex(Collections.<CityIndex.City>emptyList());
+            }
+        }
+    };
 
     public static SunshineRepository provideRepository(Context context){
-        WeatherDao weatherDao = provideSunshineDatabase(context).weatherDao();
-        return SunshineRepository.getInstance(weatherDao,provideNetworkDataSource(context),provideAppExecutor());
+        return sRepository.get(context);
+    }
+
+    /**
+     * Where the forecasts are stored. Not to be called on the main thread, the first call opens
+     * the store.
+     */
+    public static WeatherStore provideWeatherStore(Context context){
+        return sWeatherStore.get(context);
     }
 
     public static SunshineDatabase provideSunshineDatabase(Context context){
-        return SunshineDatabase.getInstance(context);
+        return sDatabase.get(context);
     }
 
     public static WeatherNetworkDataSource provideNetworkDataSource(Context context){
-        return WeatherNetworkDataSource.getInstance(context,provideAppExecutor());
+        return sNetworkDataSource.get(context);
+    }
+
+    /**
+     * The bundled cities, read the first time they are needed. Not to be called on the main
+     * thread, the first call reads the list.
+     */
+    public static CityIndex provideCityIndex(Context context){
+        return sCityIndex.get(context);
     }
 
-    public static DetailViewModelFactory provideDetailViewModelFactory(Context context, Date date) {
+    public static DetailViewModelFactory provideDetailViewModelFactory(Context context, long date) {
         SunshineRepository repository = provideRepository(context.getApplicationContext());
         return new DetailViewModelFactory(repository, date);
     }
@@ -0,0 +1,88 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.utilities;
+
+import android.content.Context;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Holds an object that is created on first use, exactly once, by whichever thread asks first.
+ * <p>
+ * Once the object exists, {@link #get(Context)} is a single volatile read. The first caller
+ * claims creation with a compare-and-set; callers that arrive while it is still being created
+ * wait for it instead of creating a second one.
+ *
+ * @param <T> The type of the held object
+ */
+public abstract class Lazy<T> {
+
+    private final AtomicBoolean claimed = new AtomicBoolean();
+    private final CountDownLatch created = new CountDownLatch(1);
+    private volatile T value;
+    private volatile RuntimeException failure;
+
+    /**
+     * Creates the object. Called at most once.
+     *
+     * @param context The application context
+     */
+    protected abstract T create(Context context);
+
+    /**
+     * @return The object, created on this thread if nobody created it yet
+     * @throws IllegalStateException if creating the object failed
+     */
+    public final T get(Context context) {
+        T result = value;
+        if (result != null) return result;
+
+        if (claimed.compareAndSet(false, true)) {
+            try {
+                result = create(context.getApplicationContext());
+                value = result;
+                return result;
+            } catch (RuntimeException e) {
+                failure = e;
+                throw e;
+            } finally {
+                created.countDown();
+            }
+        }
+
+        boolean interrupted = false;
+        while (true) {
+            try {
+                created.await();
+                break;
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) Thread.currentThread().interrupt();
+
+        if (failure != null) throw new IllegalStateException("Creating the object failed", failure);
+        return value;
+    }
+
+    /**
+     * @return true once the object has been created
+     */
+    public final boolean isCreated() {
+        return value != null;
+    }
+}
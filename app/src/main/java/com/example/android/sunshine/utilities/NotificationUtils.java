@@ -7,19 +7,16 @@ import android.content.Intent;
 import android.content.res.Resources;
 import android.graphics.Bitmap;
 import android.graphics.BitmapFactory;
+import android.support.annotation.WorkerThread;
 import android.support.v4.app.NotificationCompat;
 import android.support.v4.app.TaskStackBuilder;
 import android.support.v4.content.ContextCompat;
 
-import com.example.android.sunshine.AppExecutor;
 import com.example.android.sunshine.R;
-import com.example.android.sunshine.data.database.ListWeatherEntry;
-import com.example.android.sunshine.data.database.SunshineDatabase;
 import com.example.android.sunshine.data.database.SunshinePreferences;
+import com.example.android.sunshine.data.database.WeatherEntry;
 import com.example.android.sunshine.ui.weather_detail.DetailActivity;
 
-import java.util.Date;
-
 public class NotificationUtils {
 
     /*
@@ -30,36 +27,27 @@ public class NotificationUtils {
     private static final int WEATHER_NOTIFICATION_ID = 3004;
 
     /**
-     * Constructs and displays a notification for the newly updated weather for today.
+     * Constructs and displays a notification for the newly updated weather for today. Reads the
+     * weather store, so it is called off the main thread.
      *
-     * @param context Context used to query our ContentProvider and use various Utility methods
+     * @param context Context used to read the weather store and use various Utility methods
      */
+    @WorkerThread
     public static void notifyUserOfNewWeather(Context context) {
 
-        /* Build the URI for today's weather in order to show up to date data in notification */
-        AppExecutor appExecutor = AppExecutor.getInstance();
-        final SunshineDatabase sunshineDatabase = SunshineDatabase.getInstance(context);
-        final ListWeatherEntry[] listWeatherEntry = new ListWeatherEntry[1];
-        appExecutor.getDiskIO().execute(new Runnable() {
-            @Override
-            public void run() {
-             listWeatherEntry[0] = sunshineDatabase.
-                     weatherDao().
-                     getLastWeatherForecasts(new Date(SunshineDateUtils.normalizeDate(System.currentTimeMillis())));
-
-            }
-        });
+        /* Read today's weather in order to show up to date data in notification */
+        WeatherEntry todayWeather = InjectorUtils.provideWeatherStore(context)
+                .getWeatherByDate(SunshineDateUtils.getNormalizedUtcMsForToday());
         /*
-         * If todayWeatherCursor is empty, moveToFirst will return false. If our cursor is not
-         * empty, we want to show the notification.
+         * If today's weather isn't stored, there is nothing to tell. Otherwise, we want to show
+         * the notification.
          */
-        if (listWeatherEntry[0] != null) {
+        if (todayWeather != null) {
 
             /* Weather ID as returned by API, used to identify the icon to be used */
-            int wId = listWeatherEntry[0].getId();
-            int weatherId = listWeatherEntry[0].getWeatherIconId();
-            double high = listWeatherEntry[0].getMax();
-            double low = listWeatherEntry[0].getMin();
+            int weatherId = todayWeather.getWeatherIconId();
+            double high = todayWeather.getMax();
+            double low = todayWeather.getMin();
 
             Resources resources = context.getResources();
             int largeArtResourceId = SunshineWeatherUtils
@@ -97,7 +85,8 @@ public class NotificationUtils {
              * we want to open Sunshine to the DetailActivity to display the newly updated weather.
              */
             Intent detailIntentForToday = new Intent(context, DetailActivity.class);
-            detailIntentForToday.putExtra(DetailActivity.EXTRA_WEATHER_ID_WHEN_NOTIFICATION_CLICKED,wId);
+            detailIntentForToday.putExtra(DetailActivity.EXTRA_WEATHER_ID_WHEN_NOTIFICATION_CLICKED,
+                    todayWeather.getDate());
 
             TaskStackBuilder taskStackBuilder = TaskStackBuilder.create(context);
             taskStackBuilder.addNextIntentWithParentStack(detailIntentForToday);
@@ -118,8 +107,6 @@ public class NotificationUtils {
              */
             SunshinePreferences.saveLastNotificationTime(context, System.currentTimeMillis());
         }
-
-        /* Always close your cursor when you're done with it to avoid wasting resources. */
     }
 
     /**
@@ -21,7 +21,6 @@ import android.text.format.DateUtils;
 import com.example.android.sunshine.R;
 
 import java.text.SimpleDateFormat;
-import java.util.Date;
 import java.util.Locale;
 import java.util.TimeZone;
 import java.util.concurrent.TimeUnit;
@@ -110,14 +109,10 @@ public final class SunshineDateUtils {
      *
      * @return The number of days from the epoch to the date argument.
      */
-    private static long elapsedDaysSinceEpoch(long utcDate) {
+    public static long elapsedDaysSinceEpoch(long utcDate) {
         return TimeUnit.MILLISECONDS.toDays(utcDate);
     }
 
-    public static Date getNormalizedUtcDateForToday() {
-        long normalizedMilli = getNormalizedUtcMsForToday();
-        return new Date(normalizedMilli);
-    }
 
     /**
      * Normalizes a date (in milliseconds).